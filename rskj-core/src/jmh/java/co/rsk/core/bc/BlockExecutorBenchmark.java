@@ -0,0 +1,77 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import co.rsk.blockchain.utils.BlockGenerator;
+import co.rsk.core.BlockchainDummy;
+import co.rsk.db.RepositoryImpl;
+import co.rsk.trie.TrieStoreImpl;
+import org.ethereum.core.Account;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.datasource.HashMapDB;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution of a block of value transfers between funded accounts.
+ * Every invocation starts from the same state root, so the repository
+ * only grows with the nodes of the (identical) resulting state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockExecutorBenchmark {
+    @Param({"10", "100"})
+    public int ntxs;
+
+    private BlockExecutor executor;
+    private Block block;
+    private byte[] stateRoot;
+
+    @Setup
+    public void setup() {
+        Repository repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()));
+        List<Account> accounts = SyntheticBlocks.createAccounts(ntxs);
+        SyntheticBlocks.fund(repository, accounts, BigInteger.valueOf(1000000));
+
+        Block genesis = BlockGenerator.getGenesisBlock();
+        genesis.setStateRoot(repository.getRoot());
+        stateRoot = repository.getRoot();
+
+        block = SyntheticBlocks.createBlock(genesis, SyntheticBlocks.createTransfers(accounts));
+        executor = new BlockExecutor(repository, new BlockchainDummy(), null, null);
+    }
+
+    @Benchmark
+    public BlockResult execute() {
+        BlockResult result = executor.execute(block, stateRoot, false);
+
+        if (result == BlockResult.INTERRUPTED_EXECUTION_BLOCK_RESULT)
+            throw new IllegalStateException("Block execution interrupted");
+
+        return result;
+    }
+}
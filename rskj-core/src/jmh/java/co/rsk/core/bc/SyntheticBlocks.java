@@ -0,0 +1,82 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import co.rsk.blockchain.utils.BlockGenerator;
+import org.ethereum.core.Account;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.crypto.HashUtil;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accounts, signed value transfers and blocks shared by the benchmarks.
+ * The same seeds give the same objects, so the runs are comparable.
+ */
+public class SyntheticBlocks {
+    private SyntheticBlocks() {
+    }
+
+    public static List<Account> createAccounts(int naccounts) {
+        List<Account> accounts = new ArrayList<>(naccounts);
+
+        for (int k = 0; k < naccounts; k++)
+            accounts.add(new Account(ECKey.fromPrivate(HashUtil.sha3(("account" + k).getBytes()))));
+
+        return accounts;
+    }
+
+    public static void fund(Repository repository, List<Account> accounts, BigInteger balance) {
+        Repository track = repository.startTracking();
+
+        for (Account account : accounts) {
+            track.createAccount(account.getAddress());
+            track.addBalance(account.getAddress(), balance);
+        }
+
+        track.commit();
+    }
+
+    /**
+     * Returns a transfer from each account to the next one, with nonce zero
+     */
+    public static List<Transaction> createTransfers(List<Account> accounts) {
+        List<Transaction> txs = new ArrayList<>(accounts.size());
+
+        for (int k = 0; k < accounts.size(); k++) {
+            Account sender = accounts.get(k);
+            Account receiver = accounts.get((k + 1) % accounts.size());
+            Transaction tx = Transaction.create(Hex.toHexString(receiver.getAddress()), BigInteger.TEN, BigInteger.ZERO, BigInteger.ONE, BigInteger.valueOf(21000));
+            tx.sign(sender.getEcKey().getPrivKeyBytes());
+            txs.add(tx);
+        }
+
+        return txs;
+    }
+
+    public static Block createBlock(Block parent, List<Transaction> txs) {
+        return BlockGenerator.createChildBlock(parent, txs, new ArrayList<>(), 1, null);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.trie.TrieStoreImpl;
+import org.ethereum.core.Repository;
+import org.ethereum.datasource.HashMapDB;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Balance reads from four threads while a background thread imports blocks:
+ * it updates a hundred accounts, and gets the state root and flushes the
+ * repository, holding its monitor, as the block import does.
+ *
+ * With snapshot = true each read goes to a snapshot of the last imported
+ * state, as the RPC reads do; with false the reads go to the repository,
+ * and wait for the import.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RepositoryReadBenchmark {
+    private static final int NUMBER_OF_ACCOUNTS = 10000;
+    private static final int UPDATED_ACCOUNTS = 100;
+
+    @Param({"true", "false"})
+    public boolean snapshot;
+
+    private RepositoryImpl repository;
+    private final List<byte[]> addresses = new ArrayList<>();
+
+    private volatile byte[] root;
+    private volatile boolean importing;
+    private Thread importer;
+
+    @Setup
+    public void setup() {
+        repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()));
+
+        Random random = new Random(1);
+        Repository track = repository.startTracking();
+
+        for (int k = 0; k < NUMBER_OF_ACCOUNTS; k++) {
+            byte[] address = new byte[20];
+            random.nextBytes(address);
+            addresses.add(address);
+            track.addBalance(address, BigInteger.TEN);
+        }
+
+        track.commit();
+        root = repository.getRoot();
+        repository.flush();
+
+        importing = true;
+        importer = new Thread(this::importBlocks, "importer");
+        importer.setDaemon(true);
+        importer.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        importing = false;
+        importer.join();
+    }
+
+    @Benchmark
+    public BigInteger getBalance(Reader reader) {
+        byte[] address = addresses.get(reader.random.nextInt(NUMBER_OF_ACCOUNTS));
+
+        if (snapshot)
+            return repository.getSnapshotTo(root).getBalance(address);
+
+        return repository.getBalance(address);
+    }
+
+    private void importBlocks() {
+        Random random = new Random(2);
+
+        while (importing) {
+            Repository track = repository.startTracking();
+
+            for (int k = 0; k < UPDATED_ACCOUNTS; k++)
+                track.addBalance(addresses.get(random.nextInt(NUMBER_OF_ACCOUNTS)), BigInteger.ONE);
+
+            track.commit();
+            root = repository.getRoot();
+            repository.flush();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+        private final Random random = new Random();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.peg;
+
+import co.rsk.bitcoinj.core.*;
+import co.rsk.bitcoinj.store.BlockStoreException;
+import co.rsk.bitcoinj.store.BtcBlockStore;
+import co.rsk.config.RskSystemProperties;
+import co.rsk.db.RepositoryImpl;
+import org.ethereum.config.BlockchainNetConfig;
+import org.ethereum.config.blockchain.RegTestConfig;
+import org.ethereum.vm.PrecompiledContracts;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingestion of a difficulty adjustment period of bitcoin headers by the
+ * bridge block store, writing each header to the repository or buffering
+ * them and writing them in a single flush.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferedBtcBlockStoreBenchmark {
+    private static final int HEADERS = 2016;
+
+    private BlockchainNetConfig originalConfig;
+    private NetworkParameters btcParams;
+    private List<BtcBlock> headers;
+
+    @Setup
+    public void setup() {
+        originalConfig = RskSystemProperties.CONFIG.getBlockchainConfig();
+        RskSystemProperties.CONFIG.setBlockchainConfig(new RegTestConfig());
+        btcParams = RskSystemProperties.CONFIG.getBlockchainConfig().getCommonConstants().getBridgeConstants().getBtcParams();
+        headers = createBtcBlocks(btcParams.getGenesisBlock(), HEADERS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        RskSystemProperties.CONFIG.setBlockchainConfig(originalConfig);
+    }
+
+    @Benchmark
+    public StoredBlock unbuffered() throws BlockStoreException {
+        BtcBlockStore store = new RepositoryBlockStore(new RepositoryImpl(), PrecompiledContracts.BRIDGE_ADDR);
+        addHeaders(store);
+        return store.getChainHead();
+    }
+
+    @Benchmark
+    public StoredBlock buffered() throws BlockStoreException {
+        BufferedBtcBlockStore store = new BufferedBtcBlockStore(new RepositoryBlockStore(new RepositoryImpl(), PrecompiledContracts.BRIDGE_ADDR));
+        addHeaders(store);
+        store.flush();
+        return store.getChainHead();
+    }
+
+    private void addHeaders(BtcBlockStore store) throws BlockStoreException {
+        Context context = new Context(btcParams);
+        Context.propagate(context);
+        BtcBlockChain blockChain = new BtcBlockChain(context, store);
+
+        for (BtcBlock header : headers) {
+            try {
+                blockChain.add(header);
+            } catch (Exception e) {
+                // orphan headers are skipped, as the bridge does
+            }
+        }
+    }
+
+    private List<BtcBlock> createBtcBlocks(BtcBlock parent, int numberOfBlocksToCreate) {
+        List<BtcBlock> list = new ArrayList<>();
+
+        for (int i = 0; i < numberOfBlocksToCreate; i++) {
+            BtcBlock block = new BtcBlock(btcParams, 2l, parent.getHash(), Sha256Hash.ZERO_HASH, parent.getTimeSeconds() + 1, parent.getDifficultyTarget(), 0, new ArrayList<BtcTransaction>());
+            block.solve();
+            list.add(block);
+            parent = block;
+        }
+
+        return list;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State root computation of a synthetic block: naccounts updated accounts in a
+ * 100k accounts trie, and ncontracts contracts with 64 storage words written in
+ * 1k words storage tries. Each invocation hashes a new copy of the block, with
+ * the storage tries first, as RepositoryImpl.updateBatch does.
+ *
+ * With parallel = false the subtrees and the storage tries are hashed in the
+ * calling thread, as before the parallel hashing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieHashBenchmark {
+    private static final int NUMBER_OF_ACCOUNTS = 100000;
+    private static final int NUMBER_OF_STORAGE_WORDS = 1000;
+    private static final int NUMBER_OF_WRITTEN_WORDS = 64;
+
+    @Param({"100", "5000"})
+    public int naccounts;
+
+    @Param({"10", "200"})
+    public int ncontracts;
+
+    @Param({"true", "false"})
+    public boolean parallel;
+
+    private final Random random = new Random(1);
+
+    private Trie accounts;
+    private Trie storage;
+    private Trie block;
+    private List<Trie> blockStorage;
+
+    @Setup
+    public void setup() {
+        TrieImpl.setParallelHashThreshold(parallel ? TrieImpl.PARALLEL_HASH_THRESHOLD : Integer.MAX_VALUE);
+
+        accounts = randomTrie(NUMBER_OF_ACCOUNTS);
+        accounts.getHash();
+        storage = randomTrie(NUMBER_OF_STORAGE_WORDS);
+        storage.getHash();
+    }
+
+    @TearDown
+    public void tearDown() {
+        TrieImpl.setParallelHashThreshold(TrieImpl.PARALLEL_HASH_THRESHOLD);
+    }
+
+    @Setup(Level.Invocation)
+    public void createBlock() {
+        block = update(accounts, naccounts);
+        blockStorage = new ArrayList<>();
+
+        for (int k = 0; k < ncontracts; k++)
+            blockStorage.add(update(storage, NUMBER_OF_WRITTEN_WORDS));
+    }
+
+    @Benchmark
+    public byte[] getStateRoot() {
+        if (parallel)
+            blockStorage.parallelStream().forEach(Trie::getHash);
+        else
+            blockStorage.forEach(Trie::getHash);
+
+        return block.getHash();
+    }
+
+    private Trie randomTrie(int nkeys) {
+        return update(new TrieImpl(true), nkeys);
+    }
+
+    private Trie update(Trie trie, int nkeys) {
+        Trie result = trie;
+
+        for (int k = 0; k < nkeys; k++)
+            result = result.put(randomBytes(32), randomBytes(32));
+
+        return result;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.trie;
+
+import org.ethereum.datasource.HashMapDB;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations on a secure trie with nkeys 32 byte keys and values, as the
+ * account and storage tries. The trie is immutable, so the puts
+ * don't make it grow between invocations.
+ *
+ * A 10M keys trie, with the depth of the real state tries, is run with
+ * -p nkeys=10000000; it needs a large heap (-jvmArgs -Xmx16g) and it
+ * takes minutes to build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieImplBenchmark {
+    private static final int NUMBER_OF_NEW_KEYS = 1024;
+
+    @Param({"1000", "100000"})
+    public int nkeys;
+
+    private Trie trie;
+    private byte[][] keys;
+    private byte[][] newKeys;
+    private byte[] value;
+    private int nget;
+    private int nput;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(nkeys);
+        keys = randomKeys(random, nkeys);
+        newKeys = randomKeys(random, NUMBER_OF_NEW_KEYS);
+        value = new byte[32];
+        random.nextBytes(value);
+
+        trie = new TrieImpl(new TrieStoreImpl(new HashMapDB()), true);
+
+        for (byte[] key : keys)
+            trie = trie.put(key, value);
+
+        trie.getHash();
+    }
+
+    @Benchmark
+    public byte[] get() {
+        return trie.get(keys[nget++ % keys.length]);
+    }
+
+    @Benchmark
+    public Trie put() {
+        return trie.put(newKeys[nput++ % newKeys.length], value);
+    }
+
+    @Benchmark
+    public Trie update() {
+        return trie.put(keys[nput++ % keys.length], newKeys[0]);
+    }
+
+    // only the nodes in the path of the new key have to be hashed again
+    @Benchmark
+    public byte[] putAndGetHash() {
+        return trie.put(newKeys[nput++ % newKeys.length], value).getHash();
+    }
+
+    private static byte[][] randomKeys(Random random, int nkeys) {
+        byte[][] result = new byte[nkeys][];
+
+        for (int k = 0; k < nkeys; k++) {
+            result[k] = new byte[32];
+            random.nextBytes(result[k]);
+        }
+
+        return result;
+    }
+}
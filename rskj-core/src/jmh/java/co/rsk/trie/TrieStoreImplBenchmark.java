@@ -0,0 +1,75 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.trie;
+
+import org.ethereum.datasource.HashMapDB;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retrieval of a saved trie from its store. The retrieved trie loads its
+ * nodes on demand, so retrieveAndGet reads the nodes in the path of a key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieStoreImplBenchmark {
+    @Param({"10000"})
+    public int nkeys;
+
+    private TrieStore store;
+    private byte[] root;
+    private byte[][] keys;
+    private int nget;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(nkeys);
+        keys = new byte[nkeys][];
+        byte[] value = new byte[32];
+        random.nextBytes(value);
+
+        store = new TrieStoreImpl(new HashMapDB());
+        Trie trie = new TrieImpl(store, true);
+
+        for (int k = 0; k < nkeys; k++) {
+            keys[k] = new byte[32];
+            random.nextBytes(keys[k]);
+            trie = trie.put(keys[k], value);
+        }
+
+        trie.save();
+        root = trie.getHash();
+    }
+
+    @Benchmark
+    public Trie retrieve() {
+        return store.retrieve(root);
+    }
+
+    @Benchmark
+    public byte[] retrieveAndGet() {
+        return store.retrieve(root).get(keys[nget++ % keys.length]);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ethereum.core;
+
+import co.rsk.blockchain.utils.BlockGenerator;
+import co.rsk.core.bc.SyntheticBlocks;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of a block with signed transfers, as received from the network.
+ * The block parses its encoding lazily, getting the transactions forces it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockBenchmark {
+    @Param({"0", "100"})
+    public int ntxs;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        List<Transaction> txs = SyntheticBlocks.createTransfers(SyntheticBlocks.createAccounts(ntxs));
+        encoded = SyntheticBlocks.createBlock(BlockGenerator.getGenesisBlock(), txs).getEncoded();
+    }
+
+    @Benchmark
+    public List<Transaction> decode() {
+        return new Block(encoded).getTransactionsList();
+    }
+
+    @Benchmark
+    public byte[] decodeAndGetHash() {
+        return new Block(encoded).getHash();
+    }
+}
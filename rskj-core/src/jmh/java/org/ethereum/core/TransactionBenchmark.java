@@ -0,0 +1,59 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ethereum.core;
+
+import co.rsk.core.bc.SyntheticBlocks;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of a signed transfer, its hash and the recovery of its sender.
+ * The transaction is decoded in each invocation, as the sender is cached;
+ * decoding already computes the hash once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        encoded = SyntheticBlocks.createTransfers(SyntheticBlocks.createAccounts(2)).get(0).getEncoded();
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return new ImmutableTransaction(encoded).getNonce();
+    }
+
+    @Benchmark
+    public byte[] getHash() {
+        return new ImmutableTransaction(encoded).getHash();
+    }
+
+    @Benchmark
+    public byte[] getSender() {
+        return new ImmutableTransaction(encoded).getSender();
+    }
+}
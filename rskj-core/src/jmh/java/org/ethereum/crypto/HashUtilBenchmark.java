@@ -0,0 +1,91 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ethereum.crypto;
+
+import org.ethereum.crypto.cryptohash.Keccak256;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keccak-256 hashing primitives. The sizes are a trie node hash, a
+ * Keccak block (136 bytes), a transaction and a large contract code.
+ *
+ * newKeccak256 is the engine allocated by call, the previous sha3(byte[]).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashUtilBenchmark {
+    @Param({"32", "136", "512", "24576"})
+    public int size;
+
+    private byte[] data;
+    private ByteBuffer directData;
+    private final byte[] output = new byte[HashUtil.SHA3_LENGTH];
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(size).nextBytes(data);
+        directData = ByteBuffer.allocateDirect(size);
+        directData.put(data);
+        directData.flip();
+    }
+
+    @Benchmark
+    public byte[] newKeccak256() {
+        Keccak256 digest = new Keccak256();
+        digest.update(data);
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] sha3() {
+        return HashUtil.sha3(data);
+    }
+
+    @Benchmark
+    public byte[] sha3Chunk() {
+        return HashUtil.sha3(data, 0, data.length);
+    }
+
+    @Benchmark
+    public byte[] sha3IntoOutput() {
+        HashUtil.sha3(data, 0, data.length, output, 0);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] sha3DirectByteBuffer() {
+        directData.rewind();
+        HashUtil.sha3(directData, output, 0);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] sha3Helper() {
+        return SHA3Helper.sha3(data);
+    }
+}
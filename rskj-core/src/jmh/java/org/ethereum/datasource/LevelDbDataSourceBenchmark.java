@@ -0,0 +1,89 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ethereum.datasource;
+
+import co.rsk.config.RskSystemProperties;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch writes of new 32 byte keys with trie node sized values, as a
+ * block import flush. The database lives in a temporary directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelDbDataSourceBenchmark {
+    @Param({"100", "10000"})
+    public int batchSize;
+
+    private Path directory;
+    private LevelDbDataSource dataSource;
+    private Map<byte[], byte[]> batch;
+    private final Random random = new Random(1);
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("leveldb-benchmark");
+        RskSystemProperties.CONFIG.setDataBaseDir(directory.toString());
+        dataSource = new LevelDbDataSource("benchmark");
+        dataSource.init();
+    }
+
+    @Setup(Level.Invocation)
+    public void createBatch() {
+        batch = new HashMap<>();
+
+        for (int k = 0; k < batchSize; k++)
+            batch.put(randomBytes(32), randomBytes(100));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dataSource.close();
+
+        Files.walk(directory)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    @Benchmark
+    public void updateBatch() {
+        dataSource.updateBatch(batch);
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ethereum.util;
+
+import co.rsk.blockchain.utils.BlockGenerator;
+import co.rsk.core.bc.SyntheticBlocks;
+import org.ethereum.core.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RLP decoding of a block with 100 transfers, and encoding of its
+ * transaction list and of a single transaction fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RLPBenchmark {
+    private byte[] encodedBlock;
+    private byte[][] encodedTransactions;
+    private byte[][] transactionFields;
+
+    @Setup
+    public void setup() {
+        List<Transaction> txs = SyntheticBlocks.createTransfers(SyntheticBlocks.createAccounts(100));
+        encodedBlock = SyntheticBlocks.createBlock(BlockGenerator.getGenesisBlock(), txs).getEncoded();
+
+        encodedTransactions = new byte[txs.size()][];
+
+        for (int k = 0; k < txs.size(); k++)
+            encodedTransactions[k] = txs.get(k).getEncoded();
+
+        List<byte[]> fields = new ArrayList<>();
+
+        for (RLPElement element : (RLPList) RLP.decode2(encodedTransactions[0]).get(0))
+            fields.add(RLP.encodeElement(element.getRLPData()));
+
+        transactionFields = fields.toArray(new byte[fields.size()][]);
+    }
+
+    @Benchmark
+    public List<RLPElement> decode2Block() {
+        return RLP.decode2(encodedBlock);
+    }
+
+    @Benchmark
+    public List<RLPElement> decode2Transaction() {
+        return RLP.decode2(encodedTransactions[0]);
+    }
+
+    @Benchmark
+    public byte[] encodeListOfTransactions() {
+        return RLP.encodeList(encodedTransactions);
+    }
+
+    @Benchmark
+    public byte[] encodeListOfTransactionFields() {
+        return RLP.encodeList(transactionFields);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ethereum.vm;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 256 bit arithmetic of the VM. The operations change the word,
+ * so each invocation works on a copy of the first operand.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataWordBenchmark {
+    private DataWord a;
+    private DataWord b;
+    private DataWord c;
+    private DataWord exponent;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        a = new DataWord(randomBytes(random, 32));
+        b = new DataWord(randomBytes(random, 16));
+        c = new DataWord(randomBytes(random, 24));
+        exponent = new DataWord(255);
+    }
+
+    @Benchmark
+    public DataWord copy() {
+        return a.clone();
+    }
+
+    @Benchmark
+    public DataWord add() {
+        DataWord result = a.clone();
+        result.add(b);
+        return result;
+    }
+
+    @Benchmark
+    public DataWord sub() {
+        DataWord result = a.clone();
+        result.sub(b);
+        return result;
+    }
+
+    @Benchmark
+    public DataWord mul() {
+        DataWord result = a.clone();
+        result.mul(b);
+        return result;
+    }
+
+    @Benchmark
+    public DataWord div() {
+        DataWord result = a.clone();
+        result.div(b);
+        return result;
+    }
+
+    @Benchmark
+    public DataWord sDiv() {
+        DataWord result = a.clone();
+        result.sDiv(b);
+        return result;
+    }
+
+    @Benchmark
+    public DataWord mod() {
+        DataWord result = a.clone();
+        result.mod(b);
+        return result;
+    }
+
+    @Benchmark
+    public DataWord exp() {
+        DataWord result = b.clone();
+        result.exp(exponent);
+        return result;
+    }
+
+    @Benchmark
+    public DataWord addmod() {
+        DataWord result = a.clone();
+        result.addmod(b, c);
+        return result;
+    }
+
+    @Benchmark
+    public DataWord mulmod() {
+        DataWord result = a.clone();
+        result.mulmod(b, c);
+        return result;
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ethereum.vm;
+
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.invoke.ProgramInvokeMockImpl;
+import org.openjdk.jmh.annotations.*;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VM.step over small programs, each one exercising a kind of contract code:
+ *
+ * - loop: a counter decremented 1000 times with a conditional jump
+ * - arithmetic: 100 groups of pushes, ADD, MUL, DIV and POP
+ * - sha3: 100 groups of MSTORE and SHA3 of 64 bytes of memory
+ * - storage: 100 groups of SSTORE and SLOAD of the same key
+ *
+ * Each invocation runs the whole program, from its start until it stops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VMBenchmark {
+    private static final String LOOP = "6103e8" + "5b" + "6001" + "90" + "03" + "80" + "6003" + "57" + "50" + "00";
+    private static final String ARITHMETIC = "6001" + "6002" + "01" + "6003" + "02" + "6005" + "90" + "04" + "50";
+    private static final String SHA3 = "7f" + "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef" + "6000" + "52" + "6040" + "6000" + "20" + "50";
+    private static final String STORAGE = "602a" + "6001" + "55" + "6001" + "54" + "50";
+
+    @Param({"loop", "arithmetic", "sha3", "storage"})
+    public String contract;
+
+    private ProgramInvokeMockImpl invoke;
+    private Program program;
+    private VM vm;
+
+    @Setup
+    public void setup() {
+        invoke = new ProgramInvokeMockImpl();
+        invoke.setGasLimit(1000000000L);
+        program = new Program(Hex.decode(getCode()), invoke);
+        vm = new VM();
+    }
+
+    @TearDown
+    public void tearDown() {
+        invoke.getRepository().close();
+    }
+
+    @Benchmark
+    public Program run() {
+        program.restart();
+
+        while (!program.isStopped())
+            vm.step(program);
+
+        return program;
+    }
+
+    private String getCode() {
+        switch (contract) {
+            case "loop":
+                return LOOP;
+            case "arithmetic":
+                return repeat(ARITHMETIC, 100);
+            case "sha3":
+                return repeat(SHA3, 100);
+            case "storage":
+                return repeat(STORAGE, 100);
+            default:
+                throw new IllegalArgumentException("Unknown contract " + contract);
+        }
+    }
+
+    private static String repeat(String code, int times) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int k = 0; k < times; k++)
+            builder.append(code);
+
+        return builder.toString();
+    }
+}
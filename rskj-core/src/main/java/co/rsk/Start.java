@@ -20,6 +20,10 @@ package co.rsk;
 
 import co.rsk.config.RskSystemProperties;
 import co.rsk.core.Rsk;
+import co.rsk.db.RepositoryImpl;
+import co.rsk.db.StatePruner;
+import co.rsk.metrics.MetricsRegistry;
+import co.rsk.metrics.MetricsServer;
 import co.rsk.mine.MinerClient;
 import co.rsk.mine.MinerServer;
 import co.rsk.mine.TxBuilder;
@@ -27,8 +31,12 @@ import co.rsk.mine.TxBuilderEx;
 import co.rsk.net.Metrics;
 import co.rsk.net.discovery.UDPServer;
 import co.rsk.rpc.CorsConfiguration;
+import co.rsk.trie.PrunedTrieStore;
+import co.rsk.trie.TrieStore;
 import org.ethereum.cli.CLIInterface;
 import org.ethereum.config.DefaultConfig;
+import org.ethereum.core.Blockchain;
+import org.ethereum.core.Repository;
 import org.ethereum.rpc.JsonRpcNettyServer;
 import org.ethereum.rpc.JsonRpcWeb3ServerHandler;
 import org.ethereum.rpc.Web3;
@@ -39,6 +47,12 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 @Component
 public class Start {
     private static Logger logger = LoggerFactory.getLogger("start");
@@ -86,6 +100,14 @@ public class Start {
             enableSimulateTxsEx(rsk);
         }
 
+        if (rskSystemProperties.isMetricsEnabled()) {
+            enableMetrics();
+        }
+
+        if (rskSystemProperties.isStatePruningEnabled()) {
+            enableStatePruning();
+        }
+
         if (rskSystemProperties.isRpcEnabled()) {
             logger.info("RPC enabled");
             enableRpc();
@@ -115,9 +137,41 @@ public class Start {
         udpServer.start();
     }
 
+    private void enableMetrics() throws IOException {
+        new MetricsServer(
+            MetricsRegistry.DEFAULT,
+            rskSystemProperties.metricsAddress(),
+            rskSystemProperties.metricsPort()
+        ).start();
+    }
+
+    private void enableStatePruning() {
+        Blockchain blockchain = rsk.getWorldManager().getBlockchain();
+        Repository repository = blockchain.getRepository();
+        TrieStore store = repository instanceof RepositoryImpl ? ((RepositoryImpl) repository).getTrieStore() : null;
+
+        if (!(store instanceof PrunedTrieStore)) {
+            logger.warn("State pruning not enabled, the repository has no pruned trie store");
+            return;
+        }
+
+        logger.info("State pruning enabled");
+
+        rsk.addListener(new StatePruner(
+            (PrunedTrieStore) store,
+            blockchain.getBlockStore(),
+            rskSystemProperties.statePruningKeepBlocks(),
+            rskSystemProperties.statePruningCheckpointInterval(),
+            rskSystemProperties.statePruningInterval()
+        ));
+    }
+
     private void enableRpc() throws InterruptedException {
         Web3 web3Service = web3Factory.newInstance();
-        JsonRpcWeb3ServerHandler serverHandler = new JsonRpcWeb3ServerHandler(web3Service, rskSystemProperties.getRpcModules());
+        int heavyThreads = rskSystemProperties.rpcHeavyThreads();
+        ExecutorService heavyExecutor = new ThreadPoolExecutor(heavyThreads, heavyThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(rskSystemProperties.rpcHeavyQueueSize()), r -> new Thread(r, "RpcHeavyRequests"));
+        JsonRpcWeb3ServerHandler serverHandler = new JsonRpcWeb3ServerHandler(web3Service, rskSystemProperties.getRpcModules(), heavyExecutor);
         new JsonRpcNettyServer(
             rskSystemProperties.rpcPort(),
             rskSystemProperties.soLingerTime(),
@@ -0,0 +1,92 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.blocks;
+
+import org.ethereum.core.Block;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+
+/**
+ * Reads the blocks recorded by {@link BinaryBlockRecorder}.
+ * A truncated last block, as left by a node that was stopped while
+ * recording, is treated as the end of the file.
+ */
+public class BinaryBlockPlayer implements BlockPlayer, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger("blockplayer");
+    private DataInputStream input;
+
+    public BinaryBlockPlayer(String filename) {
+        try {
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+
+            if (this.input.readInt() != BinaryBlockRecorder.MAGIC || this.input.readInt() != BinaryBlockRecorder.VERSION)
+                throw new IOException("Not a binary block file: " + filename);
+        }
+        catch (IOException ex) {
+            logger.error("Exception opening binary block player", ex);
+            this.input = null;
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if the file starts with the binary block file header
+     */
+    public static boolean isBinaryFile(String filename) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            return in.readInt() == BinaryBlockRecorder.MAGIC;
+        }
+        catch (IOException ex) {
+            return false;
+        }
+    }
+
+    public Block readBlock() {
+        if (this.input == null)
+            return null;
+
+        try {
+            int length = this.input.readInt();
+
+            if (length < 0)
+                throw new IOException("Invalid block length " + length);
+
+            byte[] encoded = new byte[length];
+            this.input.readFully(encoded);
+            return new Block(encoded);
+        }
+        catch (EOFException ex) {
+            return null;
+        }
+        catch (IOException ex) {
+            logger.error("Exception reading block", ex);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (this.input != null) {
+            this.input.close();
+            this.input = null;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.blocks;
+
+import org.ethereum.core.Block;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records blocks in a binary file: a header (magic and version) followed by
+ * the RLP encoding of each block, prefixed by its length as a 4 byte big
+ * endian integer. It is read by {@link BinaryBlockPlayer}.
+ */
+public class BinaryBlockRecorder implements BlockRecorder, AutoCloseable {
+    static final int MAGIC = 0x52534b42; // "RSKB"
+    static final int VERSION = 1;
+
+    private static final Logger logger = LoggerFactory.getLogger("blockrecorder");
+    private DataOutputStream output;
+
+    public BinaryBlockRecorder(String filename) {
+        try {
+            this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+            this.output.writeInt(MAGIC);
+            this.output.writeInt(VERSION);
+        }
+        catch (IOException ex) {
+            logger.error("Exception creating binary block recorder: ", ex);
+        }
+    }
+
+    public void writeBlock(Block block) {
+        try {
+            byte[] encoded = block.getEncoded();
+            output.writeInt(encoded.length);
+            output.write(encoded);
+            output.flush();
+        }
+        catch (IOException ex) {
+            logger.error("Exception writing block: ", ex);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (this.output != null) {
+            this.output.close();
+            this.output = null;
+        }
+    }
+}
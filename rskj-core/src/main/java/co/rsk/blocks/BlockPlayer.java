@@ -23,6 +23,16 @@ import org.ethereum.core.Block;
 /**
  * Created by ajlopez on 5/8/2016.
  */
-public interface BlockPlayer {
+public interface BlockPlayer extends AutoCloseable {
     Block readBlock();
+
+    /**
+     * Opens a block file, binary or hex, as detected from its header
+     */
+    static BlockPlayer open(String filename) {
+        if (BinaryBlockPlayer.isBinaryFile(filename))
+            return new BinaryBlockPlayer(filename);
+
+        return new FileBlockPlayer(filename);
+    }
 }
@@ -0,0 +1,449 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.blocks;
+
+import co.rsk.config.RskSystemProperties;
+import co.rsk.core.bc.BlockChainImpl;
+import co.rsk.core.bc.BlockImportMetrics;
+import co.rsk.core.bc.BlockValidatorImpl;
+import co.rsk.db.RepositoryImpl;
+import co.rsk.trie.TrieStoreImpl;
+import org.ethereum.config.DefaultConfig;
+import org.ethereum.core.Block;
+import org.ethereum.core.ImportResult;
+import org.ethereum.core.PendingState;
+import org.ethereum.core.Repository;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.genesis.BlockChainLoader;
+import org.ethereum.datasource.LevelDbDataSource;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.ReceiptStoreImpl;
+import org.ethereum.listener.CompositeEthereumListener;
+import org.ethereum.manager.AdminInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Block import benchmark: replays a recorded block file into a fresh database,
+ * through BlockChainImpl.tryToConnect, and reports the import rates.
+ *
+ * Usage: BlockReplay [-warmup n] [-repeat n] [-dir directory] file
+ *        BlockReplay -convert hexfile binaryfile
+ *
+ * The file is read as recorded by the node with blocks.recorder, in hex or in
+ * binary format (blocks.binary = true); -convert writes a hex file in binary
+ * format, so the replay is not slowed down by the hex decoding.
+ * The network (genesis) of the configuration must be the one of the recording.
+ * Each run uses a new database in a temporary directory under -dir (default the
+ * configured database.dir). The warmup runs are not reported.
+ * There is no transaction pool, the best blocks go to a pending state that ignores them.
+ */
+public class BlockReplay {
+    private static final Logger logger = LoggerFactory.getLogger("blockreplay");
+
+    private final String filename;
+    private final Path directory;
+
+    public BlockReplay(String filename, Path directory) {
+        this.filename = filename;
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int warmup = 0;
+        int repeat = 1;
+        String dir = RskSystemProperties.CONFIG.databaseDir();
+        String filename = null;
+
+        for (int k = 0; k < args.length; k++) {
+            if ("-convert".equals(args[k]) && k + 2 < args.length) {
+                int nblocks = convert(args[k + 1], args[k + 2]);
+                System.out.println(nblocks + " blocks written to " + args[k + 2]);
+                return;
+            }
+            else if ("-warmup".equals(args[k]) && k + 1 < args.length)
+                warmup = Integer.parseInt(args[++k]);
+            else if ("-repeat".equals(args[k]) && k + 1 < args.length)
+                repeat = Integer.parseInt(args[++k]);
+            else if ("-dir".equals(args[k]) && k + 1 < args.length)
+                dir = args[++k];
+            else
+                filename = args[k];
+        }
+
+        if (filename == null) {
+            System.out.println("Usage: BlockReplay [-warmup n] [-repeat n] [-dir directory] file");
+            System.out.println("       BlockReplay -convert hexfile binaryfile");
+            return;
+        }
+
+        BlockReplay replay = new BlockReplay(filename, Paths.get(dir));
+        List<Result> results = new ArrayList<>();
+
+        for (int k = 1; k <= warmup; k++)
+            System.out.println("warmup " + k + ": " + replay.run());
+
+        for (int k = 1; k <= repeat; k++) {
+            Result result = replay.run();
+            results.add(result);
+            System.out.println("run " + k + ": " + result);
+            System.out.println("    stages: " + result.stages);
+        }
+
+        if (results.size() > 1) {
+            double blocksPerSecond = results.stream().mapToDouble(Result::getBlocksPerSecond).average().orElse(0);
+            double gasPerSecond = results.stream().mapToDouble(Result::getGasPerSecond).average().orElse(0);
+            System.out.println(String.format("mean: %.1f blocks/s %.3f Mgas/s", blocksPerSecond, gasPerSecond / 1000000));
+        }
+    }
+
+    /**
+     * Rewrites a block file in the binary format
+     *
+     * @return  the number of blocks written
+     */
+    public static int convert(String source, String target) throws Exception {
+        int nblocks = 0;
+
+        try (BlockPlayer player = BlockPlayer.open(source);
+             BinaryBlockRecorder recorder = new BinaryBlockRecorder(target)) {
+            for (Block block = player.readBlock(); block != null; block = player.readBlock()) {
+                recorder.writeBlock(block);
+                nblocks++;
+            }
+        }
+
+        return nblocks;
+    }
+
+    /**
+     * Replays the file into a new database and removes it
+     */
+    public Result run() throws Exception {
+        Files.createDirectories(directory);
+        Path database = Files.createTempDirectory(directory, "replay");
+
+        try {
+            return run(database.toString());
+        } finally {
+            delete(database);
+        }
+    }
+
+    private Result run(String database) throws Exception {
+        RskSystemProperties config = RskSystemProperties.CONFIG;
+        config.setDataBaseDir(database);
+
+        WriteCountingDataSource state = open("state");
+        WriteCountingDataSource details = open("details");
+        WriteCountingDataSource blocks = open("blocks");
+        WriteCountingDataSource receipts = open("receipts");
+        WriteCountingDataSource code = open("code");
+
+        Repository repository = new RepositoryImpl(new TrieStoreImpl(state), details, code);
+        BlockStore blockStore = DefaultConfig.buildBlockStore(database, blocks);
+        BlockValidatorImpl blockValidator = new BlockValidatorImpl(blockStore,
+                DefaultConfig.buildBlockParentDependantValidationRule(repository),
+                DefaultConfig.buildBlockValidationRule(blockStore));
+        CompositeEthereumListener listener = new CompositeEthereumListener();
+        BlockChainImpl blockchain = new BlockChainImpl(repository, blockStore, new ReceiptStoreImpl(receipts), new NoPendingState(repository), listener, new AdminInfo(), blockValidator);
+
+        new BlockChainLoader(blockchain, config, blockStore, repository, listener).loadBlockchain();
+
+        Result result = new Result();
+        long initialBytes = getBytesWritten(state, details, blocks, receipts, code);
+        long initialGcCount = getGcCount();
+        long initialGcMillis = getGcMillis();
+        AllocationCounter allocations = AllocationCounter.start();
+        long start = System.nanoTime();
+
+        try (BlockPlayer player = BlockPlayer.open(filename)) {
+            while (true) {
+                long readStart = System.nanoTime();
+                Block block = player.readBlock();
+                result.readNanos += System.nanoTime() - readStart;
+
+                if (block == null)
+                    break;
+
+                ImportResult importResult = blockchain.tryToConnect(block);
+
+                if (importResult.isSuccessful()) {
+                    result.blocks++;
+                    result.transactions += block.getTransactionsList().size();
+                    result.gas += block.getGasUsed();
+                }
+                else {
+                    result.notImported++;
+                    logger.warn("Block {} not imported: {}", block.getNumber(), importResult);
+                }
+            }
+
+            // the background writes and a last flush are part of the import;
+            // the pipeline threads are sampled before close() ends them
+            blockchain.awaitPersistence();
+            allocations.sample();
+            blockchain.close();
+            allocations.sample();
+            repository.flush();
+            blockStore.flush();
+        }
+
+        result.nanos = System.nanoTime() - start;
+        result.bytesWritten = getBytesWritten(state, details, blocks, receipts, code) - initialBytes;
+        result.gcCount = getGcCount() - initialGcCount;
+        result.gcMillis = getGcMillis() - initialGcMillis;
+        result.allocatedBytes = allocations.getBytes();
+        result.stages = blockchain.getImportMetrics();
+
+        repository.close();
+        state.close();
+        details.close();
+        blocks.close();
+        receipts.close();
+        code.close();
+
+        return result;
+    }
+
+    private static WriteCountingDataSource open(String name) {
+        WriteCountingDataSource dataSource = new WriteCountingDataSource(new LevelDbDataSource(name));
+        dataSource.init();
+        return dataSource;
+    }
+
+    private static long getBytesWritten(WriteCountingDataSource... dataSources) {
+        long bytes = 0;
+
+        for (WriteCountingDataSource dataSource : dataSources)
+            bytes += dataSource.getBytesWritten();
+
+        return bytes;
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+
+        return count;
+    }
+
+    private static long getGcMillis() {
+        long millis = 0;
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, gc.getCollectionTime());
+
+        return millis;
+    }
+
+    private static void delete(Path path) throws IOException {
+        Files.walk(path)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    /**
+     * Bytes allocated by the threads since start, added by thread so that the threads
+     * that end during the run keep their last sample; what a thread allocates after
+     * its last sample is not counted. -1 if the JVM doesn't measure the allocations.
+     */
+    private static class AllocationCounter {
+        private final com.sun.management.ThreadMXBean threads;
+        private final Map<Long, Long> initial = new HashMap<>();
+        private final Map<Long, Long> last = new HashMap<>();
+
+        private AllocationCounter(com.sun.management.ThreadMXBean threads) {
+            this.threads = threads;
+        }
+
+        static AllocationCounter start() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+            if (!(threads instanceof com.sun.management.ThreadMXBean))
+                return new AllocationCounter(null);
+
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+
+            if (!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled())
+                return new AllocationCounter(null);
+
+            AllocationCounter counter = new AllocationCounter(sunThreads);
+            counter.sample();
+            counter.initial.putAll(counter.last);
+            return counter;
+        }
+
+        void sample() {
+            if (threads == null)
+                return;
+
+            long[] ids = threads.getAllThreadIds();
+            long[] allocated = threads.getThreadAllocatedBytes(ids);
+
+            // the ended threads are reported as -1
+            for (int k = 0; k < ids.length; k++)
+                if (allocated[k] >= 0)
+                    last.put(ids[k], allocated[k]);
+        }
+
+        long getBytes() {
+            if (threads == null)
+                return -1;
+
+            long bytes = 0;
+
+            for (Map.Entry<Long, Long> entry : last.entrySet())
+                bytes += entry.getValue() - initial.getOrDefault(entry.getKey(), 0L);
+
+            return bytes;
+        }
+    }
+
+    private static class NoPendingState implements PendingState {
+        private final Repository repository;
+
+        NoPendingState(Repository repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public List<Transaction> addWireTransactions(List<Transaction> transactions) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void addPendingTransaction(Transaction tx) {
+        }
+
+        @Override
+        public void processBest(Block block) {
+        }
+
+        @Override
+        public void clearPendingState(List<Transaction> txs) {
+        }
+
+        @Override
+        public void clearWire(List<Transaction> txs) {
+        }
+
+        @Override
+        public List<Transaction> getAllPendingTransactions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Transaction> getTransactionsForBlock(int limit) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Repository getRepository() {
+            return repository;
+        }
+
+        @Override
+        public List<Transaction> getWireTransactions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Transaction> getPendingTransactions() {
+            return Collections.emptyList();
+        }
+    }
+
+    public static class Result {
+        private long blocks;
+        private long notImported;
+        private long transactions;
+        private long gas;
+        private long nanos;
+        private long readNanos;
+        private long bytesWritten;
+        private long gcCount;
+        private long gcMillis;
+        private long allocatedBytes;
+        private BlockImportMetrics stages;
+
+        public long getBlocks() {
+            return blocks;
+        }
+
+        public long getNotImported() {
+            return notImported;
+        }
+
+        public long getGas() {
+            return gas;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public BlockImportMetrics getStages() {
+            return stages;
+        }
+
+        public double getBlocksPerSecond() {
+            return nanos == 0 ? 0 : blocks * 1e9 / nanos;
+        }
+
+        public double getGasPerSecond() {
+            return nanos == 0 ? 0 : gas * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d blocks (%d not imported) %d txs in %.3f s, %.1f blocks/s, %.3f Mgas/s, " +
+                            "read %.3f s, %d KB written, gc %d collections %d ms, %s allocated",
+                    blocks, notImported, transactions, nanos / 1e9, getBlocksPerSecond(), getGasPerSecond() / 1000000,
+                    readNanos / 1e9, bytesWritten / 1024, gcCount, gcMillis,
+                    allocatedBytes < 0 ? "unknown" : (allocatedBytes / (1024 * 1024)) + " MB");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.blocks;
+
+import org.ethereum.datasource.KeyValueDataSource;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Data source that counts the bytes (keys and values) written to another one.
+ * Deleted keys are counted too, as they are written to the database log.
+ */
+class WriteCountingDataSource implements KeyValueDataSource {
+    private final KeyValueDataSource dataSource;
+    private final LongAdder bytesWritten = new LongAdder();
+
+    WriteCountingDataSource(KeyValueDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return dataSource.get(key);
+    }
+
+    @Override
+    public byte[] put(byte[] key, byte[] value) {
+        count(key, value);
+        return dataSource.put(key, value);
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        count(key, null);
+        dataSource.delete(key);
+    }
+
+    @Override
+    public Set<byte[]> keys() {
+        return dataSource.keys();
+    }
+
+    @Override
+    public void updateBatch(Map<byte[], byte[]> rows) {
+        for (Map.Entry<byte[], byte[]> row : rows.entrySet())
+            count(row.getKey(), row.getValue());
+
+        dataSource.updateBatch(rows);
+    }
+
+    @Override
+    public void setName(String name) {
+        dataSource.setName(name);
+    }
+
+    @Override
+    public String getName() {
+        return dataSource.getName();
+    }
+
+    @Override
+    public void init() {
+        dataSource.init();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return dataSource.isAlive();
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    private void count(byte[] key, byte[] value) {
+        bytesWritten.add(key.length + (value == null ? 0 : value.length));
+    }
+}
@@ -42,7 +42,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by ajlopez on 3/3/2016.
@@ -169,6 +171,45 @@ public class RskSystemProperties extends SystemProperties {
                 configFromFiles.getInt("rpc.port") : 4444;
     }
 
+    public boolean isMetricsEnabled() {
+        return configFromFiles.hasPath("metrics.enabled") ?
+                configFromFiles.getBoolean("metrics.enabled") : false;
+    }
+
+    public String metricsAddress() {
+        return configFromFiles.hasPath("metrics.address") ?
+                configFromFiles.getString("metrics.address") : "127.0.0.1";
+    }
+
+    public int metricsPort() {
+        return configFromFiles.hasPath("metrics.port") ?
+                configFromFiles.getInt("metrics.port") : 4449;
+    }
+
+    public int rpcHeavyThreads() {
+        return getInt("rpc.heavy.threads", Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public int rpcHeavyQueueSize() {
+        return getInt("rpc.heavy.queue", 100);
+    }
+
+    public int rpcCallCacheSize() {
+        return getInt("rpc.call.cache.size", 1000);
+    }
+
+    public int rpcStateCacheSize() {
+        return getInt("rpc.state.cache.size", 32);
+    }
+
+    public int rpcStateCacheNodes() {
+        return getInt("rpc.state.cache.nodes", 1000000);
+    }
+
+    public int rpcStateReadLimit() {
+        return getInt("rpc.state.reads.limit", 100000);
+    }
+
     public boolean isWalletEnabled() {
         return configFromFiles.hasPath("wallet.enabled") &&
                 configFromFiles.getBoolean("wallet.enabled");
@@ -202,6 +243,11 @@ public class RskSystemProperties extends SystemProperties {
                 configFromFiles.getBoolean("blocks.enabled") : false;
     }
 
+    public boolean isBlocksBinary() {
+        return configFromFiles.hasPath("blocks.binary") ?
+                configFromFiles.getBoolean("blocks.binary") : false;
+    }
+
     public String blocksRecorder() {
         return configFromFiles.hasPath("blocks.recorder") ?
                 configFromFiles.getString("blocks.recorder") : null;
@@ -222,6 +268,51 @@ public class RskSystemProperties extends SystemProperties {
                 configFromFiles.getInt("blockchain.flushNumberOfBlocks") : 20;
     }
 
+    public boolean isBlockImportAsync() {
+        return configFromFiles.hasPath("blockchain.import.async") ?
+                configFromFiles.getBoolean("blockchain.import.async") : true;
+    }
+
+    public int blockImportWriteBehind() {
+        // default value: 16 pending writes
+        return getInt("blockchain.import.writeBehind", 16);
+    }
+
+    public boolean isStatePruningEnabled() {
+        return configFromFiles.hasPath("database.prune.enabled") ?
+                configFromFiles.getBoolean("database.prune.enabled") : false;
+    }
+
+    public int statePruningKeepBlocks() {
+        return getInt("database.prune.keepBlocks", 5000);
+    }
+
+    public int statePruningCheckpointInterval() {
+        // default value: no checkpoints
+        return getInt("database.prune.checkpointInterval", 0);
+    }
+
+    public int statePruningInterval() {
+        return getInt("database.prune.interval", 1000);
+    }
+
+    public int codeCacheSize() {
+        return getInt("database.code.cache.size", 1000);
+    }
+
+    public boolean isFlatStateEnabled() {
+        return configFromFiles.hasPath("database.flat.enabled") ?
+                configFromFiles.getBoolean("database.flat.enabled") : false;
+    }
+
+    public int flatStateLayers() {
+        return getInt("database.flat.layers", 128);
+    }
+
+    public int flatStateCacheSize() {
+        return getInt("database.flat.cache.size", 100000);
+    }
+
     public int soLingerTime() {
         return configFromFiles.hasPath("rpc.linger.time") ?
                 configFromFiles.getInt("rpc.linger.time") : -1;
@@ -294,7 +385,22 @@ public class RskSystemProperties extends SystemProperties {
             if (configElement.hasPath("methods.disabled"))
                 disabledMethods = configElement.getStringList ("methods.disabled");
 
-            modules.add(new ModuleDescription(name, version, enabled, enabledMethods, disabledMethods));
+            int maxConcurrency = configElement.hasPath("concurrency") ? configElement.getInt("concurrency") : 0;
+            long timeout = configElement.hasPath("timeout") ? configElement.getLong("timeout") : 1000;
+            Map<String, Integer> methodsConcurrency = new HashMap<>();
+            List<String> heavyMethods = null;
+
+            if (configElement.hasPath("methods.concurrency")) {
+                Config concurrency = configElement.getConfig("methods.concurrency");
+
+                for (String method : concurrency.root().keySet())
+                    methodsConcurrency.put(method, concurrency.getInt(method));
+            }
+            if (configElement.hasPath("methods.heavy"))
+                heavyMethods = configElement.getStringList("methods.heavy");
+
+            modules.add(new ModuleDescription(name, version, enabled, enabledMethods, disabledMethods,
+                    maxConcurrency, methodsConcurrency, timeout, heavyMethods));
         }
 
         this.moduleDescriptions = modules;
@@ -0,0 +1,181 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.core;
+
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.metrics.MetricsRegistry;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.ReceiptStore;
+import org.ethereum.rpc.Web3;
+import org.ethereum.rpc.converters.CallArgumentsToByteArray;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.vm.program.ProgramResult;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+
+/**
+ * Estimates the gas limit a call needs to succeed, searching the lowest gas limit
+ * that doesn't fail. The first execution uses the call gas limit; its gas used is
+ * the lower bound of the search, and it is usually enough, so most estimates take
+ * two executions. Else the upper bound is searched in growing steps from the gas
+ * used, and then the interval is halved until the lowest gas limit that succeeds
+ * is found, or MAX_EXECUTIONS is reached.
+ *
+ * All the executions run on the same snapshot of the block state, in a new track
+ * that is discarded after each of them.
+ */
+public class GasEstimator {
+    static final int MAX_EXECUTIONS = 32;
+
+    private static final Logger logger = LoggerFactory.getLogger("gasestimator");
+    private static final LatencyHistogram estimateTime = MetricsRegistry.DEFAULT.histogram(
+            "rsk_estimate_gas_seconds", "Gas estimation time");
+    private static final Counter executionsCounter = MetricsRegistry.DEFAULT.counter(
+            "rsk_estimate_gas_executions_total", "Executions done by the gas estimations");
+
+    private final Repository repository;
+    private final BlockStore blockStore;
+    private final ReceiptStore receiptStore;
+    private final ProgramInvokeFactory programInvokeFactory;
+
+    public GasEstimator(Repository repository, BlockStore blockStore, ReceiptStore receiptStore, ProgramInvokeFactory programInvokeFactory) {
+        this.repository = repository;
+        this.blockStore = blockStore;
+        this.receiptStore = receiptStore;
+        this.programInvokeFactory = programInvokeFactory;
+    }
+
+    /**
+     * Estimates the gas of the call at the block state. If the call fails with its
+     * own gas limit, the estimate is the gas used by that execution.
+     */
+    public Estimate estimate(Block block, Web3.CallArguments args) {
+        long start = System.nanoTime();
+
+        Search search = new Search(block, repository.getSnapshotTo(block.getStateRoot()), new CallArgumentsToByteArray(args));
+        Estimate estimate = search.run();
+
+        long nanos = System.nanoTime() - start;
+        estimateTime.record(nanos);
+        executionsCounter.add(estimate.getExecutions());
+        logger.debug("Gas estimated {} in {} executions, {} us", estimate.getGas(), estimate.getExecutions(), nanos / 1000);
+
+        return estimate;
+    }
+
+    private class Search {
+        private final Block block;
+        private final Repository snapshot;
+        private final CallArgumentsToByteArray hexArgs;
+        private final byte[] fromAddress;
+        private int executions;
+
+        Search(Block block, Repository snapshot, CallArgumentsToByteArray hexArgs) {
+            this.block = block;
+            this.snapshot = snapshot;
+            this.hexArgs = hexArgs;
+            // calls without sender run from the empty address, as in eth_call
+            byte[] from = hexArgs.getFromAddress();
+            this.fromAddress = from != null ? from : ByteUtil.EMPTY_BYTE_ARRAY;
+        }
+
+        Estimate run() {
+            BigInteger callGasLimit = ByteUtil.bytesToBigInteger(hexArgs.getGasLimit());
+            long gasLimit = callGasLimit.bitLength() < Long.SIZE ? callGasLimit.longValue() : Long.MAX_VALUE;
+
+            ProgramResult result = execute(gasLimit);
+
+            if (!succeeded(result, gasLimit))
+                return new Estimate(result.getGasUsed(), executions);
+
+            long gasUsed = result.getGasUsed();
+
+            if (gasUsed >= gasLimit || succeeded(execute(gasUsed), gasUsed))
+                return new Estimate(gasUsed, executions);
+
+            // lower fails, upper succeeds
+            long lower = gasUsed;
+            long upper = gasLimit;
+            long step = Math.max(gasUsed / 8, 1);
+
+            while (executions < MAX_EXECUTIONS && upper - lower > step) {
+                long gas = lower + step;
+
+                if (succeeded(execute(gas), gas)) {
+                    upper = gas;
+                    break;
+                }
+
+                lower = gas;
+                step *= 2;
+            }
+
+            while (executions < MAX_EXECUTIONS && upper - lower > 1) {
+                long gas = lower + (upper - lower) / 2;
+
+                if (succeeded(execute(gas), gas))
+                    upper = gas;
+                else
+                    lower = gas;
+            }
+
+            return new Estimate(upper, executions);
+        }
+
+        private ProgramResult execute(long gasLimit) {
+            executions++;
+
+            return ReversibleTransactionExecutor.executeOnSnapshot(block.getCoinbase(), snapshot, blockStore,
+                    receiptStore, programInvokeFactory, block, hexArgs.getGasPrice(),
+                    ByteUtil.longToBytesNoLeadZeroes(gasLimit), hexArgs.getToAddress(), hexArgs.getValue(),
+                    hexArgs.getData(), fromAddress).getResult();
+        }
+
+        // the local calls don't check the gas limit of the precompiled contracts,
+        // so a call that used more gas than its limit is a failure too
+        private boolean succeeded(ProgramResult result, long gasLimit) {
+            return result.getException() == null && result.getGasUsed() <= gasLimit;
+        }
+    }
+
+    public static class Estimate {
+        private final long gas;
+        private final int executions;
+
+        public Estimate(long gas, int executions) {
+            this.gas = gas;
+            this.executions = executions;
+        }
+
+        public long getGas() {
+            return gas;
+        }
+
+        public int getExecutions() {
+            return executions;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.ethereum.db.BlockStore;
 import org.ethereum.db.ReceiptStore;
 import org.ethereum.rpc.Web3;
 import org.ethereum.rpc.converters.CallArgumentsToByteArray;
+import org.ethereum.util.ByteUtil;
 import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
 
 public final class ReversibleTransactionExecutor extends TransactionExecutor {
@@ -48,7 +49,31 @@ public final class ReversibleTransactionExecutor extends TransactionExecutor {
                                                          byte[] value,
                                                          byte[] data,
                                                          byte[] fromAddress) {
-        Repository repository = track.getSnapshotTo(executionBlock.getStateRoot()).startTracking();
+        Repository snapshot = track.getSnapshotTo(executionBlock.getStateRoot());
+
+        return executeOnSnapshot(coinbase, snapshot, blockStore, receiptStore, programInvokeFactory, executionBlock,
+                gasPrice, gasLimit, toAddress, value, data, fromAddress);
+    }
+
+    /**
+     * Executes the transaction on a snapshot of the execution block state, as returned
+     * by Repository.getSnapshotTo. The changes are made in a new track that is discarded,
+     * so the snapshot is left untouched and can be reused by the following executions,
+     * with the trie nodes and contract details already loaded by the previous ones.
+     */
+    public static TransactionExecutor executeOnSnapshot(byte[] coinbase,
+                                                        Repository snapshot,
+                                                        BlockStore blockStore,
+                                                        ReceiptStore receiptStore,
+                                                        ProgramInvokeFactory programInvokeFactory,
+                                                        Block executionBlock,
+                                                        byte[] gasPrice,
+                                                        byte[] gasLimit,
+                                                        byte[] toAddress,
+                                                        byte[] value,
+                                                        byte[] data,
+                                                        byte[] fromAddress) {
+        Repository repository = snapshot.startTracking();
 
         byte[] nonce = repository.getNonce(fromAddress).toByteArray();
         UnsignedTransaction tx = new UnsignedTransaction(nonce, gasPrice, gasLimit, toAddress, value, data, fromAddress);
@@ -74,6 +99,21 @@ public final class ReversibleTransactionExecutor extends TransactionExecutor {
                 hexArgs.getFromAddress());
     }
 
+    public static TransactionExecutor executeOnSnapshot(byte[] coinbase,
+                                                        Repository snapshot,
+                                                        BlockStore blockStore,
+                                                        ReceiptStore receiptStore,
+                                                        ProgramInvokeFactory programInvokeFactory,
+                                                        Block executionBlock,
+                                                        Web3.CallArguments args) {
+        CallArgumentsToByteArray hexArgs = new CallArgumentsToByteArray(args);
+        byte[] fromAddress = args.from != null ? hexArgs.getFromAddress() : ByteUtil.EMPTY_BYTE_ARRAY;
+
+        return executeOnSnapshot(coinbase, snapshot, blockStore, receiptStore, programInvokeFactory, executionBlock,
+                hexArgs.getGasPrice(), hexArgs.getGasLimit(), hexArgs.getToAddress(), hexArgs.getValue(), hexArgs.getData(),
+                fromAddress);
+    }
+
     private TransactionExecutor executeTransaction() {
         init();
         execute();
@@ -19,7 +19,8 @@
 package co.rsk.core;
 
 import co.rsk.Start;
-import co.rsk.blocks.FileBlockPlayer;
+import co.rsk.blocks.BinaryBlockRecorder;
+import co.rsk.blocks.BlockPlayer;
 import co.rsk.blocks.FileBlockRecorder;
 import co.rsk.config.RskSystemProperties;
 import co.rsk.core.bc.BlockChainImpl;
@@ -71,6 +72,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.stream.Collectors;
 
 @Configuration
@@ -108,22 +111,25 @@ public class RskFactory {
             logger.info("Capability eth version: [{}]", versions);
         }
         if (rskSystemProperties.isBlocksEnabled()) {
-            setupRecorder(rsk, rskSystemProperties.blocksRecorder());
+            setupRecorder(rsk, rskSystemProperties.blocksRecorder(), rskSystemProperties.isBlocksBinary());
             setupPlayer(rsk, rskSystemProperties.blocksPlayer());
         }
         return rsk;
     }
 
-    private void setupRecorder(RskImpl rsk, String blocksRecorderFileName) {
+    private void setupRecorder(RskImpl rsk, String blocksRecorderFileName, boolean binary) {
         if (blocksRecorderFileName != null) {
-            rsk.getBlockchain().setBlockRecorder(new FileBlockRecorder(blocksRecorderFileName));
+            if (binary)
+                rsk.getBlockchain().setBlockRecorder(new BinaryBlockRecorder(blocksRecorderFileName));
+            else
+                rsk.getBlockchain().setBlockRecorder(new FileBlockRecorder(blocksRecorderFileName));
         }
     }
 
     private void setupPlayer(RskImpl rsk, String blocksPlayerFileName) {
         if (blocksPlayerFileName != null) {
             new Thread(() -> {
-                try (FileBlockPlayer bplayer = new FileBlockPlayer(blocksPlayerFileName)) {
+                try (BlockPlayer bplayer = BlockPlayer.open(blocksPlayerFileName)) {
                     rsk.setIsPlayingBlocks(true);
 
                     Blockchain bc = rsk.getWorldManager().getBlockchain();
@@ -139,7 +145,7 @@ public class RskFactory {
         }
     }
 
-    private void connectBlocks(FileBlockPlayer bplayer, Blockchain bc, ChannelManager cm) {
+    private void connectBlocks(BlockPlayer bplayer, Blockchain bc, ChannelManager cm) {
         for (Block block = bplayer.readBlock(); block != null; block = bplayer.readBlock()) {
             ImportResult tryToConnectResult = bc.tryToConnect(block);
             if (BlockProcessResult.importOk(tryToConnectResult)) {
@@ -160,8 +166,21 @@ public class RskFactory {
         int addressPunishmentIncrement = config.scoringAddressesPunishmentIncrement();
         long addressPunishmentMaximunDuration = config.scoringAddressesPunishmentMaximumDuration();
 
-        return new PeerScoringManager(nnodes, new PunishmentParameters(nodePunishmentDuration, nodePunishmentIncrement,
+        PeerScoringManager peerScoringManager = new PeerScoringManager(nnodes, new PunishmentParameters(nodePunishmentDuration, nodePunishmentIncrement,
                 nodePunhishmentMaximumDuration), new PunishmentParameters(addressPunishmentDuration, addressPunishmentIncrement, addressPunishmentMaximunDuration));
+
+        String bannedAddressesFile = config.scoringBannedAddressesFile();
+
+        if (bannedAddressesFile != null) {
+            try {
+                int nbanned = peerScoringManager.banAddresses(Paths.get(bannedAddressesFile));
+                logger.info("{} banned addresses loaded from {}", nbanned, bannedAddressesFile);
+            } catch (IOException e) {
+                logger.error("Error reading banned addresses file {}", bannedAddressesFile, e);
+            }
+        }
+
+        return peerScoringManager;
     }
 
     @Bean
@@ -21,6 +21,11 @@ package co.rsk.core.bc;
 import co.rsk.config.RskSystemProperties;
 import com.google.common.annotations.VisibleForTesting;
 import co.rsk.blocks.BlockRecorder;
+import co.rsk.core.bc.BlockImportMetrics.Stage;
+import co.rsk.db.WriteBehindReceiptStore;
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.metrics.MetricsRegistry;
 import co.rsk.net.Metrics;
 import co.rsk.panic.PanicProcessor;
 import co.rsk.validators.BlockValidator;
@@ -42,7 +47,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.PostConstruct;
 import java.math.BigInteger;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by ajlopez on 29/07/2016.
@@ -80,11 +88,22 @@ import java.util.List;
 public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchain {
     private static final Logger logger = LoggerFactory.getLogger("blockchain");
     private static final PanicProcessor panicProcessor = new PanicProcessor();
+    private static final Map<ImportResult, Counter> importResults = new EnumMap<>(ImportResult.class);
+    private static final LatencyHistogram repositoryFlushTime = MetricsRegistry.DEFAULT.histogram(
+            "rsk_store_flush_seconds", "Duration of the store flushes", "store", "repository");
+    private static final LatencyHistogram blockStoreFlushTime = MetricsRegistry.DEFAULT.histogram(
+            "rsk_store_flush_seconds", "Duration of the store flushes", "store", "blocks");
 
+    static {
+        for (ImportResult result : ImportResult.values())
+            importResults.put(result, MetricsRegistry.DEFAULT.counter(
+                    "rsk_blocks_processed_total", "Blocks processed, by import result", "result", result.name().toLowerCase()));
+    }
 
     private final Repository repository;
     private final BlockStore blockStore;
-    private final ReceiptStore receiptStore;
+    private final ReceiptStore baseReceiptStore;
+    private WriteBehindReceiptStore receiptStore;
     private PendingState pendingState;
     private EthereumListener listener;
     private final AdminInfo adminInfo;
@@ -98,6 +117,10 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
     private boolean isrsk;
     private boolean noValidation;
 
+    private final BlockImportMetrics importMetrics = new BlockImportMetrics();
+    private BlockImportPipeline pipeline;
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
     @Autowired
     public BlockChainImpl(Repository repository,
                           BlockStore blockStore,
@@ -108,13 +131,40 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
                           BlockValidator blockValidator) {
         this.repository = repository;
         this.blockStore = blockStore;
-        this.receiptStore = receiptStore;
+        this.baseReceiptStore = receiptStore;
         this.listener = listener;
         this.adminInfo = adminInfo;
         this.blockValidator = blockValidator;
         this.blockExecutor = new BlockExecutor(repository, this, blockStore, listener);
 
+        RskSystemProperties config = RskSystemProperties.CONFIG;
+        setImportPipeline(config.isBlockImportAsync(), config.blockImportWriteBehind());
+
         setPendingState(pendingState);
+
+        importMetrics.register(MetricsRegistry.DEFAULT);
+        MetricsRegistry.DEFAULT.gauge("rsk_best_block_number", "Number of the best block", () -> {
+            Block best = status.getBestBlock();
+            return best == null ? -1 : best.getNumber();
+        });
+    }
+
+    /**
+     * Changes how the import stages are run, waiting the pending writes of the current pipeline
+     *
+     * @param async         run receipt writes, store flushes and listeners in background threads
+     * @param writeBehind   maximum number of pending background writes
+     */
+    @VisibleForTesting
+    public void setImportPipeline(boolean async, int writeBehind) {
+        BlockImportPipeline oldPipeline = this.pipeline;
+        BlockImportPipeline newPipeline = new BlockImportPipeline(async, writeBehind, importMetrics);
+
+        this.pipeline = newPipeline;
+        this.receiptStore = new WriteBehindReceiptStore(baseReceiptStore, task -> newPipeline.persist(Stage.RECEIPTS, task));
+
+        if (oldPipeline != null)
+            oldPipeline.close();
     }
 
     @Override
@@ -143,6 +193,8 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     public AdminInfo getAdminInfo() { return adminInfo; }
 
+    public BlockImportMetrics getImportMetrics() { return importMetrics; }
+
     @VisibleForTesting
     public void setBlockValidator(BlockValidator validator) {
         this.blockValidator = validator;
@@ -181,11 +233,17 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
                     Hex.toHexString(block.getHash()).substring(0, 6),
                     block.getNumber());
 
+            // bounded write behind: don't get ahead of the background writes
+            // it must be done before taking the lock, background flushes take it
+            pipeline.awaitWriteCapacity();
+
             synchronized (connectLock) {
                 logger.info("Start try connect");
                 long saveTime = System.nanoTime();
                 ImportResult result = internalTryToConnect(block);
                 long totalTime = System.nanoTime() - saveTime;
+                importMetrics.record(Stage.TOTAL, totalTime);
+                importResults.get(result).inc();
                 logger.info("block: num: [{}] hash: [{}], processed after: [{}]nano, result {}", block.getNumber(), block.getShortHash(), totalTime, result);
                 return result;
             }
@@ -238,8 +296,15 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
                 return ImportResult.NO_PARENT;
         }
 
+        // the parent independent work could be running in background
+        pipeline.awaitPrevalidation(block);
+
         // Validate incoming block before its processing
-        if (!isValid(block)) {
+        long validationTime = System.nanoTime();
+        boolean valid = isValid(block);
+        importMetrics.record(Stage.VALIDATION, System.nanoTime() - validationTime);
+
+        if (!valid) {
             long blockNumber = block.getNumber();
             logger.warn("Invalid block with number: {}", blockNumber);
             panicProcessor.panic("invalidblock", String.format("Invalid block %s %s", blockNumber, Hex.toHexString(block.getHash())));
@@ -267,6 +332,7 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
                 return ImportResult.INVALID_BLOCK;
 
             long totalTime = System.nanoTime() - saveTime;
+            importMetrics.record(Stage.EXECUTION, totalTime);
 
             if (adminInfo != null)
                 adminInfo.addBlockExecTime(totalTime);
@@ -280,6 +346,8 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
         // It is the new best block
         if (totalDifficulty.compareTo(status.getTotalDifficulty()) > 0) {
+            long storeTime = System.nanoTime();
+
             if (bestBlock != null && !bestBlock.isParentOf(block)) {
                 logger.info("Rebranching: {} ~> {} From block {} ~> {} Difficulty {} Challenger difficulty {}", bestBlock.getShortHash(), block.getShortHash(), bestBlock.getNumber(), block.getNumber(), status.getTotalDifficulty().toString(), totalDifficulty.toString());
                 BlockFork fork = new BlockFork();
@@ -290,6 +358,7 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
             logger.trace("Start switchToBlockChain");
             switchToBlockChain(block, totalDifficulty);
+            importMetrics.record(Stage.STORE, System.nanoTime() - storeTime);
             logger.trace("Start saveReceipts");
             saveReceipts(block, result);
             logger.trace("Start processBest");
@@ -302,8 +371,10 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
             logger.trace("Better block {} {}", block.getNumber(), block.getShortHash());
 
             logger.debug("block added to the blockChain: index: [{}]", block.getNumber());
-            if (block.getNumber() % 100 == 0)
+            if (block.getNumber() % 100 == 0) {
                 logger.info("*** Last block added [ #{} ]", block.getNumber());
+                logger.info("Block import times: {}", importMetrics);
+            }
 
             return ImportResult.IMPORTED_BEST;
         }
@@ -313,7 +384,9 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
                 logger.info("No rebranch: {} ~> {} From block {} ~> {} Difficulty {} Challenger difficulty {}", bestBlock.getShortHash(), block.getShortHash(), bestBlock.getNumber(), block.getNumber(), status.getTotalDifficulty().toString(), totalDifficulty.toString());
 
             logger.trace("Start extendAlternativeBlockChain");
+            long storeTime = System.nanoTime();
             extendAlternativeBlockChain(block, totalDifficulty);
+            importMetrics.record(Stage.STORE, System.nanoTime() - storeTime);
             logger.trace("Start saveReceipts");
             saveReceipts(block, result);
             logger.trace("Start onBlock");
@@ -330,6 +403,17 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
         }
     }
 
+    /**
+     * Starts in background the validation of the blocks that don't depend on its parent
+     * It is used to overlap that work with the connection of the previous blocks
+     *
+     * @param blocks        the blocks that are going to be connected
+     */
+    @Override
+    public void prevalidate(List<Block> blocks) {
+        pipeline.prevalidate(blocks);
+    }
+
     @Override
     public BlockChainStatus getStatus() {
         return status;
@@ -441,9 +525,19 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return txInfo;
     }
 
+    /**
+     * Waits the background writes and listener notifications
+     */
     @Override
     public void close() {
+        pipeline.close();
+    }
 
+    /**
+     * Waits until the receipts and flushes queued so far are written
+     */
+    public void awaitPersistence() {
+        pipeline.awaitPersistence();
     }
 
     @Override
@@ -503,8 +597,13 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     private void onBlock(Block block, BlockResult result) {
         if (result != null && listener != null) {
-            listener.trace(String.format("Block chain size: [ %d ]", this.getSize()));
-            listener.onBlock(block, result.getTransactionReceipts());
+            EthereumListener blockListener = listener;
+            String trace = String.format("Block chain size: [ %d ]", this.getSize());
+
+            pipeline.notifyListeners(() -> {
+                blockListener.trace(trace);
+                blockListener.onBlock(block, result.getTransactionReceipts());
+            });
         }
     }
 
@@ -520,18 +619,36 @@ public class BlockChainImpl implements Blockchain, org.ethereum.facade.Blockchai
     private int nFlush = 0;
 
     private void flushData() {
-        if (RskSystemProperties.CONFIG.isFlushEnabled() && nFlush == 0)  {
+        // a flush still pending will write the latest state when it runs
+        if (RskSystemProperties.CONFIG.isFlushEnabled() && nFlush == 0 && flushPending.compareAndSet(false, true))
+            pipeline.persist(Stage.FLUSH, this::flushStores);
+
+        nFlush++;
+        nFlush = nFlush % RskSystemProperties.CONFIG.flushNumberOfBlocks();
+    }
+
+    // The flush holds the connect lock and waits the receipts writes, so the stores
+    // are written at a block boundary: receipts and state are written before the
+    // block index, and a restart finds a best block with its state and receipts.
+    // The imports wait for the flush meanwhile: the block index has no way to be
+    // written up to a given block, so a block connected during the flush could be
+    // written without its state. Only every flushNumberOfBlocks blocks pay for it.
+    private void flushStores() {
+        synchronized (connectLock) {
+            flushPending.set(false);
+            receiptStore.awaitWritten();
+
             long saveTime = System.nanoTime();
             repository.flush();
             long totalTime = System.nanoTime() - saveTime;
+            repositoryFlushTime.record(totalTime);
             logger.info("repository flush: [{}]nano", totalTime);
             saveTime = System.nanoTime();
             blockStore.flush();
             totalTime = System.nanoTime() - saveTime;
+            blockStoreFlushTime.record(totalTime);
             logger.info("blockstore flush: [{}]nano", totalTime);
         }
-        nFlush++;
-        nFlush = nFlush % RskSystemProperties.CONFIG.flushNumberOfBlocks();
     }
 
     public static byte[] calcTxTrie(List<Transaction> transactions) {
@@ -0,0 +1,82 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.metrics.MetricsRegistry;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Latency histograms of each stage of the block import.
+ *
+ * The stages run in the background (prevalidation, receipts, listeners, flush)
+ * are measured when they run, not when they are queued.
+ */
+public class BlockImportMetrics {
+    public enum Stage {
+        PREVALIDATION,
+        VALIDATION,
+        EXECUTION,
+        STORE,
+        RECEIPTS,
+        LISTENERS,
+        FLUSH,
+        TOTAL
+    }
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+    public BlockImportMetrics() {
+        for (Stage stage : Stage.values())
+            histograms.put(stage, new LatencyHistogram());
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    /**
+     * Exports the histograms in the registry, replacing the ones of a previous instance
+     */
+    public void register(MetricsRegistry registry) {
+        for (Map.Entry<Stage, LatencyHistogram> entry : histograms.entrySet())
+            registry.register("rsk_block_import_seconds", "Duration of the block import stages",
+                    entry.getValue(), "stage", entry.getKey().name().toLowerCase());
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        for (Map.Entry<Stage, LatencyHistogram> entry : histograms.entrySet()) {
+            if (builder.length() > 0)
+                builder.append(", ");
+
+            builder.append(entry.getKey().name().toLowerCase()).append(": [").append(entry.getValue()).append(']');
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import co.rsk.panic.PanicProcessor;
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.db.ByteArrayWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background stages of the block import done by {@link BlockChainImpl}.
+ *
+ * - prevalidation: the transaction hashes and senders (signature recovery) of the
+ *   blocks about to be connected are computed by a thread pool, while the
+ *   current block is executed. The results are cached in the transactions;
+ *   the import of a block waits for its prevalidation, if it was started, so
+ *   the transactions are never parsed by two threads at the same time.
+ * - persistence: receipts writes run in a single thread, in order, and store
+ *   flushes in another one. At most writeBehind tasks can be pending; the import
+ *   waits for the queues to drain before starting a new block when that limit
+ *   is reached. A flush holds the connect lock of the blockchain while it runs,
+ *   so it is not overlapped with the block imports.
+ * - listeners: block listeners are notified in a single thread, in order.
+ *
+ * When created as synchronous, every stage runs in the caller thread and
+ * prevalidation is skipped.
+ */
+class BlockImportPipeline {
+    private static final Logger logger = LoggerFactory.getLogger("blockchain");
+    private static final PanicProcessor panicProcessor = new PanicProcessor();
+
+    private static final int PREVALIDATION_QUEUE_SIZE = 256;
+
+    private final boolean async;
+    private final int writeBehind;
+    private final BlockImportMetrics metrics;
+
+    private final ThreadPoolExecutor prevalidationExecutor;
+    private final ExecutorService persistenceExecutor;
+    private final ExecutorService flushExecutor;
+    private final ExecutorService listenersExecutor;
+
+    private final Map<ByteArrayWrapper, Future<?>> prevalidations = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final Object writesLock = new Object();
+
+    BlockImportPipeline(boolean async, int writeBehind, BlockImportMetrics metrics) {
+        this.async = async;
+        this.writeBehind = Math.max(1, writeBehind);
+        this.metrics = metrics;
+
+        if (async) {
+            int nthreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            this.prevalidationExecutor = new ThreadPoolExecutor(nthreads, nthreads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(PREVALIDATION_QUEUE_SIZE), daemonThreads("blockPrevalidation"));
+            this.persistenceExecutor = Executors.newSingleThreadExecutor(daemonThreads("blockPersistence"));
+            this.flushExecutor = Executors.newSingleThreadExecutor(daemonThreads("blockFlush"));
+            this.listenersExecutor = Executors.newSingleThreadExecutor(daemonThreads("blockListeners"));
+        } else {
+            this.prevalidationExecutor = null;
+            this.persistenceExecutor = null;
+            this.flushExecutor = null;
+            this.listenersExecutor = null;
+        }
+    }
+
+    boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Starts the parent independent work of the given blocks.
+     * Blocks are skipped if the prevalidation queue is full.
+     */
+    void prevalidate(List<Block> blocks) {
+        if (!async)
+            return;
+
+        for (Block block : blocks) {
+            ByteArrayWrapper key = new ByteArrayWrapper(block.getHash());
+            FutureTask<Void> task = new FutureTask<>(() -> prevalidate(key, block), null);
+
+            if (prevalidations.putIfAbsent(key, task) != null)
+                continue;
+
+            try {
+                prevalidationExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                prevalidations.remove(key, task);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits for the prevalidation of the block if it is running.
+     * A queued prevalidation is cancelled, the caller does the work.
+     */
+    void awaitPrevalidation(Block block) {
+        if (!async)
+            return;
+
+        Future<?> task = prevalidations.remove(new ByteArrayWrapper(block.getHash()));
+
+        if (task == null || task.cancel(false))
+            return;
+
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (CancellationException | ExecutionException e) {
+            logger.warn("Block prevalidation failed", e);
+        }
+    }
+
+    /**
+     * Queues a write to the stores. Synchronous pipelines run it immediately.
+     * Flushes have their own thread, so they can wait for the other writes.
+     */
+    void persist(BlockImportMetrics.Stage stage, Runnable task) {
+        if (!async) {
+            measure(stage, task);
+            return;
+        }
+
+        pendingWrites.incrementAndGet();
+
+        ExecutorService executor = stage == BlockImportMetrics.Stage.FLUSH ? flushExecutor : persistenceExecutor;
+
+        executor.execute(() -> {
+            try {
+                run(stage, task);
+            } finally {
+                pendingWrites.decrementAndGet();
+
+                synchronized (writesLock) {
+                    writesLock.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues a listener notification. Synchronous pipelines run it immediately.
+     */
+    void notifyListeners(Runnable task) {
+        if (!async)
+            measure(BlockImportMetrics.Stage.LISTENERS, task);
+        else
+            listenersExecutor.execute(() -> run(BlockImportMetrics.Stage.LISTENERS, task));
+    }
+
+    /**
+     * Waits until the number of pending writes is under the write behind limit.
+     * It must not be called holding a lock that a persistence task could take.
+     */
+    void awaitWriteCapacity() {
+        awaitPendingWrites(writeBehind - 1);
+    }
+
+    /**
+     * Waits until every queued write is done.
+     */
+    void awaitPersistence() {
+        awaitPendingWrites(0);
+    }
+
+    int getPendingWrites() {
+        return pendingWrites.get();
+    }
+
+    /**
+     * Waits the queued writes and notifications, and stops the threads
+     */
+    void close() {
+        if (!async)
+            return;
+
+        prevalidationExecutor.shutdownNow();
+        persistenceExecutor.shutdown();
+        flushExecutor.shutdown();
+        listenersExecutor.shutdown();
+
+        try {
+            persistenceExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            flushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            listenersExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitPendingWrites(int limit) {
+        if (!async)
+            return;
+
+        synchronized (writesLock) {
+            while (pendingWrites.get() > limit) {
+                try {
+                    writesLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void prevalidate(ByteArrayWrapper key, Block block) {
+        long start = System.nanoTime();
+
+        for (Transaction tx : block.getTransactionsList()) {
+            tx.getHash();
+            tx.getSender();
+        }
+
+        metrics.record(BlockImportMetrics.Stage.PREVALIDATION, System.nanoTime() - start);
+
+        // blocks that are never connected don't stay in the map
+        prevalidations.remove(key);
+    }
+
+    private void measure(BlockImportMetrics.Stage stage, Runnable task) {
+        long start = System.nanoTime();
+
+        try {
+            task.run();
+        } finally {
+            metrics.record(stage, System.nanoTime() - start);
+        }
+    }
+
+    // background tasks only report their errors, as the block was already imported
+    private void run(BlockImportMetrics.Stage stage, Runnable task) {
+        try {
+            measure(stage, task);
+        } catch (Exception e) {
+            logger.error("Block import {} task exception", stage, e);
+            panicProcessor.panic("blockimport", String.format("Block import %s task exception %s", stage, e.getMessage()));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
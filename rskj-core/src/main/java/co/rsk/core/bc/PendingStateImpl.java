@@ -19,6 +19,7 @@
 package co.rsk.core.bc;
 
 import co.rsk.config.RskSystemProperties;
+import co.rsk.metrics.MetricsRegistry;
 import co.rsk.net.handler.TxPendingValidator;
 import co.rsk.trie.Trie;
 import co.rsk.trie.TrieImpl;
@@ -26,6 +27,7 @@ import com.google.common.annotations.VisibleForTesting;
 import org.ethereum.core.*;
 import org.ethereum.db.BlockStore;
 import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.RepositoryTrack;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.FastByteComparisons;
@@ -54,10 +56,9 @@ public class PendingStateImpl implements PendingState {
     private static final Logger logger = LoggerFactory.getLogger("pendingstate");
     private static final byte[] emptyUncleHashList = sha3(RLP.encodeList(new byte[0]));
 
-    private Map<ByteArrayWrapper, Transaction> pendingTransactions = new HashMap<>();
-    private Map<ByteArrayWrapper, Transaction> wireTransactions = new HashMap<>();
-    private Map<ByteArrayWrapper, Long> transactionBlocks = new HashMap<>();
-    private Map<ByteArrayWrapper, Long> transactionTimes = new HashMap<>();
+    private final TransactionPool transactionPool = new TransactionPool(
+            RskSystemProperties.CONFIG.txPoolMaxTransactions(),
+            RskSystemProperties.CONFIG.txPoolMaxBytes());
 
     private int outdatedThreshold = 0;
     private int outdatedTimeout = 0;
@@ -82,6 +83,10 @@ public class PendingStateImpl implements PendingState {
     private Repository pendingStateRepository;
     private TxPendingValidator validator = new TxPendingValidator();
 
+    // results of the last pending state update, by sender
+    private Map<ByteArrayWrapper, SenderPendingState> senderStates = new HashMap<>();
+    private final Object updateLock = new Object();
+
     @Autowired
     public PendingStateImpl(Blockchain blockChain,
                             BlockStore blockStore,
@@ -123,6 +128,10 @@ public class PendingStateImpl implements PendingState {
 
         if (this.outdatedTimeout > 0)
             this.cleanerTimer = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "PendingStateCleanerTimer"));
+
+        // read without the lock, the values may be slightly stale
+        MetricsRegistry.DEFAULT.gauge("rsk_transaction_pool_size", "Transactions in the pool", transactionPool::size);
+        MetricsRegistry.DEFAULT.gauge("rsk_transaction_pool_bytes", "Encoded size of the transactions in the pool", transactionPool::getTotalBytes);
     }
 
     @Override
@@ -183,15 +192,17 @@ public class PendingStateImpl implements PendingState {
 
             ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
 
-            if (pendingTransactions.containsKey(hash) || wireTransactions.containsKey(hash)) {
+            if (transactionPool.contains(hash)) {
                 logger.info("TX already exists: {} ", tx);
                 continue;
             }
 
-            wireTransactions.put(hash, tx);
-            transactionBlocks.put(hash, bnumber);
             final long timestampSeconds = this.getCurrentTimeInSeconds();
-            transactionTimes.put(hash, timestampSeconds);
+
+            if (!transactionPool.add(tx, true, bnumber, timestampSeconds)) {
+                logger.info("TX evicted by price: {} ", tx);
+                continue;
+            }
 
             added.add(tx);
         }
@@ -213,18 +224,12 @@ public class PendingStateImpl implements PendingState {
 
     @Override
     public synchronized List<Transaction> getWireTransactions() {
-        List<Transaction> txs = new ArrayList<>();
-        txs.addAll(wireTransactions.values());
-        return txs;
+        return transactionPool.getTransactions(true);
     }
 
     @Override
     public synchronized List<Transaction> getPendingTransactions() {
-        List<Transaction> txs = new ArrayList<>();
-
-        txs.addAll(pendingTransactions.values());
-
-        return txs;
+        return transactionPool.getTransactions(false);
     }
 
     @Override
@@ -237,13 +242,15 @@ public class PendingStateImpl implements PendingState {
         ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
         Long bnumber = Long.valueOf(getCurrentBestBlockNumber());
 
-        if (pendingTransactions.containsKey(hash))
+        if (transactionPool.containsPending(hash))
             return;
 
-        pendingTransactions.put(hash, tx);
-        transactionBlocks.put(hash, bnumber);
         final long timestampSeconds = this.getCurrentTimeInSeconds();
-        transactionTimes.put(hash, timestampSeconds);
+
+        if (!transactionPool.add(tx, false, bnumber, timestampSeconds)) {
+            logger.info("TX evicted by price: {} ", tx);
+            return;
+        }
 
         executeTransaction(tx);
 
@@ -255,22 +262,26 @@ public class PendingStateImpl implements PendingState {
     }
 
     @Override
-    public synchronized void processBest(Block block) {
+    public void processBest(Block block) {
         logger.trace("Processing best block {} {}", block.getNumber(), block.getShortHash());
 
-        BlockFork fork = new BlockFork();
-        fork.calculate(getBestBlock(), block, blockStore);
+        synchronized (this) {
+            BlockFork fork = new BlockFork();
+            fork.calculate(getBestBlock(), block, blockStore);
 
-        for (Block blk : fork.getOldBlocks())
-            retractBlock(blk);
+            for (Block blk : fork.getOldBlocks())
+                retractBlock(blk);
 
-        for (Block blk : fork.getNewBlocks())
-            acceptBlock(blk);
+            for (Block blk : fork.getNewBlocks())
+                acceptBlock(blk);
 
-        removeObsoleteTransactions(block.getNumber(), this.outdatedThreshold, this.outdatedTimeout);
+            removeObsoleteTransactions(block.getNumber(), this.outdatedThreshold, this.outdatedTimeout);
 
+            bestBlock = block;
+        }
+
+        // the pending state is rebuilt without holding the monitor, so reads aren't blocked meanwhile
         updateState();
-        bestBlock = block;
 
         if (listener != null)
             EventDispatchThread.invokeLater(() -> listener.onPendingStateChanged(PendingStateImpl.this));
@@ -293,22 +304,10 @@ public class PendingStateImpl implements PendingState {
 
     @VisibleForTesting
     public void removeObsoleteTransactions(long currentBlock, int depth, int timeout) {
-        List<ByteArrayWrapper> toremove = new ArrayList<>();
         final long timestampSeconds = this.getCurrentTimeInSeconds();
 
-        for (Map.Entry<ByteArrayWrapper, Long> entry : transactionBlocks.entrySet()) {
-            long block = entry.getValue().longValue();
-
-            if (block < currentBlock - depth) {
-                toremove.add(entry.getKey());
-                logger.info(
-                        "Clear outdated transaction, block.number: [{}] hash: [{}]",
-                        block,
-                        entry.getKey().toString());
-            }
-        }
-
-        removeTransactionList(toremove);
+        for (Transaction tx : transactionPool.removeAddedBeforeBlock(currentBlock - depth))
+            logger.info("Clear outdated transaction, block.number: [{}] hash: [{}]", currentBlock, Hex.toHexString(tx.getHash()));
 
         if (timeout > 0)
             this.removeObsoleteTransactions(timestampSeconds - timeout);
@@ -316,29 +315,8 @@ public class PendingStateImpl implements PendingState {
 
     @VisibleForTesting
     public synchronized void removeObsoleteTransactions(long timeSeconds) {
-        List<ByteArrayWrapper> toremove = new ArrayList<>();
-
-        for (Map.Entry<ByteArrayWrapper, Long> entry : transactionTimes.entrySet()) {
-            long txtime = entry.getValue().longValue();
-
-            if (txtime <= timeSeconds) {
-                toremove.add(entry.getKey());
-                logger.info(
-                        "Clear outdated transaction, hash: [{}]",
-                        entry.getKey().toString());
-            }
-        }
-
-        removeTransactionList(toremove);
-    }
-
-    private void removeTransactionList(List<ByteArrayWrapper> toremove) {
-        for (ByteArrayWrapper key : toremove) {
-            pendingTransactions.remove(key);
-            wireTransactions.remove(key);
-            transactionBlocks.remove(key);
-            transactionTimes.remove(key);
-        }
+        for (Transaction tx : transactionPool.removeAddedUntil(timeSeconds))
+            logger.info("Clear outdated transaction, hash: [{}]", Hex.toHexString(tx.getHash()));
     }
 
     @Override
@@ -346,7 +324,7 @@ public class PendingStateImpl implements PendingState {
         for (Transaction tx : txs) {
             byte[] bhash = tx.getHash();
             ByteArrayWrapper hash = new ByteArrayWrapper(bhash);
-            pendingTransactions.remove(hash);
+            transactionPool.remove(hash, false);
             logger.info("Clear pending transaction, hash: [{}]", Hex.toHexString(bhash));
         }
     }
@@ -356,7 +334,7 @@ public class PendingStateImpl implements PendingState {
         for (Transaction tx: txs) {
             byte[] bhash = tx.getHash();
             ByteArrayWrapper hash = new ByteArrayWrapper(bhash);
-            wireTransactions.remove(hash);
+            transactionPool.remove(hash, true);
             logger.info("Clear wire transaction, hash: [{}]", Hex.toHexString(bhash));
         }
     }
@@ -364,31 +342,114 @@ public class PendingStateImpl implements PendingState {
     @Override
     public synchronized List<Transaction> getAllPendingTransactions() {
         removeObsoleteTransactions(this.getCurrentBestBlockNumber(), this.outdatedThreshold, this.outdatedTimeout);
-        List<Transaction> ret = new ArrayList<>();
-        ret.addAll(pendingTransactions.values());
-        ret.addAll(wireTransactions.values());
-        return ret;
+        return transactionPool.getAllTransactions();
     }
 
+    /**
+     * Returns pending and wire transactions in block building order: higher gas price
+     * first, keeping the nonce order of each sender.
+     */
+    @Override
+    public synchronized List<Transaction> getTransactionsForBlock(int limit) {
+        return transactionPool.getBestTransactions(limit);
+    }
+
+    /**
+     * Rebuilds the pending state over the current confirmed state.
+     *
+     * Pending transactions are grouped by sender. The results of the previous
+     * update are kept for the senders whose transactions and read accounts
+     * didn't change, and only the remaining senders are re-executed.
+     * The senders that can't be executed in isolation (they run contract code,
+     * or spend value sent by other senders) are executed after the others,
+     * in block building order.
+     * The work is done without holding the instance monitor, and the new
+     * pending repository is swapped in at the end.
+     */
     public void updateState() {
-        logger.trace("update state");
-        pendingStateRepository = repository.startTracking();
+        synchronized (updateLock) {
+            logger.trace("update state");
+
+            Set<ByteArrayWrapper> snapshotHashes;
+            List<Transaction> snapshot;
+            Map<ByteArrayWrapper, SenderPendingState> previousStates;
+
+            synchronized (this) {
+                snapshotHashes = transactionPool.getHashes(false);
+                snapshot = new ArrayList<>();
+                previousStates = senderStates;
+
+                for (Transaction tx : transactionPool.getBestTransactions(transactionPool.size()))
+                    if (snapshotHashes.contains(new ByteArrayWrapper(tx.getHash())))
+                        snapshot.add(tx);
+            }
+
+            Block best = blockChain.getBestBlock();
+            byte[] coinbase = best.getCoinbase();
+            Block pendingBlock = createFakePendingBlock(best);
+
+            Map<ByteArrayWrapper, TransactionSortedSet> bySender = new HashMap<>();
 
-        TransactionSortedSet sorted = new TransactionSortedSet();
-        sorted.addAll(pendingTransactions.values());
+            for (Transaction tx : snapshot)
+                bySender.computeIfAbsent(new ByteArrayWrapper(tx.getSender()), k -> new TransactionSortedSet()).add(tx);
 
-        for (Transaction tx : sorted.toArray(new Transaction[0]))
-            executeTransaction(tx);
+            RepositoryTrack newRepository = (RepositoryTrack) repository.startTracking();
+            Map<ByteArrayWrapper, SenderPendingState> newStates = new HashMap<>();
+            Set<ByteArrayWrapper> toExecute = new HashSet<>();
+            int reused = 0;
+            int executed = 0;
+
+            for (Map.Entry<ByteArrayWrapper, TransactionSortedSet> entry : bySender.entrySet()) {
+                List<Transaction> txs = new ArrayList<>(entry.getValue());
+                SenderPendingState state = previousStates.get(entry.getKey());
+
+                if (state != null && state.isValidFor(txs, repository)) {
+                    reused++;
+                } else {
+                    state = SenderPendingState.execute(entry.getKey(), txs, repository, coinbase,
+                            (tx, track) -> executeTransaction(tx, track, best, pendingBlock));
+                }
+
+                if (state.isReusable()) {
+                    state.applyTo(newRepository, coinbase);
+                    newStates.put(entry.getKey(), state);
+                } else {
+                    toExecute.add(entry.getKey());
+                }
+            }
+
+            // over the effect of the other senders
+            for (Transaction tx : snapshot)
+                if (toExecute.contains(new ByteArrayWrapper(tx.getSender()))) {
+                    executeTransaction(tx, newRepository, best, pendingBlock);
+                    executed++;
+                }
+
+            logger.trace("update state: {} senders, {} reused, {} txs executed", bySender.size(), reused, executed);
+
+            synchronized (this) {
+                // transactions added while updating were executed over the old pending state
+                for (Transaction tx : transactionPool.getTransactions(false))
+                    if (!snapshotHashes.contains(new ByteArrayWrapper(tx.getHash())))
+                        executeTransaction(tx, newRepository, best, pendingBlock);
+
+                pendingStateRepository = newRepository;
+                senderStates = newStates;
+            }
+        }
     }
 
     private void executeTransaction(Transaction tx) {
-        logger.info("Apply pending state tx: {} {}", toBI(tx.getNonce()), Hex.toHexString(tx.getHash()));
-
         Block best = blockChain.getBestBlock();
+        executeTransaction(tx, pendingStateRepository, best, createFakePendingBlock(best));
+    }
+
+    private void executeTransaction(Transaction tx, Repository track, Block best, Block pendingBlock) {
+        logger.info("Apply pending state tx: {} {}", toBI(tx.getNonce()), Hex.toHexString(tx.getHash()));
 
         TransactionExecutor executor = new TransactionExecutor(
-                tx, best.getCoinbase(), pendingStateRepository,
-                blockStore, blockChain.getReceiptStore(), programInvokeFactory, createFakePendingBlock(best)
+                tx, best.getCoinbase(), track,
+                blockStore, blockChain.getReceiptStore(), programInvokeFactory, pendingBlock
         );
 
         executor.init();
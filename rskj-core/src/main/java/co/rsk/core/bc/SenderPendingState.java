@@ -0,0 +1,230 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Repository;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.RepositoryTrack;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.PrecompiledContracts;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
+/**
+ * Result of executing the pending transactions of a single sender
+ * against the confirmed state, in isolation of other senders.
+ *
+ * When no transaction of the sender runs contract code, the effect of the
+ * execution is kept as balance and nonce deltas per touched account. Those
+ * deltas can be applied again on top of a newer confirmed state as long as
+ * none of the accounts read during the execution were changed, so senders
+ * not involved in a new best block don't need to be re-executed.
+ *
+ * The effect is only kept if all the transactions are applied in isolation.
+ * Other senders can only add value to the accounts of the sender, so its
+ * transactions are then applied in the same way over their changes. A sender
+ * with a transaction that is not applied, maybe because it spends value sent
+ * by another pending sender, is executed over the changes of the others.
+ */
+class SenderPendingState {
+    private static final byte[] EMPTY_DATA_HASH = HashUtil.sha3(EMPTY_BYTE_ARRAY);
+    private static final byte[] REMASC_ADDRESS = Hex.decode(PrecompiledContracts.REMASC_ADDR);
+
+    private final ByteArrayWrapper sender;
+    private final List<Transaction> transactions;
+    private final byte[] feeRecipient;
+    private final Map<ByteArrayWrapper, byte[]> readStates = new HashMap<>();
+    private final Map<ByteArrayWrapper, BigInteger> balanceDeltas = new HashMap<>();
+    private final Map<ByteArrayWrapper, BigInteger> nonceDeltas = new HashMap<>();
+    private boolean reusable;
+
+    private SenderPendingState(ByteArrayWrapper sender, List<Transaction> transactions, byte[] feeRecipient) {
+        this.sender = sender;
+        this.transactions = transactions;
+        this.feeRecipient = feeRecipient;
+    }
+
+    /**
+     * Executes the sender transactions in an isolated track over the confirmed state
+     * and records its effect.
+     *
+     * @param sender        the sender of all the transactions
+     * @param transactions  the sender transactions, in nonce order
+     * @param repository    the confirmed state
+     * @param feeRecipient  the coinbase used to execute the transactions
+     * @param executor      executes one transaction over the given track
+     * @return the execution result; only reusable if no contract code was run
+     * and all the transactions were applied
+     */
+    static SenderPendingState execute(ByteArrayWrapper sender,
+                                      List<Transaction> transactions,
+                                      Repository repository,
+                                      byte[] feeRecipient,
+                                      BiConsumer<Transaction, Repository> executor) {
+        SenderPendingState state = new SenderPendingState(sender, transactions, feeRecipient);
+
+        if (!onlyValueTransfers(transactions, repository))
+            return state;
+
+        RepositoryTrack track = (RepositoryTrack) repository.startTracking();
+
+        for (Transaction tx : transactions)
+            executor.accept(tx, track);
+
+        if (!allApplied(sender, transactions, repository, track))
+            return state;
+
+        for (ByteArrayWrapper address : new ArrayList<>(track.getFullAddressSet())) {
+            AccountState before = repository.getAccountState(address.getData());
+            AccountState after = track.getAccountState(address.getData());
+
+            if (after.isDeleted() || !Arrays.equals(after.getCodeHash(), EMPTY_DATA_HASH))
+                return state;
+
+            BigInteger balanceBefore = before == null ? BigInteger.ZERO : before.getBalance();
+            BigInteger nonceBefore = before == null ? BigInteger.ZERO : before.getNonce();
+            BigInteger balanceDelta = after.getBalance().subtract(balanceBefore);
+            BigInteger nonceDelta = after.getNonce().subtract(nonceBefore);
+
+            if (balanceDelta.signum() != 0)
+                state.balanceDeltas.put(address, balanceDelta);
+            if (nonceDelta.signum() != 0)
+                state.nonceDeltas.put(address, nonceDelta);
+
+            // fee sinks change on every block, and fees don't depend on their state
+            if (!state.isFeeRecipient(address) && !isRemasc(address))
+                state.readStates.put(address, before == null ? null : before.getEncoded());
+        }
+
+        state.reusable = true;
+
+        return state;
+    }
+
+    public ByteArrayWrapper getSender() {
+        return sender;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * @return true if the effect of the execution was recorded as deltas
+     */
+    public boolean isReusable() {
+        return reusable;
+    }
+
+    /**
+     * Checks if the recorded effect is still valid for the given transactions
+     * over the given confirmed state.
+     */
+    public boolean isValidFor(List<Transaction> transactions, Repository repository) {
+        if (!reusable || !sameTransactions(transactions))
+            return false;
+
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : readStates.entrySet()) {
+            AccountState current = repository.getAccountState(entry.getKey().getData());
+            byte[] encoded = current == null ? null : current.getEncoded();
+
+            if (!Arrays.equals(encoded, entry.getValue()))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Applies the recorded effect to the pending repository.
+     *
+     * @param track         the pending repository
+     * @param feeRecipient  the coinbase used for the current pending block
+     */
+    public void applyTo(RepositoryTrack track, byte[] feeRecipient) {
+        for (Map.Entry<ByteArrayWrapper, BigInteger> entry : nonceDeltas.entrySet()) {
+            byte[] address = entry.getKey().getData();
+            track.setNonce(address, track.getNonce(address).add(entry.getValue()));
+        }
+
+        for (Map.Entry<ByteArrayWrapper, BigInteger> entry : balanceDeltas.entrySet()) {
+            byte[] address = isFeeRecipient(entry.getKey()) ? feeRecipient : entry.getKey().getData();
+            track.addBalance(address, entry.getValue());
+        }
+    }
+
+    private boolean isFeeRecipient(ByteArrayWrapper address) {
+        return feeRecipient != null && Arrays.equals(address.getData(), feeRecipient) && !address.equals(sender);
+    }
+
+    private static boolean isRemasc(ByteArrayWrapper address) {
+        return Arrays.equals(address.getData(), REMASC_ADDRESS);
+    }
+
+    private boolean sameTransactions(List<Transaction> other) {
+        if (other.size() != transactions.size())
+            return false;
+
+        for (int k = 0; k < other.size(); k++)
+            if (!Arrays.equals(other.get(k).getHash(), transactions.get(k).getHash()))
+                return false;
+
+        return true;
+    }
+
+    // each applied transaction increments the sender nonce
+    private static boolean allApplied(ByteArrayWrapper sender, List<Transaction> transactions, Repository repository, Repository track) {
+        AccountState before = repository.getAccountState(sender.getData());
+        AccountState after = track.getAccountState(sender.getData());
+
+        if (after == null)
+            return transactions.isEmpty();
+
+        BigInteger nonceBefore = before == null ? BigInteger.ZERO : before.getNonce();
+
+        return after.getNonce().subtract(nonceBefore).equals(BigInteger.valueOf(transactions.size()));
+    }
+
+    private static boolean onlyValueTransfers(List<Transaction> transactions, Repository repository) {
+        for (Transaction tx : transactions) {
+            if (tx.isContractCreation())
+                return false;
+
+            byte[] receiver = tx.getReceiveAddress();
+
+            if (PrecompiledContracts.getContractForAddress(new DataWord(receiver)) != null)
+                return false;
+
+            AccountState receiverState = repository.getAccountState(receiver);
+
+            if (receiverState != null && !Arrays.equals(receiverState.getCodeHash(), EMPTY_DATA_HASH))
+                return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import org.ethereum.core.Transaction;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.FastByteComparisons;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Pool of pending and wire transactions used by {@link PendingStateImpl}.
+ *
+ * Transactions are kept in a nonce ordered queue per sender. The lowest nonce
+ * transaction of each sender (its head) is indexed by gas price, so the best
+ * transactions for a block can be streamed without sorting the whole pool.
+ * The pool is bounded by number of transactions and by encoded size; when a limit
+ * is exceeded the lowest priced transaction is evicted, together with the later
+ * nonces of the same sender. Expiration by block number and by time use ordered
+ * buckets, so only the expired transactions are visited.
+ *
+ * This class is not thread safe, the owner must synchronize the access.
+ */
+public class TransactionPool {
+    private static final Comparator<Entry> NONCE_ORDER = (e1, e2) -> {
+        int result = e1.nonce.compareTo(e2.nonce);
+        return result != 0 ? result : e1.compareHash(e2);
+    };
+
+    // higher gas price first, older transactions first on ties
+    private static final Comparator<Entry> PRICE_ORDER = (e1, e2) -> {
+        int result = e2.gasPrice.compareTo(e1.gasPrice);
+        if (result != 0)
+            return result;
+        result = Long.compare(e1.sequence, e2.sequence);
+        return result != 0 ? result : e1.compareHash(e2);
+    };
+
+    // lower gas price first, and the higher nonces of a sender before the lower ones
+    private static final Comparator<Entry> EVICTION_ORDER = (e1, e2) -> {
+        int result = e1.gasPrice.compareTo(e2.gasPrice);
+        if (result != 0)
+            return result;
+        result = e2.nonce.compareTo(e1.nonce);
+        if (result != 0)
+            return result;
+        result = Long.compare(e2.sequence, e1.sequence);
+        return result != 0 ? result : e1.compareHash(e2);
+    };
+
+    private final int maxTransactions;
+    private final long maxBytes;
+
+    private final Map<ByteArrayWrapper, Entry> byHash = new HashMap<>();
+    private final Map<ByteArrayWrapper, TreeSet<Entry>> bySender = new HashMap<>();
+    private final TreeSet<Entry> heads = new TreeSet<>(PRICE_ORDER);
+    private final TreeSet<Entry> byEvictionOrder = new TreeSet<>(EVICTION_ORDER);
+    private final TreeMap<Long, Set<Entry>> byBlock = new TreeMap<>();
+    private final TreeMap<Long, Set<Entry>> byTime = new TreeMap<>();
+
+    private long totalBytes;
+    private long sequence;
+
+    /**
+     * @param maxTransactions   maximum number of transactions, zero for no limit
+     * @param maxBytes          maximum total encoded size of the transactions, zero for no limit
+     */
+    public TransactionPool(int maxTransactions, long maxBytes) {
+        this.maxTransactions = maxTransactions;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds a transaction to the pool. A wire transaction that is added again as
+     * a pending one is promoted to pending.
+     *
+     * @param tx            the transaction
+     * @param wire          true for transactions received from the net
+     * @param blockNumber   current best block number
+     * @param timeSeconds   current time in seconds
+     * @return true if the transaction was added or promoted, false if already known or evicted
+     */
+    public boolean add(Transaction tx, boolean wire, long blockNumber, long timeSeconds) {
+        ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
+        Entry existing = byHash.get(hash);
+
+        if (existing != null) {
+            if (existing.wire && !wire) {
+                existing.wire = false;
+                return true;
+            }
+
+            return false;
+        }
+
+        Entry entry = new Entry(tx, hash, wire, blockNumber, timeSeconds, sequence++);
+
+        byHash.put(hash, entry);
+        totalBytes += entry.size;
+
+        TreeSet<Entry> queue = bySender.computeIfAbsent(entry.sender, k -> new TreeSet<>(NONCE_ORDER));
+        Entry oldHead = queue.isEmpty() ? null : queue.first();
+        queue.add(entry);
+        updateHead(oldHead, queue.first());
+
+        byEvictionOrder.add(entry);
+        byBlock.computeIfAbsent(blockNumber, k -> new HashSet<>()).add(entry);
+        byTime.computeIfAbsent(timeSeconds, k -> new HashSet<>()).add(entry);
+
+        evictIfNeeded();
+
+        return byHash.containsKey(hash);
+    }
+
+    public boolean contains(ByteArrayWrapper hash) {
+        return byHash.containsKey(hash);
+    }
+
+    public boolean containsPending(ByteArrayWrapper hash) {
+        Entry entry = byHash.get(hash);
+        return entry != null && !entry.wire;
+    }
+
+    /**
+     * Removes a transaction if it is in the pool with the given kind.
+     *
+     * @return true if the transaction was removed
+     */
+    public boolean remove(ByteArrayWrapper hash, boolean wire) {
+        Entry entry = byHash.get(hash);
+
+        if (entry == null || entry.wire != wire)
+            return false;
+
+        removeEntry(entry);
+        return true;
+    }
+
+    /**
+     * Removes the transactions added when the best block was lower than the given number.
+     */
+    public List<Transaction> removeAddedBeforeBlock(long blockNumber) {
+        return removeBuckets(byBlock.headMap(blockNumber, false));
+    }
+
+    /**
+     * Removes the transactions added at or before the given time.
+     */
+    public List<Transaction> removeAddedUntil(long timeSeconds) {
+        return removeBuckets(byTime.headMap(timeSeconds, true));
+    }
+
+    public List<Transaction> getTransactions(boolean wire) {
+        List<Transaction> txs = new ArrayList<>();
+
+        for (Entry entry : byHash.values())
+            if (entry.wire == wire)
+                txs.add(entry.tx);
+
+        return txs;
+    }
+
+    public List<Transaction> getAllTransactions() {
+        List<Transaction> txs = new ArrayList<>(byHash.size());
+
+        for (Entry entry : byHash.values())
+            txs.add(entry.tx);
+
+        return txs;
+    }
+
+    public Set<ByteArrayWrapper> getHashes(boolean wire) {
+        Set<ByteArrayWrapper> hashes = new HashSet<>();
+
+        for (Entry entry : byHash.values())
+            if (entry.wire == wire)
+                hashes.add(entry.hash);
+
+        return hashes;
+    }
+
+    /**
+     * Returns the pool transactions ordered for block building: at each step the
+     * highest priced sender head is taken, and the next nonce of that sender
+     * becomes a candidate. Transactions of the same sender keep their nonce order.
+     *
+     * @param limit maximum number of transactions to return
+     */
+    public List<Transaction> getBestTransactions(int limit) {
+        List<Transaction> result = new ArrayList<>();
+        PriorityQueue<Entry> candidates = new PriorityQueue<>(Math.max(1, heads.size()), PRICE_ORDER);
+        candidates.addAll(heads);
+
+        while (!candidates.isEmpty() && result.size() < limit) {
+            Entry best = candidates.poll();
+            result.add(best.tx);
+
+            Entry next = bySender.get(best.sender).higher(best);
+
+            if (next != null)
+                candidates.add(next);
+        }
+
+        return result;
+    }
+
+    public int size() {
+        return byHash.size();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private List<Transaction> removeBuckets(SortedMap<Long, Set<Entry>> buckets) {
+        List<Entry> toRemove = new ArrayList<>();
+
+        for (Set<Entry> bucket : buckets.values())
+            toRemove.addAll(bucket);
+
+        List<Transaction> removed = new ArrayList<>(toRemove.size());
+
+        for (Entry entry : toRemove) {
+            removeEntry(entry);
+            removed.add(entry.tx);
+        }
+
+        return removed;
+    }
+
+    private void evictIfNeeded() {
+        while (!byEvictionOrder.isEmpty() && isOverLimits()) {
+            Entry lowest = byEvictionOrder.first();
+
+            // later nonces of the sender couldn't be executed without the evicted one
+            for (Entry entry : new ArrayList<>(bySender.get(lowest.sender).tailSet(lowest, true)))
+                removeEntry(entry);
+        }
+    }
+
+    private boolean isOverLimits() {
+        return (maxTransactions > 0 && byHash.size() > maxTransactions) ||
+                (maxBytes > 0 && totalBytes > maxBytes);
+    }
+
+    private void removeEntry(Entry entry) {
+        byHash.remove(entry.hash);
+        totalBytes -= entry.size;
+
+        TreeSet<Entry> queue = bySender.get(entry.sender);
+        Entry oldHead = queue.first();
+        queue.remove(entry);
+
+        if (queue.isEmpty()) {
+            bySender.remove(entry.sender);
+            updateHead(oldHead, null);
+        } else {
+            updateHead(oldHead, queue.first());
+        }
+
+        byEvictionOrder.remove(entry);
+        removeFromBucket(byBlock, entry.blockNumber, entry);
+        removeFromBucket(byTime, entry.timeSeconds, entry);
+    }
+
+    private void updateHead(Entry oldHead, Entry newHead) {
+        if (oldHead == newHead)
+            return;
+
+        if (oldHead != null)
+            heads.remove(oldHead);
+
+        if (newHead != null)
+            heads.add(newHead);
+    }
+
+    private static void removeFromBucket(Map<Long, Set<Entry>> buckets, long key, Entry entry) {
+        Set<Entry> bucket = buckets.get(key);
+
+        if (bucket == null)
+            return;
+
+        bucket.remove(entry);
+
+        if (bucket.isEmpty())
+            buckets.remove(key);
+    }
+
+    private static class Entry {
+        private final Transaction tx;
+        private final ByteArrayWrapper hash;
+        private final ByteArrayWrapper sender;
+        private final BigInteger nonce;
+        private final BigInteger gasPrice;
+        private final int size;
+        private final long blockNumber;
+        private final long timeSeconds;
+        private final long sequence;
+        private boolean wire;
+
+        Entry(Transaction tx, ByteArrayWrapper hash, boolean wire, long blockNumber, long timeSeconds, long sequence) {
+            this.tx = tx;
+            this.hash = hash;
+            this.sender = new ByteArrayWrapper(tx.getSender());
+            this.nonce = tx.getNonceAsInteger();
+            this.gasPrice = tx.getGasPriceAsInteger();
+            this.size = tx.getEncoded().length;
+            this.wire = wire;
+            this.blockNumber = blockNumber;
+            this.timeSeconds = timeSeconds;
+            this.sequence = sequence;
+        }
+
+        int compareHash(Entry other) {
+            byte[] h1 = hash.getData();
+            byte[] h2 = other.hash.getData();
+            return FastByteComparisons.compareTo(h1, 0, h1.length, h2, 0, h2.length);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.metrics.MetricsRegistry;
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * Contract code store, keyed by the code hash.
+ *
+ * The code is content addressed, so the code shared by many contracts is
+ * stored once and it is never rewritten. The new code is kept in memory
+ * until the next flush; the most recently used code is kept in a bounded
+ * cache, to avoid reading the hot contracts from the database.
+ */
+public class CodeStore {
+    private static final LatencyHistogram flushTime = MetricsRegistry.DEFAULT.histogram(
+            "rsk_store_flush_seconds", "Duration of the store flushes", "store", "code");
+    private static final Counter flushBytes = MetricsRegistry.DEFAULT.counter(
+            "rsk_store_flush_bytes_total", "Bytes written by the store flushes", "store", "code");
+    private static final Counter cacheHits = MetricsRegistry.DEFAULT.counter(
+            "rsk_code_cache_hits_total", "Code reads served by the code cache");
+    private static final Counter cacheMisses = MetricsRegistry.DEFAULT.counter(
+            "rsk_code_cache_misses_total", "Code reads not served by the code cache");
+
+    private final KeyValueDataSource dataSource;
+    private final Map<ByteArrayWrapper, byte[]> pending = new HashMap<>();
+    private final Map<ByteArrayWrapper, byte[]> cache;
+
+    public CodeStore(KeyValueDataSource dataSource, int cacheSize) {
+        this.dataSource = dataSource;
+        this.cache = new LinkedHashMap<ByteArrayWrapper, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the code with the given hash, or <tt>null</tt> if it is not in the store
+     */
+    public synchronized byte[] get(byte[] codeHash) {
+        ByteArrayWrapper key = wrap(codeHash);
+        byte[] code = cache.get(key);
+
+        if (code != null) {
+            cacheHits.inc();
+            return code;
+        }
+
+        cacheMisses.inc();
+
+        code = pending.get(key);
+
+        if (code == null)
+            code = dataSource.get(codeHash);
+
+        if (code != null)
+            cache.put(key, code);
+
+        return code;
+    }
+
+    /**
+     * Adds the code, that must have the given hash; the cached code is not written again
+     */
+    public synchronized void put(byte[] codeHash, byte[] code) {
+        ByteArrayWrapper key = wrap(codeHash);
+
+        if (cache.containsKey(key) || pending.containsKey(key))
+            return;
+
+        pending.put(key, code);
+        cache.put(key, code);
+    }
+
+    public synchronized void flush() {
+        if (pending.isEmpty())
+            return;
+
+        long start = System.nanoTime();
+        long totalSize = 0;
+
+        Map<byte[], byte[]> batch = new HashMap<>();
+
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : pending.entrySet()) {
+            batch.put(entry.getKey().getData(), entry.getValue());
+            totalSize += entry.getValue().length;
+        }
+
+        dataSource.updateBatch(batch);
+        pending.clear();
+
+        flushTime.record(System.nanoTime() - start);
+        flushBytes.add(totalSize);
+    }
+}
@@ -40,6 +40,7 @@ import org.spongycastle.util.encoders.Hex;
 import javax.annotation.Nullable;
 import java.util.*;
 
+import static org.ethereum.crypto.SHA3Helper.sha3;
 import static org.ethereum.datasource.DataSourcePool.levelDbByName;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.ByteUtil.toHexString;
@@ -97,6 +98,38 @@ public class ContractDetailsImpl implements ContractDetails {
         this.checkExternalStorage();
     }
 
+    /**
+     * Updates the storage trie with all the values in a single putAll,
+     * in the iteration order of the map, as a sequence of put would do
+     */
+    @Override
+    public synchronized void putAll(Map<DataWord, DataWord> values) {
+        logger.trace("put all words");
+
+        checkDataSourceIsOpened();
+
+        Map<ByteArrayWrapper, byte[]> trieValues = new LinkedHashMap<>();
+
+        for (Map.Entry<DataWord, DataWord> entry : values.entrySet()) {
+            byte[] keyBytes = entry.getKey().getData();
+            DataWord value = entry.getValue();
+
+            if (value.equals(DataWord.ZERO)) {
+                trieValues.put(wrap(keyBytes), null);
+                removeKey(keyBytes);
+            }
+            else {
+                trieValues.put(wrap(keyBytes), value.getNoLeadZeroesData());
+                addKey(keyBytes);
+            }
+        }
+
+        this.trie = this.trie.putAll(trieValues);
+
+        this.setDirty(true);
+        this.checkExternalStorage();
+    }
+
     @Override
     public synchronized void putBytes(DataWord key, byte[] bytes) {
         logger.trace("put bytes");
@@ -254,16 +287,23 @@ public class ContractDetailsImpl implements ContractDetails {
     public synchronized Map<DataWord, DataWord> getStorage(@Nullable Collection<DataWord> keys) {
         Map<DataWord, DataWord> storage = new HashMap<>();
 
-        if (keys == null)
-            for (ByteArrayWrapper keyBytes : this.keys) {
-                DataWord key = new DataWord(keyBytes);
-                DataWord value = get(key);
+        if (keys == null) {
+            checkDataSourceIsOpened();
 
-                // we check if the value is not null,
-                // cause we keep all historical keys
-                if (value != null)
-                    storage.put(key, value);
+            // the storage trie is walked once; its keys are the sha3 of the
+            // storage keys, so the keys set is used to map them back
+            Map<ByteArrayWrapper, ByteArrayWrapper> preimages = new HashMap<>();
+
+            for (ByteArrayWrapper keyBytes : this.keys)
+                preimages.put(wrap(sha3(keyBytes.getData())), keyBytes);
+
+            Iterator<Map.Entry<ByteArrayWrapper, byte[]>> iterator = TrieIterator.withPreimages(this.trie.iterator(null, null), preimages::get);
+
+            while (iterator.hasNext()) {
+                Map.Entry<ByteArrayWrapper, byte[]> entry = iterator.next();
+                storage.put(new DataWord(entry.getKey().getData()), new DataWord(entry.getValue()));
             }
+        }
         else
             for (DataWord key : keys) {
                 DataWord value = get(key);
@@ -394,9 +434,25 @@ public class ContractDetailsImpl implements ContractDetails {
     }
 
     private String getDataSourceName() {
+        return getStorageDataSourceName(address);
+    }
+
+    // the data source of the external storage of a contract
+    static String getStorageDataSourceName(byte[] address) {
         return "details-storage/" + toHexString(address);
     }
 
+    /**
+     * Returns the serialized nodes of the storage trie, walking it from its root
+     */
+    synchronized Iterator<byte[]> getStorageNodes() {
+        checkDataSourceIsOpened();
+
+        this.trie.save();
+
+        return new TrieNodeIterator(((TrieImpl) this.trie).getStore(), this.trie.getHash());
+    }
+
     private String getAddressAsString() {
         byte[] addr = this.getAddress();
 
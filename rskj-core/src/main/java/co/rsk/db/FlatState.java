@@ -0,0 +1,348 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.MetricsRegistry;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.*;
+
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * Flat account and storage values of the recent states, beside the trie,
+ * shared by a repository and its snapshots.
+ *
+ * Each state is a diff layer keyed by its root, with the values changed from
+ * its parent state (see {@link StateDiff}); the layers are added when the
+ * repositories compute the root of their changes, so the execution of a block
+ * adds the layer of its state over the layer of its parent. The layers of
+ * a branch end in a bottom layer, with a bounded cache of the values of its
+ * state, filled with the values read from the trie.
+ *
+ * A value at a state is looked up in its layer and its parents down to
+ * the bottom layer; <tt>null</tt> means that it is not known, because it was
+ * not read yet or the state has no layer (an old state, or one of a branch
+ * that was dropped): then the repository reads it from the trie, that is the
+ * source of truth and is still used to compute the roots.
+ *
+ * The head is the state of the best block. When it is more than maxLayers
+ * layers over the bottom layer, the lowest layers are merged into the bottom
+ * one, and the layers of the branches that no longer reach it are dropped.
+ * A reorganization to a state in the layers just moves the head; a deeper one,
+ * or a head with no layers, starts the bottom layer again at the new head.
+ */
+public class FlatState {
+    private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+
+    private static final Counter hits = MetricsRegistry.DEFAULT.counter(
+            "rsk_flat_state_reads_total", "Account and storage reads from the flat state", "result", "hit");
+    private static final Counter misses = MetricsRegistry.DEFAULT.counter(
+            "rsk_flat_state_reads_total", "Account and storage reads from the flat state", "result", "miss");
+
+    private final int maxLayers;
+    private final int cacheSize;
+
+    private final Map<ByteArrayWrapper, Layer> layers = new LinkedHashMap<>();
+    private ByteArrayWrapper head;
+
+    private ByteArrayWrapper bottomRoot;
+    private final Map<ByteArrayWrapper, byte[]> bottomAccounts;
+    private final LinkedHashMap<ByteArrayWrapper, Map<ByteArrayWrapper, byte[]>> bottomStorage;
+    private int bottomStorageSize;
+
+    public FlatState(int maxLayers, int cacheSize) {
+        this.maxLayers = maxLayers;
+        this.cacheSize = cacheSize;
+        this.bottomAccounts = new LinkedHashMap<ByteArrayWrapper, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, byte[]> eldest) {
+                return size() > FlatState.this.cacheSize;
+            }
+        };
+        this.bottomStorage = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return the encoded account at the state, empty if there is no such
+     * account, or <tt>null</tt> if it is not known
+     */
+    public synchronized byte[] getAccount(byte[] root, ByteArrayWrapper address) {
+        ByteArrayWrapper current = wrap(root);
+
+        while (!current.equals(bottomRoot)) {
+            Layer layer = layers.get(current);
+
+            if (layer == null)
+                return count(null);
+
+            byte[] value = layer.diff.getAccount(address);
+
+            if (value != null)
+                return count(value);
+
+            current = layer.parent;
+        }
+
+        byte[] value = bottomAccounts.get(address);
+
+        return count(value);
+    }
+
+    /**
+     * Keeps the account read from the trie at the state, if it is
+     * the same in the bottom layer
+     */
+    public synchronized void putAccount(byte[] root, ByteArrayWrapper address, byte[] value) {
+        ByteArrayWrapper current = wrap(root);
+
+        while (!current.equals(bottomRoot)) {
+            Layer layer = layers.get(current);
+
+            if (layer == null || layer.diff.getAccount(address) != null)
+                return;
+
+            current = layer.parent;
+        }
+
+        bottomAccounts.put(address, value == null ? EMPTY_BYTE_ARRAY : value);
+    }
+
+    /**
+     * @return the storage value at the state, empty if there is no value,
+     * or <tt>null</tt> if it is not known
+     */
+    public synchronized byte[] getStorage(byte[] root, ByteArrayWrapper address, ByteArrayWrapper key) {
+        ByteArrayWrapper current = wrap(root);
+
+        while (!current.equals(bottomRoot)) {
+            Layer layer = layers.get(current);
+
+            if (layer == null)
+                return count(null);
+
+            byte[] value = layer.diff.getStorage(address, key);
+
+            if (value != null)
+                return count(value);
+
+            if (layer.diff.isCleared(address))
+                return count(null);
+
+            current = layer.parent;
+        }
+
+        Map<ByteArrayWrapper, byte[]> values = bottomStorage.get(address);
+        byte[] value = values == null ? null : values.get(key);
+
+        return count(value);
+    }
+
+    /**
+     * Keeps the storage value read from the trie at the state, if it is
+     * the same in the bottom layer
+     */
+    public synchronized void putStorage(byte[] root, ByteArrayWrapper address, ByteArrayWrapper key, byte[] value) {
+        ByteArrayWrapper current = wrap(root);
+
+        while (!current.equals(bottomRoot)) {
+            Layer layer = layers.get(current);
+
+            if (layer == null || layer.diff.getStorage(address, key) != null || layer.diff.isCleared(address))
+                return;
+
+            current = layer.parent;
+        }
+
+        putBottomStorage(address, key, value == null ? EMPTY_BYTE_ARRAY : value);
+    }
+
+    /**
+     * Adds the layer of a state, with the changes from its parent state.
+     * The diff must not be changed after it is added.
+     */
+    public synchronized void addLayer(byte[] root, byte[] parentRoot, StateDiff diff) {
+        ByteArrayWrapper key = wrap(root);
+
+        // a state with a layer has the same values whatever its parent is
+        if (Arrays.equals(root, parentRoot) || key.equals(bottomRoot) || layers.containsKey(key))
+            return;
+
+        layers.put(key, new Layer(wrap(parentRoot), diff));
+
+        if (layers.size() > 2 * maxLayers)
+            dropBranches();
+    }
+
+    /**
+     * Removes the layer of a state, unless it is the head or there are
+     * layers over it; the values of the state will be read from the trie
+     */
+    public synchronized void removeLayer(byte[] root) {
+        ByteArrayWrapper key = wrap(root);
+
+        if (key.equals(head) || !layers.containsKey(key))
+            return;
+
+        for (Layer layer : layers.values())
+            if (layer.parent.equals(key))
+                return;
+
+        layers.remove(key);
+    }
+
+    /**
+     * Sets the state of the best block, merging the lowest layers
+     * if it is more than maxLayers layers over the bottom layer
+     */
+    public synchronized void setHead(byte[] root) {
+        head = wrap(root);
+
+        List<ByteArrayWrapper> chain = getChain(head);
+
+        if (chain == null) {
+            // no layers down to the bottom layer: it starts again at the head
+            layers.clear();
+            bottomRoot = head;
+            bottomAccounts.clear();
+            bottomStorage.clear();
+            bottomStorageSize = 0;
+            return;
+        }
+
+        if (chain.size() <= maxLayers)
+            return;
+
+        // the chain goes from the head down, the lowest layers are merged first
+        for (int k = chain.size() - 1; k >= maxLayers; k--)
+            merge(chain.get(k));
+
+        dropBranches();
+    }
+
+    public synchronized int getLayerCount() {
+        return layers.size();
+    }
+
+    // the roots of the layers from the state down to the bottom layer,
+    // or null if they don't reach it
+    private List<ByteArrayWrapper> getChain(ByteArrayWrapper root) {
+        List<ByteArrayWrapper> chain = new ArrayList<>();
+        ByteArrayWrapper current = root;
+
+        while (!current.equals(bottomRoot)) {
+            Layer layer = layers.get(current);
+
+            if (layer == null)
+                return null;
+
+            chain.add(current);
+            current = layer.parent;
+        }
+
+        return chain;
+    }
+
+    // moves the bottom layer up to the layer, whose parent is the bottom state
+    private void merge(ByteArrayWrapper root) {
+        StateDiff diff = layers.remove(root).diff;
+
+        for (ByteArrayWrapper address : diff.getCleared()) {
+            Map<ByteArrayWrapper, byte[]> values = bottomStorage.remove(address);
+
+            if (values != null)
+                bottomStorageSize -= values.size();
+        }
+
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : diff.getAccounts().entrySet())
+            bottomAccounts.put(entry.getKey(), entry.getValue());
+
+        for (Map.Entry<ByteArrayWrapper, Map<ByteArrayWrapper, byte[]>> entry : diff.getStorage().entrySet())
+            for (Map.Entry<ByteArrayWrapper, byte[]> value : entry.getValue().entrySet())
+                putBottomStorage(entry.getKey(), value.getKey(), value.getValue());
+
+        bottomRoot = root;
+    }
+
+    // drops the layers that don't reach the bottom layer, and then, if there
+    // are still too many, the oldest ones that are not in the head chain
+    private void dropBranches() {
+        Set<ByteArrayWrapper> reaching = new HashSet<>();
+
+        for (ByteArrayWrapper root : layers.keySet()) {
+            List<ByteArrayWrapper> chain = getChain(root);
+
+            if (chain != null)
+                reaching.addAll(chain);
+        }
+
+        layers.keySet().retainAll(reaching);
+
+        if (layers.size() <= 2 * maxLayers)
+            return;
+
+        List<ByteArrayWrapper> headChain = head == null ? null : getChain(head);
+        Set<ByteArrayWrapper> kept = headChain == null ? Collections.emptySet() : new HashSet<>(headChain);
+
+        for (Iterator<ByteArrayWrapper> roots = layers.keySet().iterator(); roots.hasNext() && layers.size() > maxLayers;)
+            if (!kept.contains(roots.next()))
+                roots.remove();
+    }
+
+    private void putBottomStorage(ByteArrayWrapper address, ByteArrayWrapper key, byte[] value) {
+        Map<ByteArrayWrapper, byte[]> values = bottomStorage.computeIfAbsent(address, k -> new HashMap<>());
+
+        if (values.put(key, value) == null)
+            bottomStorageSize++;
+
+        // the least recently used contracts are dropped with all their values,
+        // the contract of the value is the most recently used one
+        for (Iterator<Map<ByteArrayWrapper, byte[]>> contracts = bottomStorage.values().iterator();
+             bottomStorageSize > cacheSize && contracts.hasNext();) {
+            Map<ByteArrayWrapper, byte[]> eldest = contracts.next();
+
+            if (eldest == values)
+                break;
+
+            bottomStorageSize -= eldest.size();
+            contracts.remove();
+        }
+    }
+
+    private static byte[] count(byte[] value) {
+        if (value == null)
+            misses.inc();
+        else
+            hits.inc();
+
+        return value;
+    }
+
+    private static class Layer {
+        private final ByteArrayWrapper parent;
+        private final StateDiff diff;
+
+        Layer(ByteArrayWrapper parent, StateDiff diff) {
+            this.parent = parent;
+            this.diff = diff;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.MetricsRegistry;
+import co.rsk.trie.MissingTrieNodeException;
+import co.rsk.trie.TrieReadBudget;
+import co.rsk.trie.TrieReadBudgetExceededException;
+import org.ethereum.core.Repository;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * Runs the RPC queries on the states of given blocks.
+ *
+ * The snapshots of the recently queried states are kept, so the trie nodes and
+ * contract details loaded by a query are reused by the next ones on the same
+ * block, as the backfill of an indexer does; the least recently used snapshot
+ * is dropped when there are more than maxSize of them. The snapshots are only
+ * read: the calls are executed in tracks that are discarded.
+ *
+ * The nodes loaded by the queries stay in the trie of their snapshot, so the
+ * least recently used snapshots are also dropped while the kept ones have
+ * read more than maxNodes trie nodes in all (0 for no limit); a snapshot
+ * over the limit by itself is dropped after its query. The nodes read are
+ * counted, an upper bound of the nodes that the snapshots keep.
+ *
+ * Each query can read at most readLimit trie nodes from the stores
+ * (0 for no limit), see {@link TrieReadBudget}.
+ *
+ * The state pruning can delete the nodes of a kept snapshot that were not
+ * loaded yet. A query that reads one of them fails with
+ * {@link MissingStateException}, as if the state was not found, and the
+ * snapshot is dropped.
+ */
+public class HistoricalStates {
+    private static final Counter cacheHits = MetricsRegistry.DEFAULT.counter(
+            "rsk_rpc_state_cache_total", "Historical state snapshot lookups", "result", "hit");
+    private static final Counter cacheMisses = MetricsRegistry.DEFAULT.counter(
+            "rsk_rpc_state_cache_total", "Historical state snapshot lookups", "result", "miss");
+    private static final Counter readLimitExceeded = MetricsRegistry.DEFAULT.counter(
+            "rsk_rpc_state_read_limit_exceeded_total", "Historical state queries stopped by the trie node read limit");
+
+    private final int maxSize;
+    private final long maxNodes;
+    private final int readLimit;
+    private final Map<ByteArrayWrapper, Snapshot> snapshots;
+
+    // the trie nodes read by the queries on the kept snapshots
+    private long nodes;
+
+    public HistoricalStates(int maxSize, long maxNodes, int readLimit) {
+        this.maxSize = maxSize;
+        this.maxNodes = maxNodes;
+        this.readLimit = readLimit;
+        this.snapshots = new LinkedHashMap<ByteArrayWrapper, Snapshot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, Snapshot> eldest) {
+                if (size() <= HistoricalStates.this.maxSize)
+                    return false;
+
+                nodes -= eldest.getValue().nodes;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Runs the query on a snapshot of the state with the given root,
+     * taken from the repository if it is not already kept
+     *
+     * @throws MissingStateException    if the state is not in the repository stores, or some of its nodes were pruned
+     * @throws TrieReadBudgetExceededException  if the query reads more than readLimit trie nodes
+     */
+    public <T> T read(Repository repository, byte[] root, Function<Repository, T> query) {
+        ByteArrayWrapper key = wrap(root);
+        Snapshot snapshot = getSnapshot(repository, key);
+
+        try (TrieReadBudget budget = TrieReadBudget.start(readLimit)) {
+            T result = null;
+
+            try {
+                result = query.apply(snapshot.repository);
+            } catch (MissingTrieNodeException ex) {
+                // checked below, as the exceptions caught by the call executions
+            } finally {
+                addNodes(key, snapshot, budget.getReads());
+            }
+
+            if (budget.hasMissingNodes()) {
+                drop(key, snapshot);
+                throw new MissingStateException(root);
+            }
+
+            // the call executions catch the exceptions of their reads
+            if (budget.isExceeded())
+                throw new TrieReadBudgetExceededException(readLimit);
+
+            return result;
+        } catch (TrieReadBudgetExceededException ex) {
+            readLimitExceeded.inc();
+            throw ex;
+        }
+    }
+
+    public synchronized int size() {
+        return snapshots.size();
+    }
+
+    public synchronized long getNodes() {
+        return nodes;
+    }
+
+    private Snapshot getSnapshot(Repository repository, ByteArrayWrapper key) {
+        synchronized (this) {
+            Snapshot snapshot = snapshots.get(key);
+
+            if (snapshot != null) {
+                cacheHits.inc();
+                return snapshot;
+            }
+        }
+
+        cacheMisses.inc();
+
+        // taken out of the monitor, it reads the root node from the store
+        Snapshot snapshot = new Snapshot(repository.getSnapshotTo(key.getData()));
+
+        if (maxSize > 0) {
+            synchronized (this) {
+                Snapshot previous = snapshots.putIfAbsent(key, snapshot);
+
+                if (previous != null)
+                    return previous;
+            }
+        }
+
+        return snapshot;
+    }
+
+    // only if it is still the snapshot kept for the root
+    private synchronized void drop(ByteArrayWrapper key, Snapshot snapshot) {
+        if (snapshots.remove(key, snapshot))
+            nodes -= snapshot.nodes;
+    }
+
+    // the nodes loaded by a query on the snapshot, if it is kept; the least
+    // recently used snapshots are dropped while the nodes are over the limit
+    private synchronized void addNodes(ByteArrayWrapper key, Snapshot snapshot, int reads) {
+        if (snapshots.get(key) != snapshot)
+            return;
+
+        snapshot.nodes += reads;
+        nodes += reads;
+
+        if (maxNodes <= 0)
+            return;
+
+        Iterator<Snapshot> iterator = snapshots.values().iterator();
+
+        while (nodes > maxNodes && iterator.hasNext()) {
+            nodes -= iterator.next().nodes;
+            iterator.remove();
+        }
+    }
+
+    private static class Snapshot {
+        private final Repository repository;
+        private long nodes;
+
+        Snapshot(Repository repository) {
+            this.repository = repository;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 package co.rsk.db;
 
+import co.rsk.config.RskSystemProperties;
 import co.rsk.trie.Trie;
 import co.rsk.trie.TrieImpl;
 import co.rsk.trie.TrieStore;
@@ -31,6 +32,7 @@ import org.ethereum.db.*;
 import org.ethereum.vm.DataWord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spongycastle.pqc.math.linearalgebra.ByteUtils;
 import org.spongycastle.util.encoders.Hex;
 
 import javax.annotation.Nonnull;
@@ -44,6 +46,20 @@ import static org.ethereum.util.ByteUtil.wrap;
 
 /**
  * Created by ajlopez on 29/03/2017.
+ *
+ * The snapshots returned by getSnapshotTo share only the stores with this
+ * repository, and they are created without taking its monitor: they can be
+ * read while this repository is updated or flushed by the block import.
+ *
+ * With a {@link FlatState}, the accounts and the storage values are read from
+ * it before the trie, and the changes are kept in a diff, that is added as the
+ * layer of the state when its root is computed. A storage value written
+ * outside of a track commit clears the known values of its account, that are
+ * then read from the trie again.
+ *
+ * The tracks read the storage values that they don't have yet from the flat
+ * values too. A value is read when it is first asked for, rather than from
+ * the details of the account taken when it was loaded in the track.
  */
 public class RepositoryImpl implements Repository, org.ethereum.facade.Repository {
     private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
@@ -51,33 +67,57 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
 
     private static final Logger logger = LoggerFactory.getLogger("repository");
 
-    private TrieStore store;
+    private final TrieStore store;
     private Trie trie;
-    private DetailsDataStore detailsDataStore;
+    private final DetailsDataStore detailsDataStore;
+    private final CodeStore codeStore;
     private boolean closed;
 
+    // the flat values (null if not used), shared with the snapshots, and the changes
+    // from the state flatRoot; flatLayerRoot is the layer added for them by getRoot
+    private final FlatState flatState;
+    private byte[] flatRoot;
+    private StateDiff flatDiff = new StateDiff();
+    private boolean flatDirty;
+    private byte[] flatLayerRoot;
+
     public RepositoryImpl() {
         this(null);
     }
 
     public RepositoryImpl(TrieStore store) {
-        this.store = store;
-        this.trie = new TrieImpl(store, true);
-        this.detailsDataStore = new DetailsDataStore();
-        this.detailsDataStore.setDB(new DatabaseImpl(new HashMapDB()));
+        this(store, new HashMapDB(), new HashMapDB());
     }
 
-    public RepositoryImpl(TrieStore store, KeyValueDataSource detailsDS) {
+    public RepositoryImpl(TrieStore store, KeyValueDataSource detailsDS, KeyValueDataSource codeDS) {
+        this(store, detailsDS, new CodeStore(codeDS, RskSystemProperties.CONFIG.codeCacheSize()));
+    }
+
+    public RepositoryImpl(TrieStore store, KeyValueDataSource detailsDS, CodeStore codeStore) {
+        this(store, detailsDS, codeStore, null);
+    }
+
+    public RepositoryImpl(TrieStore store, KeyValueDataSource detailsDS, CodeStore codeStore, FlatState flatState) {
         this.store = store;
         this.trie = new TrieImpl(store, true);
         this.detailsDataStore = new DetailsDataStore();
         this.detailsDataStore.setDB(new DatabaseImpl(detailsDS));
+        this.codeStore = codeStore;
+        this.flatState = flatState;
+        this.flatRoot = this.trie.getHash();
+    }
+
+    public RepositoryImpl(TrieStore store, DetailsDataStore detailsDataStore, CodeStore codeStore) {
+        this(store, detailsDataStore, codeStore, null);
     }
 
-    public RepositoryImpl(TrieStore store, DetailsDataStore detailsDataStore) {
+    public RepositoryImpl(TrieStore store, DetailsDataStore detailsDataStore, CodeStore codeStore, FlatState flatState) {
         this.store = store;
         this.trie = new TrieImpl(store, true);
         this.detailsDataStore = detailsDataStore;
+        this.codeStore = codeStore;
+        this.flatState = flatState;
+        this.flatRoot = this.trie.getHash();
     }
 
     @Override
@@ -96,9 +136,7 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
     @Override
     public synchronized AccountState getAccountState(byte[] addr) {
         AccountState result = null;
-        byte[] accountData = null;
-
-        accountData = this.trie.get(addr);
+        byte[] accountData = getAccountData(addr);
 
         if (accountData != null && accountData.length != 0)
             result = new AccountState(accountData);
@@ -106,10 +144,31 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
         return result;
     }
 
+    // the encoded account, from the flat values if they are known
+    private byte[] getAccountData(byte[] addr) {
+        if (flatState == null)
+            return this.trie.get(addr);
+
+        ByteArrayWrapper address = wrap(addr);
+        byte[] accountData = flatDiff.getAccount(address);
+
+        if (accountData == null)
+            accountData = flatState.getAccount(flatRoot, address);
+
+        if (accountData == null) {
+            accountData = this.trie.get(addr);
+            flatState.putAccount(flatRoot, address, accountData);
+        }
+
+        return accountData;
+    }
+
     @Override
     public synchronized void delete(byte[] addr)
     {
         this.trie = this.trie.delete(addr);
+        recordAccount(wrap(addr), null);
+        clearStorage(wrap(addr));
     }
 
     @Override
@@ -138,45 +197,56 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
 
     @Override
     public synchronized ContractDetails getContractDetails(byte[] addr) {
+        return getContractDetails(addr, true);
+    }
+
+    // the details are stored without the code, it is added from the code store
+    // only when asked for: the storage updates don't need it
+    private ContractDetails getContractDetails(byte[] addr, boolean withCode) {
         // That part is important cause if we have
         // to sync details storage according the trie root
         // saved in the account
         AccountState accountState = getAccountState(addr);
         byte[] storageRoot = EMPTY_TRIE_HASH;
         if (accountState != null)
-            storageRoot = getAccountState(addr).getStateRoot();
+            storageRoot = accountState.getStateRoot();
         ContractDetails details =  detailsDataStore.get(addr);
         if (details != null)
             details = details.getSnapshotTo(storageRoot);
 
+        if (withCode && details != null && accountState != null && !Arrays.equals(accountState.getCodeHash(), EMPTY_DATA_HASH)) {
+            byte[] code = codeStore.get(accountState.getCodeHash());
+
+            if (code != null)
+                details.setCode(code);
+        }
+
         return  details;
     }
 
     @Override
     public synchronized void saveCode(byte[] addr, byte[] code) {
         AccountState accountState = getAccountState(addr);
-        ContractDetails details = getContractDetails(addr);
+        ContractDetails details = getContractDetails(addr, false);
 
         if (accountState == null) {
             accountState = createAccount(addr);
-            details = getContractDetails(addr);
+            details = getContractDetails(addr, false);
         }
 
+        byte[] codeHash = sha3(code);
         details.setCode(code);
-        accountState.setCodeHash(sha3(code));
+        accountState.setCodeHash(codeHash);
 
-        updateContractDetails(addr, details);
+        saveContractDetails(addr, details, codeHash);
         updateAccountState(addr, accountState);
     }
 
     @Override
     public synchronized byte[] getCode(byte[] addr) {
-        if (!isExist(addr))
-            return EMPTY_BYTE_ARRAY;
-
-        AccountState  account = getAccountState(addr);
+        AccountState account = getAccountState(addr);
 
-        if (account.isHibernated())
+        if (account == null || account.isHibernated())
             return EMPTY_BYTE_ARRAY;
 
         byte[] codeHash = account.getCodeHash();
@@ -184,16 +254,22 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
         if (Arrays.equals(codeHash, EMPTY_DATA_HASH))
             return EMPTY_BYTE_ARRAY;
 
-        ContractDetails details = getContractDetails(addr);
+        byte[] code = codeStore.get(codeHash);
+
+        if (code != null)
+            return ByteUtils.clone(code);
+
+        // details saved before the code store, that still have the code
+        ContractDetails details = getContractDetails(addr, false);
         return (details == null) ? null : details.getCode();
     }
 
     @Override
     public synchronized void addStorageRow(byte[] addr, DataWord key, DataWord value) {
-        ContractDetails details = getContractDetails(addr);
+        ContractDetails details = getContractDetails(addr, false);
         if (details == null) {
             createAccount(addr);
-            details = getContractDetails(addr);
+            details = getContractDetails(addr, false);
         }
 
         details.put(key, value);
@@ -203,11 +279,11 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
 
     @Override
     public synchronized void addStorageBytes(byte[] addr, DataWord key, byte[] value) {
-        ContractDetails details = getContractDetails(addr);
+        ContractDetails details = getContractDetails(addr, false);
 
         if (details == null) {
             createAccount(addr);
-            details = getContractDetails(addr);
+            details = getContractDetails(addr, false);
         }
 
         details.putBytes(key, value);
@@ -217,7 +293,12 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
 
     @Override
     public synchronized DataWord getStorageValue(byte[] addr, DataWord key) {
-        ContractDetails details = getContractDetails(addr);
+        if (flatState != null) {
+            byte[] value = getStorageData(addr, key);
+            return (value == null || value.length == 0) ? null : new DataWord(value);
+        }
+
+        ContractDetails details = getContractDetails(addr, false);
         return (details == null) ? null : details.get(key);
     }
 
@@ -241,10 +322,43 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
 
     @Override
     public synchronized byte[] getStorageBytes(byte[] addr, DataWord key) {
-        ContractDetails details = getContractDetails(addr);
+        if (flatState != null) {
+            byte[] value = getStorageData(addr, key);
+            return (value == null || value.length == 0) ? null : value;
+        }
+
+        ContractDetails details = getContractDetails(addr, false);
         return (details == null) ? null : details.getBytes(key);
     }
 
+    // the stored value, from the flat values if they are known; the values of
+    // an account with cleared storage are not kept until its next layer
+    private byte[] getStorageData(byte[] addr, DataWord key) {
+        ByteArrayWrapper address = wrap(addr);
+        ByteArrayWrapper storageKey = wrap(key.getData());
+        byte[] value = flatDiff.getStorage(address, storageKey);
+
+        if (value != null)
+            return value;
+
+        boolean cleared = flatDiff.isCleared(address);
+
+        if (!cleared) {
+            value = flatState.getStorage(flatRoot, address, storageKey);
+
+            if (value != null)
+                return value;
+        }
+
+        ContractDetails details = getContractDetails(addr, false);
+        value = (details == null) ? null : details.getBytes(key);
+
+        if (!cleared)
+            flatState.putStorage(flatRoot, address, wrap(ByteUtils.clone(key.getData())), value);
+
+        return value;
+    }
+
     @Override
     public synchronized BigInteger getBalance(byte[] addr) {
         AccountState account = getAccountState(addr);
@@ -284,6 +398,9 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
 
     @Override
     public synchronized void flush() {
+        // the code first, the details saved with the flush refer to it
+        this.codeStore.flush();
+
         if (this.detailsDataStore != null)
             this.detailsDataStore.flush();
 
@@ -308,7 +425,19 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
 
     @Override
     public synchronized void syncToRoot(byte[] root) {
+        moveToRoot(root);
+
+        if (this.flatState != null)
+            this.flatState.setHead(root);
+    }
+
+    // the snapshots are moved without changing the head of the flat state
+    private synchronized void moveToRoot(byte[] root) {
         this.trie = this.trie.getSnapshotTo(root);
+        this.flatRoot = root;
+        this.flatDiff = new StateDiff();
+        this.flatDirty = false;
+        this.flatLayerRoot = null;
     }
 
     @Override
@@ -331,6 +460,11 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
                                          Map<ByteArrayWrapper, ContractDetails> detailsCache) {
         logger.info("updatingBatch: detailsCache.size: {}", detailsCache.size());
 
+        // the account states are put in the trie at the end, in a single putAll,
+        // keeping the order of the cache (a null value deletes the account)
+        Map<ByteArrayWrapper, AccountState> accounts = new LinkedHashMap<>();
+        Map<ByteArrayWrapper, ContractDetails> contracts = new HashMap<>();
+
         for (Map.Entry<ByteArrayWrapper, AccountState> entry : stateCache.entrySet()) {
             ByteArrayWrapper hash = entry.getKey();
             AccountState accountState = entry.getValue();
@@ -338,7 +472,8 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
             ContractDetails contractDetails = detailsCache.get(hash);
 
             if (accountState.isDeleted()) {
-                delete(hash.getData());
+                accounts.put(hash, null);
+                clearStorage(hash);
                 logger.debug("delete: [{}]",
                         Hex.toHexString(hash.getData()));
             } else {
@@ -346,8 +481,9 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
                     continue;
 
                 ContractDetailsCacheImpl contractDetailsCache = (ContractDetailsCacheImpl) contractDetails;
+                boolean newDetails = contractDetailsCache.getOriginalContractDetails() == null;
 
-                if (contractDetailsCache.getOriginalContractDetails() == null) {
+                if (newDetails) {
                     ContractDetails originalContractDetails = new ContractDetailsImpl();
                     originalContractDetails.setAddress(hash.getData());
                     contractDetailsCache.setOriginalContractDetails(originalContractDetails);
@@ -357,15 +493,46 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
                 contractDetails = contractDetailsCache.getOriginalContractDetails();
 
                 byte[] data = hash.getData();
-                updateContractDetails(data, contractDetails);
+                saveContractDetails(data, contractDetails, accountState.getCodeHash());
+
+                accounts.put(hash, accountState);
 
                 if (!Arrays.equals(accountState.getCodeHash(), EMPTY_TRIE_HASH))
-                    accountState.setStateRoot(contractDetails.getStorageHash());
+                    contracts.put(hash, contractDetails);
+
+                recordStorage(hash, contractDetailsCache, contractDetails, newDetails, contracts.containsKey(hash));
+            }
+        }
+
+        // the storage tries are independent, so they are hashed in parallel
+        // before the account trie, that needs their roots
+        if (contracts.size() > 1)
+            contracts.values().parallelStream().forEach(ContractDetails::getStorageHash);
+
+        Map<ByteArrayWrapper, byte[]> trieValues = new LinkedHashMap<>();
+
+        for (Map.Entry<ByteArrayWrapper, AccountState> entry : accounts.entrySet()) {
+            ByteArrayWrapper hash = entry.getKey();
+            AccountState accountState = entry.getValue();
 
-                updateAccountState(data, accountState);
+            if (accountState == null) {
+                trieValues.put(hash, null);
+                continue;
             }
+
+            ContractDetails contractDetails = contracts.get(hash);
+
+            if (contractDetails != null)
+                accountState.setStateRoot(contractDetails.getStorageHash());
+
+            trieValues.put(hash, accountState.getEncoded());
         }
 
+        this.trie = this.trie.putAll(trieValues);
+
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : trieValues.entrySet())
+            recordAccount(entry.getKey(), entry.getValue());
+
         logger.info("updated: detailsCache.size: {}", detailsCache.size());
 
         stateCache.clear();
@@ -379,6 +546,9 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
 
         byte[] rootHash = this.trie.getHash();
 
+        if (this.flatDirty)
+            addFlatLayer(rootHash);
+
         logger.trace("getting repository root hash {}", Hex.toHexString(rootHash));
 
         return rootHash;
@@ -393,7 +563,13 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
         ContractDetails details = getContractDetails(addr);
 
         account = (account == null) ? new AccountState(BigInteger.ZERO, BigInteger.ZERO) : account.clone();
-        details = new ContractDetailsCacheImpl(details);
+
+        if (flatState == null) {
+            details = new ContractDetailsCacheImpl(details);
+        } else {
+            byte[] address = ByteUtils.clone(addr);
+            details = new ContractDetailsCacheImpl(details, key -> ByteUtils.clone(getStorageBytes(address, key)));
+        }
 
         ByteArrayWrapper wrappedAddress = wrap(addr);
         cacheAccounts.put(wrappedAddress, account);
@@ -401,25 +577,112 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
     }
 
     @Override
-    public synchronized Repository getSnapshotTo(byte[] root) {
-        RepositoryImpl snapshotRepository = new RepositoryImpl(this.store, this.detailsDataStore);
-        snapshotRepository.syncToRoot(root);
+    public Repository getSnapshotTo(byte[] root) {
+        RepositoryImpl snapshotRepository = new RepositoryImpl(this.store, this.detailsDataStore, this.codeStore, this.flatState);
+        snapshotRepository.moveToRoot(root);
+
+        if (snapshotRepository.trie == null)
+            throw new MissingStateException(root);
+
         return snapshotRepository;
     }
 
+    public TrieStore getTrieStore() {
+        return this.store;
+    }
+
     @Override
     public synchronized DetailsDataStore getDetailsDataStore() {
         return this.detailsDataStore;
     }
 
+    public CodeStore getCodeStore() {
+        return this.codeStore;
+    }
+
     @Override
     public synchronized void updateContractDetails(final byte[] address, final ContractDetails contractDetails) {
-        detailsDataStore.update(address, contractDetails);
+        // the storage root of the account is not updated here
+        clearStorage(wrap(address));
+
+        byte[] code = contractDetails.getCode();
+
+        if (code == null || code.length == 0)
+            detailsDataStore.update(address, contractDetails);
+        else
+            saveContractDetails(address, contractDetails, sha3(code));
+    }
+
+    // the code goes to the code store, under the hash of the account, and a
+    // copy of the details is saved without it: the given details keep their code
+    private void saveContractDetails(byte[] address, ContractDetails contractDetails, byte[] codeHash) {
+        byte[] code = contractDetails.getCode();
+        ContractDetails savedDetails = contractDetails;
+
+        if (code != null && code.length > 0) {
+            codeStore.put(codeHash, code);
+            savedDetails = contractDetails.getSnapshotTo(contractDetails.getStorageHash());
+            savedDetails.setCode(EMPTY_BYTE_ARRAY);
+        }
+
+        detailsDataStore.update(address, savedDetails);
     }
 
     @Override
     public synchronized void updateAccountState(final byte[] addr, final AccountState accountState) {
-        this.trie = this.trie.put(addr, accountState.getEncoded());
+        byte[] encoded = accountState.getEncoded();
+        this.trie = this.trie.put(addr, encoded);
+        recordAccount(wrap(addr), encoded);
+    }
+
+    private void recordAccount(ByteArrayWrapper address, byte[] encoded) {
+        if (this.flatState == null)
+            return;
+
+        this.flatDiff.putAccount(address, encoded == null ? EMPTY_BYTE_ARRAY : encoded);
+        this.flatDirty = true;
+    }
+
+    private void clearStorage(ByteArrayWrapper address) {
+        if (this.flatState == null)
+            return;
+
+        this.flatDiff.clearStorage(address);
+        this.flatDirty = true;
+    }
+
+    // the storage values of a track commit, read back from the committed details;
+    // they are only kept if the storage root of the account is updated with them
+    private void recordStorage(ByteArrayWrapper address, ContractDetailsCacheImpl cache, ContractDetails details,
+                               boolean newDetails, boolean withStorageRoot) {
+        if (this.flatState == null)
+            return;
+
+        Set<DataWord> keys = cache.getCachedKeys();
+
+        if (newDetails || (!withStorageRoot && !keys.isEmpty()))
+            clearStorage(address);
+
+        if (!withStorageRoot)
+            return;
+
+        for (DataWord key : keys) {
+            byte[] value = details.getBytes(key);
+            this.flatDiff.putStorage(address, wrap(ByteUtils.clone(key.getData())), value == null ? EMPTY_BYTE_ARRAY : value);
+            this.flatDirty = true;
+        }
+    }
+
+    // the changes are the layer of the current state over flatRoot, replacing
+    // the layer added by the previous getRoot (it is kept if there are layers over it)
+    private void addFlatLayer(byte[] root) {
+        this.flatState.addLayer(root, this.flatRoot, this.flatDiff.copy());
+
+        if (this.flatLayerRoot != null && !Arrays.equals(this.flatLayerRoot, root))
+            this.flatState.removeLayer(this.flatLayerRoot);
+
+        this.flatLayerRoot = Arrays.equals(root, this.flatRoot) ? null : root;
+        this.flatDirty = false;
     }
 
     @Nonnull
@@ -0,0 +1,106 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Accounts and storage values changed from a state to another one, as kept
+ * by {@link FlatState}: the encoded accounts by address (empty for a deleted
+ * account), the storage values by address and key (empty for no value), and
+ * the addresses whose storage was replaced; the storage values of those
+ * addresses that are not in the diff are unknown.
+ */
+class StateDiff {
+    private final Map<ByteArrayWrapper, byte[]> accounts = new HashMap<>();
+    private final Map<ByteArrayWrapper, Map<ByteArrayWrapper, byte[]>> storage = new HashMap<>();
+    private final Set<ByteArrayWrapper> cleared = new HashSet<>();
+
+    /**
+     * @return the encoded account, empty if it was deleted, or <tt>null</tt>
+     * if it is not in the diff
+     */
+    byte[] getAccount(ByteArrayWrapper address) {
+        return accounts.get(address);
+    }
+
+    void putAccount(ByteArrayWrapper address, byte[] value) {
+        accounts.put(address, value);
+    }
+
+    /**
+     * @return the storage value, empty if there is no value, or <tt>null</tt>
+     * if it is not in the diff
+     */
+    byte[] getStorage(ByteArrayWrapper address, ByteArrayWrapper key) {
+        Map<ByteArrayWrapper, byte[]> values = storage.get(address);
+        return values == null ? null : values.get(key);
+    }
+
+    void putStorage(ByteArrayWrapper address, ByteArrayWrapper key, byte[] value) {
+        storage.computeIfAbsent(address, k -> new HashMap<>()).put(key, value);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the storage of the address was replaced
+     */
+    boolean isCleared(ByteArrayWrapper address) {
+        return cleared.contains(address);
+    }
+
+    void clearStorage(ByteArrayWrapper address) {
+        storage.remove(address);
+        cleared.add(address);
+    }
+
+    Map<ByteArrayWrapper, byte[]> getAccounts() {
+        return accounts;
+    }
+
+    Map<ByteArrayWrapper, Map<ByteArrayWrapper, byte[]>> getStorage() {
+        return storage;
+    }
+
+    Set<ByteArrayWrapper> getCleared() {
+        return cleared;
+    }
+
+    boolean isEmpty() {
+        return accounts.isEmpty() && storage.isEmpty() && cleared.isEmpty();
+    }
+
+    StateDiff copy() {
+        StateDiff copy = new StateDiff();
+
+        copy.accounts.putAll(accounts);
+
+        for (Map.Entry<ByteArrayWrapper, Map<ByteArrayWrapper, byte[]>> entry : storage.entrySet())
+            copy.storage.put(entry.getKey(), new HashMap<>(entry.getValue()));
+
+        copy.cleared.addAll(cleared);
+
+        return copy;
+    }
+}
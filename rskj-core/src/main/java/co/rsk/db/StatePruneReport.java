@@ -0,0 +1,72 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.config.RskSystemProperties;
+import co.rsk.trie.PrunedTrieStore;
+import org.ethereum.config.DefaultConfig;
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.datasource.LevelDbDataSource;
+import org.ethereum.db.BlockStore;
+
+/**
+ * Reports the size of the state database that the state pruning would reclaim,
+ * with the configured database.prune options; with -prune it deletes the
+ * unreachable nodes. The node must be stopped.
+ *
+ * Usage: StatePruneReport [-prune]
+ */
+public class StatePruneReport {
+    private StatePruneReport() {
+    }
+
+    public static void main(String[] args) {
+        RskSystemProperties config = RskSystemProperties.CONFIG;
+        boolean prune = args.length > 0 && "-prune".equals(args[0]);
+
+        KeyValueDataSource state = open("state");
+        KeyValueDataSource blocks = open("blocks");
+
+        try {
+            BlockStore blockStore = DefaultConfig.buildBlockStore(config.databaseDir(), blocks);
+            PrunedTrieStore store = new PrunedTrieStore(state);
+
+            StatePruner pruner = new StatePruner(store, blockStore,
+                    config.statePruningKeepBlocks(), config.statePruningCheckpointInterval(), config.statePruningInterval());
+
+            PrunedTrieStore.PruneResult result = pruner.prune(!prune);
+
+            System.out.println(String.format("best block %d, keeping %d blocks, checkpoint interval %d",
+                    blockStore.getMaxNumber(), config.statePruningKeepBlocks(), config.statePruningCheckpointInterval()));
+            System.out.println(String.format("retained: %d nodes, %d KB", result.getRetainedNodes(), result.getRetainedBytes() / 1024));
+            System.out.println(String.format("%s: %d nodes, %d KB", prune ? "deleted" : "reclaimable", result.getPrunedNodes(), result.getPrunedBytes() / 1024));
+        }
+        finally {
+            state.close();
+            blocks.close();
+        }
+    }
+
+    private static KeyValueDataSource open(String name) {
+        KeyValueDataSource dataSource = new LevelDbDataSource(name);
+        dataSource.init();
+        return dataSource;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.trie.PrunedTrieStore;
+import org.ethereum.core.Block;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.db.BlockStore;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Prunes the state trie store every interval blocks, in a background thread.
+ *
+ * The retained states are the ones of all the blocks (including the forks) of
+ * the last keepBlocks levels, and of the best chain blocks whose number is a
+ * multiple of checkpointInterval (0 for no checkpoints). The older states can't
+ * be read, and a reorganization deeper than keepBlocks can't be processed.
+ *
+ * A prune is skipped if the previous one is still running.
+ */
+public class StatePruner extends EthereumListenerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger("stateprune");
+
+    private final PrunedTrieStore store;
+    private final BlockStore blockStore;
+    private final int keepBlocks;
+    private final int checkpointInterval;
+    private final int interval;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StatePruner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StatePruner(PrunedTrieStore store, BlockStore blockStore, int keepBlocks, int checkpointInterval, int interval) {
+        this.store = store;
+        this.blockStore = blockStore;
+        this.keepBlocks = Math.max(1, keepBlocks);
+        this.checkpointInterval = checkpointInterval;
+        this.interval = Math.max(1, interval);
+    }
+
+    @Override
+    public void onBlock(Block block, List<TransactionReceipt> receipts) {
+        if (block.getNumber() % this.interval != 0)
+            return;
+
+        if (!this.running.compareAndSet(false, true)) {
+            logger.info("State prune at block {} skipped, the previous one is running", block.getNumber());
+            return;
+        }
+
+        this.executor.execute(() -> {
+            try {
+                this.prune(false);
+            }
+            catch (RuntimeException ex) {
+                logger.error("Error pruning the state", ex);
+            }
+            finally {
+                this.running.set(false);
+            }
+        });
+    }
+
+    public PrunedTrieStore.PruneResult prune(boolean dryRun) {
+        return this.store.prune(getRetainedRoots(this.blockStore, this.keepBlocks, this.checkpointInterval), dryRun);
+    }
+
+    /**
+     * Returns the state roots of the blocks in the last keepBlocks levels, of the
+     * best block, and of the checkpoint blocks of the best chain
+     */
+    public static List<byte[]> getRetainedRoots(BlockStore blockStore, int keepBlocks, int checkpointInterval) {
+        List<byte[]> roots = new ArrayList<>();
+
+        Block bestBlock = blockStore.getBestBlock();
+
+        if (bestBlock != null)
+            roots.add(bestBlock.getStateRoot());
+
+        long maxNumber = blockStore.getMaxNumber();
+        long firstNumber = Math.max(0, maxNumber - keepBlocks + 1);
+
+        for (long number = firstNumber; number <= maxNumber; number++)
+            for (Block block : blockStore.getChainBlocksByNumber(number))
+                roots.add(block.getStateRoot());
+
+        if (checkpointInterval > 0)
+            for (long number = 0; number < firstNumber; number += checkpointInterval) {
+                Block block = blockStore.getChainBlockByNumber(number);
+
+                if (block != null)
+                    roots.add(block.getStateRoot());
+            }
+
+        return roots;
+    }
+}
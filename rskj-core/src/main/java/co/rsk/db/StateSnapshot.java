@@ -0,0 +1,141 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.config.RemascConfigFactory;
+import co.rsk.config.RskSystemProperties;
+import co.rsk.remasc.RemascContract;
+import co.rsk.trie.TrieStoreImpl;
+import org.ethereum.config.DefaultConfig;
+import org.ethereum.core.Block;
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.datasource.LevelDbDataSource;
+import org.ethereum.db.BlockStore;
+
+import java.io.*;
+
+/**
+ * Exports the state of a block of the best chain (default the best block) to
+ * a snapshot file, or imports a snapshot into an empty database, so a new node
+ * starts from that block instead of processing the whole chain. The node must
+ * be stopped.
+ *
+ * The snapshot has the block ancestors that the next blocks read, so they can
+ * be connected after the import: the blocks up to the remasc maturity, and the
+ * ones of the uncle validation and of the BLOCKHASH opcode.
+ *
+ * Usage: StateSnapshot -export file [-block number]
+ *        StateSnapshot -import file
+ */
+public class StateSnapshot {
+    // blocks whose hash the BLOCKHASH opcode returns
+    private static final int BLOCKHASH_BLOCKS = 256;
+
+    private StateSnapshot() {
+    }
+
+    /**
+     * Number of blocks of a snapshot, the block of the state and its ancestors
+     */
+    public static int getHistoryLength() {
+        long maturity = new RemascConfigFactory(RemascContract.REMASC_CONFIG).createRemascConfig(RskSystemProperties.CONFIG.netName()).getMaturity();
+        int uncleGenerationLimit = RskSystemProperties.CONFIG.getBlockchainConfig().getCommonConstants().getUncleGenerationLimit();
+
+        return (int) Math.max(maturity, Math.max(BLOCKHASH_BLOCKS, uncleGenerationLimit + 1L));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && "-export".equals(args[0]))
+            export(args[1], args.length >= 4 && "-block".equals(args[2]) ? Long.parseLong(args[3]) : -1);
+        else if (args.length >= 2 && "-import".equals(args[0]))
+            importFrom(args[1]);
+        else {
+            System.out.println("Usage: StateSnapshot -export file [-block number]");
+            System.out.println("       StateSnapshot -import file");
+        }
+    }
+
+    private static void export(String filename, long number) throws IOException {
+        KeyValueDataSource state = open("state");
+        KeyValueDataSource details = open("details");
+        KeyValueDataSource code = open("code");
+        KeyValueDataSource blocks = open("blocks");
+
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(filename))) {
+            BlockStore blockStore = DefaultConfig.buildBlockStore(RskSystemProperties.CONFIG.databaseDir(), blocks);
+            Block block = number < 0 ? blockStore.getBestBlock() : blockStore.getChainBlockByNumber(number);
+
+            if (block == null) {
+                System.out.println("Block not found");
+                return;
+            }
+
+            RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(state), details, code);
+            StateSnapshotExporter exporter = new StateSnapshotExporter(repository, output);
+
+            StateSnapshotExporter.Counts counts = exporter.export(blockStore, block, getHistoryLength());
+            System.out.println(String.format("block %d exported: %s", block.getNumber(), counts));
+        }
+        finally {
+            state.close();
+            details.close();
+            code.close();
+            blocks.close();
+        }
+    }
+
+    private static void importFrom(String filename) throws IOException, InterruptedException {
+        KeyValueDataSource state = open("state");
+        KeyValueDataSource details = open("details");
+        KeyValueDataSource code = open("code");
+        KeyValueDataSource blocks = open("blocks");
+
+        try (InputStream input = new BufferedInputStream(new FileInputStream(filename))) {
+            BlockStore blockStore = DefaultConfig.buildBlockStore(RskSystemProperties.CONFIG.databaseDir(), blocks);
+
+            if (blockStore.getBestBlock() != null) {
+                System.out.println("The database is not empty");
+                return;
+            }
+
+            StateSnapshotImporter importer = new StateSnapshotImporter(state, details, code, Runtime.getRuntime().availableProcessors());
+            StateSnapshotExporter.Counts counts = importer.importFrom(input);
+
+            // the blocks are saved at the end, a failed import leaves no best block
+            Block block = importer.getBlock();
+            importer.saveBlocks(blockStore);
+            blockStore.flush();
+
+            System.out.println(String.format("block %d imported: %s", block.getNumber(), counts));
+        }
+        finally {
+            state.close();
+            details.close();
+            code.close();
+            blocks.close();
+        }
+    }
+
+    private static KeyValueDataSource open(String name) {
+        KeyValueDataSource dataSource = new LevelDbDataSource(name);
+        dataSource.init();
+        return dataSource;
+    }
+}
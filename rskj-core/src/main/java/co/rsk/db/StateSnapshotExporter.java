@@ -0,0 +1,274 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.trie.TrieNodeIterator;
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.ContractDetails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
+import static org.ethereum.crypto.SHA3Helper.sha3;
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
+/**
+ * Writes the state of a block as a snapshot, that {@link StateSnapshotImporter}
+ * loads into an empty database.
+ *
+ * The snapshot starts with a header (magic, version, the number of blocks, and
+ * the encoded blocks with their total difficulties, from the oldest to the block
+ * of the state) followed by chunks. The blocks before the one of the state are
+ * the ones that the next blocks read: the remasc maturity, the uncle ancestors
+ * and the BLOCKHASH window. Each chunk has a type, its number of
+ * entries, the length of its payload, the payload, and the sha3 of the payload.
+ * The entries are length prefixed byte arrays:
+ * - STATE: account trie nodes
+ * - CODE: contract codes
+ * - DETAILS: a contract address and its encoded details, without the code
+ * - STORAGE: the contract address, and nodes of its external storage trie
+ * - END: the total number of entries of the other types, as longs
+ *
+ * The tries are written node by node, walking them from the roots, so the
+ * memory used doesn't grow with the state; the importer saves the nodes as
+ * they are, under their hashes.
+ */
+public class StateSnapshotExporter {
+    static final int MAGIC = 0x52534b53; // "RSKS"
+    static final int VERSION = 2;
+
+    static final byte STATE = 1;
+    static final byte CODE = 2;
+    static final byte DETAILS = 3;
+    static final byte STORAGE = 4;
+    static final byte END = 5;
+
+    // payload length that closes a chunk
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger("snapshot");
+    private static final byte[] EMPTY_DATA_HASH = sha3(EMPTY_BYTE_ARRAY);
+
+    private final RepositoryImpl repository;
+    private final DataOutputStream output;
+
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private final DataOutputStream payloadOutput = new DataOutputStream(payload);
+    private byte chunkType;
+    private byte[] chunkAddress;
+    private int chunkEntries;
+
+    private final Counts counts = new Counts();
+
+    public StateSnapshotExporter(RepositoryImpl repository, OutputStream output) {
+        this.repository = repository;
+        this.output = new DataOutputStream(output);
+    }
+
+    /**
+     * Writes the snapshot of the state of the block
+     *
+     * @param blockStore    the store of the block and its ancestors
+     * @param block         the block of the state
+     * @param nblocks       the number of blocks to write, the block and its ancestors;
+     *                      less if the chain is shorter
+     *
+     * @return  the number of entries written
+     */
+    public Counts export(BlockStore blockStore, Block block, int nblocks) throws IOException {
+        Deque<Block> blocks = new ArrayDeque<>();
+        Block ancestor = block;
+
+        while (ancestor != null && blocks.size() < nblocks) {
+            blocks.addFirst(ancestor);
+            ancestor = ancestor.isGenesis() ? null : blockStore.getBlockByHash(ancestor.getParentHash());
+        }
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(blocks.size());
+
+        for (Block b : blocks) {
+            writeBytes(output, b.getEncoded());
+            writeBytes(output, blockStore.getTotalDifficultyForHash(b.getHash()).toByteArray());
+        }
+
+        byte[] root = block.getStateRoot();
+
+        for (Iterator<byte[]> nodes = new TrieNodeIterator(repository.getTrieStore(), root); nodes.hasNext();) {
+            add(STATE, null, nodes.next());
+            counts.stateNodes++;
+        }
+
+        Repository snapshot = repository.getSnapshotTo(root);
+        Set<ByteArrayWrapper> codeHashes = new HashSet<>();
+
+        // the details of the deleted accounts are in the store too
+        for (ByteArrayWrapper address : repository.getDetailsDataStore().keys()) {
+            byte[] addr = address.getData();
+            AccountState accountState = snapshot.getAccountState(addr);
+
+            if (accountState == null)
+                continue;
+
+            ContractDetails details = snapshot.getContractDetails(addr);
+
+            if (details == null)
+                continue;
+
+            byte[] codeHash = accountState.getCodeHash();
+            byte[] code = details.getCode();
+
+            if (!Arrays.equals(codeHash, EMPTY_DATA_HASH) && code != null && code.length > 0 && codeHashes.add(new ByteArrayWrapper(codeHash))) {
+                add(CODE, null, code);
+                counts.codes++;
+            }
+
+            details.setCode(EMPTY_BYTE_ARRAY);
+            add(DETAILS, null, addr, details.getEncoded());
+            counts.details++;
+
+            if (details instanceof ContractDetailsImpl && ((ContractDetailsImpl) details).hasExternalStorage()
+                    && !Arrays.equals(accountState.getStateRoot(), EMPTY_TRIE_HASH))
+                for (Iterator<byte[]> nodes = ((ContractDetailsImpl) details).getStorageNodes(); nodes.hasNext();) {
+                    add(STORAGE, addr, nodes.next());
+                    counts.storageNodes++;
+                }
+        }
+
+        writeChunk();
+
+        ByteArrayOutputStream totals = new ByteArrayOutputStream();
+        DataOutputStream totalsOutput = new DataOutputStream(totals);
+        totalsOutput.writeLong(counts.stateNodes);
+        totalsOutput.writeLong(counts.codes);
+        totalsOutput.writeLong(counts.details);
+        totalsOutput.writeLong(counts.storageNodes);
+        writeChunk(output, END, 0, totals.toByteArray());
+
+        output.flush();
+
+        logger.info("State snapshot of block {} written: {}", block.getNumber(), counts);
+
+        return counts;
+    }
+
+    private void add(byte type, byte[] address, byte[]... values) throws IOException {
+        if (type != chunkType || !Arrays.equals(address, chunkAddress) || payload.size() >= CHUNK_SIZE)
+            writeChunk();
+
+        if (chunkEntries == 0) {
+            chunkType = type;
+            chunkAddress = address;
+
+            if (address != null)
+                writeBytes(payloadOutput, address);
+        }
+
+        for (byte[] value : values)
+            writeBytes(payloadOutput, value);
+
+        chunkEntries++;
+    }
+
+    private void writeChunk() throws IOException {
+        if (chunkEntries > 0)
+            writeChunk(output, chunkType, chunkEntries, payload.toByteArray());
+
+        payload.reset();
+        chunkEntries = 0;
+    }
+
+    private static void writeChunk(DataOutputStream output, byte type, int entries, byte[] payload) throws IOException {
+        output.writeByte(type);
+        output.writeInt(entries);
+        writeBytes(output, payload);
+        output.write(sha3(payload));
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Number of entries of each type in a snapshot
+     */
+    public static class Counts {
+        long stateNodes;
+        long codes;
+        long details;
+        long storageNodes;
+
+        public long getStateNodes() {
+            return stateNodes;
+        }
+
+        public long getCodes() {
+            return codes;
+        }
+
+        public long getDetails() {
+            return details;
+        }
+
+        public long getStorageNodes() {
+            return storageNodes;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Counts))
+                return false;
+
+            Counts counts = (Counts) other;
+
+            return stateNodes == counts.stateNodes && codes == counts.codes
+                    && details == counts.details && storageNodes == counts.storageNodes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(stateNodes + 31 * (codes + 31 * (details + 31 * storageNodes)));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d state nodes, %d codes, %d contract details, %d storage nodes",
+                    stateNodes, codes, details, storageNodes);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.trie.TrieNodeIterator;
+import co.rsk.trie.TrieSerializationException;
+import co.rsk.trie.TrieStoreImpl;
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Block;
+import org.ethereum.datasource.DataSourcePool;
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.ByteArrayWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static co.rsk.db.StateSnapshotExporter.*;
+import static org.ethereum.crypto.SHA3Helper.sha3;
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * Loads a snapshot written by {@link StateSnapshotExporter} into the state,
+ * details and code data sources, and the contract storage data sources.
+ *
+ * The chunks are read in order, and verified and saved by a pool of threads;
+ * the storage chunks of a contract are saved one at a time, as they open and
+ * close its data source. The trie nodes and the codes are saved under the sha3
+ * of their content, so a chunk whose hash is right can't corrupt the tries. At
+ * the end the number of entries of each type and the state root of the block
+ * are checked, and the details of each contract against its account: they are
+ * not content addressed.
+ *
+ * The blocks must be a chain, that {@link #saveBlocks} writes to the block store
+ * once the state is loaded.
+ */
+public class StateSnapshotImporter {
+    private static final Logger logger = LoggerFactory.getLogger("snapshot");
+
+    private static final int HASH_LENGTH = 32;
+    private static final byte[] EMPTY_DATA_HASH = sha3(EMPTY_BYTE_ARRAY);
+
+    private final KeyValueDataSource stateDS;
+    private final KeyValueDataSource detailsDS;
+    private final KeyValueDataSource codeDS;
+    private final int threads;
+
+    private final AtomicLong stateNodes = new AtomicLong();
+    private final AtomicLong codes = new AtomicLong();
+    private final AtomicLong details = new AtomicLong();
+    private final AtomicLong storageNodes = new AtomicLong();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final Map<ByteArrayWrapper, Object> storageLocks = new ConcurrentHashMap<>();
+
+    private final List<Block> blocks = new ArrayList<>();
+    private final List<BigInteger> totalDifficulties = new ArrayList<>();
+
+    public StateSnapshotImporter(KeyValueDataSource stateDS, KeyValueDataSource detailsDS, KeyValueDataSource codeDS, int threads) {
+        this.stateDS = stateDS;
+        this.detailsDS = detailsDS;
+        this.codeDS = codeDS;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the block of the imported snapshot
+     */
+    public Block getBlock() {
+        return blocks.get(blocks.size() - 1);
+    }
+
+    public BigInteger getTotalDifficulty() {
+        return totalDifficulties.get(totalDifficulties.size() - 1);
+    }
+
+    /**
+     * Returns the blocks of the snapshot, from the oldest to the block of the state
+     */
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Saves the blocks of the imported snapshot in the main chain, the block of
+     * the state the last, so it becomes the best block
+     */
+    public void saveBlocks(BlockStore blockStore) {
+        for (int k = 0; k < blocks.size(); k++)
+            blockStore.saveBlock(blocks.get(k), totalDifficulties.get(k), true);
+    }
+
+    /**
+     * Loads the snapshot
+     *
+     * @return  the number of entries loaded
+     *
+     * @throws IOException  if the snapshot can't be read, or it is not valid
+     */
+    public StateSnapshotExporter.Counts importFrom(InputStream inputStream) throws IOException, InterruptedException {
+        DataInputStream input = new DataInputStream(inputStream);
+
+        if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            throw new IOException("Not a state snapshot");
+
+        readBlocks(input);
+
+        Block block = getBlock();
+
+        StateSnapshotExporter.Counts totals = null;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // the chunks read and not saved yet
+        Semaphore pending = new Semaphore(threads * 2);
+
+        try {
+            while (failure.get() == null) {
+                byte type = input.readByte();
+                int entries = input.readInt();
+                byte[] payload = readBytes(input);
+                byte[] hash = new byte[HASH_LENGTH];
+                input.readFully(hash);
+
+                if (type == END) {
+                    totals = readTotals(payload, hash);
+                    break;
+                }
+
+                pending.acquire();
+
+                executor.execute(() -> {
+                    try {
+                        load(type, entries, payload, hash);
+                    }
+                    catch (IOException | RuntimeException ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                    finally {
+                        pending.release();
+                    }
+                });
+            }
+        }
+        finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        if (failure.get() != null)
+            throw new IOException("Invalid state snapshot", failure.get());
+
+        StateSnapshotExporter.Counts counts = new StateSnapshotExporter.Counts();
+        counts.stateNodes = stateNodes.get();
+        counts.codes = codes.get();
+        counts.details = details.get();
+        counts.storageNodes = storageNodes.get();
+
+        if (!counts.equals(totals))
+            throw new IOException("Incomplete state snapshot: " + counts + " loaded, " + totals + " expected");
+
+        byte[] root = block.getStateRoot();
+
+        verifyStateTrie(root);
+        verifyDetails(root);
+
+        logger.info("State snapshot of block {} loaded: {}", block.getNumber(), counts);
+
+        return counts;
+    }
+
+    private void load(byte type, int entries, byte[] payload, byte[] hash) throws IOException {
+        if (!Arrays.equals(sha3(payload), hash))
+            throw new IOException("Invalid hash of chunk of type " + type);
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        Map<byte[], byte[]> rows = new HashMap<>();
+
+        if (type == STATE || type == CODE) {
+            for (int k = 0; k < entries; k++) {
+                byte[] value = readBytes(input);
+                rows.put(sha3(value), value);
+            }
+
+            if (type == STATE) {
+                stateDS.updateBatch(rows);
+                stateNodes.addAndGet(entries);
+            }
+            else {
+                codeDS.updateBatch(rows);
+                codes.addAndGet(entries);
+            }
+        }
+        else if (type == DETAILS) {
+            for (int k = 0; k < entries; k++)
+                rows.put(readBytes(input), readBytes(input));
+
+            detailsDS.updateBatch(rows);
+            details.addAndGet(entries);
+        }
+        else if (type == STORAGE) {
+            byte[] address = readBytes(input);
+
+            for (int k = 0; k < entries; k++) {
+                byte[] node = readBytes(input);
+                rows.put(sha3(node), node);
+            }
+
+            String name = ContractDetailsImpl.getStorageDataSourceName(address);
+
+            // the pool can close the data source that another thread has just taken
+            synchronized (storageLocks.computeIfAbsent(wrap(address), key -> new Object())) {
+                try {
+                    DataSourcePool.levelDbByName(name).updateBatch(rows);
+                }
+                finally {
+                    DataSourcePool.closeDataSource(name);
+                }
+            }
+
+            storageNodes.addAndGet(entries);
+        }
+        else
+            throw new IOException("Unknown chunk type " + type);
+    }
+
+    private void readBlocks(DataInputStream input) throws IOException {
+        int nblocks = input.readInt();
+
+        if (nblocks < 1)
+            throw new IOException("Invalid number of blocks " + nblocks);
+
+        for (int k = 0; k < nblocks; k++) {
+            Block block = new Block(readBytes(input));
+            BigInteger totalDifficulty = new BigInteger(readBytes(input));
+
+            if (k > 0) {
+                Block parent = blocks.get(k - 1);
+
+                if (!Arrays.equals(block.getParentHash(), parent.getHash()) || block.getNumber() != parent.getNumber() + 1
+                        || !totalDifficulty.equals(totalDifficulties.get(k - 1).add(block.getCumulativeDifficulty())))
+                    throw new IOException("Block " + block.getNumber() + " is not a child of the previous block of the snapshot");
+            }
+
+            blocks.add(block);
+            totalDifficulties.add(totalDifficulty);
+        }
+    }
+
+    // the totals of a snapshot can match without all the nodes of the trie
+    private void verifyStateTrie(byte[] root) throws IOException {
+        try {
+            for (Iterator<byte[]> nodes = new TrieNodeIterator(new TrieStoreImpl(stateDS), root); nodes.hasNext();)
+                nodes.next();
+        }
+        catch (TrieSerializationException ex) {
+            throw new IOException("State trie of root " + Hex.toHexString(root) + " not complete in the snapshot", ex);
+        }
+    }
+
+    // the details must have the storage root of their account, with all the nodes
+    // of the storage trie, and its code must be loaded
+    private void verifyDetails(byte[] root) throws IOException {
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(stateDS), detailsDS, codeDS);
+        repository.syncToRoot(root);
+
+        for (byte[] address : detailsDS.keys()) {
+            AccountState accountState = repository.getAccountState(address);
+
+            if (accountState == null)
+                throw new IOException("Contract details of unknown account " + Hex.toHexString(address));
+
+            if (!Arrays.equals(accountState.getCodeHash(), EMPTY_DATA_HASH) && codeDS.get(accountState.getCodeHash()) == null)
+                throw new IOException("Code of account " + Hex.toHexString(address) + " not found in the snapshot");
+
+            ContractDetailsImpl contractDetails = new ContractDetailsImpl(detailsDS.get(address));
+
+            try {
+                if (!Arrays.equals(contractDetails.getStorageHash(), accountState.getStateRoot()))
+                    throw new IOException("Invalid storage of account " + Hex.toHexString(address));
+
+                for (Iterator<byte[]> nodes = contractDetails.getStorageNodes(); nodes.hasNext();)
+                    nodes.next();
+            }
+            catch (RuntimeException ex) {
+                // the storage root or other storage nodes are not in the snapshot
+                throw new IOException("Invalid storage of account " + Hex.toHexString(address), ex);
+            }
+            finally {
+                if (contractDetails.hasExternalStorage())
+                    DataSourcePool.closeDataSource(ContractDetailsImpl.getStorageDataSourceName(address));
+            }
+        }
+    }
+
+    private static StateSnapshotExporter.Counts readTotals(byte[] payload, byte[] hash) throws IOException {
+        if (!Arrays.equals(sha3(payload), hash))
+            throw new IOException("Invalid hash of the end chunk");
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        StateSnapshotExporter.Counts totals = new StateSnapshotExporter.Counts();
+
+        totals.stateNodes = input.readLong();
+        totals.codes = input.readLong();
+        totals.details = input.readLong();
+        totals.storageNodes = input.readLong();
+
+        return totals;
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        int length = input.readInt();
+
+        if (length < 0)
+            throw new IOException("Invalid length " + length);
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.db;
+
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.ReceiptStore;
+import org.ethereum.db.TransactionInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Receipt store that writes the receipts of a block in the background.
+ *
+ * The writes are run by the given executor. A read of a transaction with
+ * pending writes waits until they are done, so readers never see a partial
+ * block. Readers of other transactions don't wait.
+ */
+public class WriteBehindReceiptStore implements ReceiptStore {
+    private final ReceiptStore store;
+    private final Executor writer;
+
+    // guarded by this: number of pending writes by transaction hash
+    private final Map<ByteArrayWrapper, Integer> pending = new HashMap<>();
+
+    public WriteBehindReceiptStore(ReceiptStore store, Executor writer) {
+        this.store = store;
+        this.writer = writer;
+    }
+
+    @Override
+    public void add(byte[] blockHash, int transactionIndex, TransactionReceipt receipt) {
+        awaitWritten(receipt.getTransaction().getHash());
+        store.add(blockHash, transactionIndex, receipt);
+    }
+
+    @Override
+    public TransactionInfo get(byte[] transactionHash) {
+        awaitWritten(transactionHash);
+        return store.get(transactionHash);
+    }
+
+    @Override
+    public TransactionInfo get(byte[] transactionHash, byte[] blockHash, BlockStore blockStore) {
+        awaitWritten(transactionHash);
+        return store.get(transactionHash, blockHash, blockStore);
+    }
+
+    @Override
+    public TransactionInfo getInMainChain(byte[] transactionHash, BlockStore blockStore) {
+        awaitWritten(transactionHash);
+        return store.getInMainChain(transactionHash, blockStore);
+    }
+
+    @Override
+    public List<TransactionInfo> getAll(byte[] transactionHash) {
+        awaitWritten(transactionHash);
+        return store.getAll(transactionHash);
+    }
+
+    @Override
+    public void saveMultiple(byte[] blockHash, List<TransactionReceipt> receipts) {
+        List<ByteArrayWrapper> hashes = new ArrayList<>(receipts.size());
+
+        for (TransactionReceipt receipt : receipts)
+            hashes.add(new ByteArrayWrapper(receipt.getTransaction().getHash()));
+
+        synchronized (this) {
+            for (ByteArrayWrapper hash : hashes)
+                pending.merge(hash, 1, Integer::sum);
+        }
+
+        writer.execute(() -> {
+            try {
+                store.saveMultiple(blockHash, receipts);
+            } finally {
+                written(hashes);
+            }
+        });
+    }
+
+    public synchronized boolean hasPendingWrites() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Waits until the receipts saved so far are written
+     */
+    public synchronized void awaitWritten() {
+        while (!pending.isEmpty()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private synchronized void written(List<ByteArrayWrapper> hashes) {
+        for (ByteArrayWrapper hash : hashes)
+            pending.computeIfPresent(hash, (k, n) -> n > 1 ? n - 1 : null);
+
+        notifyAll();
+    }
+
+    private synchronized void awaitWritten(byte[] transactionHash) {
+        ByteArrayWrapper key = new ByteArrayWrapper(transactionHash);
+
+        while (pending.containsKey(key)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with power of two buckets.
+ *
+ * Bucket k counts the durations under 2^k microseconds that were not counted
+ * by a lower bucket, so the percentiles are exact up to a factor of two.
+ * Recording is lock free and can be done from any thread.
+ */
+public class LatencyHistogram {
+    public static final int NUMBER_OF_BUCKETS = 40;
+
+    private final LongAdder[] buckets = new LongAdder[NUMBER_OF_BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    public LatencyHistogram() {
+        for (int k = 0; k < NUMBER_OF_BUCKETS; k++)
+            buckets[k] = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        long duration = Math.max(0, nanos);
+
+        buckets[getBucket(duration)].increment();
+        count.increment();
+        totalNanos.add(duration);
+        maxNanos.accumulate(duration);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getMeanNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : getTotalNanos() / n;
+    }
+
+    /**
+     * Returns the upper bound of the bucket where the given percentile falls
+     *
+     * @param percentile    a value between 0 and 100
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+
+        for (long c : counts)
+            total += c;
+
+        if (total == 0)
+            return 0;
+
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        long accumulated = 0;
+
+        for (int k = 0; k < counts.length; k++) {
+            accumulated += counts[k];
+
+            // the last bucket has no upper bound
+            if (accumulated >= target && accumulated > 0)
+                return k == NUMBER_OF_BUCKETS - 1 ? getMaxNanos() : Math.min(getBucketUpperBoundNanos(k), getMaxNanos());
+        }
+
+        return getMaxNanos();
+    }
+
+    public long[] getBucketCounts() {
+        long[] counts = new long[NUMBER_OF_BUCKETS];
+
+        for (int k = 0; k < NUMBER_OF_BUCKETS; k++)
+            counts[k] = buckets[k].sum();
+
+        return counts;
+    }
+
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return (1L << bucket) * 1000L;
+    }
+
+    private static int getBucket(long nanos) {
+        long micros = nanos / 1000;
+
+        if (micros == 0)
+            return 0;
+
+        return Math.min(NUMBER_OF_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%dus p50=%dus p99=%dus max=%dus",
+                getCount(), getMeanNanos() / 1000, getPercentileNanos(50) / 1000,
+                getPercentileNanos(99) / 1000, getMaxNanos() / 1000);
+    }
+}
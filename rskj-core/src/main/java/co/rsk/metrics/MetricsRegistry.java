@@ -0,0 +1,160 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * In process registry of the node metrics: counters, gauges and latency histograms.
+ *
+ * A metric is identified by its name and its labels, given as name/value pairs.
+ * Counters and histograms are created on the first request and shared by the
+ * callers that ask for the same name and labels; the hot paths keep the returned
+ * instance, so recording doesn't look up nor allocate.
+ * Gauges are read when the metrics are written. Registering a gauge or a histogram
+ * again replaces the previous one, so the latest instance of a component is exported.
+ *
+ * The metrics are written in the Prometheus text format, the histograms in seconds.
+ */
+public class MetricsRegistry {
+    public static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private enum Type {
+        COUNTER,
+        GAUGE,
+        HISTOGRAM
+    }
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) getFamily(name, help, Type.COUNTER).metrics.computeIfAbsent(formatLabels(labels), k -> new Counter());
+    }
+
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) getFamily(name, help, Type.HISTOGRAM).metrics.computeIfAbsent(formatLabels(labels), k -> new LatencyHistogram());
+    }
+
+    public void register(String name, String help, LatencyHistogram histogram, String... labels) {
+        getFamily(name, help, Type.HISTOGRAM).metrics.put(formatLabels(labels), histogram);
+    }
+
+    public void gauge(String name, String help, LongSupplier supplier, String... labels) {
+        getFamily(name, help, Type.GAUGE).metrics.put(formatLabels(labels), supplier);
+    }
+
+    /**
+     * Writes the current value of all the metrics in the Prometheus text format (version 0.0.4)
+     */
+    public void write(Writer writer) throws IOException {
+        for (Family family : new TreeMap<>(families).values()) {
+            writer.write("# HELP " + family.name + " " + escapeHelp(family.help) + "\n");
+            writer.write("# TYPE " + family.name + " " + family.type.name().toLowerCase() + "\n");
+
+            for (Map.Entry<String, Object> entry : new TreeMap<>(family.metrics).entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+
+                if (family.type == Type.COUNTER)
+                    writeSample(writer, family.name, labels, Long.toString(((Counter) metric).get()));
+                else if (family.type == Type.GAUGE)
+                    writeSample(writer, family.name, labels, Long.toString(((LongSupplier) metric).getAsLong()));
+                else
+                    writeHistogram(writer, family.name, labels, (LatencyHistogram) metric);
+            }
+        }
+    }
+
+    private static void writeHistogram(Writer writer, String name, String labels, LatencyHistogram histogram) throws IOException {
+        long[] counts = histogram.getBucketCounts();
+        long accumulated = 0;
+
+        // the last bucket has no upper bound, it is counted in +Inf
+        for (int k = 0; k < counts.length - 1; k++) {
+            accumulated += counts[k];
+            String bound = Double.toString(LatencyHistogram.getBucketUpperBoundNanos(k) / 1e9);
+            writeSample(writer, name + "_bucket", addLabel(labels, "le", bound), Long.toString(accumulated));
+        }
+
+        accumulated += counts[counts.length - 1];
+
+        writeSample(writer, name + "_bucket", addLabel(labels, "le", "+Inf"), Long.toString(accumulated));
+        writeSample(writer, name + "_sum", labels, Double.toString(histogram.getTotalNanos() / 1e9));
+        writeSample(writer, name + "_count", labels, Long.toString(accumulated));
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, String value) throws IOException {
+        writer.write(name);
+
+        if (!labels.isEmpty())
+            writer.write("{" + labels + "}");
+
+        writer.write(" ");
+        writer.write(value);
+        writer.write("\n");
+    }
+
+    private Family getFamily(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, k -> new Family(name, help, type));
+
+        if (family.type != type)
+            throw new IllegalArgumentException(String.format("Metric %s is a %s", name, family.type.name().toLowerCase()));
+
+        return family;
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+
+        String result = "";
+
+        for (int k = 0; k < labels.length; k += 2)
+            result = addLabel(result, labels[k], labels[k + 1]);
+
+        return result;
+    }
+
+    private static String addLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
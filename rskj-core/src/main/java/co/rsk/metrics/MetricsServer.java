@@ -0,0 +1,116 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics of a registry at /metrics in the Prometheus text format.
+ *
+ * It listens on the configured address only (by default the loopback one)
+ * and serves one request at a time.
+ */
+public class MetricsServer {
+    private static final Logger logger = LoggerFactory.getLogger("metrics");
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+    private final InetSocketAddress address;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MetricsServer(MetricsRegistry registry, String host, int port) {
+        this.registry = registry;
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null)
+            return;
+
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "MetricsServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        logger.info("Metrics served at http://{}:{}/metrics", address.getHostString(), getPort());
+    }
+
+    public synchronized void stop() {
+        if (server == null)
+            return;
+
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    /**
+     * Returns the port the server listens on, useful when it was started on port 0
+     */
+    public synchronized int getPort() {
+        return server == null ? address.getPort() : server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            StringWriter writer = new StringWriter();
+            registry.write(writer);
+            byte[] content = writer.toString().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, content.length);
+
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(content);
+            }
+        }
+        catch (RuntimeException ex) {
+            logger.error("Exception writing metrics", ex);
+            exchange.sendResponseHeaders(500, -1);
+        }
+        finally {
+            exchange.close();
+        }
+    }
+}
@@ -39,6 +39,7 @@ import org.ethereum.facade.Ethereum;
 import org.ethereum.listener.EthereumListenerAdapter;
 import org.ethereum.rpc.TypeConverter;
 import org.ethereum.validator.ProofOfWorkRule;
+import org.ethereum.vm.GasCost;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.digests.SHA256Digest;
@@ -408,7 +409,9 @@ public class MinerServerImpl implements MinerServer {
 
         logger.info("Starting getTransactions");
 
-        List<Transaction> txs = new MinerUtils().getAllTransactions(pendingState);
+        // no more than this number of txs could fit in the new block
+        int maxTransactions = parent.getGasLimitAsInteger().divide(BigInteger.valueOf(GasCost.TRANSACTION)).intValue();
+        List<Transaction> txs = new MinerUtils().getAllTransactions(pendingState, maxTransactions);
         logger.debug("txsList size {}", txs.size());
 
         Transaction remascTx = new RemascTransaction(parent.getNumber() + 1);
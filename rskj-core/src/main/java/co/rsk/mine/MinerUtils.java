@@ -20,7 +20,6 @@ package co.rsk.mine;
 
 import com.google.common.collect.Lists;
 import co.rsk.config.RskMiningConstants;
-import co.rsk.core.bc.PendingStateImpl;
 import co.rsk.remasc.RemascTransaction;
 import co.rsk.bitcoinj.core.NetworkParameters;
 import co.rsk.bitcoinj.core.BtcTransaction;
@@ -82,16 +81,12 @@ public class MinerUtils {
     }
 
     public List<org.ethereum.core.Transaction> getAllTransactions(PendingState pendingState) {
-        //TODO: optimize this by considering GasPrice (order by GasPrice/Nonce)
-        PendingStateImpl.TransactionSortedSet ret = new PendingStateImpl.TransactionSortedSet();
-
-        List<org.ethereum.core.Transaction> pendingTransactions = new LinkedList<>(pendingState.getPendingTransactions());
-        List<org.ethereum.core.Transaction> wireTransactions = new LinkedList<>(pendingState.getWireTransactions());
-
-        ret.addAll(pendingTransactions);
-        ret.addAll(wireTransactions);
+        return getAllTransactions(pendingState, Integer.MAX_VALUE);
+    }
 
-        return new LinkedList<>(ret);
+    public List<org.ethereum.core.Transaction> getAllTransactions(PendingState pendingState, int limit) {
+        // already ordered by GasPrice/Nonce by the pending state
+        return new LinkedList<>(pendingState.getTransactionsForBlock(limit));
     }
 
     public List<org.ethereum.core.Transaction> filterTransactions(List<org.ethereum.core.Transaction> txsToRemove, List<org.ethereum.core.Transaction> txs, Map<ByteArrayWrapper, BigInteger> accountNonces, Repository originalRepo, BigInteger minGasPrice) {
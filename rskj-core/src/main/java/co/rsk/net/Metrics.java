@@ -80,6 +80,9 @@ public class Metrics {
 
     // This function should be called when a node has a new block (full).
     public static void newBlock(@Nonnull final Block block, @Nonnull final NodeID sender) {
+        if (!logger.isInfoEnabled())
+            return;
+
         String event = String.format("event: %s hash: %s number: %d parent: %s sender: %s",
                 "newBlock",
                 prettyHash(block.getHash()),
@@ -91,6 +94,9 @@ public class Metrics {
     }
 
     public static void broadcastBlock(@Nonnull final Block block) {
+        if (!logger.isInfoEnabled())
+            return;
+
         String event = String.format("event: %s hash: %s number: %d parent: %s",
                 "broadcastBlock",
                 prettyHash(block.getHash()),
@@ -101,6 +107,9 @@ public class Metrics {
     }
 
     public static void broadcastTransaction(@Nonnull final Transaction tx) {
+        if (!logger.isInfoEnabled())
+            return;
+
         String event = String.format("event: %s hash: %s nonce: %s",
                 "broadcastTransaction",
                 prettyHash(tx.getHash()),
@@ -111,6 +120,9 @@ public class Metrics {
 
     // This function should be called when a node has a new Tx.
     public static void newTransaction(@Nonnull final Transaction tx, @Nonnull final NodeID sender) {
+        if (!logger.isInfoEnabled())
+            return;
+
         String event = String.format("event: %s hash: %s nonce: %s sender: %s",
                 "newTransaction",
                 prettyHash(tx.getHash()),
@@ -123,6 +135,9 @@ public class Metrics {
 
     // This function should be called when a node has a new block header and can start mining.
     public static void newBlockHeader(@Nonnull final BlockHeader header, @Nonnull final NodeID sender) {
+        if (!logger.isInfoEnabled())
+            return;
+
         String event = String.format("event: %s hash: %s number: %d parent: %s sender: %s",
                 "newBlockHeader",
                 prettyHash(header.getHash()),
@@ -136,6 +151,9 @@ public class Metrics {
     // This function should be called when a node knows that a certain block exists,
     // but it doesn't have the full block body nor the header.
     public static void newBlockHash(@Nonnull final BlockIdentifier identifier, @Nonnull final NodeID sender) {
+        if (!logger.isInfoEnabled())
+            return;
+
         String event = String.format("event: %s hash: %s number: %d sender: %s",
                 "newBlockHash",
                 prettyHash(identifier.getHash()),
@@ -147,6 +165,9 @@ public class Metrics {
     }
 
     public static void messageBytes(@Nonnull final NodeID sender, int length) {
+        if (!logger.isInfoEnabled())
+            return;
+
         String event = String.format("event: %s bytes: %d sender: %s",
                 "messageBytes",
                 length,
@@ -165,6 +186,9 @@ public class Metrics {
     }
 
     public static void rebranch(@Nonnull final Block bestBlock, @Nonnull final Block block, final int rebranchSize) {
+        if (!logger.isInfoEnabled())
+            return;
+
         String event = String.format("event: %s bestBlock hash: %s number: %d prevBestBlock hash: %s number: %d size: %d",
                 "rebranch",
                 prettyHash(block.getHash()),
@@ -183,6 +207,9 @@ public class Metrics {
      * using static variables processTxsMessageEventStart and processTxsMessageStepStart
      */
     public static void processTxsMessage(String step, List<Transaction> txs, @Nonnull final NodeID senderNodeId) {
+        if (!logger.isInfoEnabled())
+            return;
+
         long stepTime = nanoTime();
 
         Map<String, String> eventInfo = new HashMap<>();
@@ -214,6 +241,9 @@ public class Metrics {
      * using static variables processBlockMessageEventStart and processBlockMessageStepStart
      */
     public static void processBlockMessage(String step, Block block, @Nonnull final NodeID senderNodeId) {
+        if (!logger.isInfoEnabled())
+            return;
+
         long stepTime = nanoTime();
 
         Map<String, String> info = new HashMap<>();
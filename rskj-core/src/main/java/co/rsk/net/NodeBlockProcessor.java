@@ -239,6 +239,9 @@ public class NodeBlockProcessor implements BlockProcessor {
         while (!blocks.isEmpty()) {
             List<Block> connected = new ArrayList<>();
 
+            // overlap the parent independent validation with the connection of the previous blocks
+            blockchain.prevalidate(blocks);
+
             for (Block block : blocks) {
                 logger.trace("Trying to add block {} {}", block.getNumber(), block.getShortHash());
 
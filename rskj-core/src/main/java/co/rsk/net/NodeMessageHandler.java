@@ -18,6 +18,9 @@
 
 package co.rsk.net;
 
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.metrics.MetricsRegistry;
 import co.rsk.net.handler.TxHandler;
 import co.rsk.net.messages.*;
 import co.rsk.scoring.EventType;
@@ -46,6 +49,17 @@ import java.util.concurrent.TimeUnit;
 public class NodeMessageHandler implements MessageHandler, Runnable {
     private static final Logger logger = LoggerFactory.getLogger("messagehandler");
     private static final Logger loggerMessageProcess = LoggerFactory.getLogger("messageProcess");
+    private static final Map<MessageType, LatencyHistogram> processTime = new EnumMap<>(MessageType.class);
+    private static final Counter transactionsReceived = MetricsRegistry.DEFAULT.counter(
+            "rsk_transactions_received_total", "Transactions received from the peers", "result", "received");
+    private static final Counter transactionsAccepted = MetricsRegistry.DEFAULT.counter(
+            "rsk_transactions_received_total", "Transactions received from the peers", "result", "accepted");
+
+    static {
+        for (MessageType type : MessageType.values())
+            processTime.put(type, MetricsRegistry.DEFAULT.histogram(
+                    "rsk_message_process_seconds", "Duration of the processing of the received messages", "type", type.name().toLowerCase()));
+    }
     public static final int MAX_NUMBER_OF_MESSAGES_CACHED = 5000;
     public static final long RECEIVED_MESSAGES_CACHE_DURATION = TimeUnit.MINUTES.toMillis(2);
     public static final long WAIT_TIME_ACCEPT_ADVANCED_BLOCKS = TimeUnit.MINUTES.toMillis(10);
@@ -82,6 +96,8 @@ public class NodeMessageHandler implements MessageHandler, Runnable {
         this.lastImportedBestBlock = System.currentTimeMillis();
         this.cleanMsgTimestamp = this.lastImportedBestBlock;
         this.peerScoringManager = peerScoringManager;
+
+        MetricsRegistry.DEFAULT.gauge("rsk_message_queue_size", "Received messages waiting to be processed", this.queue::size);
     }
 
     @VisibleForTesting
@@ -124,7 +140,9 @@ public class NodeMessageHandler implements MessageHandler, Runnable {
             if (mType == MessageType.TRANSACTIONS)
                 this.processTransactionsMessage(sender, (TransactionsMessage) message);
         }
-        loggerMessageProcess.debug("Message[{}] processed after [{}] nano.", message.getMessageType(), System.nanoTime() - start);
+        long elapsed = System.nanoTime() - start;
+        processTime.get(mType).record(elapsed);
+        loggerMessageProcess.debug("Message[{}] processed after [{}] nano.", message.getMessageType(), elapsed);
     }
 
     @Override
@@ -355,6 +373,7 @@ public class NodeMessageHandler implements MessageHandler, Runnable {
         loggerMessageProcess.debug("Tx message about to be process: {}", message.getMessageContentInfo());
 
         List<Transaction> ptxs = message.getTransactions();
+        transactionsReceived.add(ptxs.size());
         Metrics.processTxsMessage("start", ptxs, sender.getNodeID());
 
         List<Transaction> txs = new LinkedList();
@@ -376,6 +395,7 @@ public class NodeMessageHandler implements MessageHandler, Runnable {
             acceptedTxs = pendingState.addWireTransactions(acceptedTxs);
         }
 
+        transactionsAccepted.add(acceptedTxs.size());
         Metrics.processTxsMessage("validTxsAddedToPendingState", acceptedTxs, sender.getNodeID());
 
         if (channelManager != null) {
@@ -0,0 +1,98 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.peg;
+
+import co.rsk.bitcoinj.core.CheckpointManager;
+import co.rsk.bitcoinj.core.NetworkParameters;
+import com.google.common.io.ByteStreams;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the bitcoin checkpoints in memory for the whole process.
+ *
+ * The checkpoints resource of each network is read once, and each checkpoints
+ * content is parsed once, no matter how many times the bridge is executed.
+ */
+final class BridgeCheckpoints {
+    // checkpoints contents parsed (there is usually one)
+    private static final int MAX_MANAGERS = 16;
+
+    private static final Map<String, Optional<byte[]>> resources = new ConcurrentHashMap<>();
+    private static final Map<ByteArrayWrapper, CheckpointManager> managers = new ConcurrentHashMap<>();
+
+    private BridgeCheckpoints() {
+    }
+
+    /**
+     * Returns the checkpoints of the network, or null if there are no checkpoints for it
+     */
+    static InputStream getResource(NetworkParameters params) {
+        Optional<byte[]> checkpoints = resources.computeIfAbsent(params.getId(), id -> Optional.ofNullable(readResource(id)));
+
+        return checkpoints.map(ByteArrayInputStream::new).orElse(null);
+    }
+
+    /**
+     * Returns the parsed checkpoints of the given stream
+     */
+    static CheckpointManager getManager(NetworkParameters params, InputStream checkpoints) throws IOException {
+        byte[] content = ByteStreams.toByteArray(checkpoints);
+        ByteArrayWrapper key = new ByteArrayWrapper(HashUtil.sha3(content));
+
+        CheckpointManager manager = managers.get(key);
+
+        if (manager != null)
+            return manager;
+
+        manager = new CheckpointManager(params, new ByteArrayInputStream(content));
+
+        if (managers.size() >= MAX_MANAGERS)
+            managers.clear();
+
+        managers.put(key, manager);
+
+        return manager;
+    }
+
+    private static byte[] readResource(String id) {
+        InputStream checkpoints = BridgeCheckpoints.class.getResourceAsStream("/rskbitcoincheckpoints/" + id + ".checkpoints");
+
+        if (checkpoints == null) {
+            // If we don't have a custom checkpoints file, try to use bitcoinj's default checkpoints for that network
+            checkpoints = BridgeCheckpoints.class.getResourceAsStream("/" + id + ".checkpoints");
+        }
+
+        if (checkpoints == null)
+            return null;
+
+        try (InputStream stream = checkpoints) {
+            return ByteStreams.toByteArray(stream);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the checkpoints of " + id, e);
+        }
+    }
+}
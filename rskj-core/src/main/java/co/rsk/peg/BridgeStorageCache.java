@@ -0,0 +1,117 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.peg;
+
+import org.ethereum.core.Block;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the decoded bridge collections during the execution of a block,
+ * so each bridge call doesn't parse them again from the contract storage.
+ *
+ * Entries are keyed by the hash of the storage value, so a value written by a
+ * reverted transaction is never returned. The cached values are snapshots:
+ * they are never modified, the storage provider works with copies of them.
+ * @see BridgeStorageProvider
+ */
+class BridgeStorageCache {
+    // blocks being executed at the same time (import, mining, calls)
+    private static final int MAX_BLOCKS = 4;
+
+    private static final Map<ByteArrayWrapper, BridgeStorageCache> caches = new LinkedHashMap<ByteArrayWrapper, BridgeStorageCache>(MAX_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, BridgeStorageCache> eldest) {
+            return size() > MAX_BLOCKS;
+        }
+    };
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cache of the given block execution, or null if there is no block
+     */
+    static BridgeStorageCache forBlock(Block block) {
+        if (block == null)
+            return null;
+
+        ByteArrayWrapper key = new ByteArrayWrapper(block.getHash());
+
+        synchronized (caches) {
+            return caches.computeIfAbsent(key, k -> new BridgeStorageCache());
+        }
+    }
+
+    /**
+     * Returns the decoded value of the storage data, decoding it if it is not in the cache
+     *
+     * @param key       the storage key name
+     * @param data      the storage value
+     * @param decoder   the function to decode the storage value
+     * @return  the decoded value, that must not be modified
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(String key, byte[] data, Decoder<T> decoder) throws IOException {
+        ByteArrayWrapper hash = hash(data);
+        Entry entry = entries.get(key);
+
+        if (entry != null && entry.hash.equals(hash))
+            return (T) entry.value;
+
+        T value = decoder.decode(data);
+
+        entries.put(key, new Entry(hash, value));
+
+        return value;
+    }
+
+    /**
+     * Keeps a value just written to the storage
+     *
+     * @param key       the storage key name
+     * @param data      the storage value
+     * @param value     the decoded value, that must not be modified after this call
+     */
+    void put(String key, byte[] data, Object value) {
+        entries.put(key, new Entry(hash(data), value));
+    }
+
+    private static ByteArrayWrapper hash(byte[] data) {
+        return new ByteArrayWrapper(HashUtil.sha3(data == null ? new byte[0] : data));
+    }
+
+    interface Decoder<T> {
+        T decode(byte[] data) throws IOException;
+    }
+
+    private static class Entry {
+        private final ByteArrayWrapper hash;
+        private final Object value;
+
+        Entry(ByteArrayWrapper hash, Object value) {
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+}
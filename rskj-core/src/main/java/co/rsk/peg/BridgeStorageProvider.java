@@ -31,9 +31,7 @@ import org.spongycastle.util.encoders.Hex;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.SortedMap;
-import java.util.SortedSet;
+import java.util.*;
 
 /**
  * Provides an object oriented facade of the bridge contract memory.
@@ -67,12 +65,26 @@ public class BridgeStorageProvider {
     private List<UTXO> btcUTXOs;
     private Wallet btcWallet;
 
+    // the values read from the storage, to write back only the collections that changed
+    private List<UTXO> btcUTXOsSnapshot;
+    private SortedSet<Sha256Hash> btcTxHashesAlreadyProcessedSnapshot;
+    private byte[] rskTxsWaitingForConfirmationsData;
+    private byte[] rskTxsWaitingForSignaturesData;
+    private byte[] rskTxsWaitingForBroadcastingData;
+
     private BridgeConstants bridgeConstants;
     private Context btcContext;
 
+    private final BridgeStorageCache cache;
+
     public BridgeStorageProvider(Repository repository, String contractAddress) {
+        this(repository, contractAddress, null);
+    }
+
+    public BridgeStorageProvider(Repository repository, String contractAddress, BridgeStorageCache cache) {
         this.repository = repository;
         this.contractAddress = contractAddress;
+        this.cache = cache;
         bridgeConstants = RskSystemProperties.CONFIG.getBlockchainConfig().getCommonConstants().getBridgeConstants();
         btcContext = new Context(bridgeConstants.getBtcParams());
     }
@@ -105,13 +117,14 @@ public class BridgeStorageProvider {
 
         byte[] data = repository.getStorageBytes(Hex.decode(contractAddress), address);
 
-        btcUTXOs = BridgeSerializationUtils.deserializeList(data);
+        btcUTXOsSnapshot = data == null || data.length == 0 ? null : decode(BTC_UTXOS_KEY, data, BridgeSerializationUtils::deserializeList);
+        btcUTXOs = btcUTXOsSnapshot == null ? new ArrayList<>() : new ArrayList<>(btcUTXOsSnapshot);
 
         return btcUTXOs;
     }
 
     public void saveBtcUTXOs() throws IOException {
-        if (btcUTXOs == null)
+        if (btcUTXOs == null || btcUTXOs.equals(btcUTXOsSnapshot))
             return;
 
         byte[] data = BridgeSerializationUtils.serializeList(btcUTXOs);
@@ -119,6 +132,9 @@ public class BridgeStorageProvider {
         DataWord address = new DataWord(BTC_UTXOS_KEY.getBytes(StandardCharsets.UTF_8));
 
         repository.addStorageBytes(Hex.decode(contractAddress), address, data);
+
+        btcUTXOsSnapshot = new ArrayList<>(btcUTXOs);
+        keep(BTC_UTXOS_KEY, data, btcUTXOsSnapshot);
     }
 
     public SortedSet<Sha256Hash> getBtcTxHashesAlreadyProcessed() throws IOException {
@@ -129,13 +145,14 @@ public class BridgeStorageProvider {
 
         byte[] data = repository.getStorageBytes(Hex.decode(contractAddress), address);
 
-        btcTxHashesAlreadyProcessed = BridgeSerializationUtils.deserializeSet(data);
+        btcTxHashesAlreadyProcessedSnapshot = data == null || data.length == 0 ? null : decode(BTC_TX_HASHES_ALREADY_PROCESSED_KEY, data, BridgeSerializationUtils::deserializeSet);
+        btcTxHashesAlreadyProcessed = btcTxHashesAlreadyProcessedSnapshot == null ? new TreeSet<>() : new TreeSet<>(btcTxHashesAlreadyProcessedSnapshot);
 
         return btcTxHashesAlreadyProcessed;
     }
 
     public void saveBtcTxHashesAlreadyProcessed() {
-        if (btcTxHashesAlreadyProcessed == null)
+        if (btcTxHashesAlreadyProcessed == null || btcTxHashesAlreadyProcessed.equals(btcTxHashesAlreadyProcessedSnapshot))
             return;
 
         byte[] data = BridgeSerializationUtils.serializeSet(btcTxHashesAlreadyProcessed);
@@ -143,6 +160,9 @@ public class BridgeStorageProvider {
         DataWord address = new DataWord(BTC_TX_HASHES_ALREADY_PROCESSED_KEY.getBytes(StandardCharsets.UTF_8));
 
         repository.addStorageBytes(Hex.decode(contractAddress), address, data);
+
+        btcTxHashesAlreadyProcessedSnapshot = new TreeSet<>(btcTxHashesAlreadyProcessed);
+        keep(BTC_TX_HASHES_ALREADY_PROCESSED_KEY, data, btcTxHashesAlreadyProcessedSnapshot);
     }
 
     public SortedMap<Sha3Hash, BtcTransaction> getRskTxsWaitingForConfirmations() throws IOException {
@@ -153,6 +173,7 @@ public class BridgeStorageProvider {
 
         byte[] data = repository.getStorageBytes(Hex.decode(contractAddress), address);
 
+        rskTxsWaitingForConfirmationsData = data;
         rskTxsWaitingForConfirmations = BridgeSerializationUtils.deserializeMap(data, networkParameters, true);
 
         return rskTxsWaitingForConfirmations;
@@ -164,9 +185,15 @@ public class BridgeStorageProvider {
 
         byte[] data = BridgeSerializationUtils.serializeMap(rskTxsWaitingForConfirmations);
 
+        // the transactions can be changed in place, so the encoded value is compared
+        if (Arrays.equals(data, rskTxsWaitingForConfirmationsData))
+            return;
+
         DataWord address = new DataWord(RSK_TXS_WAITING_FOR_CONFIRMATIONS_KEY.getBytes(StandardCharsets.UTF_8));
 
         repository.addStorageBytes(Hex.decode(contractAddress), address, data);
+
+        rskTxsWaitingForConfirmationsData = data;
     }
 
     public SortedMap<Sha3Hash, BtcTransaction> getRskTxsWaitingForSignatures() throws IOException {
@@ -177,6 +204,7 @@ public class BridgeStorageProvider {
 
         byte[] data = repository.getStorageBytes(Hex.decode(contractAddress), address);
 
+        rskTxsWaitingForSignaturesData = data;
         rskTxsWaitingForSignatures = BridgeSerializationUtils.deserializeMap(data, networkParameters, false);
 
         return rskTxsWaitingForSignatures;
@@ -188,9 +216,15 @@ public class BridgeStorageProvider {
 
         byte[] data = BridgeSerializationUtils.serializeMap(rskTxsWaitingForSignatures);
 
+        // the transactions can be changed in place, so the encoded value is compared
+        if (Arrays.equals(data, rskTxsWaitingForSignaturesData))
+            return;
+
         DataWord address = new DataWord(RSK_TXS_WAITING_FOR_SIGNATURES_KEY.getBytes(StandardCharsets.UTF_8));
 
         repository.addStorageBytes(Hex.decode(contractAddress), address, data);
+
+        rskTxsWaitingForSignaturesData = data;
     }
 
     public SortedMap<Sha3Hash, Pair<BtcTransaction, Long>> getRskTxsWaitingForBroadcasting() throws IOException {
@@ -201,6 +235,7 @@ public class BridgeStorageProvider {
 
         byte[] data = repository.getStorageBytes(Hex.decode(contractAddress), address);
 
+        rskTxsWaitingForBroadcastingData = data;
         rskTxsWaitingForBroadcasting = BridgeSerializationUtils.deserializePairMap(data, networkParameters);
 
         return rskTxsWaitingForBroadcasting;
@@ -212,9 +247,15 @@ public class BridgeStorageProvider {
 
         byte[] data = BridgeSerializationUtils.serializePairMap(rskTxsWaitingForBroadcasting);
 
+        // the transactions can be changed in place, so the encoded value is compared
+        if (Arrays.equals(data, rskTxsWaitingForBroadcastingData))
+            return;
+
         DataWord address = new DataWord(RSK_TXS_WAITING_FOR_BROADCASTING_KEY.getBytes(StandardCharsets.UTF_8));
 
         repository.addStorageBytes(Hex.decode(contractAddress), address, data);
+
+        rskTxsWaitingForBroadcastingData = data;
     }
 
     public void save() throws IOException {
@@ -225,5 +266,16 @@ public class BridgeStorageProvider {
         saveRskTxsWaitingForBroadcasting();
     }
 
+    private <T> T decode(String key, byte[] data, BridgeStorageCache.Decoder<T> decoder) throws IOException {
+        if (cache == null)
+            return decoder.decode(data);
+
+        return cache.get(key, data, decoder);
+    }
+
+    private void keep(String key, byte[] data, Object value) {
+        if (cache != null)
+            cache.put(key, data, value);
+    }
 
 }
@@ -63,6 +63,8 @@ public class BridgeSupport {
 
     private BtcBlockStore btcBlockStore;
     private BtcBlockChain btcBlockChain;
+    // the block store used by the bridge, written once by batch of headers
+    private BufferedBtcBlockStore bufferedBtcBlockStore;
 
     private BridgeStorageProvider provider;
 
@@ -76,7 +78,7 @@ public class BridgeSupport {
 
     // Used by bridge
     public BridgeSupport(Repository repository, String contractAddress, org.ethereum.core.Block rskExecutionBlock, ReceiptStore rskReceiptStore, org.ethereum.db.BlockStore rskBlockStore) throws IOException, BlockStoreException {
-        this(repository, contractAddress, new BridgeStorageProvider(repository, contractAddress), rskExecutionBlock, rskReceiptStore, rskBlockStore);
+        this(repository, contractAddress, new BridgeStorageProvider(repository, contractAddress, BridgeStorageCache.forBlock(rskExecutionBlock)), rskExecutionBlock, rskReceiptStore, rskBlockStore);
     }
 
 
@@ -88,21 +90,21 @@ public class BridgeSupport {
         NetworkParameters btcParams = bridgeConstants.getBtcParams();
         btcContext = new Context(btcParams);
 
-        btcBlockStore = new RepositoryBlockStore(repository, contractAddress);
-        if (btcBlockStore.getChainHead().getHeader().getHash().equals(btcParams.getGenesisBlock().getHash())) {
+        BtcBlockStore repositoryBlockStore = new RepositoryBlockStore(repository, contractAddress);
+        if (repositoryBlockStore.getChainHead().getHeader().getHash().equals(btcParams.getGenesisBlock().getHash())) {
             // We are building the blockstore for the first time, so we have not set the checkpoints yet.
             long time = bridgeConstants.getFederationAddressCreationTime();
             InputStream checkpoints = this.getCheckPoints();
             if (time > 0 && checkpoints != null) {
-                CheckpointManager.checkpoint(btcParams, checkpoints, btcBlockStore, time);
+                CheckpointManager.checkpoint(btcParams, checkpoints, repositoryBlockStore, time);
             }
         }
+        bufferedBtcBlockStore = new BufferedBtcBlockStore(repositoryBlockStore);
+        btcBlockStore = bufferedBtcBlockStore;
         btcBlockChain = new BtcBlockChain(btcContext, btcBlockStore);
 
         rskRepository = repository;
 
-        this.initialBtcStoredBlock = this.getLowestBlock();
-
         this.rskExecutionBlock = rskExecutionBlock;
         this.rskReceiptStore = rskReceiptStore;
         this.rskBlockStore = rskBlockStore;
@@ -110,12 +112,8 @@ public class BridgeSupport {
 
     @VisibleForTesting
     InputStream getCheckPoints() {
-        InputStream checkpoints = BridgeSupport.class.getResourceAsStream("/rskbitcoincheckpoints/" + bridgeConstants.getBtcParams().getId() + ".checkpoints");
-        if (checkpoints == null) {
-            // If we don't have a custom checkpoints file, try to use bitcoinj's default checkpoints for that network
-            checkpoints = BridgeSupport.class.getResourceAsStream("/" + bridgeConstants.getBtcParams().getId() + ".checkpoints");
-        }
-        return checkpoints;
+        // the checkpoints are read only once per process
+        return BridgeCheckpoints.getResource(bridgeConstants.getBtcParams());
     }
 
     // Used by unit tests
@@ -154,6 +152,16 @@ public class BridgeSupport {
                 logger.warn("Exception adding btc header", e);
             }
         }
+
+        // The headers were checked against the blocks in memory, write only the new ones and the chain head
+        if (bufferedBtcBlockStore != null) {
+            try {
+                bufferedBtcBlockStore.flush();
+            } catch (BlockStoreException e) {
+                logger.warn("Exception saving btc headers", e);
+                throw new IllegalStateException("Exception saving btc headers", e);
+            }
+        }
     }
 
     /**
@@ -585,14 +593,15 @@ public class BridgeSupport {
         StoredBlock cursor = btcBlockChain.getChainHead();
         int bestBlockHeight = cursor.getHeight();
         blockLocator.add(cursor.getHeader().getHash());
-        if (bestBlockHeight > this.initialBtcStoredBlock.getHeight()) {
+        StoredBlock lowestBlock = this.getLowestBlock();
+        if (bestBlockHeight > lowestBlock.getHeight()) {
             boolean stop = false;
             int i = 0;
             try {
                 while (blockLocator.size() <= maxHashesToInform && !stop) {
                     int blockHeight = (int) (bestBlockHeight - Math.pow(2, i));
-                    if (blockHeight <= this.initialBtcStoredBlock.getHeight()) {
-                        blockLocator.add(this.initialBtcStoredBlock.getHeader().getHash());
+                    if (blockHeight <= lowestBlock.getHeight()) {
+                        blockLocator.add(lowestBlock.getHeader().getHash());
                         stop = true;
                     } else {
                         cursor = this.getPrevBlockAtHeight(cursor, blockHeight);
@@ -606,7 +615,7 @@ public class BridgeSupport {
                 throw new RuntimeException(e);
             }
             if (!stop) {
-                blockLocator.add(this.initialBtcStoredBlock.getHeader().getHash());
+                blockLocator.add(lowestBlock.getHeader().getHash());
             }
         }
         return blockLocator;
@@ -652,18 +661,23 @@ public class BridgeSupport {
 
     /**
      * Returns the first bitcoin block we have. It is either a checkpoint or the genesis
+     * Only the block locator uses it, so it is loaded the first time it is needed
      */
     private StoredBlock getLowestBlock() throws IOException {
+        if (initialBtcStoredBlock != null)
+            return initialBtcStoredBlock;
         InputStream checkpoints = this.getCheckPoints();
         if(checkpoints == null) {
             BtcBlock genesis = bridgeConstants.getBtcParams().getGenesisBlock();
-            return new StoredBlock(genesis, genesis.getWork(), 0);
+            initialBtcStoredBlock = new StoredBlock(genesis, genesis.getWork(), 0);
+            return initialBtcStoredBlock;
         }
-        CheckpointManager manager = new CheckpointManager(bridgeConstants.getBtcParams(), checkpoints);
+        CheckpointManager manager = BridgeCheckpoints.getManager(bridgeConstants.getBtcParams(), checkpoints);
         long time = bridgeConstants.getFederationAddressCreationTime();
         // Go back 1 week to match CheckpointManager.checkpoint() behaviour
         time -= 86400 * 7;
-        return manager.getCheckpointBefore(time);
+        initialBtcStoredBlock = manager.getCheckpointBefore(time);
+        return initialBtcStoredBlock;
     }
 
     @VisibleForTesting
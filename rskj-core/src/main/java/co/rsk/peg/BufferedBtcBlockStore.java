@@ -0,0 +1,123 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.peg;
+
+import co.rsk.bitcoinj.core.NetworkParameters;
+import co.rsk.bitcoinj.core.Sha256Hash;
+import co.rsk.bitcoinj.core.StoredBlock;
+import co.rsk.bitcoinj.store.BlockStoreException;
+import co.rsk.bitcoinj.store.BtcBlockStore;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bitcoin block store that keeps in memory the blocks read and written,
+ * and writes the new blocks and the chain head to the underlying store on flush.
+ *
+ * It is used to ingest a batch of headers: the chain checks the proof of work,
+ * linkage and difficulty of each header against the blocks in memory, and the
+ * contract storage is read once per block and written once at the end.
+ * @see BridgeSupport#receiveHeaders
+ */
+public class BufferedBtcBlockStore implements BtcBlockStore {
+    private final BtcBlockStore store;
+
+    // blocks read from the store
+    private final Map<Sha256Hash, StoredBlock> blocks = new HashMap<>();
+    // blocks not written yet, in insertion order
+    private final Map<Sha256Hash, StoredBlock> newBlocks = new LinkedHashMap<>();
+
+    private StoredBlock chainHead;
+    private boolean chainHeadChanged;
+
+    public BufferedBtcBlockStore(BtcBlockStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public synchronized void put(StoredBlock block) throws BlockStoreException {
+        newBlocks.put(block.getHeader().getHash(), block);
+    }
+
+    @Override
+    public synchronized StoredBlock get(Sha256Hash hash) throws BlockStoreException {
+        StoredBlock block = newBlocks.get(hash);
+
+        if (block != null)
+            return block;
+
+        block = blocks.get(hash);
+
+        if (block != null)
+            return block;
+
+        block = store.get(hash);
+
+        if (block != null)
+            blocks.put(hash, block);
+
+        return block;
+    }
+
+    @Override
+    public synchronized StoredBlock getChainHead() throws BlockStoreException {
+        if (chainHead == null)
+            chainHead = store.getChainHead();
+
+        return chainHead;
+    }
+
+    @Override
+    public synchronized void setChainHead(StoredBlock chainHead) throws BlockStoreException {
+        this.chainHead = chainHead;
+        this.chainHeadChanged = true;
+    }
+
+    /**
+     * Writes the new blocks and the chain head to the underlying store
+     */
+    public synchronized void flush() throws BlockStoreException {
+        for (StoredBlock block : newBlocks.values())
+            store.put(block);
+
+        blocks.putAll(newBlocks);
+        newBlocks.clear();
+
+        if (chainHeadChanged) {
+            store.setChainHead(chainHead);
+            chainHeadChanged = false;
+        }
+    }
+
+    public synchronized int getNumberOfNewBlocks() {
+        return newBlocks.size();
+    }
+
+    @Override
+    public void close() throws BlockStoreException {
+        store.close();
+    }
+
+    @Override
+    public NetworkParameters getParams() {
+        return store.getParams();
+    }
+}
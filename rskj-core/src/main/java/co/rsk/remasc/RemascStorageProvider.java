@@ -19,6 +19,8 @@
 package co.rsk.remasc;
 
 import org.ethereum.core.Repository;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
 import org.ethereum.vm.DataWord;
@@ -41,6 +43,17 @@ class RemascStorageProvider {
     private static final String SIBLINGS_KEY = "siblings";
     private static final String BROKEN_SELECTION_RULE_KEY = "brokenSelectionRule";
 
+    // Node local cache of the decoded siblings, keyed by the hash of the stored value.
+    // The next block finds the siblings saved by the previous one; on a miss (a reorg,
+    // another node state) they are decoded again. The cached maps are never modified.
+    private static final int SIBLINGS_CACHE_SIZE = 8;
+    private static final Map<ByteArrayWrapper, SortedMap<Long, List<Sibling>>> siblingsCache = new LinkedHashMap<ByteArrayWrapper, SortedMap<Long, List<Sibling>>>(SIBLINGS_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, SortedMap<Long, List<Sibling>>> eldest) {
+            return size() > SIBLINGS_CACHE_SIZE;
+        }
+    };
+
     private Repository repository;
     private byte[] contractAddress;
 
@@ -50,6 +63,9 @@ class RemascStorageProvider {
     private SortedMap<Long, List<Sibling>> siblings;
     private Boolean brokenSelectionRule;
 
+    // The siblings as stored, to write them back only if they changed
+    private SortedMap<Long, List<Sibling>> storedSiblings;
+
     public RemascStorageProvider(Repository repository, String contractAddress) {
         this.repository = repository;
         this.contractAddress = Hex.decode(contractAddress);
@@ -121,11 +137,40 @@ class RemascStorageProvider {
 
         byte[] bytes = this.repository.getStorageBytes(this.contractAddress, address);
 
-        siblings = getSiblingsFromBytes(bytes);
+        if (bytes == null || bytes.length == 0) {
+            siblings = new TreeMap<>();
+            return siblings;
+        }
+
+        ByteArrayWrapper key = new ByteArrayWrapper(HashUtil.sha3(bytes));
+
+        synchronized (siblingsCache) {
+            storedSiblings = siblingsCache.get(key);
+        }
+
+        if (storedSiblings == null) {
+            storedSiblings = getSiblingsFromBytes(bytes);
+
+            synchronized (siblingsCache) {
+                siblingsCache.put(key, storedSiblings);
+            }
+        }
+
+        siblings = copySiblings(storedSiblings);
 
         return siblings;
     }
 
+    // The lists are copied, they are modified in place; siblings are immutable
+    private static SortedMap<Long, List<Sibling>> copySiblings(SortedMap<Long, List<Sibling>> siblings) {
+        SortedMap<Long, List<Sibling>> copy = new TreeMap<>();
+
+        for (Map.Entry<Long, List<Sibling>> entry : siblings.entrySet())
+            copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+
+        return copy;
+    }
+
     public static SortedMap<Long, List<Sibling>> getSiblingsFromBytes(byte[] bytes) {
         SortedMap<Long, List<Sibling>> siblings = new TreeMap<>();
 
@@ -163,7 +208,8 @@ class RemascStorageProvider {
     }
 
     private void saveSiblings() {
-        if (this.siblings == null)
+        // the stored value is the encoding of the stored siblings, no need to write it again
+        if (this.siblings == null || this.siblings.equals(this.storedSiblings))
             return;
 
         byte[] bytes = getSiblingsBytes(this.siblings);
@@ -171,6 +217,12 @@ class RemascStorageProvider {
         DataWord address = new DataWord(SIBLINGS_KEY.getBytes(StandardCharsets.UTF_8));
 
         this.repository.addStorageBytes(this.contractAddress, address, bytes);
+
+        this.storedSiblings = copySiblings(this.siblings);
+
+        synchronized (siblingsCache) {
+            siblingsCache.put(new ByteArrayWrapper(HashUtil.sha3(bytes)), this.storedSiblings);
+        }
     }
 
     public static byte[] getSiblingsBytes(SortedMap<Long, List<Sibling>> siblings) {
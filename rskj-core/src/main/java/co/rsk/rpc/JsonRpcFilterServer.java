@@ -18,6 +18,8 @@
 
 package co.rsk.rpc;
 
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.metrics.MetricsRegistry;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.googlecode.jsonrpc4j.ErrorResolver;
@@ -25,7 +27,12 @@ import com.googlecode.jsonrpc4j.JsonRpcBasicServer;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by ajlopez on 19/04/2017.
@@ -35,6 +42,11 @@ public class JsonRpcFilterServer extends JsonRpcBasicServer {
     private static final String JSON_RPC_METHOD_FIELD_NAME = "/method";
     private List<ModuleDescription> modules;
 
+    // latency of each method of the interface, unknown method names are not measured
+    private final Map<String, LatencyHistogram> methodTimes = new HashMap<>();
+    private final RpcLimiter limiter;
+    private final Set<String> heavyMethods = new HashSet<>();
+
     /**
      * Creates the server with a default {@link ObjectMapper} delegating
      * all calls to the given {@code handler} {@link Object} but only
@@ -49,6 +61,18 @@ public class JsonRpcFilterServer extends JsonRpcBasicServer {
         super(new ObjectMapper(), handler, remoteInterface);
 
         this.modules = modules;
+        this.limiter = new RpcLimiter(modules);
+
+        for (ModuleDescription module : modules)
+            heavyMethods.addAll(module.getHeavyMethods());
+
+        if (remoteInterface == null)
+            return;
+
+        for (Method method : remoteInterface.getMethods())
+            if (method.getDeclaringClass() != Object.class)
+                methodTimes.put(method.getName(), MetricsRegistry.DEFAULT.histogram(
+                        "rsk_rpc_request_seconds", "Duration of the JSON-RPC requests", "method", method.getName()));
     }
 
     @Override
@@ -56,7 +80,57 @@ public class JsonRpcFilterServer extends JsonRpcBasicServer {
         if (node.hasNonNull(JSON_RPC_METHOD_FIELD_NAME)) {
             checkMethod(node.at(JSON_RPC_METHOD_FIELD_NAME).asText());
         }
-        return super.handleJsonNodeRequest(node, output);
+
+        String methodName = getMethodName(node);
+
+        if (methodName == null)
+            return super.handleJsonNodeRequest(node, output);
+
+        LatencyHistogram methodTime = methodTimes.get(methodName);
+        long start = System.nanoTime();
+
+        limiter.acquire(methodName);
+
+        try {
+            return super.handleJsonNodeRequest(node, output);
+        }
+        finally {
+            limiter.release(methodName);
+
+            if (methodTime != null)
+                methodTime.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Handles an already parsed request, single or batch
+     *
+     * @return  the JSON-RPC error code, zero if there was no error
+     */
+    public int handleRequest(JsonNode node, OutputStream output) throws IOException {
+        return handleJsonNodeRequest(node, output).code;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the request, or any request of a batch, calls a heavy method
+     */
+    public boolean isHeavy(JsonNode node) {
+        if (node.isArray()) {
+            for (JsonNode element : node)
+                if (isHeavy(element))
+                    return true;
+
+            return false;
+        }
+
+        String methodName = getMethodName(node);
+
+        return methodName != null && heavyMethods.contains(methodName);
+    }
+
+    private static String getMethodName(JsonNode node) {
+        JsonNode method = node.get("method");
+        return method != null && method.isTextual() ? method.asText() : null;
     }
 
     public void checkMethod(String methodName) throws IOException {
@@ -19,7 +19,9 @@
 package co.rsk.rpc;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by ajlopez on 19/04/2017.
@@ -32,12 +34,33 @@ public class ModuleDescription {
     private List<String> enabledMethods;
     private List<String> disabledMethods;
 
+    // concurrent calls limits, zero means no limit
+    private int maxConcurrency;
+    private Map<String, Integer> methodsConcurrency;
+    private long timeout;
+    private List<String> heavyMethods;
+
     public ModuleDescription(String name, String version, boolean enabled, List<String> enabledMethods, List<String> disabledMethods) {
+        this(name, version, enabled, enabledMethods, disabledMethods, 0, null, 0, null);
+    }
+
+    /**
+     * @param maxConcurrency        maximum concurrent calls of the module methods, zero for no limit
+     * @param methodsConcurrency    maximum concurrent calls of each method
+     * @param timeout               milliseconds a call waits for a free slot before it is rejected
+     * @param heavyMethods          methods run out of the network threads
+     */
+    public ModuleDescription(String name, String version, boolean enabled, List<String> enabledMethods, List<String> disabledMethods,
+                             int maxConcurrency, Map<String, Integer> methodsConcurrency, long timeout, List<String> heavyMethods) {
         this.name = name;
         this.version = version;
         this.enabled = enabled;
         this.enabledMethods = enabledMethods == null ? new ArrayList<>() : enabledMethods;
         this.disabledMethods = disabledMethods == null ? new ArrayList<>() : disabledMethods;
+        this.maxConcurrency = maxConcurrency;
+        this.methodsConcurrency = methodsConcurrency == null ? Collections.emptyMap() : methodsConcurrency;
+        this.timeout = timeout;
+        this.heavyMethods = heavyMethods == null ? new ArrayList<>() : heavyMethods;
     }
 
     public String getName() {
@@ -60,6 +83,22 @@ public class ModuleDescription {
         return this.disabledMethods;
     }
 
+    public int getMaxConcurrency() {
+        return this.maxConcurrency;
+    }
+
+    public Map<String, Integer> getMethodsConcurrency() {
+        return this.methodsConcurrency;
+    }
+
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    public List<String> getHeavyMethods() {
+        return this.heavyMethods;
+    }
+
     public boolean methodIsInModule(String methodName) {
         if (methodName == null)
             return false;
@@ -0,0 +1,125 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.rpc;
+
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.MetricsRegistry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the concurrent calls of each method and of each module, as configured
+ * in the module descriptions, so a client calling an expensive method many times
+ * cannot take all the RPC threads.
+ *
+ * A call waits for a free slot up to the module timeout, and then it is rejected.
+ * The methods without limits are not counted.
+ */
+public class RpcLimiter {
+    private final Map<String, Semaphore> methodLimits = new HashMap<>();
+    private final Map<String, Semaphore> moduleLimits = new HashMap<>();
+    private final Map<String, Long> moduleTimeouts = new HashMap<>();
+    private final Map<String, Counter> moduleRejections = new HashMap<>();
+
+    public RpcLimiter(List<ModuleDescription> modules) {
+        for (ModuleDescription module : modules) {
+            String name = module.getName();
+
+            if (module.getMaxConcurrency() > 0)
+                moduleLimits.put(name, new Semaphore(module.getMaxConcurrency()));
+
+            for (Map.Entry<String, Integer> entry : module.getMethodsConcurrency().entrySet())
+                if (entry.getValue() > 0)
+                    methodLimits.put(entry.getKey(), new Semaphore(entry.getValue()));
+
+            moduleTimeouts.put(name, module.getTimeout());
+            moduleRejections.put(name, MetricsRegistry.DEFAULT.counter(
+                    "rsk_rpc_rejected_total", "JSON-RPC calls rejected by the concurrency limits", "module", name));
+        }
+    }
+
+    /**
+     * Waits for a free slot of the method and of its module
+     *
+     * @throws RpcLimitExceededException    if there is no free slot after the module timeout
+     */
+    public void acquire(String methodName) throws RpcLimitExceededException {
+        String module = getModuleName(methodName);
+        Semaphore methodLimit = methodLimits.get(methodName);
+        Semaphore moduleLimit = moduleLimits.get(module);
+
+        if (methodLimit == null && moduleLimit == null)
+            return;
+
+        long timeout = moduleTimeouts.getOrDefault(module, 0L);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        if (methodLimit != null && !tryAcquire(methodLimit, timeout))
+            throw reject(module, methodName);
+
+        if (moduleLimit != null && !tryAcquire(moduleLimit, TimeUnit.NANOSECONDS.toMillis(Math.max(0, deadline - System.nanoTime())))) {
+            if (methodLimit != null)
+                methodLimit.release();
+
+            throw reject(module, methodName);
+        }
+    }
+
+    /**
+     * Frees the slots taken by a successful {@link #acquire}
+     */
+    public void release(String methodName) {
+        Semaphore methodLimit = methodLimits.get(methodName);
+        Semaphore moduleLimit = moduleLimits.get(getModuleName(methodName));
+
+        if (moduleLimit != null)
+            moduleLimit.release();
+
+        if (methodLimit != null)
+            methodLimit.release();
+    }
+
+    private RpcLimitExceededException reject(String module, String methodName) {
+        Counter rejections = moduleRejections.get(module);
+
+        if (rejections != null)
+            rejections.inc();
+
+        return new RpcLimitExceededException("Too many concurrent calls: " + methodName);
+    }
+
+    private static boolean tryAcquire(Semaphore semaphore, long timeout) {
+        try {
+            return semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String getModuleName(String methodName) {
+        int position = methodName.indexOf('_');
+        return position < 0 ? methodName : methodName.substring(0, position);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.modules.eth;
+
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.MetricsRegistry;
+import org.ethereum.core.Block;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.rpc.Web3;
+import org.ethereum.rpc.converters.CallArgumentsToByteArray;
+import org.ethereum.util.RLP;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of the eth_call and eth_estimateGas methods at the best block.
+ * The entries are keyed by the method and the call arguments (to, data, from,
+ * value, gas and gas price); the block is not part of the key: storing the
+ * result of a newer block drops all the entries, so the cache only holds the
+ * results of the current best block (the callers only store results of
+ * the block that is still the best one after the execution). The least
+ * recently used entries are removed when there are more than maxSize of them.
+ */
+public class CallCache {
+    private static final Counter HITS = MetricsRegistry.DEFAULT.counter(
+            "rsk_rpc_call_cache_total", "eth_call and eth_estimateGas cache lookups", "result", "hit");
+    private static final Counter MISSES = MetricsRegistry.DEFAULT.counter(
+            "rsk_rpc_call_cache_total", "eth_call and eth_estimateGas cache lookups", "result", "miss");
+
+    private final int maxSize;
+    private final Map<ByteArrayWrapper, String> results;
+    private byte[] blockHash;
+    private long blockNumber = -1;
+
+    public CallCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.results = new LinkedHashMap<ByteArrayWrapper, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, String> eldest) {
+                return size() > CallCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the key of a call, with the arguments converted to bytes
+     * as they are executed, so 0x1 and 0x01 are the same value
+     */
+    public static ByteArrayWrapper getKey(String method, Web3.CallArguments args) {
+        CallArgumentsToByteArray hexArgs = new CallArgumentsToByteArray(args);
+
+        return new ByteArrayWrapper(RLP.encodeList(
+                RLP.encodeString(method),
+                RLP.encodeElement(hexArgs.getToAddress()),
+                RLP.encodeElement(hexArgs.getData()),
+                RLP.encodeElement(hexArgs.getFromAddress()),
+                RLP.encodeElement(hexArgs.getValue()),
+                RLP.encodeElement(hexArgs.getGasLimit()),
+                RLP.encodeElement(hexArgs.getGasPrice())));
+    }
+
+    /**
+     * Returns the result of the call at the block, or <tt>null</tt>
+     * if it is not cached
+     */
+    public synchronized String get(Block block, ByteArrayWrapper key) {
+        String result = isCurrent(block) ? results.get(key) : null;
+
+        if (result == null)
+            MISSES.inc();
+        else
+            HITS.inc();
+
+        return result;
+    }
+
+    /**
+     * Stores the result of the call at the block, dropping the
+     * results of the previous block if it is another one
+     */
+    public synchronized void put(Block block, ByteArrayWrapper key, String result) {
+        if (maxSize <= 0)
+            return;
+
+        if (!isCurrent(block)) {
+            results.clear();
+            blockHash = block.getHash();
+            blockNumber = block.getNumber();
+        }
+
+        results.put(key, result);
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    private boolean isCurrent(Block block) {
+        return blockNumber == block.getNumber() && Arrays.equals(blockHash, block.getHash());
+    }
+}
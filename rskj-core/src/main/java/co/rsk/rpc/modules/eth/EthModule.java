@@ -18,9 +18,14 @@
 
 package co.rsk.rpc.modules.eth;
 
+import co.rsk.config.RskSystemProperties;
 import co.rsk.peg.Bridge;
 import co.rsk.peg.BridgeState;
 import co.rsk.peg.BridgeStateReader;
+import org.ethereum.core.Block;
+import org.ethereum.core.Blockchain;
+import org.ethereum.core.Repository;
+import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.facade.Ethereum;
 import org.ethereum.rpc.TypeConverter;
 import org.ethereum.rpc.Web3;
@@ -35,7 +40,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import static org.ethereum.rpc.TypeConverter.toJsonHex;
 
@@ -49,12 +56,18 @@ public class EthModule
     private final Ethereum eth;
     private final EthModuleSolidity ethModuleSolidity;
     private final EthModuleWallet ethModuleWallet;
+    private final CallCache callCache;
 
     @Autowired
     public EthModule(Ethereum eth, EthModuleSolidity ethModuleSolidity, EthModuleWallet ethModuleWallet) {
+        this(eth, ethModuleSolidity, ethModuleWallet, new CallCache(RskSystemProperties.CONFIG.rpcCallCacheSize()));
+    }
+
+    public EthModule(Ethereum eth, EthModuleSolidity ethModuleSolidity, EthModuleWallet ethModuleWallet, CallCache callCache) {
         this.eth = eth;
         this.ethModuleSolidity = ethModuleSolidity;
         this.ethModuleWallet = ethModuleWallet;
+        this.callCache = callCache;
     }
 
     @Override
@@ -77,17 +90,29 @@ public class EthModule
     public String call(Web3.CallArguments args, String bnOrId) {
         String s = null;
         try {
-            if (!"latest".equals(bnOrId)) {
+            if (!"latest".equalsIgnoreCase(bnOrId)) {
                 throw new JsonRpcUnimplementedMethodException("Method only supports 'latest' as a parameter so far.");
             }
 
-            ProgramResult res = eth.callConstant(args);
-            return s = toJsonHex(res.getHReturn());
+            return s = callCached("eth_call", args, () -> toJsonHex(eth.callConstant(args).getHReturn()));
         } finally {
             LOGGER.debug("eth_call(): {}", s);
         }
     }
 
+    /**
+     * Executes the call at the block, on the given snapshot of its state.
+     * The results are not cached.
+     */
+    public String call(Web3.CallArguments args, Block block, Repository snapshot) {
+        String s = null;
+        try {
+            return s = toJsonHex(eth.callConstant(args, block, snapshot).getHReturn());
+        } finally {
+            LOGGER.debug("eth_call({}): {}", block.getNumber(), s);
+        }
+    }
+
     @Override
     public Map<String, CompilationResultDTO> compileSolidity(String contract) throws Exception {
         return ethModuleSolidity.compileSolidity(contract);
@@ -96,13 +121,33 @@ public class EthModule
     public String estimateGas(Web3.CallArguments args) {
         String s = null;
         try {
-            ProgramResult res = eth.callConstant(args);
-            return s = toJsonHex(res.getGasUsed());
+            return s = callCached("eth_estimateGas", args, () -> toJsonHex(eth.estimateGas(args)));
         } finally {
             LOGGER.debug("eth_estimateGas(): {}", s);
         }
     }
 
+    /**
+     * Executes the call at the best block, unless its result is already cached.
+     * The result is cached only if the best block didn't change during the execution.
+     */
+    private String callCached(String method, Web3.CallArguments args, Supplier<String> call) {
+        Blockchain blockchain = eth.getWorldManager().getBlockchain();
+        Block bestBlock = blockchain.getBestBlock();
+        ByteArrayWrapper key = CallCache.getKey(method, args);
+        String result = callCache.get(bestBlock, key);
+
+        if (result != null)
+            return result;
+
+        result = call.get();
+
+        if (Arrays.equals(bestBlock.getHash(), blockchain.getBestBlock().getHash()))
+            callCache.put(bestBlock, key, result);
+
+        return result;
+    }
+
     @Override
     public String sendTransaction(Web3.CallArguments args) {
         return ethModuleWallet.sendTransaction(args);
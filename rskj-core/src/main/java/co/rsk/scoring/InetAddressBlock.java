@@ -16,6 +16,7 @@ public class InetAddressBlock {
     private final byte[] bytes;
     private final int nbytes;
     private final byte mask;
+    private final int prefixLength;
 
     /**
      * Creates an InetAddressBlock given an address and the number of bits to ignore
@@ -28,6 +29,7 @@ public class InetAddressBlock {
         this.bytes = address.getAddress();
         this.nbytes = this.bytes.length - (bits + 7) / 8;
         this.mask = (byte)(0xff << (bits % 8));
+        this.prefixLength = this.bytes.length * 8 - bits;
     }
 
     /**
@@ -76,6 +78,9 @@ public class InetAddressBlock {
         result *= 17;
         result += this.mask;
 
+        result *= 17;
+        result += this.prefixLength;
+
         return result;
     }
 
@@ -89,7 +94,17 @@ public class InetAddressBlock {
 
         InetAddressBlock block = (InetAddressBlock)obj;
 
-        return block.mask == this.mask && Arrays.equals(block.bytes, this.bytes);
+        return block.mask == this.mask && block.prefixLength == this.prefixLength && Arrays.equals(block.bytes, this.bytes);
+    }
+
+    /**
+     * Returns the number of leading bits that are checked
+     * ie for "192.168.51.1/16" it is 16 (32 bits minus 16 bits to ignore)
+     *
+     * @return  the number of bits of the address prefix
+     */
+    public int getPrefixLength() {
+        return this.prefixLength;
     }
 
     @VisibleForTesting
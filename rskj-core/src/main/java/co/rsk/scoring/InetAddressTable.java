@@ -9,6 +9,8 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * InetAddressTable has a set of net addresses and blocks
  * It is used by scoring manager to keep the banned addresses
+ * The blocks are also kept in a prefix trie, so checking an address
+ * doesn't depend on the number of banned blocks
  * @see PeerScoringManager
  * <p>
  * Created by ajlopez on 10/07/2017.
@@ -16,6 +18,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class InetAddressTable {
     private final Set<InetAddress> addresses = ConcurrentHashMap.newKeySet();
     private final Set<InetAddressBlock> blocks = ConcurrentHashMap.newKeySet();
+    private final InetAddressTrie trie = new InetAddressTrie();
 
     /**
      * Adds an address into the address set
@@ -38,8 +41,9 @@ public class InetAddressTable {
      *
      * @param addressBlock   the address block to add
      */
-    public void addAddressBlock(InetAddressBlock addressBlock) {
-        this.blocks.add(addressBlock);
+    public synchronized void addAddressBlock(InetAddressBlock addressBlock) {
+        if (this.blocks.add(addressBlock))
+            this.trie.add(addressBlock);
     }
 
     /**
@@ -47,8 +51,9 @@ public class InetAddressTable {
      *
      * @param addressBlock   the address block to remove
      */
-    public void removeAddressBlock(InetAddressBlock addressBlock) {
-        this.blocks.remove(addressBlock);
+    public synchronized void removeAddressBlock(InetAddressBlock addressBlock) {
+        if (this.blocks.remove(addressBlock))
+            this.trie.remove(addressBlock);
     }
 
     /**
@@ -66,13 +71,7 @@ public class InetAddressTable {
         if (this.blocks.isEmpty())
             return false;
 
-        //TODO(mmarquez): we need to check if this is thread safe
-        InetAddressBlock[] bs = this.blocks.toArray(new InetAddressBlock[0]);
-        for (InetAddressBlock mask : bs)
-            if (mask.contains(address))
-                return true;
-
-        return false;
+        return this.trie.contains(address);
     }
 
     /**
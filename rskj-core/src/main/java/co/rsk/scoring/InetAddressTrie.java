@@ -0,0 +1,126 @@
+package co.rsk.scoring;
+
+import java.net.InetAddress;
+
+/**
+ * InetAddressTrie is a binary prefix trie over the bits of the addresses
+ * It keeps the address blocks, one trie for IPV4 and other for IPV6,
+ * so checking if an address is in any block visits at most 32 or 128 nodes,
+ * no matter the number of blocks
+ * Lookups don't take locks; changes are synchronized
+ * (@see InetAddressTable)
+ */
+class InetAddressTrie {
+    private final Node ipv4Root = new Node();
+    private final Node ipv6Root = new Node();
+
+    /**
+     * Adds a block to the trie
+     *
+     * @param block     the address block to add
+     */
+    public synchronized void add(InetAddressBlock block) {
+        byte[] bytes = block.getBytes();
+        int prefixLength = block.getPrefixLength();
+        Node node = getRoot(bytes);
+
+        for (int k = 0; k < prefixLength; k++) {
+            int bit = getBit(bytes, k);
+            Node child = node.getChild(bit);
+
+            if (child == null) {
+                child = new Node();
+                node.setChild(bit, child);
+            }
+
+            node = child;
+        }
+
+        node.nblocks++;
+    }
+
+    /**
+     * Removes a block from the trie
+     * Other blocks with the same prefix remain in the trie
+     *
+     * @param block     the address block to remove
+     */
+    public synchronized void remove(InetAddressBlock block) {
+        byte[] bytes = block.getBytes();
+        int prefixLength = block.getPrefixLength();
+        Node[] path = new Node[prefixLength + 1];
+        Node node = getRoot(bytes);
+        path[0] = node;
+
+        for (int k = 0; k < prefixLength; k++) {
+            node = node.getChild(getBit(bytes, k));
+
+            if (node == null)
+                return;
+
+            path[k + 1] = node;
+        }
+
+        if (node.nblocks == 0)
+            return;
+
+        node.nblocks--;
+
+        // prune the nodes that are not used any more
+        for (int k = prefixLength; k > 0 && path[k].isEmpty(); k--)
+            path[k - 1].setChild(getBit(bytes, k - 1), null);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the address is included in any block of the trie
+     *
+     * @param address   the address to check
+     * @return  <tt>true</tt> if some block contains the address
+     */
+    public boolean contains(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        int nbits = bytes.length * 8;
+        Node node = getRoot(bytes);
+
+        for (int k = 0; node != null; k++) {
+            if (node.nblocks > 0)
+                return true;
+
+            if (k == nbits)
+                return false;
+
+            node = node.getChild(getBit(bytes, k));
+        }
+
+        return false;
+    }
+
+    private Node getRoot(byte[] bytes) {
+        return bytes.length == 4 ? ipv4Root : ipv6Root;
+    }
+
+    private static int getBit(byte[] bytes, int position) {
+        return (bytes[position / 8] >> (7 - position % 8)) & 0x01;
+    }
+
+    private static class Node {
+        private volatile Node zero;
+        private volatile Node one;
+        private volatile int nblocks;
+
+        Node getChild(int bit) {
+            return bit == 0 ? zero : one;
+        }
+
+        void setChild(int bit, Node child) {
+            if (bit == 0)
+                zero = child;
+            else
+                one = child;
+        }
+
+        boolean isEmpty() {
+            return nblocks == 0 && zero == null && one == null;
+        }
+    }
+}
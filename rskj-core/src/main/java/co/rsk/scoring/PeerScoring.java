@@ -2,8 +2,9 @@ package co.rsk.scoring;
 
 import com.google.common.annotations.VisibleForTesting;
 
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * PeerScoring records the events associated with a peer
@@ -12,17 +13,27 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * Also, a good reputation flag is calculated.
  * The number of punishment is recorded, as well the initial punishment time and its duration.
  * When the punishment expires, the good reputation is restored and most counters are reset to zero
+ * Event recording and reputation reads are lock free; only starting and ending
+ * a punishment synchronize on the scoring instance
  * <p>
  * Created by ajlopez on 27/06/2017.
  */
 public class PeerScoring {
-    private final ReadWriteLock rwlock = new ReentrantReadWriteLock();
-    private int[] counters = new int[EventType.values().length];
-    private boolean goodReputation = true;
-    private long timeLostGoodReputation;
-    private long punishmentTime;
-    private int punishmentCounter;
-    private int score;
+    private final LongAdder[] counters = new LongAdder[EventType.values().length];
+    private final AtomicInteger score = new AtomicInteger();
+
+    // written only while holding the instance lock, read without it
+    private volatile boolean goodReputation = true;
+    private volatile long timeLostGoodReputation;
+    private volatile long punishmentTime;
+    private volatile int punishmentCounter;
+
+    private volatile long lastAccess;
+
+    public PeerScoring() {
+        for (int i = 0; i < counters.length; i++)
+            counters[i] = new LongAdder();
+    }
 
     /**
      * Records an event.
@@ -34,32 +45,23 @@ public class PeerScoring {
      * @param evt       An event type @see EventType
      */
     public void recordEvent(EventType evt) {
-        try {
-            rwlock.writeLock().lock();
-
-            counters[evt.ordinal()]++;
-
-            switch (evt) {
-                case INVALID_NETWORK:
-                case INVALID_BLOCK:
-                case INVALID_TRANSACTION:
-                    if (score > 0)
-                        score = 0;
-                    score--;
-                    break;
-
-                case FAILED_HANDSHAKE:
-                case SUCCESSFUL_HANDSHAKE:
-                case REPEATED_MESSAGE:
-                    break;
-
-                default:
-                    if (score >= 0)
-                        score++;
-                    break;
-            }
-        } finally {
-            rwlock.writeLock().unlock();
+        counters[evt.ordinal()].increment();
+
+        switch (evt) {
+            case INVALID_NETWORK:
+            case INVALID_BLOCK:
+            case INVALID_TRANSACTION:
+                score.updateAndGet(value -> value > 0 ? -1 : value - 1);
+                break;
+
+            case FAILED_HANDSHAKE:
+            case SUCCESSFUL_HANDSHAKE:
+            case REPEATED_MESSAGE:
+                break;
+
+            default:
+                score.updateAndGet(value -> value >= 0 ? value + 1 : value);
+                break;
         }
     }
 
@@ -71,7 +73,7 @@ public class PeerScoring {
      *          with a good reputation. Negative values indicates a possible punishment.
      */
     public int getScore() {
-        return score;
+        return score.get();
     }
 
     /**
@@ -82,13 +84,7 @@ public class PeerScoring {
      * @return  The count of events of the specefied type
      */
     public int getEventCounter(EventType evt) {
-        try {
-            rwlock.readLock().lock();
-
-            return counters[evt.ordinal()];
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        return counters[evt.ordinal()].intValue();
     }
 
     /**
@@ -97,17 +93,12 @@ public class PeerScoring {
      * @return  The total count of events
      */
     public int getTotalEventCounter() {
-        try {
-            rwlock.readLock().lock();
-            int counter = 0;
+        int counter = 0;
 
-            for (int i = 0; i < counters.length; i++)
-                counter += counters[i];
+        for (int i = 0; i < counters.length; i++)
+            counter += counters[i].intValue();
 
-            return counter;
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        return counter;
     }
 
     /**
@@ -116,32 +107,25 @@ public class PeerScoring {
      * @return <tt>true</tt> if there is no event
      */
     public boolean isEmpty() {
-        try {
-            rwlock.readLock().lock();
-            return getTotalEventCounter() == 0;
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        return getTotalEventCounter() == 0;
     }
 
     /**
      * Returns <tt>true</tt> if the peer has good reputation.
      * Returns <tt>false</tt> if not.
+     * Only takes the lock when the peer is being punished, to check if the punishment expired
      *
      * @return <tt>true</tt> or <tt>false</tt>
      */
     public boolean hasGoodReputation() {
-        try {
-            rwlock.writeLock().lock();
-            if (this.goodReputation)
-                return true;
+        if (this.goodReputation)
+            return true;
 
+        synchronized (this) {
             if (this.punishmentTime > 0 && this.timeLostGoodReputation > 0 && this.punishmentTime + this.timeLostGoodReputation <= System.currentTimeMillis())
                 this.endPunishment();
 
             return this.goodReputation;
-        } finally {
-            rwlock.writeLock().unlock();
         }
     }
 
@@ -153,16 +137,11 @@ public class PeerScoring {
      * @param   expirationTime  punishment duration in milliseconds
      */
     @VisibleForTesting
-    public void startPunishment(long expirationTime) {
-        try {
-            rwlock.writeLock().lock();
-            this.goodReputation = false;
-            this.punishmentTime = expirationTime;
-            this.punishmentCounter++;
-            this.timeLostGoodReputation = System.currentTimeMillis();
-        } finally {
-            rwlock.writeLock().unlock();
-        }
+    public synchronized void startPunishment(long expirationTime) {
+        this.punishmentTime = expirationTime;
+        this.punishmentCounter++;
+        this.timeLostGoodReputation = System.currentTimeMillis();
+        this.goodReputation = false;
     }
 
     /**
@@ -170,12 +149,12 @@ public class PeerScoring {
      * Clear the event counters
      *
      */
+    @GuardedBy("this")
     private void endPunishment() {
-        //Check locks before doing this function public
         for (int i = 0; i < counters.length; i++)
-            this.counters[i] = 0;
-        this.goodReputation = true;
+            this.counters[i].reset();
         this.timeLostGoodReputation = 0;
+        this.goodReputation = true;
     }
 
     @VisibleForTesting
@@ -196,4 +175,16 @@ public class PeerScoring {
     public long getTimeLostGoodReputation() {
         return this.timeLostGoodReputation;
     }
+
+    /**
+     * Returns the logical time of the last access to this scoring,
+     * used by the manager to discard the least recently used peers
+     */
+    long getLastAccess() {
+        return this.lastAccess;
+    }
+
+    void setLastAccess(long lastAccess) {
+        this.lastAccess = lastAccess;
+    }
 }
@@ -2,11 +2,19 @@ package co.rsk.scoring;
 
 import co.rsk.net.NodeID;
 import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
-import javax.annotation.concurrent.GuardedBy;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 /**
@@ -15,23 +23,28 @@ import java.util.stream.Collectors;
  * Calculates good reputation by node id and address
  * Starts punishments when the good reputation is lost
  * Alsa keeps a list of banned addresses and blocks
+ * Scorings are kept in concurrent maps, so recording events and checking
+ * reputation don't serialize the message processing
  * <p>
  * Created by ajlopez on 28/06/2017.
  */
 public class PeerScoringManager {
+    private static final Logger logger = LoggerFactory.getLogger("peerScoring");
+
     private final ScoringCalculator scoringCalculator;
     private final PunishmentCalculator nodePunishmentCalculator;
     private final PunishmentCalculator ipPunishmentCalculator;
 
-    private final Object accessLock = new Object();
+    private final int nodePeersSize;
+
+    // only taken when a new node exceeds the maximum number of nodes
+    private final Object evictionLock = new Object();
 
     private final InetAddressTable addressTable = new InetAddressTable();
 
-    @GuardedBy("accessLock")
-    private final LinkedHashMap<NodeID, PeerScoring> peersByNodeID;
+    private final ConcurrentMap<NodeID, PeerScoring> peersByNodeID;
 
-    @GuardedBy("accessLock")
-    private final Map<InetAddress, PeerScoring> peersByAddress;
+    private final ConcurrentMap<InetAddress, PeerScoring> peersByAddress;
 
     /**
      * Creates and initialize the scoring manager
@@ -46,14 +59,9 @@ public class PeerScoringManager {
         this.nodePunishmentCalculator = new PunishmentCalculator(nodeParameters);
         this.ipPunishmentCalculator = new PunishmentCalculator(ipParameters);
 
-        this.peersByNodeID = new LinkedHashMap<NodeID, PeerScoring>(nodePeersSize, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<NodeID, PeerScoring> eldest) {
-                return size() > nodePeersSize;
-            }
-        };
-
-        this.peersByAddress = new HashMap<>();
+        this.nodePeersSize = nodePeersSize;
+        this.peersByNodeID = new ConcurrentHashMap<>(nodePeersSize);
+        this.peersByAddress = new ConcurrentHashMap<>();
     }
 
     /**
@@ -64,22 +72,14 @@ public class PeerScoringManager {
      * @param event     event type (@see EventType)
      */
     public void recordEvent(NodeID id, InetAddress address, EventType event) {
-        synchronized (accessLock) {
-            if (id != null) {
-                if (!peersByNodeID.containsKey(id))
-                    peersByNodeID.put(id, new PeerScoring());
-
-                PeerScoring scoring = peersByNodeID.get(id);
-                recordEvent(scoring, event, this.nodePunishmentCalculator);
-            }
-
-            if (address != null) {
-                if (!peersByAddress.containsKey(address))
-                    peersByAddress.put(address, new PeerScoring());
+        if (id != null) {
+            PeerScoring scoring = getOrCreatePeerScoring(id);
+            recordEvent(scoring, event, this.nodePunishmentCalculator);
+        }
 
-                PeerScoring scoring = peersByAddress.get(address);
-                recordEvent(scoring, event, this.ipPunishmentCalculator);
-            }
+        if (address != null) {
+            PeerScoring scoring = peersByAddress.computeIfAbsent(address, k -> new PeerScoring());
+            recordEvent(scoring, event, this.ipPunishmentCalculator);
         }
     }
 
@@ -90,9 +90,7 @@ public class PeerScoringManager {
      * @return  <tt>true</tt> if the node has good reputation
      */
     public boolean hasGoodReputation(NodeID id) {
-        synchronized (accessLock) {
-            return this.getPeerScoring(id).hasGoodReputation();
-        }
+        return this.getPeerScoring(id).hasGoodReputation();
     }
 
     /**
@@ -106,9 +104,7 @@ public class PeerScoringManager {
         if (this.addressTable.contains(address))
             return false;
 
-        synchronized (accessLock) {
-            return this.getPeerScoring(address).hasGoodReputation();
-        }
+        return this.getPeerScoring(address).hasGoodReputation();
     }
 
     /**
@@ -134,6 +130,38 @@ public class PeerScoringManager {
             this.banAddress(InetAddressUtils.getAddressForBan(address));
     }
 
+    /**
+     * Bans the addresses and address blocks listed in a text file
+     * One address or address block per line, ie "192.168.51.1" or "192.168.51.1/16"
+     * Empty lines and lines starting with '#' are skipped
+     * Invalid entries are logged and skipped
+     *
+     * @param path  the file to read
+     * @return  the number of banned entries
+     */
+    public int banAddresses(Path path) throws IOException {
+        int count = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String entry = line.trim();
+
+                if (entry.isEmpty() || entry.startsWith("#"))
+                    continue;
+
+                try {
+                    this.banAddress(entry);
+                    count++;
+                }
+                catch (InvalidInetAddressException ex) {
+                    logger.warn("Invalid banned address '{}' in {}", entry, path, ex);
+                }
+            }
+        }
+
+        return count;
+    }
+
     /**
      * Removes a network address from the set of banned addresses
      *
@@ -182,14 +210,12 @@ public class PeerScoringManager {
      * @return  the list of peer scoring information
      */
     public List<PeerScoringInformation> getPeersInformation() {
-        synchronized (accessLock) {
-            List<PeerScoringInformation> list = new ArrayList<>(this.peersByNodeID.size() + this.peersByAddress.size());
+        List<PeerScoringInformation> list = new ArrayList<>(this.peersByNodeID.size() + this.peersByAddress.size());
 
-            list.addAll(this.peersByNodeID.entrySet().stream().map(entry -> new PeerScoringInformation(entry.getValue(), Hex.toHexString(entry.getKey().getID()).substring(0, 8), "node")).collect(Collectors.toList()));
-            list.addAll(this.peersByAddress.entrySet().stream().map(entry -> new PeerScoringInformation(entry.getValue(), entry.getKey().getHostAddress(), "address")).collect(Collectors.toList()));
+        list.addAll(this.peersByNodeID.entrySet().stream().map(entry -> new PeerScoringInformation(entry.getValue(), Hex.toHexString(entry.getKey().getID()).substring(0, 8), "node")).collect(Collectors.toList()));
+        list.addAll(this.peersByAddress.entrySet().stream().map(entry -> new PeerScoringInformation(entry.getValue(), entry.getKey().getHostAddress(), "address")).collect(Collectors.toList()));
 
-            return list;
-        }
+        return list;
     }
 
     /**
@@ -209,29 +235,26 @@ public class PeerScoringManager {
 
     @VisibleForTesting
     public boolean isEmpty() {
-        synchronized (accessLock) {
-            return this.peersByAddress.isEmpty() && this.peersByNodeID.isEmpty();
-        }
+        return this.peersByAddress.isEmpty() && this.peersByNodeID.isEmpty();
     }
 
     @VisibleForTesting
     public PeerScoring getPeerScoring(NodeID id) {
-        synchronized (accessLock) {
-            if (peersByNodeID.containsKey(id))
-                return peersByNodeID.get(id);
+        PeerScoring scoring = peersByNodeID.get(id);
 
+        if (scoring == null)
             return new PeerScoring();
-        }
+
+        scoring.setLastAccess(System.nanoTime());
+
+        return scoring;
     }
 
     @VisibleForTesting
     public PeerScoring getPeerScoring(InetAddress address) {
-        synchronized (accessLock) {
-            if (peersByAddress.containsKey(address))
-                return peersByAddress.get(address);
+        PeerScoring scoring = peersByAddress.get(address);
 
-            return new PeerScoring();
-        }
+        return scoring == null ? new PeerScoring() : scoring;
     }
 
     /**
@@ -245,7 +268,55 @@ public class PeerScoringManager {
         scoring.recordEvent(event);
         boolean reputation = scoringCalculator.hasGoodReputation(scoring);
 
-        if (!reputation && scoring.hasGoodReputation())
-            scoring.startPunishment(calculator.calculate(scoring.getPunishmentCounter(), scoring.getScore()));
+        if (reputation)
+            return;
+
+        // only one of the concurrent recorders should start the punishment
+        synchronized (scoring) {
+            if (scoring.hasGoodReputation())
+                scoring.startPunishment(calculator.calculate(scoring.getPunishmentCounter(), scoring.getScore()));
+        }
+    }
+
+    /**
+     * Returns the scoring of a node, creating it if needed
+     * When the maximum number of nodes is exceeded, the least recently
+     * used nodes are discarded
+     *
+     * @param id    the node id
+     * @return  the node scoring
+     */
+    private PeerScoring getOrCreatePeerScoring(NodeID id) {
+        PeerScoring scoring = peersByNodeID.get(id);
+
+        if (scoring != null) {
+            scoring.setLastAccess(System.nanoTime());
+            return scoring;
+        }
+
+        scoring = peersByNodeID.computeIfAbsent(id, k -> new PeerScoring());
+        scoring.setLastAccess(System.nanoTime());
+
+        if (peersByNodeID.size() > nodePeersSize)
+            evictLeastRecentlyUsedNodes();
+
+        return scoring;
+    }
+
+    private void evictLeastRecentlyUsedNodes() {
+        synchronized (evictionLock) {
+            while (peersByNodeID.size() > nodePeersSize) {
+                Map.Entry<NodeID, PeerScoring> eldest = null;
+
+                for (Map.Entry<NodeID, PeerScoring> entry : peersByNodeID.entrySet())
+                    if (eldest == null || entry.getValue().getLastAccess() < eldest.getValue().getLastAccess())
+                        eldest = entry;
+
+                if (eldest == null)
+                    return;
+
+                peersByNodeID.remove(eldest.getKey(), eldest.getValue());
+            }
+        }
     }
 }
@@ -22,6 +22,11 @@ import javax.annotation.Nonnull;
 
 /**
  * Created by martin.medina on 5/04/17.
+ *
+ * The encoded (packed) paths keep each element in 1, 2 or 4 bits (arity 2,
+ * 4 or 16), from the most significant bit of the first byte, and zero padded.
+ * A key is a packed path too, so the trie walks the keys and the shared paths
+ * in this form, with the methods that take the bits per element.
  */
 class PathEncoder {
 
@@ -123,4 +128,116 @@ class PathEncoder {
 
         return path;
     }
+
+    /**
+     * Returns the bits of each path element
+     */
+    static int getBitsPerElement(int arity) {
+        if (arity == 2)
+            return 1;
+        if (arity == 4)
+            return 2;
+        if (arity == 16)
+            return 4;
+
+        throw new IllegalArgumentException(INVALID_ARITY);
+    }
+
+    /**
+     * Returns the number of bytes of an encoded path
+     */
+    static int getEncodedLength(int length, int bits) {
+        return (length * bits + 7) / 8;
+    }
+
+    /**
+     * Returns the element at index of an encoded path
+     */
+    static int getElement(byte[] encoded, int index, int bits) {
+        int bit = index * bits;
+        int shift = 8 - bits - (bit & 7);
+
+        return (encoded[bit >> 3] >> shift) & ((1 << bits) - 1);
+    }
+
+    /**
+     * Returns the number of equal elements of two encoded paths, starting at
+     * the given positions, up to length. It compares 8 bits at a time, so
+     * the positions don't have to be byte aligned.
+     */
+    static int getCommonLength(byte[] first, int firstPosition, byte[] second, int secondPosition, int length, int bits) {
+        int nbits = length * bits;
+        int firstBit = firstPosition * bits;
+        int secondBit = secondPosition * bits;
+
+        for (int k = 0; k < nbits; k += 8) {
+            int n = Math.min(8, nbits - k);
+            int diff = (getByte(first, firstBit + k) ^ getByte(second, secondBit + k)) & (0xff << (8 - n)) & 0xff;
+
+            if (diff != 0)
+                return (k + Integer.numberOfLeadingZeros(diff) - 24) / bits;
+        }
+
+        return length;
+    }
+
+    /**
+     * Returns a new encoded path with length elements of an encoded path,
+     * from position
+     */
+    static byte[] extract(byte[] encoded, int position, int length, int bits) {
+        int nbits = length * bits;
+        int firstBit = position * bits;
+        byte[] extracted = new byte[getEncodedLength(length, bits)];
+
+        for (int k = 0; k < extracted.length; k++) {
+            int b = getByte(encoded, firstBit + k * 8);
+            int remaining = nbits - k * 8;
+
+            if (remaining < 8)
+                b &= 0xff << (8 - remaining);
+
+            extracted[k] = (byte) b;
+        }
+
+        return extracted;
+    }
+
+    /**
+     * Returns the encoded path formed by a prefix, an element and a suffix,
+     * all of them encoded paths but the element
+     */
+    static byte[] join(byte[] prefix, int prefixLength, int element, byte[] suffix, int suffixLength, int bits) {
+        int length = prefixLength + 1 + suffixLength;
+        byte[] joined = new byte[getEncodedLength(length, bits)];
+
+        for (int k = 0; k < prefixLength; k++)
+            setElement(joined, k, getElement(prefix, k, bits), bits);
+
+        setElement(joined, prefixLength, element, bits);
+
+        for (int k = 0; k < suffixLength; k++)
+            setElement(joined, prefixLength + 1 + k, getElement(suffix, k, bits), bits);
+
+        return joined;
+    }
+
+    private static void setElement(byte[] encoded, int index, int element, int bits) {
+        int bit = index * bits;
+        encoded[bit >> 3] |= element << (8 - bits - (bit & 7));
+    }
+
+    // the 8 bits that start at the given bit, zero beyond the end
+    private static int getByte(byte[] encoded, int bit) {
+        int nbyte = bit >> 3;
+        int offset = bit & 7;
+        int high = nbyte < encoded.length ? encoded[nbyte] & 0xff : 0;
+
+        if (offset == 0)
+            return high;
+
+        int low = nbyte + 1 < encoded.length ? encoded[nbyte + 1] & 0xff : 0;
+
+        return ((high << offset) | (low >> (8 - offset))) & 0xff;
+    }
 }
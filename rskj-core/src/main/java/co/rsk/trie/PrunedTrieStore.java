@@ -0,0 +1,237 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.metrics.MetricsRegistry;
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.db.ByteArrayWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Trie store that deletes the nodes that are not reachable from a set of
+ * retained roots, with a generational mark and sweep.
+ *
+ * prune marks the nodes reachable from the roots, and deletes the other keys
+ * of the data source, except the nodes saved since the start of the previous
+ * prune: they can belong to a state that is being built (a block that is being
+ * imported or mined) whose root is not retained yet. So a node is deleted only
+ * if it was not saved again during a whole prune interval.
+ *
+ * The saves go on while the store is pruned. The deletion of a key and its
+ * save are serialized by a lock, so a node that is saved again during the
+ * sweep is not deleted. A prune that is interrupted (by a restart) only leaves
+ * unreachable nodes, that are deleted by the next one.
+ *
+ * The generations are only kept in memory. After a restart the nodes saved
+ * before it are not recent anymore, so the first prune keeps less than it
+ * would have: only the nodes reachable from the roots and the ones saved since
+ * the restart. The states that were being built when the node stopped are
+ * lost with it, so their nodes are not needed, while the retained roots are
+ * taken again from the block store.
+ */
+public class PrunedTrieStore extends TrieStoreImpl {
+    private static final Logger logger = LoggerFactory.getLogger("triestore");
+
+    private static final Counter nodesPruned = MetricsRegistry.DEFAULT.counter(
+            "rsk_trie_store_pruned_nodes_total", "Trie nodes deleted by the state pruning");
+    private static final Counter bytesPruned = MetricsRegistry.DEFAULT.counter(
+            "rsk_trie_store_pruned_bytes_total", "Bytes of the trie nodes deleted by the state pruning");
+    private static final LatencyHistogram pruneTime = MetricsRegistry.DEFAULT.histogram(
+            "rsk_trie_store_prune_seconds", "Duration of the state prunes");
+
+    // keys deleted while holding the lock
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final KeyValueDataSource dataSource;
+
+    // keys saved since the start of the current and of the previous prune
+    private final Object generationLock = new Object();
+    private Set<ByteArrayWrapper> generation = new HashSet<>();
+    private Set<ByteArrayWrapper> previousGeneration = new HashSet<>();
+
+    public PrunedTrieStore(KeyValueDataSource dataSource) {
+        super(dataSource);
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void save(Trie trie) {
+        ByteArrayWrapper key = new ByteArrayWrapper(trie.getHash());
+
+        synchronized (generationLock) {
+            generation.add(key);
+        }
+
+        super.save(trie);
+    }
+
+    /**
+     * prune deletes the nodes that are not reachable from the roots, and that
+     * were not saved since the start of the previous prune
+     *
+     * @param roots     the roots of the retained states
+     * @param dryRun    if true, nothing is deleted, only the result is calculated
+     *
+     * @return  the number of retained and deleted nodes, and their sizes
+     */
+    public synchronized PruneResult prune(Collection<byte[]> roots, boolean dryRun) {
+        long start = System.nanoTime();
+
+        if (!dryRun)
+            synchronized (generationLock) {
+                previousGeneration = generation;
+                generation = new HashSet<>();
+            }
+
+        PruneResult result = new PruneResult();
+        Set<ByteArrayWrapper> reachable = this.mark(roots, result);
+
+        List<byte[]> candidates = new ArrayList<>();
+
+        for (byte[] key : this.dataSource.keys()) {
+            if (reachable.contains(new ByteArrayWrapper(key)))
+                continue;
+
+            candidates.add(key);
+
+            if (candidates.size() >= DELETE_BATCH_SIZE) {
+                this.sweep(candidates, result, dryRun);
+                candidates.clear();
+            }
+        }
+
+        this.sweep(candidates, result, dryRun);
+
+        long nanos = System.nanoTime() - start;
+
+        if (!dryRun) {
+            nodesPruned.add(result.prunedNodes);
+            bytesPruned.add(result.prunedBytes);
+            pruneTime.record(nanos);
+        }
+
+        logger.info("{} state in {} ms: {}", dryRun ? "Checked" : "Pruned", nanos / 1000000, result);
+
+        return result;
+    }
+
+    private Set<ByteArrayWrapper> mark(Collection<byte[]> roots, PruneResult result) {
+        Set<ByteArrayWrapper> marked = new HashSet<>();
+        Deque<byte[]> pending = new ArrayDeque<>(roots);
+
+        while (!pending.isEmpty()) {
+            byte[] hash = pending.pop();
+
+            if (!marked.add(new ByteArrayWrapper(hash)))
+                continue;
+
+            byte[] message = this.dataSource.get(hash);
+
+            // the empty trie root is not saved
+            if (message == null)
+                continue;
+
+            result.retainedNodes++;
+            result.retainedBytes += hash.length + message.length;
+
+            TrieImpl node = TrieImpl.fromMessage(message, this);
+
+            for (int k = 0; k < node.getArity(); k++) {
+                byte[] subnodeHash = node.getHash(k);
+
+                if (subnodeHash != null)
+                    pending.push(subnodeHash);
+            }
+        }
+
+        return marked;
+    }
+
+    private void sweep(List<byte[]> keys, PruneResult result, boolean dryRun) {
+        // the nodes are read out of the lock, their values don't change
+        int[] sizes = new int[keys.size()];
+
+        for (int k = 0; k < sizes.length; k++) {
+            byte[] value = this.dataSource.get(keys.get(k));
+            sizes[k] = value == null ? -1 : value.length;
+        }
+
+        synchronized (generationLock) {
+            for (int k = 0; k < sizes.length; k++) {
+                byte[] key = keys.get(k);
+                ByteArrayWrapper wrappedKey = new ByteArrayWrapper(key);
+
+                if (generation.contains(wrappedKey) || previousGeneration.contains(wrappedKey)) {
+                    result.recentNodes++;
+                    continue;
+                }
+
+                if (sizes[k] < 0)
+                    continue;
+
+                result.prunedNodes++;
+                result.prunedBytes += key.length + sizes[k];
+
+                if (!dryRun)
+                    this.dataSource.delete(key);
+            }
+        }
+    }
+
+    public static class PruneResult {
+        private long retainedNodes;
+        private long retainedBytes;
+        private long prunedNodes;
+        private long prunedBytes;
+        private long recentNodes;
+
+        public long getRetainedNodes() {
+            return retainedNodes;
+        }
+
+        public long getRetainedBytes() {
+            return retainedBytes;
+        }
+
+        public long getPrunedNodes() {
+            return prunedNodes;
+        }
+
+        public long getPrunedBytes() {
+            return prunedBytes;
+        }
+
+        // unreachable nodes that were kept because they were saved recently
+        public long getRecentNodes() {
+            return recentNodes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d nodes (%d KB) retained, %d nodes (%d KB) unreachable, %d recent unreachable nodes kept",
+                    retainedNodes, retainedBytes / 1024, prunedNodes, prunedBytes / 1024, recentNodes);
+        }
+    }
+}
@@ -18,6 +18,11 @@
 
 package co.rsk.trie;
 
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.Iterator;
+import java.util.Map;
+
 /**
  * Created by ajlopez on 29/03/2017.
  */
@@ -36,6 +41,21 @@ public interface Trie {
 
     Trie put(String key, byte[] value);
 
+    Trie putAll(Map<ByteArrayWrapper, byte[]> values);
+
+    /**
+     * iterator walks the key values with from <= key < to, in key order. The nodes are
+     * retrieved from the store while the iterator advances, and they are not kept
+     * in the trie. In a secure trie, the keys and the bounds are the sha3 of the original keys
+     * (see TrieIterator.withPreimages)
+     *
+     * @param from  the first key, inclusive, or null to start at the first key
+     * @param to    the last key, exclusive, or null to walk to the end of the trie
+     *
+     * @return  an iterator over the keys and values
+     */
+    Iterator<Map.Entry<ByteArrayWrapper, byte[]>> iterator(byte[] from, byte[] to);
+
     Trie delete(byte[] key);
 
     Trie delete(String key);
@@ -21,6 +21,7 @@ package co.rsk.trie;
 import co.rsk.panic.PanicProcessor;
 import org.ethereum.crypto.SHA3Helper;
 import org.ethereum.datasource.HashMapDB;
+import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.util.RLP;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +35,11 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static org.ethereum.crypto.SHA3Helper.sha3;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
@@ -55,11 +60,10 @@ import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
  *
  * An empty node has no subnodes and a null value
  *
- * Created by ajlopez on 22/08/2016.
+ * The keys and the shared paths are walked in their encoded form (see PathEncoder),
+ * without expanding them to one byte per element
  *
- * TODO(martin.medina): We shouldn't decode/encode the paths all the time. This makes multiple allocs and consumes CPU.
- * Avoiding that could bring performance gain.
- * 
+ * Created by ajlopez on 22/08/2016.
  */
 public class TrieImpl implements Trie {
     private static final Logger logger = LoggerFactory.getLogger("trie");
@@ -71,6 +75,11 @@ public class TrieImpl implements Trie {
     private static final int MESSAGE_HEADER_LENGTH = 2 + Short.BYTES * 2;
     private static final int SERIALIZATION_HEADER_LENGTH = Short.BYTES * 2 + Integer.BYTES * 2;
 
+    // minimum number of nodes without hash in a subtree to hash it in its own fork/join task
+    static final int PARALLEL_HASH_THRESHOLD = 1024;
+
+    private static int parallelHashThreshold = PARALLEL_HASH_THRESHOLD;
+
     // all zeroed, default hash for empty nodes
     private static byte[] emptyHash = makeEmptyHash();
 
@@ -89,6 +98,9 @@ public class TrieImpl implements Trie {
     // it is saved to store
     private boolean saved;
 
+    // it is a copy made by putAll, that can be updated in place until the end of the putAll
+    private boolean mutable;
+
     // sha3 is applied to keys
     private boolean isSecure;
 
@@ -281,11 +293,62 @@ public class TrieImpl implements Trie {
         if (isEmptyTrie(this.value, this.nodes, this.hashes))
             return ByteUtils.clone(emptyHash);
 
+        return ByteUtils.clone(this.computeHash(true));
+    }
+
+    /**
+     * computeHash calculates the hash of a not empty node, and the missing hashes of its subnodes.
+     * If parallel is true, the subtrees with many nodes to hash are hashed in fork/join tasks
+     * (see HashTask), the result is the same as hashing them one by one
+     *
+     * @return  the node hash (not a copy)
+     */
+    private byte[] computeHash(boolean parallel) {
+        if (this.hash != null)
+            return this.hash;
+
+        int threshold = parallelHashThreshold;
+
+        if (parallel && ForkJoinPool.getCommonPoolParallelism() > 1 && this.countNodesToHash(threshold) >= threshold) {
+            ForkJoinPool.commonPool().invoke(new HashTask(this, threshold));
+            return this.hash;
+        }
+
         byte[] message = this.toMessage();
 
         this.hash = SHA3Helper.sha3(message);
 
-        return ByteUtils.clone(this.hash);
+        return this.hash;
+    }
+
+    /**
+     * countNodesToHash counts the nodes without hash in this subtree, up to a limit
+     *
+     * @param limit the maximum number of nodes to count
+     *
+     * @return  the number of nodes without hash, or limit if there are more
+     */
+    private int countNodesToHash(int limit) {
+        if (this.hash != null)
+            return 0;
+
+        int count = 1;
+
+        if (this.nodes == null)
+            return count;
+
+        for (int k = 0; k < this.arity && count < limit; k++)
+            if (this.nodes[k] != null && (this.hashes == null || this.hashes[k] == null))
+                count += this.nodes[k].countNodesToHash(limit - count);
+
+        return Math.min(count, limit);
+    }
+
+    /**
+     * Changes the subtree size to hash in parallel, for tests and benchmarks
+     */
+    static void setParallelHashThreshold(int threshold) {
+        parallelHashThreshold = threshold;
     }
 
     /**
@@ -297,15 +360,15 @@ public class TrieImpl implements Trie {
      */
     @Override
     public byte[] get(byte[] key) {
-        byte[] keyBytes = this.isSecure ? bytesToKey(sha3(key), this.arity) : bytesToKey(key, this.arity);
-        return get(keyBytes, keyBytes.length, 0);
+        byte[] keyBytes = this.isSecure ? sha3(key) : key;
+        return get(keyBytes, this.getKeyLength(keyBytes), 0);
     }
 
     @Override
     public PartialMerkleTree getPartialMerkleTree(byte[] key) {
-        byte[] keyBytes = this.isSecure ? bytesToKey(sha3(key), this.arity) : bytesToKey(key, this.arity);
+        byte[] keyBytes = this.isSecure ? sha3(key) : key;
 
-        return getPartialMerkleTree(keyBytes, keyBytes.length, 0);
+        return getPartialMerkleTree(keyBytes, this.getKeyLength(keyBytes), 0);
     }
 
     private PartialMerkleTree getPartialMerkleTree(byte[] key, int length, int keyPosition) {
@@ -315,20 +378,16 @@ public class TrieImpl implements Trie {
             return new PartialMerkleTree(this);
 
         if (this.encodedSharedPath != null) {
-            byte[] sharedPath = PathEncoder.decode(this.encodedSharedPath, this.arity, this.sharedPathLength);
+            if (!this.isSharedPathPrefixOf(key, length, position))
+                return null;
 
-            for (int k = 0; k < sharedPath.length; k++, position++) {
-                if (position >= length)
-                    return null;
-                if (key[position] != sharedPath[k])
-                    return null;
-            }
+            position += this.sharedPathLength;
 
             if (position >= length)
                 return new PartialMerkleTree(this);
         }
 
-        int pos = key[position];
+        int pos = PathEncoder.getElement(key, position, this.getBitsPerElement());
 
         Trie node = this.retrieveNode(pos);
 
@@ -365,9 +424,9 @@ public class TrieImpl implements Trie {
      */
     @Override
     public Trie put(byte[] key, byte[] value) {
-        byte[] keyBytes = this.isSecure ? bytesToKey(sha3(key), this.arity) : bytesToKey(key, this.arity);
+        byte[] keyBytes = this.isSecure ? sha3(key) : key;
 
-        TriePutResult putResult = put(keyBytes, keyBytes.length, 0, value);
+        TriePutResult putResult = put(keyBytes, this.getKeyLength(keyBytes), 0, value);
         Trie trie = putResult.getTrie();
 
         if (ResultAction.DELETE == putResult.getAction()) {
@@ -377,6 +436,53 @@ public class TrieImpl implements Trie {
         return trie == null ? new TrieImpl(this.arity, this.store, this.isSecure) : trie;
     }
 
+    /**
+     * putAll puts the key value associations in the map iteration order, a null value
+     * deletes the key, returning a new Trie as the same sequence of put calls would.
+     *
+     * The nodes in the path of a key are copied only the first time that they are
+     * changed, and then the copies are updated in place by the following keys,
+     * so the upper nodes are not copied for each key. The copies are only referenced
+     * by the new trie, so the original trie is not changed, and they are immutable
+     * again when putAll returns. The deletes are done as in put, and the nodes are
+     * copied again after them.
+     *
+     * @param values    keys and values, a map sorted by key or a LinkedHashMap to keep
+     *                  the order of the updates
+     *
+     * @return the top node of the new trie
+     */
+    @Override
+    public Trie putAll(Map<ByteArrayWrapper, byte[]> values) {
+        List<TrieImpl> copies = new ArrayList<>();
+        Trie trie = this;
+
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : values.entrySet()) {
+            byte[] key = entry.getKey().getData();
+            byte[] value = entry.getValue();
+
+            if (value == null) {
+                freeze(copies);
+                trie = trie.put(key, null);
+                continue;
+            }
+
+            byte[] keyBytes = this.isSecure ? sha3(key) : key;
+            trie = ((TrieImpl) trie).putInPlace(keyBytes, this.getKeyLength(keyBytes), 0, value, copies);
+        }
+
+        freeze(copies);
+
+        return trie;
+    }
+
+    private static void freeze(List<TrieImpl> copies) {
+        for (TrieImpl copy : copies)
+            copy.mutable = false;
+
+        copies.clear();
+    }
+
     /**
      * put string key to value, the key is converted to byte array
      * utility method to be used from testing
@@ -417,6 +523,20 @@ public class TrieImpl implements Trie {
         return delete(key.getBytes(StandardCharsets.UTF_8));
     }
 
+    /**
+     * iterator walks the key values with from <= key < to, without keeping the
+     * retrieved nodes; in a secure trie the keys are ordered by their sha3
+     *
+     * @param from  the first key, inclusive, or null
+     * @param to    the last key, exclusive, or null
+     *
+     * @return  an iterator over the keys and values
+     */
+    @Override
+    public Iterator<Map.Entry<ByteArrayWrapper, byte[]>> iterator(byte[] from, byte[] to) {
+        return new TrieIterator(this, from, to);
+    }
+
     /**
      * toMessage serialize the node to bytes. Used to persist the node in a key-value store
      * like levelDB or redis.
@@ -483,6 +603,10 @@ public class TrieImpl implements Trie {
         if (this.saved)
             return;
 
+        // the hashes are computed before saving, so the large subtrees are hashed in parallel
+        if (this.hash == null && !isEmptyTrie(this.value, this.nodes, this.hashes))
+            this.computeHash(true);
+
         if (this.nodes != null)
             for (TrieImpl node : this.nodes)
                 if (node != null)
@@ -514,8 +638,8 @@ public class TrieImpl implements Trie {
     /**
      * get retrieves the associated value given the key
      *
-     * @param key   full key
-     * @param length key total length
+     * @param key   full key, encoded
+     * @param length key total length, in elements
      * @param keyPosition  position of key being examined/added
      *
      * @return the associated value, null if the key is not found
@@ -528,21 +652,16 @@ public class TrieImpl implements Trie {
             return this.value;
 
         if (this.encodedSharedPath != null) {
-            byte[] sharedPath = PathEncoder.decode(this.encodedSharedPath, this.arity, this.sharedPathLength);
-
-            for (int k = 0; k < sharedPath.length; k++, position++) {
-                if (position >= length)
-                    return null;
+            if (!this.isSharedPathPrefixOf(key, length, position))
+                return null;
 
-                if (key[position] != sharedPath[k])
-                    return null;
-            }
+            position += this.sharedPathLength;
 
             if (position >= length)
                 return this.value;
         }
 
-        Trie node = this.retrieveNode(key[position]);
+        Trie node = this.retrieveNode(PathEncoder.getElement(key, position, this.getBitsPerElement()));
 
         if (node == null)
             return null;
@@ -615,7 +734,7 @@ public class TrieImpl implements Trie {
      *
      * @return  node hash or null if no node is present
      */
-    private byte[] getHash(int n) {
+    byte[] getHash(int n) {
         if (this.hashes != null && this.hashes[n] != null)
             return this.hashes[n];
 
@@ -627,7 +746,7 @@ public class TrieImpl implements Trie {
         if (isEmptyTrie(node.value, node.nodes, node.hashes))
             return null;
 
-        byte[] localHash = node.getHash();
+        byte[] localHash = ByteUtils.clone(node.computeHash(false));
 
         this.setHash(n, localHash);
 
@@ -817,8 +936,8 @@ public class TrieImpl implements Trie {
     /**
      * put key with associated value, returning a new Trie
      *
-     * @param key   key to be updated
-     * @param length    total length of key
+     * @param key   key to be updated, encoded
+     * @param length    total length of key, in elements
      * @param keyPosition  current position of the key to be processed
      * @param value     associated value
      *
@@ -830,12 +949,10 @@ public class TrieImpl implements Trie {
         int position = keyPosition;
 
         if (this.encodedSharedPath != null) {
-            byte[] sharedPath = PathEncoder.decode(this.encodedSharedPath, this.arity, this.sharedPathLength);
-
-            int k = lengthOfCommonPath(key, length, keyPosition, sharedPath);
+            int k = lengthOfCommonPath(key, length, keyPosition);
 
-            if (k >= sharedPath.length)
-                position += sharedPath.length;
+            if (k >= this.sharedPathLength)
+                position += this.sharedPathLength;
             else
                 return this.split(k).put(key, length, position, value);
         }
@@ -854,9 +971,8 @@ public class TrieImpl implements Trie {
 
         if (isEmptyTrie(this.value, this.nodes, this.hashes)) {
             int lshared = length - position;
-            byte[] shared = new byte[lshared];
-            System.arraycopy(key, position, shared, 0, lshared);
-            TrieImpl trieToReturn = new TrieImpl(this.arity, this.store, PathEncoder.encode(shared, this.arity), lshared, value, this.isSecure);
+            byte[] shared = PathEncoder.extract(key, position, lshared, this.getBitsPerElement());
+            TrieImpl trieToReturn = new TrieImpl(this.arity, this.store, shared, lshared, value, this.isSecure);
 
             return new TriePutResult(ResultAction.PUT, trieToReturn);
         }
@@ -864,7 +980,7 @@ public class TrieImpl implements Trie {
         TrieImpl[] newNodes = cloneNodes(true);
         byte[][] newHashes = cloneHashes();
 
-        int pos = key[position];
+        int pos = PathEncoder.getElement(key, position, this.getBitsPerElement());
 
         TrieImpl node = (TrieImpl)retrieveNode(pos);
 
@@ -889,6 +1005,84 @@ public class TrieImpl implements Trie {
         return new TriePutResult(ResultAction.PUT, trieToReturn);
     }
 
+    /**
+     * putInPlace does the same changes as put with a not null value, but it updates
+     * the mutable nodes, instead of copying them again. The new nodes are mutable,
+     * and they are added to the copies list
+     *
+     * @return the node that replaces this one, it can be this node if it is a copy
+     */
+    private TrieImpl putInPlace(byte[] key, int length, int keyPosition, byte[] value, List<TrieImpl> copies) {
+        int position = keyPosition;
+
+        if (this.encodedSharedPath != null) {
+            int k = lengthOfCommonPath(key, length, keyPosition);
+
+            if (k < this.sharedPathLength) {
+                TrieImpl newTrie = this.split(k);
+                newTrie.setMutable(copies);
+
+                for (TrieImpl node : newTrie.nodes)
+                    if (node != null)
+                        node.setMutable(copies);
+
+                return newTrie.putInPlace(key, length, position, value, copies);
+            }
+
+            position += this.sharedPathLength;
+        }
+
+        if (position >= length) {
+            TrieImpl trie = this.copyOnce(copies);
+            trie.value = value;
+            return trie;
+        }
+
+        if (isEmptyTrie(this.value, this.nodes, this.hashes)) {
+            int lshared = length - position;
+            byte[] shared = PathEncoder.extract(key, position, lshared, this.getBitsPerElement());
+            TrieImpl trie = new TrieImpl(this.arity, this.store, shared, lshared, value, this.isSecure);
+            trie.setMutable(copies);
+            return trie;
+        }
+
+        int pos = PathEncoder.getElement(key, position, this.getBitsPerElement());
+
+        TrieImpl node = (TrieImpl)retrieveNode(pos);
+
+        if (node == null)
+            node = new TrieImpl(this.arity, this.store, this.isSecure);
+
+        TrieImpl newNode = node.putInPlace(key, length, position + 1, value, copies);
+
+        TrieImpl trie = this.copyOnce(copies);
+
+        if (trie.nodes == null)
+            trie.nodes = new TrieImpl[this.arity];
+
+        trie.nodes[pos] = newNode;
+
+        if (trie.hashes != null)
+            trie.hashes[pos] = null;
+
+        return trie;
+    }
+
+    private TrieImpl copyOnce(List<TrieImpl> copies) {
+        if (this.mutable)
+            return this;
+
+        TrieImpl trie = new TrieImpl(this.arity, this.encodedSharedPath, this.sharedPathLength, this.value, cloneNodes(false), cloneHashes(), this.store).withSecure(this.isSecure);
+        trie.setMutable(copies);
+
+        return trie;
+    }
+
+    private void setMutable(List<TrieImpl> copies) {
+        this.mutable = true;
+        copies.add(this);
+    }
+
     private TrieImpl buildNewSonTrie(TrieImpl node, int pos, TriePutResult putResult, TrieImpl oldSon) {
 
         if (ResultAction.PUT == putResult.getAction()) {
@@ -930,15 +1124,15 @@ public class TrieImpl implements Trie {
         return newTrie;
     }
 
-    private int lengthOfCommonPath(byte[] key, int length, int position, byte[] sharedPath) {
-        int k;
+    private int lengthOfCommonPath(byte[] key, int length, int position) {
+        int maxLength = Math.min(this.sharedPathLength, length - position);
 
-        for (k = 0; k < sharedPath.length && position + k < length; k++) {
-            if (sharedPath[k] != key[position + k])
-                break;
-        }
+        return PathEncoder.getCommonLength(this.encodedSharedPath, 0, key, position, maxLength, this.getBitsPerElement());
+    }
 
-        return k;
+    private boolean isSharedPathPrefixOf(byte[] key, int length, int position) {
+        return length - position >= this.sharedPathLength
+                && lengthOfCommonPath(key, length, position) == this.sharedPathLength;
     }
 
     /**
@@ -954,33 +1148,31 @@ public class TrieImpl implements Trie {
         TrieImpl newChildTrie = new TrieImpl(this.arity, null, 0, this.value, newChildNodes, newChildHashes, this.store).withSecure(this.isSecure);
 
         // set shared path for child
-        byte[] sharedPath = PathEncoder.decode(this.encodedSharedPath, this.arity, this.sharedPathLength);
-        boolean isNewKeyPrefix = sharedPath.length > sharedBitsBetweenKeys + 1;
+        boolean isNewKeyPrefix = this.sharedPathLength > sharedBitsBetweenKeys + 1;
         if (isNewKeyPrefix) {
             // new child trie shared path = the bits that are not shared between keys
-            int newSharedLength = sharedPath.length - sharedBitsBetweenKeys - 1;
-            this.setSharedPath(newChildTrie, sharedBitsBetweenKeys + 1, sharedPath, newSharedLength);
+            int newSharedLength = this.sharedPathLength - sharedBitsBetweenKeys - 1;
+            this.setSharedPath(newChildTrie, sharedBitsBetweenKeys + 1, newSharedLength);
         }
 
         // create a new parent for the recently built child
         TrieImpl newTrie = new TrieImpl(this.arity, this.store, this.isSecure);
         TrieImpl[] newNodes = new TrieImpl[this.arity];
-        int pos = sharedPath[sharedBitsBetweenKeys];
+        int pos = PathEncoder.getElement(this.encodedSharedPath, sharedBitsBetweenKeys, this.getBitsPerElement());
         newNodes[pos] = newChildTrie;
         newTrie.nodes = newNodes;
 
         // set shared path for parent
         if (sharedBitsBetweenKeys > 0) {
-            this.setSharedPath(newTrie, 0, sharedPath, sharedBitsBetweenKeys);
+            this.setSharedPath(newTrie, 0, sharedBitsBetweenKeys);
         }
 
         return newTrie;
     }
 
-    private void setSharedPath(TrieImpl newChildTrie, int pos, byte[] sharedPath, int newSharedLength) {
-        byte[] newShared = new byte[newSharedLength];
-        System.arraycopy(sharedPath, pos, newShared, 0, newSharedLength);
-        newChildTrie.encodedSharedPath = PathEncoder.encode(newShared, this.arity);
+    // sets the part of this shared path that starts at pos as the shared path of the new trie
+    private void setSharedPath(TrieImpl newChildTrie, int pos, int newSharedLength) {
+        newChildTrie.encodedSharedPath = PathEncoder.extract(this.encodedSharedPath, pos, newSharedLength, this.getBitsPerElement());
         newChildTrie.sharedPathLength = newSharedLength;
     }
 
@@ -997,20 +1189,13 @@ public class TrieImpl implements Trie {
         }
         TrieImpl grandSonToKeep = sonToDelete.nodes[grandSonToKeepPos];
 
-        // get prefix and suffix to compress
-        byte[] decodedPrefix = sonToDelete.sharedPathLength == 0 ? new byte[] {} : PathEncoder.decode(sonToDelete.encodedSharedPath, sonToDelete.arity, sonToDelete.sharedPathLength);
-        byte[] decodedSuffix = grandSonToKeep.sharedPathLength == 0 ? new byte[] {} : PathEncoder.decode(grandSonToKeep.encodedSharedPath, grandSonToKeep.arity, grandSonToKeep.sharedPathLength);
-        byte[] newDecode = new byte[decodedPrefix.length + 1 + decodedSuffix.length];
-
-        // build new shared path because of compression action
-        System.arraycopy(decodedPrefix, 0, newDecode, 0, decodedPrefix.length);
-        newDecode[decodedPrefix.length] = (byte)grandSonToKeepPos;
-        System.arraycopy(decodedSuffix, 0, newDecode, decodedPrefix.length + 1, decodedSuffix.length);
-        byte[] newEncode = PathEncoder.encode(newDecode, sonToDelete.arity);
+        // build new shared path because of compression action: prefix, position and suffix
+        byte[] newEncode = joinSharedPaths(sonToDelete, grandSonToKeepPos, grandSonToKeep);
+        int newLength = sonToDelete.sharedPathLength + 1 + grandSonToKeep.sharedPathLength;
 
         TrieImpl[] newNodes = this.cloneNodes(grandSonToKeep, false);
         byte[][] newHashes = this.cloneHashes(grandSonToKeep);
-        TrieImpl newSon = new TrieImpl(grandSonToKeep.arity, newEncode, decodedPrefix.length + 1 + decodedSuffix.length, grandSonToKeep.value, newNodes, newHashes, grandSonToKeep.store).withSecure(grandSonToKeep.isSecure);
+        TrieImpl newSon = new TrieImpl(grandSonToKeep.arity, newEncode, newLength, grandSonToKeep.value, newNodes, newHashes, grandSonToKeep.store).withSecure(grandSonToKeep.isSecure);
         TrieImpl[] newParentSons = this.cloneNodesNullSafe(parent);
         newParentSons[sonToDeletePos] = newSon;
 
@@ -1028,18 +1213,16 @@ public class TrieImpl implements Trie {
         }
         TrieImpl sonToKeep = parentToReplace.nodes[sonToKeepPos];
 
-        // get prefix and suffix to compress
-        byte[] decodedPrefix = parentToReplace.sharedPathLength == 0 ? new byte[] {} : PathEncoder.decode(parentToReplace.encodedSharedPath, parentToReplace.arity, parentToReplace.sharedPathLength);
-        byte[] decodedSuffix = sonToKeep.sharedPathLength == 0 ? new byte[] {} : PathEncoder.decode(sonToKeep.encodedSharedPath, sonToKeep.arity, sonToKeep.sharedPathLength);
-        byte[] newDecode = new byte[decodedPrefix.length + 1 + decodedSuffix.length];
+        // build new shared path because of compression action: prefix, position and suffix
+        byte[] newEncode = joinSharedPaths(parentToReplace, sonToKeepPos, sonToKeep);
+        int newLength = parentToReplace.sharedPathLength + 1 + sonToKeep.sharedPathLength;
 
-        // build new shared path because of compression action
-        System.arraycopy(decodedPrefix, 0, newDecode, 0, decodedPrefix.length);
-        newDecode[decodedPrefix.length] = (byte)sonToKeepPos;
-        System.arraycopy(decodedSuffix, 0, newDecode, decodedPrefix.length + 1, decodedSuffix.length);
-        byte[] newEncode = PathEncoder.encode(newDecode, sonToKeep.arity);
+        return new TrieImpl(sonToKeep.arity, newEncode, newLength, sonToKeep.value, sonToKeep.nodes, sonToKeep.hashes, sonToKeep.store).withSecure(sonToKeep.isSecure);
+    }
 
-        return new TrieImpl(sonToKeep.arity, newEncode, decodedPrefix.length + 1 + decodedSuffix.length, sonToKeep.value, sonToKeep.nodes, sonToKeep.hashes, sonToKeep.store).withSecure(sonToKeep.isSecure);
+    private static byte[] joinSharedPaths(TrieImpl parent, int pos, TrieImpl son) {
+        return PathEncoder.join(parent.encodedSharedPath, parent.sharedPathLength, pos,
+                son.encodedSharedPath, son.sharedPathLength, PathEncoder.getBitsPerElement(parent.arity));
     }
 
     /**
@@ -1181,13 +1364,46 @@ public class TrieImpl implements Trie {
     }
 
     private static int getEncodedPathLength(int length, int arity) {
-        if (arity == 2)
-            return length / 8 + (length % 8 == 0 ? 0 : 1);
+        return PathEncoder.getEncodedLength(length, PathEncoder.getBitsPerElement(arity));
+    }
+
+    int getBitsPerElement() {
+        return PathEncoder.getBitsPerElement(this.arity);
+    }
+
+    byte[] getValue() {
+        return this.value;
+    }
 
-        if (arity == 16)
-            return length / 2 + (length % 2 == 0 ? 0 : 1);
+    byte[] getEncodedSharedPath() {
+        return this.encodedSharedPath;
+    }
 
-        return 0;
+    int getSharedPathLength() {
+        return this.sharedPathLength;
+    }
+
+    /**
+     * getSubnode gets the subnode at position n, retrieving it from the store if it is not
+     * in memory. Unlike retrieveNode, the retrieved node is not kept in this node, so a walk
+     * over a stored trie doesn't load the whole trie in memory
+     *
+     * @param n position of subnode (0 to arity - 1)
+     *
+     * @return  the node or null if no subnode at position
+     */
+    TrieImpl getSubnode(int n) {
+        TrieImpl node = this.getNode(n);
+
+        if (node != null || this.hashes == null || this.hashes[n] == null)
+            return node;
+
+        return (TrieImpl) this.store.retrieve(this.hashes[n]);
+    }
+
+    // number of path elements in a key
+    private int getKeyLength(byte[] key) {
+        return key.length * 8 / this.getBitsPerElement();
     }
 
     /**
@@ -1198,4 +1414,36 @@ public class TrieImpl implements Trie {
     private static byte[] makeEmptyHash() {
         return sha3(RLP.encodeElement(EMPTY_BYTE_ARRAY));
     }
+
+    /**
+     * HashTask hashes a subtree, forking a task for each subnode that has at least
+     * threshold nodes to hash, and hashing the rest of the subtree in its own thread.
+     * Each node is hashed by only one task, after the tasks of its subnodes are joined
+     */
+    private static class HashTask extends RecursiveAction {
+        private final TrieImpl trie;
+        private final int threshold;
+
+        HashTask(TrieImpl trie, int threshold) {
+            this.trie = trie;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            List<HashTask> tasks = new ArrayList<>();
+
+            if (this.trie.nodes != null)
+                for (int k = 0; k < this.trie.arity; k++) {
+                    TrieImpl node = this.trie.nodes[k];
+
+                    if (node != null && (this.trie.hashes == null || this.trie.hashes[k] == null) && node.countNodesToHash(this.threshold) >= this.threshold)
+                        tasks.add(new HashTask(node, this.threshold));
+                }
+
+            invokeAll(tasks);
+
+            this.trie.computeHash(false);
+        }
+    }
 }
@@ -0,0 +1,258 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Walks the values of a trie in key order (depth first, the node value before
+ * its subnodes), keeping only the path to the current node in memory.
+ *
+ * The subtrees that are before the from key are skipped, and the walk ends
+ * at the first node whose path is not before the to key.
+ */
+public class TrieIterator implements Iterator<Map.Entry<ByteArrayWrapper, byte[]>> {
+    // results of comparing the path with a key
+    private static final int BEFORE = -1;
+    private static final int PREFIX = 0;
+    private static final int AFTER = 1;
+
+    private final int arity;
+    private final int bits;
+    private final byte[] from;
+    private final byte[] to;
+
+    // the path elements of the current node, one element per byte
+    private byte[] path = new byte[256];
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    private Map.Entry<ByteArrayWrapper, byte[]> nextEntry;
+
+    TrieIterator(TrieImpl trie, byte[] from, byte[] to) {
+        this.arity = trie.getArity();
+        this.bits = trie.getBitsPerElement();
+        this.from = from;
+        this.to = to;
+
+        this.push(trie, 0, -1);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.nextEntry == null)
+            this.nextEntry = this.advance();
+
+        return this.nextEntry != null;
+    }
+
+    @Override
+    public Map.Entry<ByteArrayWrapper, byte[]> next() {
+        if (!this.hasNext())
+            throw new NoSuchElementException();
+
+        Map.Entry<ByteArrayWrapper, byte[]> entry = this.nextEntry;
+        this.nextEntry = null;
+
+        return entry;
+    }
+
+    /**
+     * Maps the keys of an iterator, usually the sha3 keys of a secure trie, to their
+     * original keys. The entries without a known preimage are skipped
+     *
+     * @param iterator  the trie iterator
+     * @param preimages returns the original key of a trie key, or null if it is not known
+     *
+     * @return  an iterator over the original keys and the values
+     */
+    public static Iterator<Map.Entry<ByteArrayWrapper, byte[]>> withPreimages(Iterator<Map.Entry<ByteArrayWrapper, byte[]>> iterator, Function<ByteArrayWrapper, ByteArrayWrapper> preimages) {
+        return new Iterator<Map.Entry<ByteArrayWrapper, byte[]>>() {
+            private Map.Entry<ByteArrayWrapper, byte[]> nextEntry;
+
+            @Override
+            public boolean hasNext() {
+                while (this.nextEntry == null && iterator.hasNext()) {
+                    Map.Entry<ByteArrayWrapper, byte[]> entry = iterator.next();
+                    ByteArrayWrapper key = preimages.apply(entry.getKey());
+
+                    if (key != null)
+                        this.nextEntry = new AbstractMap.SimpleImmutableEntry<>(key, entry.getValue());
+                }
+
+                return this.nextEntry != null;
+            }
+
+            @Override
+            public Map.Entry<ByteArrayWrapper, byte[]> next() {
+                if (!this.hasNext())
+                    throw new NoSuchElementException();
+
+                Map.Entry<ByteArrayWrapper, byte[]> entry = this.nextEntry;
+                this.nextEntry = null;
+
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * Returns the first key after all the keys that start with a prefix, to be used
+     * as the to key in a prefix scan
+     *
+     * @param prefix    the key prefix
+     *
+     * @return  the end key, or null if all the keys after the prefix start with it
+     */
+    public static byte[] getPrefixEnd(byte[] prefix) {
+        for (int k = prefix.length; k-- > 0;)
+            if (prefix[k] != (byte) 0xff) {
+                byte[] end = Arrays.copyOf(prefix, k + 1);
+                end[k]++;
+                return end;
+            }
+
+        return null;
+    }
+
+    private Map.Entry<ByteArrayWrapper, byte[]> advance() {
+        while (!this.frames.isEmpty()) {
+            Frame frame = this.frames.peek();
+
+            if (frame.child < 0) {
+                frame.child = 0;
+                byte[] value = frame.node.getValue();
+
+                if (frame.valueInRange && value != null && value.length > 0 && (frame.length * this.bits) % 8 == 0)
+                    return new AbstractMap.SimpleImmutableEntry<>(new ByteArrayWrapper(this.getKey(frame.length)), value);
+
+                continue;
+            }
+
+            if (frame.child >= this.arity) {
+                this.frames.pop();
+                continue;
+            }
+
+            int element = frame.child++;
+            TrieImpl node = frame.node.getSubnode(element);
+
+            if (node != null)
+                this.push(node, frame.length, element);
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds the path of a node to the path of its parent, and pushes the node
+     * if its subtree has keys in the range
+     */
+    private void push(TrieImpl node, int parentLength, int element) {
+        int sharedLength = node.getSharedPathLength();
+        int length = parentLength + (element < 0 ? 0 : 1) + sharedLength;
+
+        if (length > this.path.length)
+            this.path = Arrays.copyOf(this.path, Math.max(length, this.path.length * 2));
+
+        int position = parentLength;
+
+        if (element >= 0)
+            this.path[position++] = (byte) element;
+
+        byte[] sharedPath = node.getEncodedSharedPath();
+
+        for (int k = 0; k < sharedLength; k++)
+            this.path[position++] = (byte) PathEncoder.getElement(sharedPath, k, this.bits);
+
+        int fromComparison = this.compareToKey(length, this.from);
+
+        // all the keys in the subtree are before from
+        if (fromComparison == BEFORE)
+            return;
+
+        // all the keys in this subtree, and in the following ones, are not before to
+        if (this.to != null && this.compareToKey(length, this.to) == AFTER) {
+            this.frames.clear();
+            return;
+        }
+
+        // the value of a node whose path is a prefix of from is before from
+        this.frames.push(new Frame(node, length, fromComparison != PREFIX));
+    }
+
+    /**
+     * Compares the path with a key
+     *
+     * @return  BEFORE if the path is before the key (and it is not a prefix of it),
+     *          PREFIX if the path is a proper prefix of the key, and AFTER if the path
+     *          is after the key, or it starts with the key. AFTER if there is no key
+     */
+    private int compareToKey(int length, byte[] key) {
+        if (key == null)
+            return AFTER;
+
+        int keyLength = key.length * 8 / this.bits;
+        int n = Math.min(length, keyLength);
+
+        for (int k = 0; k < n; k++) {
+            int element = PathEncoder.getElement(key, k, this.bits);
+
+            if (this.path[k] != element)
+                return this.path[k] < element ? BEFORE : AFTER;
+        }
+
+        return length < keyLength ? PREFIX : AFTER;
+    }
+
+    private byte[] getKey(int length) {
+        byte[] key = new byte[length * this.bits / 8];
+        int elementsPerByte = 8 / this.bits;
+
+        for (int k = 0; k < length; k++)
+            key[k / elementsPerByte] |= this.path[k] << (8 - this.bits - (k % elementsPerByte) * this.bits);
+
+        return key;
+    }
+
+    private static class Frame {
+        private final TrieImpl node;
+        private final int length;
+        private final boolean valueInRange;
+
+        // the next subnode to walk, -1 if the node value was not visited yet
+        private int child = -1;
+
+        Frame(TrieImpl node, int length, boolean valueInRange) {
+            this.node = node;
+            this.length = length;
+            this.valueInRange = valueInRange;
+        }
+    }
+}
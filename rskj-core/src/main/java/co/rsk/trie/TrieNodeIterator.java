@@ -0,0 +1,77 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks the nodes of a saved trie, depth first, returning their serialized
+ * form (the message that is saved in the store, under its hash).
+ *
+ * Only the hashes of the pending subnodes are kept in memory, so the walk of
+ * a big trie needs little memory. A subtree that appears twice in the trie
+ * is returned twice.
+ */
+public class TrieNodeIterator implements Iterator<byte[]> {
+    private static final byte[] EMPTY_TRIE_HASH = new TrieImpl().getHash();
+
+    private final TrieStore store;
+    private final Deque<byte[]> pending = new ArrayDeque<>();
+
+    public TrieNodeIterator(TrieStore store, byte[] root) {
+        this.store = store;
+
+        // the empty trie is not saved
+        if (!Arrays.equals(root, EMPTY_TRIE_HASH))
+            this.pending.push(root);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !this.pending.isEmpty();
+    }
+
+    @Override
+    public byte[] next() {
+        if (this.pending.isEmpty())
+            throw new NoSuchElementException();
+
+        byte[] hash = this.pending.pop();
+        TrieImpl node = (TrieImpl) this.store.retrieve(hash);
+
+        if (node == null)
+            throw new TrieSerializationException("Missing trie node " + Hex.toHexString(hash), null);
+
+        for (int k = node.getArity() - 1; k >= 0; k--) {
+            byte[] subnodeHash = node.getHash(k);
+
+            if (subnodeHash != null)
+                this.pending.push(subnodeHash);
+        }
+
+        return node.toMessage();
+    }
+}
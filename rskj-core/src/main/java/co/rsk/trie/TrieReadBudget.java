@@ -0,0 +1,114 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+/**
+ * Limit on the trie nodes that the current thread reads from the trie stores,
+ * while the budget is open. It bounds the work of a query on a past state:
+ * TrieStoreImpl.retrieve counts the reads, the nodes already in memory are
+ * not counted. Once the limit is reached each read throws
+ * {@link TrieReadBudgetExceededException}, and the budget stays exceeded.
+ * A limit of 0 or less doesn't limit the reads.
+ *
+ * The reads of nodes that are not in the store, as the ones deleted by the
+ * state pruning, throw {@link MissingTrieNodeException} and are recorded,
+ * instead of being taken as empty subtries.
+ *
+ * Usage: try (TrieReadBudget budget = TrieReadBudget.start(limit)) { ... }
+ */
+public final class TrieReadBudget implements AutoCloseable {
+    private static final ThreadLocal<TrieReadBudget> current = new ThreadLocal<>();
+
+    private final int limit;
+    private final TrieReadBudget previous;
+    private int reads;
+    private boolean missingNodes;
+
+    private TrieReadBudget(int limit, TrieReadBudget previous) {
+        this.limit = limit;
+        this.previous = previous;
+    }
+
+    /**
+     * Starts a budget for the current thread; a budget started
+     * while other one is open replaces it until it is closed
+     */
+    public static TrieReadBudget start(int limit) {
+        TrieReadBudget budget = new TrieReadBudget(limit, current.get());
+        current.set(budget);
+        return budget;
+    }
+
+    /**
+     * Counts a node read by the current thread, if it has an open budget
+     *
+     * @throws TrieReadBudgetExceededException  if the read is over the limit
+     */
+    static void charge() {
+        TrieReadBudget budget = current.get();
+
+        if (budget == null)
+            return;
+
+        budget.reads++;
+
+        if (budget.isExceeded())
+            throw new TrieReadBudgetExceededException(budget.limit);
+    }
+
+    /**
+     * Records a read of a node that is not in the store, if the
+     * current thread has an open budget
+     *
+     * @throws MissingTrieNodeException  if there is an open budget
+     */
+    static void missing(byte[] hash) {
+        TrieReadBudget budget = current.get();
+
+        if (budget != null) {
+            budget.missingNodes = true;
+            throw new MissingTrieNodeException(hash);
+        }
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public int getReads() {
+        return this.reads;
+    }
+
+    public boolean isExceeded() {
+        return this.limit > 0 && this.reads > this.limit;
+    }
+
+    public boolean hasMissingNodes() {
+        return this.missingNodes;
+    }
+
+    @Override
+    public void close() {
+        if (this.previous == null)
+            current.remove();
+        else
+            current.set(this.previous);
+    }
+}
@@ -18,6 +18,9 @@
 
 package co.rsk.trie;
 
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.metrics.MetricsRegistry;
 import co.rsk.panic.PanicProcessor;
 import org.ethereum.datasource.HashMapDB;
 import org.ethereum.datasource.KeyValueDataSource;
@@ -47,6 +50,13 @@ public class TrieStoreImpl implements TrieStore {
     private static final String PANIC_TOPIC = "triestore";
     private static final String ERROR_CREATING_STORE = "Error creating trie store";
 
+    private static final Counter nodesSaved = MetricsRegistry.DEFAULT.counter(
+            "rsk_trie_store_writes_total", "Trie nodes saved to the trie stores");
+    private static final Counter bytesSaved = MetricsRegistry.DEFAULT.counter(
+            "rsk_trie_store_written_bytes_total", "Bytes of the trie nodes saved to the trie stores");
+    private static final LatencyHistogram retrieveTime = MetricsRegistry.DEFAULT.histogram(
+            "rsk_trie_store_read_seconds", "Duration of the trie node reads from the trie stores");
+
     // a key value data source to use
     private KeyValueDataSource store;
 
@@ -65,7 +75,10 @@ public class TrieStoreImpl implements TrieStore {
     @Override
     public void save(Trie trie) {
         this.saveCount++;
-        this.store.put(trie.getHash(), trie.toMessage());
+        byte[] message = trie.toMessage();
+        this.store.put(trie.getHash(), message);
+        nodesSaved.inc();
+        bytesSaved.add(message.length);
     }
 
     @Override
@@ -73,6 +86,8 @@ public class TrieStoreImpl implements TrieStore {
 
     /**
      * retrieve retrieves a Trie instance from store, using hash a key
+     * The read is counted in the TrieReadBudget of the current thread, if any;
+     * with an open budget a missing key throws MissingTrieNodeException
      *
      * @param hash  the hash to retrieve
      *
@@ -80,9 +95,15 @@ public class TrieStoreImpl implements TrieStore {
      */
     @Override
     public Trie retrieve(byte[] hash) {
+        TrieReadBudget.charge();
         this.retrieveCount++;
 
+        long start = System.nanoTime();
         byte[] message = this.store.get(hash);
+        retrieveTime.record(System.nanoTime() - start);
+
+        if (message == null)
+            TrieReadBudget.missing(hash);
 
         return TrieImpl.fromMessage(message, this);
     }
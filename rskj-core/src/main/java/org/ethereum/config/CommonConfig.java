@@ -20,7 +20,11 @@
 package org.ethereum.config;
 
 import co.rsk.config.RskSystemProperties;
+import co.rsk.db.CodeStore;
+import co.rsk.db.FlatState;
 import co.rsk.db.RepositoryImpl;
+import co.rsk.trie.PrunedTrieStore;
+import co.rsk.trie.TrieStore;
 import co.rsk.trie.TrieStoreImpl;
 import org.ethereum.core.PendingTransaction;
 import org.ethereum.core.Repository;
@@ -54,8 +58,14 @@ public class CommonConfig {
     public Repository repository() {
         KeyValueDataSource ds = makeDataSource("state");
         KeyValueDataSource detailsDS = makeDataSource("details");
+        KeyValueDataSource codeDS = makeDataSource("code");
 
-        return new RepositoryImpl(new TrieStoreImpl(ds), detailsDS);
+        TrieStore store = RskSystemProperties.CONFIG.isStatePruningEnabled() ? new PrunedTrieStore(ds) : new TrieStoreImpl(ds);
+
+        FlatState flatState = RskSystemProperties.CONFIG.isFlatStateEnabled() ?
+                new FlatState(RskSystemProperties.CONFIG.flatStateLayers(), RskSystemProperties.CONFIG.flatStateCacheSize()) : null;
+
+        return new RepositoryImpl(store, detailsDS, new CodeStore(codeDS, RskSystemProperties.CONFIG.codeCacheSize()), flatState);
     }
 
     private KeyValueDataSource makeDataSource(String name) {
@@ -89,8 +89,19 @@ public class DefaultConfig {
 
     @Bean
     public BlockStore blockStore() {
-        String database = config.databaseDir();
+        KeyValueDataSource blocksDB = new LevelDbDataSource("blocks");
+        blocksDB.init();
+
+        return buildBlockStore(config.databaseDir(), blocksDB);
+    }
 
+    /**
+     * Creates a block store with its index in the given database directory
+     *
+     * @param database  the database directory
+     * @param blocksDB  the initialized data source of the encoded blocks
+     */
+    public static BlockStore buildBlockStore(String database, KeyValueDataSource blocksDB) {
         File blockIndexDirectory = new File(database + "/blocks/");
         File dbFile = new File(blockIndexDirectory, "index");
         if (!blockIndexDirectory.exists()) {
@@ -110,9 +121,6 @@ public class DefaultConfig {
                 .counterEnable()
                 .makeOrGet();
 
-        KeyValueDataSource blocksDB = new LevelDbDataSource("blocks");
-        blocksDB.init();
-
         IndexedBlockStore indexedBlockStore = new IndexedBlockStore();
 
         indexedBlockStore.init(indexMap, blocksDB, indexDB);
@@ -161,7 +169,10 @@ public class DefaultConfig {
 
     @Bean
     public BlockParentDependantValidationRule blockParentDependantValidationRule() {
-        Repository repository = appCtx.getBean(Repository.class);
+        return buildBlockParentDependantValidationRule(appCtx.getBean(Repository.class));
+    }
+
+    public static BlockParentDependantValidationRule buildBlockParentDependantValidationRule(Repository repository) {
         BlockTxsValidationRule blockTxsValidationRule = new BlockTxsValidationRule(repository);
         PrevMinGasPriceRule prevMinGasPriceRule = new PrevMinGasPriceRule();
         BlockParentNumberRule parentNumberRule = new BlockParentNumberRule();
@@ -174,7 +185,10 @@ public class DefaultConfig {
 
     @Bean(name = "blockValidationRule")
     public BlockValidationRule blockValidationRule() {
-        BlockStore blockStore = appCtx.getBean(BlockStore.class);
+        return buildBlockValidationRule(appCtx.getBean(BlockStore.class));
+    }
+
+    public static BlockValidationRule buildBlockValidationRule(BlockStore blockStore) {
         int uncleListLimit = RskSystemProperties.CONFIG.getBlockchainConfig().getCommonConstants().getUncleListLimit();
         int uncleGenLimit = RskSystemProperties.CONFIG.getBlockchainConfig().getCommonConstants().getUncleGenerationLimit();
 
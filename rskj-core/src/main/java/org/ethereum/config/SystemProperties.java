@@ -647,6 +647,15 @@ public abstract class SystemProperties {
         return configFromFiles.getInt("transaction.outdated.timeout");
     }
 
+    public int txPoolMaxTransactions() {
+        return getInt("transaction.pool.maxTransactions", 50000);
+    }
+
+    public long txPoolMaxBytes() {
+        // default value: 64 MB
+        return getLong("transaction.pool.maxBytes", 64L * 1024 * 1024);
+    }
+
     public void setGenesisInfo(String genesisInfo){
         this.genesisInfo = genesisInfo;
     }
@@ -685,6 +694,11 @@ public abstract class SystemProperties {
         return TimeUnit.MINUTES.toMillis(getLong("scoring.addresses.maximum", TimeUnit.DAYS.toMinutes(7)));
     }
 
+    public String scoringBannedAddressesFile() {
+        // default value: no file
+        return configFromFiles.hasPath("scoring.banned.file") ? configFromFiles.getString("scoring.banned.file") : null;
+    }
+
     protected int getInt(String path, int val) {
         return configFromFiles.hasPath(path) ? configFromFiles.getInt(path) : val;
     }
@@ -33,6 +33,8 @@ public interface Blockchain {
 
     ImportResult tryToConnect(Block block);
 
+    void prevalidate(List<Block> blocks);
+
     Block getBlockByNumber(long blockNr);
 
     void setBestBlock(Block block);
@@ -72,4 +72,13 @@ public interface PendingState extends org.ethereum.facade.PendingState {
 
     // Returns a list of pending txs
     List<Transaction> getAllPendingTransactions();
+
+    /**
+     * Returns pending and wire txs in the order they should be included in a block:
+     * higher gas price first, keeping the nonce order of each sender
+     *
+     * @param limit maximum number of txs to return
+     * @return a list of at most limit txs
+     */
+    List<Transaction> getTransactionsForBlock(int limit);
 }
@@ -27,6 +27,7 @@ import org.spongycastle.crypto.digests.RIPEMD160Digest;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -36,6 +37,13 @@ import static org.ethereum.crypto.SHA3Helper.Size.*;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 
 public class HashUtil {
+    public static final int SHA3_LENGTH = 32;
+
+    // Keccak engines are reused by thread, each one keeps its state and buffers;
+    // declared before the hashes computed on class initialization
+    private static final ThreadLocal<Keccak256> keccakDigest = ThreadLocal.withInitial(Keccak256::new);
+    private static final ThreadLocal<byte[]> chunkBuffer = ThreadLocal.withInitial(() -> new byte[1024]);
+
     public static final byte[] EMPTY_TRIE_HASH = sha3(RLP.encodeElement(EMPTY_BYTE_ARRAY));
 
     private static final MessageDigest sha256digest;
@@ -57,7 +65,7 @@ public class HashUtil {
     }
 
     public static byte[] sha3(byte[] input) {
-        Keccak256 digest =  new Keccak256();
+        Keccak256 digest = keccak256();
         digest.update(input);
         return digest.digest();
     }
@@ -74,7 +82,64 @@ public class HashUtil {
      * @return - sha3 hash of the chunk
      */
     public static byte[] sha3(byte[] input, int start, int length) {
-        return SHA3Helper.sha3(input, start, length);
+        Keccak256 digest = keccak256();
+        digest.update(input, start, length);
+        return digest.digest();
+    }
+
+    /**
+     * hashing chunk of the data into the given buffer, without allocating
+     * @param input - data for hash
+     * @param start - start of hashing chunk
+     * @param length - length of hashing chunk
+     * @param output - buffer for the hash, with at least 32 bytes from outputOffset
+     * @param outputOffset - position of the hash in the output
+     */
+    public static void sha3(byte[] input, int start, int length, byte[] output, int outputOffset) {
+        checkOutput(output, outputOffset);
+        Keccak256 digest = keccak256();
+        digest.update(input, start, length);
+        digest.digest(output, outputOffset, SHA3_LENGTH);
+    }
+
+    /**
+     * hashing the remaining bytes of the buffer into the given output, without allocating;
+     * the buffer position is moved to its limit
+     * @param input - data for hash
+     * @param output - buffer for the hash, with at least 32 bytes from outputOffset
+     * @param outputOffset - position of the hash in the output
+     */
+    public static void sha3(ByteBuffer input, byte[] output, int outputOffset) {
+        checkOutput(output, outputOffset);
+        Keccak256 digest = keccak256();
+
+        if (input.hasArray()) {
+            digest.update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            input.position(input.limit());
+        } else {
+            byte[] chunk = chunkBuffer.get();
+
+            while (input.hasRemaining()) {
+                int length = Math.min(chunk.length, input.remaining());
+                input.get(chunk, 0, length);
+                digest.update(chunk, 0, length);
+            }
+        }
+
+        digest.digest(output, outputOffset, SHA3_LENGTH);
+    }
+
+    // the engines are reset before use, in case a previous hash failed halfway
+    private static Keccak256 keccak256() {
+        Keccak256 digest = keccakDigest.get();
+        digest.reset();
+        return digest;
+    }
+
+    private static void checkOutput(byte[] output, int outputOffset) {
+        if (outputOffset < 0 || output.length - outputOffset < SHA3_LENGTH) {
+            throw new IllegalArgumentException("Output needs " + SHA3_LENGTH + " bytes from offset " + outputOffset);
+        }
     }
 
 
@@ -29,20 +29,23 @@ public class SHA3Helper {
     public static final int DEFAULT_SIZE = 256;
     public static final int DEFAULT_SIZE_BYTES = DEFAULT_SIZE / 8;
 
+    // digests of the default size are reused by thread
+    private static final ThreadLocal<SHA3Digest> digests = ThreadLocal.withInitial(() -> new SHA3Digest(DEFAULT_SIZE));
+
     public static String sha3String(String message) {
-        return sha3String(message, new SHA3Digest(DEFAULT_SIZE), true);
+        return sha3String(message, defaultDigest(), true);
     }
 
     public static String sha3String(byte[] message) {
-        return sha3String(message, new SHA3Digest(DEFAULT_SIZE), true);
+        return sha3String(message, defaultDigest(), true);
     }
 
     public static byte[] sha3(String message) {
-        return sha3(Hex.decode(message), new SHA3Digest(DEFAULT_SIZE), true);
+        return sha3(Hex.decode(message), defaultDigest(), true);
     }
 
     public static byte[] sha3(byte[] message) {
-        return sha3(message, new SHA3Digest(DEFAULT_SIZE), true);
+        return sha3(message, defaultDigest(), true);
     }
 
     public static byte[] sha3(byte[] message, Size sz) {
@@ -50,11 +53,18 @@ public class SHA3Helper {
     }
 
     public static byte[] sha3(byte[] m1, byte[] m2) {
-        return sha3(m1, m2, new SHA3Digest(DEFAULT_SIZE), true);
+        return sha3(m1, m2, defaultDigest(), true);
     }
 
     public static byte[] sha3(byte[] message, int start, int length) {
-        return sha3(message, start, length, new SHA3Digest(DEFAULT_SIZE), true);
+        return sha3(message, start, length, defaultDigest(), true);
+    }
+
+    // reset before use, in case a previous hash failed halfway
+    private static SHA3Digest defaultDigest() {
+        SHA3Digest digest = digests.get();
+        digest.reset();
+        return digest;
     }
 
     protected static String sha3String(String message, Size bitSize) {
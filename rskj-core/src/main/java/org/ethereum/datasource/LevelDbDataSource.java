@@ -20,6 +20,9 @@
 package org.ethereum.datasource;
 
 import co.rsk.config.RskSystemProperties;
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.metrics.MetricsRegistry;
 import co.rsk.panic.PanicProcessor;
 import org.ethereum.config.SystemProperties;
 import org.iq80.leveldb.*;
@@ -63,6 +66,12 @@ public class LevelDbDataSource implements KeyValueDataSource {
     // however blocks them on init/close/delete operations
     private ReadWriteLock resetDbLock = new ReentrantReadWriteLock();
 
+    // per database metrics, created on init when the name is known
+    private LatencyHistogram readTime;
+    private LatencyHistogram writeTime;
+    private LatencyHistogram batchTime;
+    private Counter bytesWritten;
+
     public LevelDbDataSource(String name) {
         this.name = name;
         logger.info("New LevelDbDataSource: {}", name);
@@ -82,6 +91,8 @@ public class LevelDbDataSource implements KeyValueDataSource {
                 throw new NullPointerException("no name set to the db");
             }
 
+            createMetrics();
+
             Options options = new Options();
             options.createIfMissing(true);
             options.compressionType(CompressionType.NONE);
@@ -117,6 +128,16 @@ public class LevelDbDataSource implements KeyValueDataSource {
         }
     }
 
+    private void createMetrics() {
+        MetricsRegistry registry = MetricsRegistry.DEFAULT;
+        String help = "Duration of the database operations";
+
+        readTime = registry.histogram("rsk_db_operation_seconds", help, "db", name, "operation", "get");
+        writeTime = registry.histogram("rsk_db_operation_seconds", help, "db", name, "operation", "put");
+        batchTime = registry.histogram("rsk_db_operation_seconds", help, "db", name, "operation", "batch");
+        bytesWritten = registry.counter("rsk_db_written_bytes_total", "Bytes of the keys and values written to the database", "db", name);
+    }
+
     @Override
     public boolean isAlive() {
         return alive;
@@ -151,6 +172,7 @@ public class LevelDbDataSource implements KeyValueDataSource {
     @Override
     public byte[] get(byte[] key) {
         resetDbLock.readLock().lock();
+        long start = System.nanoTime();
         try {
             if (logger.isTraceEnabled()) {
                 logger.trace("~> LevelDbDataSource.get(): " + name + ", key: " + Hex.toHexString(key));
@@ -179,6 +201,7 @@ public class LevelDbDataSource implements KeyValueDataSource {
                 }
             }
         } finally {
+            readTime.record(System.nanoTime() - start);
             resetDbLock.readLock().unlock();
         }
     }
@@ -186,6 +209,7 @@ public class LevelDbDataSource implements KeyValueDataSource {
     @Override
     public byte[] put(byte[] key, byte[] value) {
         resetDbLock.readLock().lock();
+        long start = System.nanoTime();
         try {
             if (logger.isTraceEnabled()) {
                 logger.trace("~> LevelDbDataSource.put(): " + name + ", key: " + Hex.toHexString(key) + ", " + (value == null ? "null" : value.length));
@@ -196,8 +220,10 @@ public class LevelDbDataSource implements KeyValueDataSource {
                 logger.trace("<~ LevelDbDataSource.put(): " + name + ", key: " + Hex.toHexString(key) + ", " + (value == null ? "null" : value.length));
             }
 
+            bytesWritten.add(key.length + (value == null ? 0 : value.length));
             return value;
         } finally {
+            writeTime.record(System.nanoTime() - start);
             resetDbLock.readLock().unlock();
         }
     }
@@ -205,6 +231,7 @@ public class LevelDbDataSource implements KeyValueDataSource {
     @Override
     public void delete(byte[] key) {
         resetDbLock.readLock().lock();
+        long start = System.nanoTime();
         try {
             if (logger.isTraceEnabled()) {
                 logger.trace("~> LevelDbDataSource.delete(): " + name + ", key: " + Hex.toHexString(key));
@@ -216,6 +243,7 @@ public class LevelDbDataSource implements KeyValueDataSource {
             }
 
         } finally {
+            writeTime.record(System.nanoTime() - start);
             resetDbLock.readLock().unlock();
         }
     }
@@ -249,17 +277,23 @@ public class LevelDbDataSource implements KeyValueDataSource {
     }
 
     private void updateBatchInternal(Map<byte[], byte[]> rows) throws IOException {
+        long bytes = 0;
+
         try (WriteBatch batch = db.createWriteBatch()) {
             for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
                 batch.put(entry.getKey(), entry.getValue());
+                bytes += entry.getKey().length + entry.getValue().length;
             }
             db.write(batch);
         }
+
+        bytesWritten.add(bytes);
     }
 
     @Override
     public void updateBatch(Map<byte[], byte[]> rows) {
         resetDbLock.readLock().lock();
+        long start = System.nanoTime();
         try {
             if (logger.isTraceEnabled()) {
                 logger.trace("~> LevelDbDataSource.updateBatch(): " + name + ", " + rows.size());
@@ -287,6 +321,7 @@ public class LevelDbDataSource implements KeyValueDataSource {
                 }
             }
         } finally {
+            batchTime.record(System.nanoTime() - start);
             resetDbLock.readLock().unlock();
         }
     }
@@ -33,6 +33,8 @@ public interface ContractDetails {
 
     void putBytes(DataWord key, byte[] bytes);
 
+    void putAll(Map<DataWord, DataWord> values);
+
     DataWord get(DataWord key);
 
     byte[] getBytes(DataWord key);
@@ -31,6 +31,7 @@ import org.ethereum.vm.DataWord;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.*;
+import java.util.function.Function;
 
 import static java.util.Collections.unmodifiableMap;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
@@ -46,6 +47,9 @@ public class ContractDetailsCacheImpl implements ContractDetails {
 
     ContractDetails origContract = new ContractDetailsImpl();
 
+    // reads the values that are not cached, instead of the original details (null if not used)
+    private final Function<DataWord, byte[]> storageReader;
+
     private byte[] code = EMPTY_BYTE_ARRAY;
 
     private boolean dirty = false;
@@ -53,7 +57,16 @@ public class ContractDetailsCacheImpl implements ContractDetails {
 
 
     public ContractDetailsCacheImpl(ContractDetails origContract) {
+        this(origContract, null);
+    }
+
+    /**
+     * The values not cached yet are read with the storageReader, as from the flat
+     * values of a repository; the changes are still committed to the original details
+     */
+    public ContractDetailsCacheImpl(ContractDetails origContract, Function<DataWord, byte[]> storageReader) {
         this.origContract = origContract;
+        this.storageReader = storageReader;
         this.code = origContract != null ? origContract.getCode() : EMPTY_BYTE_ARRAY;
     }
 
@@ -63,6 +76,12 @@ public class ContractDetailsCacheImpl implements ContractDetails {
         this.setDirty(true);
     }
 
+    @Override
+    public void putAll(Map<DataWord, DataWord> values) {
+        storage.putAll(values);
+        this.setDirty(true);
+    }
+
     @Override
     public void putBytes(DataWord key, byte[] value) {
         bytesStorage.put(key, value);
@@ -80,7 +99,7 @@ public class ContractDetailsCacheImpl implements ContractDetails {
                 return null;
             }
 
-            value = origContract.get(key);
+            value = readValue(key);
             storage.put(key.clone(), value == null ? DataWord.ZERO.clone() : value.clone());
         }
 
@@ -101,7 +120,7 @@ public class ContractDetailsCacheImpl implements ContractDetails {
                 return null;
             }
 
-            value = origContract.getBytes(key);
+            value = storageReader != null ? storageReader.apply(key) : origContract.getBytes(key);
             bytesStorage.put(key.clone(), value == null ? null : value.clone());
         }
 
@@ -111,6 +130,14 @@ public class ContractDetailsCacheImpl implements ContractDetails {
             return value;
     }
 
+    private DataWord readValue(DataWord key) {
+        if (storageReader == null)
+            return origContract.get(key);
+
+        byte[] value = storageReader.apply(key);
+        return (value == null || value.length == 0) ? null : new DataWord(value);
+    }
+
     @Override
     public byte[] getCode() {
         return code;
@@ -282,6 +309,15 @@ public class ContractDetailsCacheImpl implements ContractDetails {
                 : origContract.getStorageKeys();
     }
 
+    /**
+     * Returns the keys of the values read or written through this cache
+     */
+    public Set<DataWord> getCachedKeys() {
+        Set<DataWord> keys = new HashSet<>(storage.keySet());
+        keys.addAll(bytesStorage.keySet());
+        return keys;
+    }
+
     @Override
     public void setStorage(List<DataWord> storageKeys, List<DataWord> storageValues) {
 
@@ -316,7 +352,7 @@ public class ContractDetailsCacheImpl implements ContractDetails {
     @Override
     public ContractDetails clone() {
 
-        ContractDetailsCacheImpl contractDetails = new ContractDetailsCacheImpl(origContract);
+        ContractDetailsCacheImpl contractDetails = new ContractDetailsCacheImpl(origContract, storageReader);
 
         Object storageClone = ((HashMap<DataWord, DataWord>)storage).clone();
 
@@ -348,9 +384,7 @@ public class ContractDetailsCacheImpl implements ContractDetails {
             return;
         }
 
-        for (DataWord key : storage.keySet()) {
-            origContract.put(key, storage.get(key));
-        }
+        origContract.putAll(storage);
 
         for (DataWord key : bytesStorage.keySet()) {
             origContract.putBytes(key, bytesStorage.get(key));
@@ -20,10 +20,14 @@
 package org.ethereum.db;
 
 import co.rsk.db.ContractDetailsImpl;
+import co.rsk.metrics.Counter;
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -36,11 +40,21 @@ import static org.ethereum.util.ByteUtil.wrap;
 public class DetailsDataStore {
 
     private static final Logger gLogger = LoggerFactory.getLogger("general");
+    private static final LatencyHistogram flushTime = MetricsRegistry.DEFAULT.histogram(
+            "rsk_store_flush_seconds", "Duration of the store flushes", "store", "details");
+    private static final Counter flushBytes = MetricsRegistry.DEFAULT.counter(
+            "rsk_store_flush_bytes_total", "Bytes written by the store flushes", "store", "details");
 
     private DatabaseImpl db = null;
     private Map<ByteArrayWrapper, ContractDetails> cache = new ConcurrentHashMap<>();
     private Set<ByteArrayWrapper> removes = new HashSet<>();
 
+    // the changes that a flush is writing, out of the monitor: they are
+    // read from here until the write ends
+    private Map<ByteArrayWrapper, ContractDetails> flushing = Collections.emptyMap();
+    private Set<ByteArrayWrapper> flushingRemoves = Collections.emptySet();
+    private final Object flushLock = new Object();
+
     public synchronized void setDB(DatabaseImpl db) {
         this.db = db;
     }
@@ -54,6 +68,15 @@ public class DetailsDataStore {
             if (removes.contains(wrappedKey)) {
                 return null;
             }
+
+            details = flushing.get(wrappedKey);
+
+            if (details != null)
+                return details;
+
+            if (flushingRemoves.contains(wrappedKey))
+                return null;
+
             byte[] data = db.get(key);
             if (data == null) {
                 return null;
@@ -90,28 +113,65 @@ public class DetailsDataStore {
         removes.add(wrappedKey);
     }
 
-    public synchronized void flush() {
+    /**
+     * Writes the changes to the database; the store can be read and updated
+     * while they are written
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<ByteArrayWrapper, ContractDetails> changes;
+            Set<ByteArrayWrapper> deletes;
+
+            synchronized (this) {
+                changes = cache;
+                deletes = removes;
+                flushing = changes;
+                flushingRemoves = deletes;
+                cache = new ConcurrentHashMap<>();
+                removes = new HashSet<>();
+            }
+
+            try {
+                write(changes, deletes);
+            }
+            finally {
+                synchronized (this) {
+                    flushing = Collections.emptyMap();
+                    flushingRemoves = Collections.emptySet();
+                }
+            }
+        }
+    }
+
+    private void write(Map<ByteArrayWrapper, ContractDetails> cache, Set<ByteArrayWrapper> removes) {
         long keys = cache.size();
 
         long start = System.nanoTime();
-        long totalSize = flushInternal();
+        long totalSize = flushInternal(cache, removes);
         long finish = System.nanoTime();
 
+        flushTime.record(finish - start);
+        flushBytes.add(totalSize);
+
         float flushSize = (float) totalSize / 1_048_576;
-        float flushTime = (float) (finish - start) / 1_000_000;
-        gLogger.info(format("Flush details in: %02.2f ms, %d keys, %02.2fMB", flushTime, keys, flushSize));
+        float flushMillis = (float) (finish - start) / 1_000_000;
+        gLogger.info(format("Flush details in: %02.2f ms, %d keys, %02.2fMB", flushMillis, keys, flushSize));
     }
 
-    private long flushInternal() {
+    private long flushInternal(Map<ByteArrayWrapper, ContractDetails> cache, Set<ByteArrayWrapper> removes) {
         long totalSize = 0;
 
         Map<byte[], byte[]> batch = new HashMap<>();
         for (Map.Entry<ByteArrayWrapper, ContractDetails> entry : cache.entrySet()) {
             ContractDetails details = entry.getValue();
-            details.syncStorage();
-
             byte[] key = entry.getKey().getData();
-            byte[] value = details.getEncoded();
+            byte[] value;
+
+            // the details can be read (and their trie saved) while they are written
+            synchronized (details) {
+                details.syncStorage();
+                value = details.getEncoded();
+            }
 
             batch.put(key, value);
             totalSize += value.length;
@@ -123,9 +183,6 @@ public class DetailsDataStore {
             db.delete(key.getData());
         }
 
-        cache.clear();
-        removes.clear();
-
         return totalSize;
     }
 
@@ -133,6 +190,7 @@ public class DetailsDataStore {
     public synchronized Set<ByteArrayWrapper> keys() {
         Set<ByteArrayWrapper> keys = new HashSet<>();
         keys.addAll(cache.keySet());
+        keys.addAll(flushing.keySet());
         keys.addAll(db.dumpKeys());
 
         return keys;
@@ -151,5 +151,16 @@ public interface Ethereum {
     // TODO added method, to review
     ProgramResult callConstant(Web3.CallArguments args);
 
+    /**
+     * @return the result of the call at the block, executed on a snapshot of its state,
+     * that is left unchanged, see {@link co.rsk.db.HistoricalStates}
+     */
+    ProgramResult callConstant(Web3.CallArguments args, Block block, org.ethereum.core.Repository snapshot);
+
+    /**
+     * @return the lowest gas limit that the call needs at the best block, see {@link co.rsk.core.GasEstimator}
+     */
+    long estimateGas(Web3.CallArguments args);
+
     SystemProperties getSystemProperties();
 }
@@ -19,6 +19,7 @@
 
 package org.ethereum.facade;
 
+import co.rsk.core.GasEstimator;
 import co.rsk.core.ReversibleTransactionExecutor;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.*;
@@ -200,6 +201,27 @@ public class EthereumImpl implements Ethereum {
         ).getResult();
     }
 
+    @Override
+    public ProgramResult callConstant(Web3.CallArguments args, Block block, Repository snapshot) {
+        return ReversibleTransactionExecutor.executeOnSnapshot(
+                block.getCoinbase(),
+                snapshot,
+                worldManager.getBlockStore(),
+                receiptStore,
+                programInvokeFactory,
+                block,
+                args
+        ).getResult();
+    }
+
+    @Override
+    public long estimateGas(Web3.CallArguments args) {
+        Block bestBlock = getBlockchain().getBestBlock();
+        GasEstimator estimator = new GasEstimator((Repository) getRepository(), worldManager.getBlockStore(),
+                receiptStore, programInvokeFactory);
+        return estimator.estimate(bestBlock, args).getGas();
+    }
+
     @Override
     public ProgramResult callConstantFunction(String receiveAddress, CallTransaction.Function function,
                                               Object... funcArgs) {
@@ -209,7 +231,7 @@ public class EthereumImpl implements Ethereum {
 
         Block bestBlock = worldManager.getBlockchain().getBestBlock();
 
-        Repository repository = ((Repository) worldManager.getRepository()).startTracking();
+        Repository repository = ((Repository) worldManager.getRepository()).getSnapshotTo(bestBlock.getStateRoot()).startTracking();
 
         try {
             org.ethereum.core.TransactionExecutor executor = new org.ethereum.core.TransactionExecutor
@@ -19,6 +19,7 @@
 
 package org.ethereum.net.server;
 
+import co.rsk.metrics.MetricsRegistry;
 import co.rsk.net.Metrics;
 import co.rsk.net.NodeID;
 import co.rsk.net.Status;
@@ -89,6 +90,8 @@ public class ChannelManagerImpl implements ChannelManager {
     public void init() {
         maxActivePeers = config.maxActivePeers();
         trustedPeers = config.peerTrusted();
+        MetricsRegistry.DEFAULT.gauge("rsk_peers", "Connected peers", activePeers::size, "state", "active");
+        MetricsRegistry.DEFAULT.gauge("rsk_peers", "Connected peers", newPeers::size, "state", "new");
         mainWorker.scheduleWithFixedDelay((Runnable) () -> {
             try {
                 processNewPeers();
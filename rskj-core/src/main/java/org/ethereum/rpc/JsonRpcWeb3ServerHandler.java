@@ -2,6 +2,7 @@ package org.ethereum.rpc;
 
 import co.rsk.rpc.JsonRpcFilterServer;
 import co.rsk.rpc.ModuleDescription;
+import co.rsk.rpc.RpcLimitExceededException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -23,51 +24,113 @@ import org.ethereum.rpc.exception.RskErrorResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 @ChannelHandler.Sharable
 public class JsonRpcWeb3ServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("jsonrpc");
     private static final int JSON_RPC_SERVER_ERROR_HIGH_CODE = -32099;
+    private static final int JSON_RPC_LIMIT_EXCEEDED_CODE = -32005;
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final JsonNodeFactory jsonNodeFactory = JsonNodeFactory.instance;
     private final JsonRpcFilterServer jsonRpcServer;
+    private final Executor heavyExecutor;
 
     public JsonRpcWeb3ServerHandler(Web3 service, List<ModuleDescription> filteredModules) {
+        this(service, filteredModules, null);
+    }
+
+    /**
+     * @param heavyExecutor     runs the requests calling heavy methods, out of the network threads;
+     *                          null to run them as the other requests
+     */
+    public JsonRpcWeb3ServerHandler(Web3 service, List<ModuleDescription> filteredModules, Executor heavyExecutor) {
         this.jsonRpcServer = new JsonRpcFilterServer(service, service.getClass(), filteredModules);
         jsonRpcServer.setErrorResolver(new MultipleErrorResolver(new RskErrorResolver(), AnnotationsErrorResolver.INSTANCE, DefaultErrorResolver.INSTANCE));
+        this.heavyExecutor = heavyExecutor;
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
         HttpMethod httpMethod = request.getMethod();
-        HttpResponse response;
-        if (HttpMethod.POST.equals(httpMethod)) {
-            ByteBuf responseContent = Unpooled.buffer();
-            HttpResponseStatus responseStatus = HttpResponseStatus.OK;
-            try (ByteBufOutputStream os = new ByteBufOutputStream(responseContent);
-                 ByteBufInputStream is = new ByteBufInputStream(request.content())){
-                int result = jsonRpcServer.handleRequest(is, os);
-                responseStatus = HttpResponseStatus.valueOf(DefaultHttpStatusCodeProvider.INSTANCE.getHttpStatusCode(result));
-            } catch (Exception e) {
-                LOGGER.error("Unexpected error", e);
-                responseContent = buildErrorContent(JSON_RPC_SERVER_ERROR_HIGH_CODE, HttpResponseStatus.INTERNAL_SERVER_ERROR.reasonPhrase());
-                responseStatus = HttpResponseStatus.INTERNAL_SERVER_ERROR;
-            } finally {
-                response = new DefaultFullHttpResponse(
-                    HttpVersion.HTTP_1_1,
-                    responseStatus,
-                    responseContent
-                );
+
+        if (!HttpMethod.POST.equals(httpMethod)) {
+            HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_IMPLEMENTED);
+            ctx.write(response).addListener(ChannelFutureListener.CLOSE);
+            return;
+        }
+
+        JsonNode node = readRequest(request);
+
+        if (node != null && heavyExecutor != null && jsonRpcServer.isHeavy(node)) {
+            try {
+                heavyExecutor.execute(() -> ctx.writeAndFlush(handleRequest(node, null)).addListener(ChannelFutureListener.CLOSE));
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("Too many heavy requests, request rejected");
+                ctx.write(buildErrorResponse(HttpResponseStatus.SERVICE_UNAVAILABLE, JSON_RPC_LIMIT_EXCEEDED_CODE, "Too many heavy requests"))
+                        .addListener(ChannelFutureListener.CLOSE);
             }
-        } else {
-            response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_IMPLEMENTED);
+
+            return;
+        }
+
+        ctx.write(handleRequest(node, request)).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    // the parsed request, or null if it isn't valid json and it has to be answered by the json rpc server
+    private JsonNode readRequest(FullHttpRequest request) {
+        try (ByteBufInputStream is = new ByteBufInputStream(request.content().duplicate())) {
+            return mapper.readTree(is);
+        } catch (IOException e) {
+            return null;
         }
-        ctx.write(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    private FullHttpResponse handleRequest(JsonNode node, FullHttpRequest request) {
+        ByteBuf responseContent = Unpooled.buffer();
+
+        try (ByteBufOutputStream os = new ByteBufOutputStream(responseContent)) {
+            int result;
+
+            if (node != null) {
+                result = jsonRpcServer.handleRequest(node, os);
+            } else {
+                try (ByteBufInputStream is = new ByteBufInputStream(request.content())) {
+                    result = jsonRpcServer.handleRequest(is, os);
+                }
+            }
+
+            HttpResponseStatus responseStatus = HttpResponseStatus.valueOf(DefaultHttpStatusCodeProvider.INSTANCE.getHttpStatusCode(result));
+            return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, responseStatus, responseContent);
+        } catch (RpcLimitExceededException e) {
+            LOGGER.warn("Request rejected: {}", e.getMessage());
+            responseContent.release();
+            return buildErrorResponse(HttpResponseStatus.SERVICE_UNAVAILABLE, JSON_RPC_LIMIT_EXCEEDED_CODE, e.getMessage());
+        } catch (Exception e) {
+            LOGGER.error("Unexpected error", e);
+            responseContent.release();
+            return buildErrorResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR, JSON_RPC_SERVER_ERROR_HIGH_CODE, HttpResponseStatus.INTERNAL_SERVER_ERROR.reasonPhrase());
+        }
+    }
+
+    private FullHttpResponse buildErrorResponse(HttpResponseStatus status, int errorCode, String errorMessage) {
+        ByteBuf content;
+
+        try {
+            content = buildErrorContent(errorCode, errorMessage);
+        } catch (JsonProcessingException e) {
+            LOGGER.error("Unexpected error", e);
+            content = Unpooled.EMPTY_BUFFER;
+        }
+
+        return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
     }
 
     @Override
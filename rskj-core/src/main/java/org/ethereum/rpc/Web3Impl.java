@@ -21,6 +21,8 @@ package org.ethereum.rpc;
 import co.rsk.config.RskSystemProperties;
 import co.rsk.core.Rsk;
 import co.rsk.core.SnapshotManager;
+import co.rsk.db.HistoricalStates;
+import co.rsk.db.MissingStateException;
 import co.rsk.mine.MinerClient;
 import co.rsk.mine.MinerManager;
 import co.rsk.mine.MinerServer;
@@ -31,6 +33,7 @@ import co.rsk.rpc.modules.personal.PersonalModule;
 import co.rsk.scoring.InvalidInetAddressException;
 import co.rsk.scoring.PeerScoringInformation;
 import co.rsk.scoring.PeerScoringManager;
+import co.rsk.trie.TrieReadBudgetExceededException;
 import org.ethereum.core.*;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.db.BlockInformation;
@@ -47,6 +50,7 @@ import org.ethereum.rpc.dto.CompilationResultDTO;
 import org.ethereum.rpc.dto.TransactionReceiptDTO;
 import org.ethereum.rpc.dto.TransactionResultDTO;
 import org.ethereum.rpc.exception.JsonRpcInvalidParamException;
+import org.ethereum.rpc.exception.JsonRpcLimitExceededException;
 import org.ethereum.rpc.exception.JsonRpcUnimplementedMethodException;
 import org.ethereum.util.BuildInfo;
 import org.ethereum.vm.DataWord;
@@ -64,6 +68,7 @@ import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import static java.lang.Math.max;
 import static org.ethereum.rpc.TypeConverter.*;
@@ -93,6 +98,9 @@ public class Web3Impl implements Web3 {
 
     private PeerScoringManager peerScoringManager;
 
+    HistoricalStates historicalStates = new HistoricalStates(RskSystemProperties.CONFIG.rpcStateCacheSize(),
+            RskSystemProperties.CONFIG.rpcStateCacheNodes(), RskSystemProperties.CONFIG.rpcStateReadLimit());
+
     private PersonalModule personalModule;
     private EthModule ethModule;
 
@@ -399,23 +407,18 @@ public class Web3Impl implements Web3 {
         *  String "latest"  - for the latest mined block
         *  String "pending"  - for the pending state/transactions
         */
-        Repository repository = getRepoByJsonBlockId(block);
+        byte[] addressAsByteArray = stringHexToByteArray(address);
+        BigInteger balance = readState(block, repository -> repository.getBalance(addressAsByteArray));
 
-        if (repository == null)
+        if (balance == null)
             throw new NullPointerException();
 
-        byte[] addressAsByteArray = stringHexToByteArray(address);
-        BigInteger balance = repository.getBalance(addressAsByteArray);
-
         return toJsonHex(balance);
     }
 
     @Override
     public String eth_getBalance(String address) throws Exception {
-        byte[] addressAsByteArray = stringHexToByteArray(address);
-        BigInteger balance = this.repository.getBalance(addressAsByteArray);
-
-        return toJsonHex(balance);
+        return eth_getBalance(address, "latest");
     }
 
     @Override
@@ -423,11 +426,8 @@ public class Web3Impl implements Web3 {
         String s = null;
         try {
             byte[] addressAsByteArray = stringHexToByteArray(address);
-            Repository repository = getRepoByJsonBlockId(blockId);
-            if(repository == null)
-                return null;
-            DataWord storageValue = repository.
-                    getStorageValue(addressAsByteArray, new DataWord(stringHexToByteArray(storageIdx)));
+            DataWord key = new DataWord(stringHexToByteArray(storageIdx));
+            DataWord storageValue = readState(blockId, repository -> repository.getStorageValue(addressAsByteArray, key));
             if (storageValue != null) {
                 return s = TypeConverter.toJsonHex(storageValue.getData());
             } else {
@@ -445,9 +445,8 @@ public class Web3Impl implements Web3 {
         try {
             byte[] addressAsByteArray = TypeConverter.stringHexToByteArray(address);
 
-            Repository repository = getRepoByJsonBlockId(blockId);
-            if (repository != null) {
-                BigInteger nonce = repository.getNonce(addressAsByteArray);
+            BigInteger nonce = readState(blockId, repository -> repository.getNonce(addressAsByteArray));
+            if (nonce != null) {
                 return s = TypeConverter.toJsonHex(nonce);
             } else {
                 return null;
@@ -535,14 +534,9 @@ public class Web3Impl implements Web3 {
 
         String s = null;
         try {
-            Block block = getByJsonBlockId(blockId);
-            if(block == null) {
-                return null;
-            }
             byte[] addressAsByteArray = TypeConverter.stringHexToByteArray(address);
-            Repository repository = getRepoByJsonBlockId(blockId);
-            if(repository != null) {
-                byte[] code = repository.getCode(addressAsByteArray);
+            byte[] code = readState(blockId, repository -> repository.getCode(addressAsByteArray));
+            if(code != null) {
                 s = TypeConverter.toJsonHex(code);
             }
             return s;
@@ -587,7 +581,15 @@ public class Web3Impl implements Web3 {
 
     @Override
     public String eth_call(CallArguments args, String bnOrId) throws Exception {
-        return ethModule.call(args, bnOrId);
+        if (isLatest(bnOrId))
+            return ethModule.call(args, bnOrId);
+
+        Block block = getByJsonBlockId(bnOrId);
+
+        if (block == null)
+            throw new JsonRpcInvalidParamException("Unknown block " + bnOrId);
+
+        return readHistoricalState(block, snapshot -> ethModule.call(args, block, snapshot));
     }
 
     @Override
@@ -1242,7 +1244,7 @@ public class Web3Impl implements Web3 {
     private Block getByJsonBlockId(String id) {
         if ("earliest".equalsIgnoreCase(id)) {
             return worldManager.getBlockchain().getBlockByNumber(0);
-        } else if ("latest".equalsIgnoreCase(id)) {
+        } else if (isLatest(id)) {
             return worldManager.getBlockchain().getBestBlock();
         } else if ("pending".equalsIgnoreCase(id)) {
             throw new JsonRpcUnimplementedMethodException("The method don't support 'pending' as a parameter yet");
@@ -1256,16 +1258,35 @@ public class Web3Impl implements Web3 {
         }
     }
 
-    private Repository getRepoByJsonBlockId(String id) {
-        if ("pending".equalsIgnoreCase(id)) {
-            return worldManager.getPendingState().getRepository();
-        } else {
-            Block block = getByJsonBlockId(id);
-            if (block != null) {
-                return ((Repository) this.repository).getSnapshotTo(block.getStateRoot());
-            } else {
-                return null;
-            }
+    // the block states are read from snapshots, that don't wait for the block import: "latest"
+    // from a new snapshot of the best block, the blocks given by number from the historical states;
+    // returns null if there is no such block
+    private <T> T readState(String id, Function<Repository, T> query) {
+        if ("pending".equalsIgnoreCase(id))
+            return query.apply(worldManager.getPendingState().getRepository());
+
+        Block block = getByJsonBlockId(id);
+
+        if (block == null)
+            return null;
+
+        if (isLatest(id))
+            return query.apply(((Repository) this.repository).getSnapshotTo(block.getStateRoot()));
+
+        return readHistoricalState(block, query);
+    }
+
+    private static boolean isLatest(String id) {
+        return "latest".equalsIgnoreCase(id);
+    }
+
+    private <T> T readHistoricalState(Block block, Function<Repository, T> query) {
+        try {
+            return historicalStates.read((Repository) this.repository, block.getStateRoot(), query);
+        } catch (MissingStateException ex) {
+            throw new JsonRpcInvalidParamException("State of block " + block.getNumber() + " is not available", ex);
+        } catch (TrieReadBudgetExceededException ex) {
+            throw new JsonRpcLimitExceededException("Query at block " + block.getNumber() + " exceeds the state read limit");
         }
     }
 
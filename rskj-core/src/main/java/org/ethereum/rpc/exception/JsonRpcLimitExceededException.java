@@ -0,0 +1,10 @@
+package org.ethereum.rpc.exception;
+
+public class JsonRpcLimitExceededException extends RskJsonRpcRequestException{
+
+    public static final Integer ERROR_CODE = -32005;
+
+    public JsonRpcLimitExceededException(String message) {
+        super(ERROR_CODE, message);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.blocks;
+
+import co.rsk.blockchain.utils.BlockGenerator;
+import org.ethereum.core.Block;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+public class BinaryBlockPlayerTest {
+    @Test
+    public void createPlayer() throws Exception {
+        BinaryBlockRecorder recorder = new BinaryBlockRecorder("testblocks.bin");
+        recorder.close();
+
+        BinaryBlockPlayer player = new BinaryBlockPlayer("testblocks.bin");
+
+        File file = new File("testblocks.bin");
+        Assert.assertTrue(file.exists());
+
+        Assert.assertNull(player.readBlock());
+
+        player.close();
+
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test
+    public void readRecordedBlocks() throws Exception {
+        Block genesis = BlockGenerator.getGenesisBlock();
+        Block block1 = BlockGenerator.createChildBlock(genesis);
+        Block block2 = BlockGenerator.createChildBlock(block1, 2);
+
+        BinaryBlockRecorder recorder = new BinaryBlockRecorder("testblocks.bin");
+        recorder.writeBlock(block1);
+        recorder.writeBlock(block2);
+        recorder.close();
+
+        BinaryBlockPlayer player = new BinaryBlockPlayer("testblocks.bin");
+
+        Block result1 = player.readBlock();
+        Block result2 = player.readBlock();
+
+        Assert.assertNotNull(result1);
+        Assert.assertArrayEquals(block1.getHash(), result1.getHash());
+        Assert.assertNotNull(result2);
+        Assert.assertArrayEquals(block2.getHash(), result2.getHash());
+        Assert.assertEquals(2, result2.getTransactionsList().size());
+        Assert.assertNull(player.readBlock());
+
+        player.close();
+
+        Assert.assertTrue(new File("testblocks.bin").delete());
+    }
+
+    @Test
+    public void truncatedLastBlockEndsTheFile() throws Exception {
+        Block block1 = BlockGenerator.createChildBlock(BlockGenerator.getGenesisBlock());
+        Block block2 = BlockGenerator.createChildBlock(block1);
+
+        BinaryBlockRecorder recorder = new BinaryBlockRecorder("testblocks.bin");
+        recorder.writeBlock(block1);
+        recorder.writeBlock(block2);
+        recorder.close();
+
+        try (RandomAccessFile file = new RandomAccessFile("testblocks.bin", "rw")) {
+            file.setLength(file.length() - 10);
+        }
+
+        BinaryBlockPlayer player = new BinaryBlockPlayer("testblocks.bin");
+
+        Block result = player.readBlock();
+
+        Assert.assertNotNull(result);
+        Assert.assertArrayEquals(block1.getHash(), result.getHash());
+        Assert.assertNull(player.readBlock());
+
+        player.close();
+
+        Assert.assertTrue(new File("testblocks.bin").delete());
+    }
+
+    @Test
+    public void openDetectsFileFormat() throws Exception {
+        Block block = BlockGenerator.createChildBlock(BlockGenerator.getGenesisBlock());
+
+        BinaryBlockRecorder binaryRecorder = new BinaryBlockRecorder("testblocks.bin");
+        binaryRecorder.writeBlock(block);
+        binaryRecorder.close();
+
+        FileBlockRecorder fileRecorder = new FileBlockRecorder("testblocks.txt");
+        fileRecorder.writeBlock(block);
+        fileRecorder.close();
+
+        Assert.assertTrue(BinaryBlockPlayer.isBinaryFile("testblocks.bin"));
+        Assert.assertFalse(BinaryBlockPlayer.isBinaryFile("testblocks.txt"));
+
+        try (BlockPlayer player = BlockPlayer.open("testblocks.bin")) {
+            Assert.assertTrue(player instanceof BinaryBlockPlayer);
+            Assert.assertArrayEquals(block.getHash(), player.readBlock().getHash());
+        }
+
+        try (BlockPlayer player = BlockPlayer.open("testblocks.txt")) {
+            Assert.assertTrue(player instanceof FileBlockPlayer);
+            Assert.assertArrayEquals(block.getHash(), player.readBlock().getHash());
+        }
+
+        Assert.assertTrue(new File("testblocks.bin").delete());
+        Assert.assertTrue(new File("testblocks.txt").delete());
+    }
+}
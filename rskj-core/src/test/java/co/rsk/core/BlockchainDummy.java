@@ -40,6 +40,11 @@ public class BlockchainDummy implements Blockchain {
         return null;
     }
 
+    @Override
+    public void prevalidate(List<Block> blocks) {
+
+    }
+
     @Override
     public Block getBlockByNumber(long blockNr) {
         return null;
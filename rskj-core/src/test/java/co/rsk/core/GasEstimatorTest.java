@@ -0,0 +1,178 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.core;
+
+import co.rsk.util.TestContract;
+import org.ethereum.core.Block;
+import org.ethereum.core.CallTransaction;
+import org.ethereum.db.ContractDetails;
+import org.ethereum.rpc.TypeConverter;
+import org.ethereum.rpc.Web3;
+import org.ethereum.util.RskTestFactory;
+import org.ethereum.vm.program.ProgramResult;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactoryImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GasEstimatorTest {
+    // fails with an invalid jump unless the GAS opcode reports more than 50000 gas left
+    private static final String GAS_DEPENDENT_CODE = "0x5a6200c35010600c576000565b00";
+
+    @Test
+    public void estimateTransfer() {
+        RskTestFactory factory = new RskTestFactory();
+        factory.initGenesis();
+
+        Web3.CallArguments args = new Web3.CallArguments();
+        args.to = "0x23";
+        args.value = "0x0";
+        args.gas = "0xf424";
+
+        GasEstimator.Estimate estimate = createEstimator(factory).estimate(factory.getBlockchain().getBestBlock(), args);
+
+        Assert.assertEquals(21000, estimate.getGas());
+        Assert.assertEquals(2, estimate.getExecutions());
+    }
+
+    @Test
+    public void estimateContractCall() {
+        RskTestFactory factory = new RskTestFactory();
+        factory.initGenesis();
+        ContractDetails contract = factory.addContract(TestContract.hello().data);
+        Web3.CallArguments args = createHelloArguments(contract, "0xf424");
+
+        Block bestBlock = factory.getBlockchain().getBestBlock();
+        ProgramResult result = execute(factory, bestBlock, createHelloArguments(contract, "0xf424"));
+        GasEstimator.Estimate estimate = createEstimator(factory).estimate(bestBlock, args);
+
+        Assert.assertNull(result.getException());
+        Assert.assertEquals(result.getGasUsed(), estimate.getGas());
+        Assert.assertEquals(2, estimate.getExecutions());
+    }
+
+    @Test
+    public void estimateFailedCall() {
+        RskTestFactory factory = new RskTestFactory();
+        factory.initGenesis();
+        ContractDetails contract = factory.addContract(TestContract.hello().data);
+        Web3.CallArguments args = createHelloArguments(contract, "0x5208");
+
+        Block bestBlock = factory.getBlockchain().getBestBlock();
+        ProgramResult result = execute(factory, bestBlock, createHelloArguments(contract, "0x5208"));
+        GasEstimator.Estimate estimate = createEstimator(factory).estimate(bestBlock, args);
+
+        Assert.assertNotNull(result.getException());
+        Assert.assertEquals(result.getGasUsed(), estimate.getGas());
+        Assert.assertEquals(1, estimate.getExecutions());
+    }
+
+    @Test
+    public void estimateGasDependentCall() {
+        RskTestFactory factory = new RskTestFactory();
+        factory.initGenesis();
+        ContractDetails contract = factory.addContract(GAS_DEPENDENT_CODE);
+        Block bestBlock = factory.getBlockchain().getBestBlock();
+
+        ProgramResult result = execute(factory, bestBlock, createCallArguments(contract, "0x30d40"));
+        ProgramResult resultWithGasUsed = execute(factory, bestBlock, createCallArguments(contract, TypeConverter.toJsonHex(result.getGasUsed())));
+
+        Assert.assertNull(result.getException());
+        Assert.assertNotNull(resultWithGasUsed.getException());
+
+        GasEstimator.Estimate estimate = createEstimator(factory).estimate(bestBlock, createCallArguments(contract, "0x30d40"));
+
+        Assert.assertTrue(estimate.getGas() > result.getGasUsed() + 50000);
+        Assert.assertTrue(estimate.getExecutions() > 2);
+        Assert.assertTrue(estimate.getExecutions() <= GasEstimator.MAX_EXECUTIONS);
+
+        ProgramResult resultWithEstimate = execute(factory, bestBlock, createCallArguments(contract, TypeConverter.toJsonHex(estimate.getGas())));
+        ProgramResult resultBelowEstimate = execute(factory, bestBlock, createCallArguments(contract, TypeConverter.toJsonHex(estimate.getGas() - 1)));
+
+        Assert.assertNull(resultWithEstimate.getException());
+        Assert.assertNotNull(resultBelowEstimate.getException());
+    }
+
+    @Test
+    public void estimateDoesNotChangeArguments() {
+        RskTestFactory factory = new RskTestFactory();
+        factory.initGenesis();
+
+        Web3.CallArguments args = new Web3.CallArguments();
+        args.to = "0x23";
+        args.value = "0x0";
+        args.gas = "0xf424";
+
+        createEstimator(factory).estimate(factory.getBlockchain().getBestBlock(), args);
+
+        Assert.assertNull(args.from);
+    }
+
+    @Test
+    public void estimateDoesNotChangeState() {
+        RskTestFactory factory = new RskTestFactory();
+        factory.initGenesis();
+        byte[] root = factory.getRepository().getRoot();
+
+        Web3.CallArguments args = new Web3.CallArguments();
+        args.to = "0x23";
+        args.value = "0x0";
+        args.gas = "0xf424";
+
+        createEstimator(factory).estimate(factory.getBlockchain().getBestBlock(), args);
+
+        Assert.assertArrayEquals(root, factory.getRepository().getRoot());
+    }
+
+    private static GasEstimator createEstimator(RskTestFactory factory) {
+        return new GasEstimator(factory.getRepository(), factory.getBlockStore(), factory.getReceiptStore(), new ProgramInvokeFactoryImpl());
+    }
+
+    private static ProgramResult execute(RskTestFactory factory, Block block, Web3.CallArguments args) {
+        return ReversibleTransactionExecutor.executeTransaction(
+                block.getCoinbase(),
+                factory.getRepository(),
+                factory.getBlockStore(),
+                factory.getReceiptStore(),
+                new ProgramInvokeFactoryImpl(),
+                block,
+                args).getResult();
+    }
+
+    private static Web3.CallArguments createCallArguments(ContractDetails contract, String gas) {
+        Web3.CallArguments args = new Web3.CallArguments();
+        args.to = TypeConverter.toJsonHex(contract.getAddress());
+        args.gasPrice = "0x0";
+        args.value = "0x0";
+        args.gas = gas;
+        return args;
+    }
+
+    private static Web3.CallArguments createHelloArguments(ContractDetails contract, String gas) {
+        CallTransaction.Function helloFn = TestContract.hello().functions.get("hello");
+
+        Web3.CallArguments args = new Web3.CallArguments();
+        args.to = TypeConverter.toJsonHex(contract.getAddress());
+        args.data = TypeConverter.toJsonHex(helloFn.encode());
+        args.gasPrice = "0x0";
+        args.value = "0x0";
+        args.gas = gas;
+        return args;
+    }
+}
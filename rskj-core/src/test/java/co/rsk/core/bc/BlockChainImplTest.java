@@ -20,7 +20,9 @@ package co.rsk.core.bc;
 
 import co.rsk.blockchain.utils.BlockGenerator;
 import co.rsk.blocks.DummyBlockRecorder;
+import co.rsk.config.RskSystemProperties;
 import co.rsk.db.RepositoryImpl;
+import co.rsk.db.WriteBehindReceiptStore;
 import co.rsk.test.builders.BlockBuilder;
 import co.rsk.test.builders.BlockChainBuilder;
 import co.rsk.trie.TrieStoreImpl;
@@ -43,6 +45,8 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Created by ajlopez on 29/07/2016.
@@ -727,6 +731,165 @@ public class BlockChainImplTest {
         Assert.assertArrayEquals(block1.getHash(), listener.getLatestBlock().getHash());
     }
 
+    @Test
+    public void importBlocksUsingAsyncPipeline() {
+        BlockExecutorTest.TestObjects objects = BlockExecutorTest.generateBlockWithOneTransaction();
+        BlockChainImpl blockChain = createBlockChain(objects.getRepository());
+        BlockExecutorTest.SimpleEthereumListener listener = (BlockExecutorTest.SimpleEthereumListener)blockChain.getListener();
+
+        blockChain.setImportPipeline(true, 4);
+
+        List<Block> blocks = new ArrayList<>();
+        blocks.add(objects.getParent());
+        blocks.add(objects.getBlock());
+
+        blockChain.prevalidate(blocks);
+
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(objects.getParent()));
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(objects.getBlock()));
+
+        // the read waits the pending receipt write
+        TransactionInfo info = blockChain.getTransactionInfo(objects.getTransaction().getHash());
+
+        Assert.assertNotNull(info);
+        Assert.assertArrayEquals(objects.getBlock().getHash(), info.getBlockHash());
+
+        blockChain.awaitPersistence();
+        blockChain.close();
+
+        Assert.assertNotNull(listener.getLatestBlock());
+        Assert.assertArrayEquals(objects.getBlock().getHash(), listener.getLatestBlock().getHash());
+
+        BlockImportMetrics metrics = blockChain.getImportMetrics();
+
+        // the first block has no parent to execute it
+        Assert.assertEquals(2, metrics.getHistogram(BlockImportMetrics.Stage.TOTAL).getCount());
+        Assert.assertEquals(1, metrics.getHistogram(BlockImportMetrics.Stage.EXECUTION).getCount());
+        Assert.assertEquals(1, metrics.getHistogram(BlockImportMetrics.Stage.RECEIPTS).getCount());
+        Assert.assertEquals(1, metrics.getHistogram(BlockImportMetrics.Stage.LISTENERS).getCount());
+    }
+
+    @Test
+    public void switchToOtherChainUsingAsyncPipeline() {
+        BlockChainImpl blockChain = createBlockChain();
+        BlockExecutorTest.SimpleEthereumListener listener = (BlockExecutorTest.SimpleEthereumListener)blockChain.getListener();
+        Block genesis = getGenesisBlock(blockChain);
+        Block block1 = BlockGenerator.createChildBlock(genesis);
+        Block block1b = BlockGenerator.createChildBlock(genesis);
+        Block block2b = BlockGenerator.createChildBlock(block1b);
+
+        // a single pending write: each import waits the writes of the previous one
+        blockChain.setImportPipeline(true, 1);
+
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(genesis));
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(block1));
+        Assert.assertEquals(ImportResult.IMPORTED_NOT_BEST, blockChain.tryToConnect(block1b));
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(block2b));
+
+        blockChain.awaitPersistence();
+        blockChain.close();
+
+        Assert.assertArrayEquals(block2b.getHash(), blockChain.getStatus().getBestBlock().getHash());
+        Assert.assertArrayEquals(block2b.getHash(), blockChain.getBlockStore().getBestBlock().getHash());
+        Assert.assertArrayEquals(block2b.getHash(), listener.getLatestBlock().getHash());
+    }
+
+    @Test
+    public void restartAfterStopWithPendingWrites() {
+        HashMapDB stateDB = new HashMapDB();
+        HashMapDB detailsDB = new HashMapDB();
+        HashMapDB codeDB = new HashMapDB();
+        HashMapDB blocksDB = new HashMapDB();
+        BlockingHashMapDB receiptsDB = new BlockingHashMapDB();
+        DurableIndexBlockStore blockStore = new DurableIndexBlockStore(blocksDB);
+
+        Repository repository = new RepositoryImpl(new TrieStoreImpl(stateDB), detailsDB, codeDB);
+        BlockChainImpl blockChain = createBlockChain(repository, blockStore, receiptsDB);
+
+        Account sender = BlockExecutorTest.createAccount("acctest1", repository, BigInteger.valueOf(1000000));
+        Account receiver = BlockExecutorTest.createAccount("acctest2", repository, BigInteger.TEN);
+        Block genesis = getGenesisBlock(blockChain);
+
+        BlockExecutor executor = new BlockExecutor(repository, blockChain, blockStore, null);
+        List<Block> blocks = new ArrayList<>();
+        Block parent = genesis;
+        int flushBlocks = RskSystemProperties.CONFIG.flushNumberOfBlocks();
+
+        for (int k = 0; k < flushBlocks + 2; k++) {
+            Transaction tx = Transaction.create(Hex.toHexString(receiver.getAddress()), BigInteger.TEN, BigInteger.valueOf(k), BigInteger.ONE, BigInteger.valueOf(21000));
+            tx.sign(sender.getEcKey().getPrivKeyBytes());
+            List<Transaction> txs = new ArrayList<>();
+            txs.add(tx);
+
+            Block block = BlockGenerator.createChildBlock(parent, txs, new ArrayList<>(), 1, null);
+            executor.executeAndFill(block, parent);
+            blocks.add(block);
+            parent = block;
+        }
+
+        blockChain.setImportPipeline(true, 16);
+
+        // the stores are flushed with the genesis and the block flushBlocks
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(genesis));
+
+        for (int k = 0; k < flushBlocks; k++)
+            Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(blocks.get(k)));
+
+        blockChain.awaitPersistence();
+
+        receiptsDB.block();
+
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(blocks.get(flushBlocks)));
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(blocks.get(flushBlocks + 1)));
+        Assert.assertTrue(((WriteBehindReceiptStore) blockChain.getReceiptStore()).hasPendingWrites());
+
+        // the node stops here: a restart only finds what was written to the stores
+        IndexedBlockStore restartedBlockStore = new IndexedBlockStore();
+        restartedBlockStore.init(blockStore.getDurableIndex(), copy(blocksDB), null);
+        Repository restartedRepository = new RepositoryImpl(new TrieStoreImpl(copy(stateDB)), copy(detailsDB), copy(codeDB));
+        ReceiptStore restartedReceiptStore = new ReceiptStoreImpl(copy(receiptsDB));
+
+        receiptsDB.unblock();
+        blockChain.close();
+
+        Block best = restartedBlockStore.getBestBlock();
+
+        Assert.assertNotNull(best);
+        Assert.assertEquals(flushBlocks, best.getNumber());
+        Assert.assertArrayEquals(blocks.get(flushBlocks - 1).getHash(), best.getHash());
+
+        restartedRepository.syncToRoot(best.getStateRoot());
+
+        Assert.assertEquals(BigInteger.valueOf(flushBlocks), restartedRepository.getNonce(sender.getAddress()));
+        Assert.assertEquals(BigInteger.valueOf(10 + flushBlocks * 10), restartedRepository.getBalance(receiver.getAddress()));
+
+        for (int k = 0; k < flushBlocks; k++) {
+            TransactionInfo info = restartedReceiptStore.get(blocks.get(k).getTransactionsList().get(0).getHash());
+
+            Assert.assertNotNull(info);
+            Assert.assertArrayEquals(blocks.get(k).getHash(), info.getBlockHash());
+        }
+    }
+
+    @Test
+    public void recordImportMetricsUsingSyncPipeline() {
+        BlockChainImpl blockChain = createBlockChain();
+        Block genesis = getGenesisBlock(blockChain);
+        Block block1 = BlockGenerator.createChildBlock(genesis);
+        Block block1b = BlockGenerator.createChildBlock(genesis);
+
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(genesis));
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, blockChain.tryToConnect(block1));
+        Assert.assertEquals(ImportResult.IMPORTED_NOT_BEST, blockChain.tryToConnect(block1b));
+
+        BlockImportMetrics metrics = blockChain.getImportMetrics();
+
+        Assert.assertEquals(3, metrics.getHistogram(BlockImportMetrics.Stage.TOTAL).getCount());
+        Assert.assertEquals(3, metrics.getHistogram(BlockImportMetrics.Stage.STORE).getCount());
+        Assert.assertEquals(2, metrics.getHistogram(BlockImportMetrics.Stage.LISTENERS).getCount());
+        Assert.assertEquals(0, metrics.getHistogram(BlockImportMetrics.Stage.PREVALIDATION).getCount());
+    }
+
     @Test
     public void createWithoutArgumentsAndUnusedMethods() {
         BlockChainImpl blockChain = new BlockChainImpl(null, null, null, null, null, null, new DummyBlockValidator());
@@ -834,10 +997,21 @@ public class BlockChainImplTest {
         return createBlockChain(repository, blockStore, blockValidator);
     }
 
+    private static BlockChainImpl createBlockChain(Repository repository, IndexedBlockStore blockStore, KeyValueDataSource receiptsDS) {
+        BlockValidatorBuilder validatorBuilder = new BlockValidatorBuilder();
+        validatorBuilder.addBlockRootValidationRule().addBlockUnclesValidationRule(blockStore)
+                .addBlockTxsValidationRule(repository).blockStore(blockStore);
+
+        return createBlockChain(repository, blockStore, validatorBuilder.build(), receiptsDS);
+    }
+
     private static BlockChainImpl createBlockChain(Repository repository, IndexedBlockStore blockStore, BlockValidatorImpl blockValidator) {
-        KeyValueDataSource ds = new HashMapDB();
-        ds.init();
-        ReceiptStore receiptStore = new ReceiptStoreImpl(ds);
+        return createBlockChain(repository, blockStore, blockValidator, new HashMapDB());
+    }
+
+    private static BlockChainImpl createBlockChain(Repository repository, IndexedBlockStore blockStore, BlockValidatorImpl blockValidator, KeyValueDataSource receiptsDS) {
+        receiptsDS.init();
+        ReceiptStore receiptStore = new ReceiptStoreImpl(receiptsDS);
 
         AdminInfo adminInfo = new SimpleAdminInfo();
 
@@ -867,6 +1041,80 @@ public class BlockChainImplTest {
         return genesis;
     }
 
+    private static HashMapDB copy(HashMapDB db) {
+        HashMapDB result = new HashMapDB();
+
+        for (byte[] key : db.keys())
+            result.put(key, db.get(key));
+
+        return result;
+    }
+
+    // the index of the blocks is only written on flush, as the file index of the node
+    private static class DurableIndexBlockStore extends IndexedBlockStore {
+        private final Map<Long, List<BlockInfo>> index = new HashMap<>();
+        private Map<Long, List<BlockInfo>> durableIndex = new HashMap<>();
+
+        DurableIndexBlockStore(KeyValueDataSource blocks) {
+            init(index, blocks, null);
+        }
+
+        @Override
+        public synchronized void flush() {
+            super.flush();
+
+            durableIndex = new HashMap<>();
+
+            for (Map.Entry<Long, List<BlockInfo>> entry : index.entrySet()) {
+                List<BlockInfo> infos = new ArrayList<>();
+
+                for (BlockInfo info : entry.getValue()) {
+                    BlockInfo copy = new BlockInfo();
+                    copy.setHash(info.getHash());
+                    copy.setCummDifficulty(info.getCummDifficulty());
+                    copy.setMainChain(info.isMainChain());
+                    infos.add(copy);
+                }
+
+                durableIndex.put(entry.getKey(), infos);
+            }
+        }
+
+        synchronized Map<Long, List<BlockInfo>> getDurableIndex() {
+            return new HashMap<>(durableIndex);
+        }
+    }
+
+    // the writes wait while the data source is blocked
+    private static class BlockingHashMapDB extends HashMapDB {
+        private CountDownLatch latch = new CountDownLatch(0);
+
+        synchronized void block() {
+            latch = new CountDownLatch(1);
+        }
+
+        synchronized void unblock() {
+            latch.countDown();
+        }
+
+        @Override
+        public byte[] put(byte[] key, byte[] value) {
+            CountDownLatch current;
+
+            synchronized (this) {
+                current = latch;
+            }
+
+            try {
+                current.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return super.put(key, value);
+        }
+    }
+
     private static BlockExecutor createExecutor(BlockChainImpl blockChain) {
         return new BlockExecutor(blockChain.getRepository(), blockChain, blockChain.getBlockStore(), blockChain.getListener());
     }
@@ -370,6 +370,76 @@ public class PendingStateImplTest {
         Assert.assertEquals(BigInteger.valueOf(1004000), repository.getBalance(receiver.getAddress()));
     }
 
+    @Test
+    public void updatePendingStateTwiceWithTwoSenders() {
+        PendingStateImpl pendingState = createSampleNewPendingStateWithAccounts(4, new BigInteger("1000000"));
+        Transaction tx1 = createSampleTransaction(1, 3, 1000, 0);
+        Transaction tx2 = createSampleTransaction(2, 4, 2000, 0);
+        Account receiver1 = createAccount(3);
+        Account receiver2 = createAccount(4);
+
+        pendingState.addPendingTransaction(tx1);
+        pendingState.addPendingTransaction(tx2);
+
+        pendingState.updateState();
+        pendingState.updateState();
+
+        Repository repository = pendingState.getRepository();
+        Assert.assertEquals(BigInteger.valueOf(1001000), repository.getBalance(receiver1.getAddress()));
+        Assert.assertEquals(BigInteger.valueOf(1002000), repository.getBalance(receiver2.getAddress()));
+        Assert.assertEquals(BigInteger.ONE, repository.getNonce(createAccount(1).getAddress()));
+        Assert.assertEquals(BigInteger.ONE, repository.getNonce(createAccount(2).getAddress()));
+    }
+
+    @Test
+    public void updatePendingStateReexecutesSenderChangedInConfirmedState() {
+        PendingStateImpl pendingState = createSampleNewPendingStateWithAccounts(4, new BigInteger("1000000"));
+        Transaction tx1 = createSampleTransaction(1, 3, 1000, 0);
+        Transaction tx2 = createSampleTransaction(2, 4, 2000, 0);
+        Account receiver1 = createAccount(3);
+        Account receiver2 = createAccount(4);
+
+        pendingState.addPendingTransaction(tx1);
+        pendingState.addPendingTransaction(tx2);
+        pendingState.updateState();
+
+        Repository track = pendingState.getBlockChain().getRepository().startTracking();
+        track.increaseNonce(createAccount(1).getAddress());
+        track.commit();
+
+        pendingState.updateState();
+
+        Repository repository = pendingState.getRepository();
+        Assert.assertEquals(BigInteger.valueOf(1000000), repository.getBalance(receiver1.getAddress()));
+        Assert.assertEquals(BigInteger.valueOf(1002000), repository.getBalance(receiver2.getAddress()));
+    }
+
+    @Test
+    public void updatePendingStateWithSenderFundedByAnotherSender() {
+        PendingStateImpl pendingState = createSampleNewPendingStateWithAccounts(2, new BigInteger("1000000"));
+        // account 3 has no balance, it spends the value sent by account 1
+        Transaction tx1 = createSampleTransaction(3, 4, 1000, 0);
+        Transaction tx2 = createSampleTransaction(1, 3, 500000, 0);
+        Account sender = createAccount(3);
+        Account receiver = createAccount(4);
+
+        pendingState.addPendingTransaction(tx1);
+        pendingState.addPendingTransaction(tx2);
+
+        pendingState.updateState();
+
+        Repository repository = pendingState.getRepository();
+        Assert.assertEquals(BigInteger.valueOf(1000), repository.getBalance(receiver.getAddress()));
+        Assert.assertEquals(BigInteger.ONE, repository.getNonce(sender.getAddress()));
+
+        pendingState.updateState();
+
+        repository = pendingState.getRepository();
+        Assert.assertEquals(BigInteger.valueOf(1000), repository.getBalance(receiver.getAddress()));
+        Assert.assertEquals(BigInteger.ONE, repository.getNonce(sender.getAddress()));
+        Assert.assertEquals(BigInteger.valueOf(500000 - 1000 - 21000), repository.getBalance(sender.getAddress()));
+    }
+
     @Test
     public void addTwiceAndGetPendingTransaction() {
         PendingStateImpl pendingState = createSampleNewPendingState();
@@ -0,0 +1,164 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import co.rsk.test.builders.AccountBuilder;
+import co.rsk.test.builders.TransactionBuilder;
+import org.ethereum.core.Account;
+import org.ethereum.core.Transaction;
+import org.ethereum.db.ByteArrayWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+
+public class TransactionPoolTest {
+    @Test
+    public void addAndGetTransactions() {
+        TransactionPool pool = new TransactionPool(0, 0);
+        Transaction tx1 = createTransaction(1, 0, 1);
+        Transaction tx2 = createTransaction(2, 0, 1);
+
+        Assert.assertTrue(pool.add(tx1, false, 1, 100));
+        Assert.assertTrue(pool.add(tx2, true, 1, 100));
+        Assert.assertFalse(pool.add(tx2, true, 1, 100));
+
+        Assert.assertEquals(2, pool.size());
+        Assert.assertEquals(tx1.getEncoded().length + tx2.getEncoded().length, pool.getTotalBytes());
+        Assert.assertTrue(pool.getTransactions(false).contains(tx1));
+        Assert.assertTrue(pool.getTransactions(true).contains(tx2));
+    }
+
+    @Test
+    public void promoteWireTransactionToPending() {
+        TransactionPool pool = new TransactionPool(0, 0);
+        Transaction tx = createTransaction(1, 0, 1);
+        ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
+
+        pool.add(tx, true, 1, 100);
+
+        Assert.assertFalse(pool.containsPending(hash));
+        Assert.assertTrue(pool.add(tx, false, 1, 100));
+        Assert.assertTrue(pool.containsPending(hash));
+        Assert.assertFalse(pool.remove(hash, true));
+        Assert.assertTrue(pool.remove(hash, false));
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void getBestTransactionsByPriceKeepingNonceOrder() {
+        TransactionPool pool = new TransactionPool(0, 0);
+        Transaction tx10 = createTransaction(1, 0, 10);
+        Transaction tx11 = createTransaction(1, 1, 100);
+        Transaction tx20 = createTransaction(2, 0, 50);
+        Transaction tx21 = createTransaction(2, 1, 1);
+
+        pool.add(tx11, true, 1, 100);
+        pool.add(tx21, true, 1, 100);
+        pool.add(tx10, true, 1, 100);
+        pool.add(tx20, true, 1, 100);
+
+        List<Transaction> result = pool.getBestTransactions(Integer.MAX_VALUE);
+
+        Assert.assertEquals(4, result.size());
+        Assert.assertSame(tx20, result.get(0));
+        Assert.assertSame(tx10, result.get(1));
+        Assert.assertSame(tx11, result.get(2));
+        Assert.assertSame(tx21, result.get(3));
+
+        result = pool.getBestTransactions(2);
+
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(4, pool.size());
+    }
+
+    @Test
+    public void evictLowestPriceWhenFull() {
+        TransactionPool pool = new TransactionPool(2, 0);
+        Transaction tx1 = createTransaction(1, 0, 10);
+        Transaction tx2 = createTransaction(2, 0, 5);
+        Transaction tx3 = createTransaction(3, 0, 20);
+        Transaction tx4 = createTransaction(4, 0, 1);
+
+        pool.add(tx1, true, 1, 100);
+        pool.add(tx2, true, 1, 100);
+
+        Assert.assertTrue(pool.add(tx3, true, 1, 100));
+        Assert.assertFalse(pool.add(tx4, true, 1, 100));
+
+        Assert.assertEquals(2, pool.size());
+        Assert.assertTrue(pool.contains(new ByteArrayWrapper(tx1.getHash())));
+        Assert.assertFalse(pool.contains(new ByteArrayWrapper(tx2.getHash())));
+        Assert.assertTrue(pool.contains(new ByteArrayWrapper(tx3.getHash())));
+    }
+
+    @Test
+    public void evictLaterNoncesOfEvictedSender() {
+        Transaction tx10 = createTransaction(1, 0, 1);
+        Transaction tx11 = createTransaction(1, 1, 100);
+        Transaction tx2 = createTransaction(2, 0, 50);
+        TransactionPool pool = new TransactionPool(0, tx10.getEncoded().length + tx11.getEncoded().length);
+
+        pool.add(tx10, true, 1, 100);
+        pool.add(tx11, true, 1, 100);
+        pool.add(tx2, true, 1, 100);
+
+        Assert.assertEquals(1, pool.size());
+        Assert.assertTrue(pool.contains(new ByteArrayWrapper(tx2.getHash())));
+    }
+
+    @Test
+    public void removeByBlockAndByTime() {
+        TransactionPool pool = new TransactionPool(0, 0);
+        Transaction tx1 = createTransaction(1, 0, 1);
+        Transaction tx2 = createTransaction(2, 0, 1);
+        Transaction tx3 = createTransaction(3, 0, 1);
+
+        pool.add(tx1, false, 1, 100);
+        pool.add(tx2, true, 5, 200);
+        pool.add(tx3, true, 10, 300);
+
+        List<Transaction> removed = pool.removeAddedBeforeBlock(5);
+
+        Assert.assertEquals(1, removed.size());
+        Assert.assertSame(tx1, removed.get(0));
+
+        removed = pool.removeAddedUntil(200);
+
+        Assert.assertEquals(1, removed.size());
+        Assert.assertSame(tx2, removed.get(0));
+
+        Assert.assertEquals(1, pool.size());
+        Assert.assertSame(tx3, pool.getBestTransactions(Integer.MAX_VALUE).get(0));
+    }
+
+    private static Transaction createTransaction(int from, long nonce, long gasPrice) {
+        Account sender = new AccountBuilder().name("account" + from).build();
+        Account receiver = new AccountBuilder().name("receiver").build();
+
+        return new TransactionBuilder()
+                .sender(sender)
+                .receiver(receiver)
+                .nonce(nonce)
+                .gasPrice(BigInteger.valueOf(gasPrice))
+                .value(BigInteger.TEN)
+                .build();
+    }
+}
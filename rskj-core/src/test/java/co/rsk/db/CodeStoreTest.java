@@ -0,0 +1,90 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import org.ethereum.crypto.SHA3Helper;
+import org.ethereum.datasource.HashMapDB;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodeStoreTest {
+    @Test
+    public void getUnknownCode() {
+        CodeStore store = new CodeStore(new HashMapDB(), 10);
+
+        Assert.assertNull(store.get(SHA3Helper.sha3(new byte[] { 0x01 })));
+    }
+
+    @Test
+    public void putAndGetCodeBeforeFlush() {
+        HashMapDB dataSource = new HashMapDB();
+        CodeStore store = new CodeStore(dataSource, 10);
+        byte[] code = new byte[] { 0x01, 0x02, 0x03 };
+        byte[] hash = SHA3Helper.sha3(code);
+
+        store.put(hash, code);
+
+        Assert.assertArrayEquals(code, store.get(hash));
+        Assert.assertTrue(dataSource.keys().isEmpty());
+    }
+
+    @Test
+    public void flushWritesTheCodeOnce() {
+        HashMapDB dataSource = new HashMapDB();
+        CodeStore store = new CodeStore(dataSource, 10);
+        byte[] code = new byte[] { 0x01, 0x02, 0x03 };
+        byte[] hash = SHA3Helper.sha3(code);
+
+        store.put(hash, code);
+        store.put(hash, code);
+        store.flush();
+
+        Assert.assertEquals(1, dataSource.keys().size());
+        Assert.assertArrayEquals(code, dataSource.get(hash));
+
+        dataSource.delete(hash);
+        store.put(hash, code);
+        store.flush();
+
+        // the cached code is known to be stored, it is not written again
+        Assert.assertNull(dataSource.get(hash));
+    }
+
+    @Test
+    public void getEvictedCodeFromDataSource() {
+        HashMapDB dataSource = new HashMapDB();
+        CodeStore store = new CodeStore(dataSource, 2);
+
+        for (int k = 0; k < 10; k++) {
+            byte[] code = new byte[] { (byte) k };
+            store.put(SHA3Helper.sha3(code), code);
+        }
+
+        store.flush();
+
+        CodeStore store2 = new CodeStore(dataSource, 2);
+
+        for (int k = 0; k < 10; k++) {
+            byte[] code = new byte[] { (byte) k };
+            Assert.assertArrayEquals(code, store.get(SHA3Helper.sha3(code)));
+            Assert.assertArrayEquals(code, store2.get(SHA3Helper.sha3(code)));
+        }
+    }
+}
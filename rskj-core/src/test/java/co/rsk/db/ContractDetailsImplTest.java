@@ -149,6 +149,32 @@ public class ContractDetailsImplTest {
         Assert.assertEquals(0, details.getStorageSize());
     }
 
+    @Test
+    public void putAllDataWords() {
+        ContractDetailsImpl details = new ContractDetailsImpl();
+        ContractDetailsImpl expected = new ContractDetailsImpl();
+
+        details.put(DataWord.ONE, new DataWord(42));
+        expected.put(DataWord.ONE, new DataWord(42));
+
+        Map<DataWord, DataWord> values = new LinkedHashMap<>();
+        values.put(DataWord.ONE, DataWord.ZERO);
+        values.put(new DataWord(2), new DataWord(43));
+        values.put(new DataWord(3), new DataWord(44));
+
+        details.putAll(values);
+
+        for (Map.Entry<DataWord, DataWord> entry : values.entrySet())
+            expected.put(entry.getKey(), entry.getValue());
+
+        Assert.assertNull(details.get(DataWord.ONE));
+        Assert.assertEquals(new DataWord(43), details.get(new DataWord(2)));
+        Assert.assertEquals(new DataWord(44), details.get(new DataWord(3)));
+        Assert.assertEquals(2, details.getStorageSize());
+        Assert.assertTrue(details.isDirty());
+        Assert.assertArrayEquals(expected.getStorageHash(), details.getStorageHash());
+    }
+
     @Test
     public void getNullBytesFromUnusedAddress() {
         ContractDetailsImpl details = new ContractDetailsImpl();
@@ -0,0 +1,254 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import org.ethereum.db.ByteArrayWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.ethereum.util.ByteUtil.wrap;
+
+public class FlatStateTest {
+    private static final byte[] ROOT0 = randomBytes(32);
+
+    @Test
+    public void unknownValues() {
+        FlatState flatState = newFlatState(4, 100);
+
+        Assert.assertNull(flatState.getAccount(ROOT0, randomAddress()));
+        Assert.assertNull(flatState.getStorage(ROOT0, randomAddress(), randomKey()));
+        Assert.assertNull(flatState.getAccount(randomBytes(32), randomAddress()));
+    }
+
+    @Test
+    public void keepValuesReadAtTheHead() {
+        FlatState flatState = newFlatState(4, 100);
+        ByteArrayWrapper address = randomAddress();
+        ByteArrayWrapper key = randomKey();
+
+        flatState.putAccount(ROOT0, address, new byte[] { 0x01 });
+        flatState.putStorage(ROOT0, address, key, null);
+
+        Assert.assertArrayEquals(new byte[] { 0x01 }, flatState.getAccount(ROOT0, address));
+        Assert.assertArrayEquals(new byte[0], flatState.getStorage(ROOT0, address, key));
+    }
+
+    @Test
+    public void readValuesThroughLayers() {
+        FlatState flatState = newFlatState(4, 100);
+        ByteArrayWrapper address = randomAddress();
+        ByteArrayWrapper other = randomAddress();
+        ByteArrayWrapper key = randomKey();
+
+        flatState.putAccount(ROOT0, other, new byte[] { 0x02 });
+
+        StateDiff diff = new StateDiff();
+        diff.putAccount(address, new byte[] { 0x01 });
+        diff.putStorage(address, key, new byte[] { 0x03 });
+        byte[] root1 = randomBytes(32);
+        flatState.addLayer(root1, ROOT0, diff);
+
+        byte[] root2 = randomBytes(32);
+        flatState.addLayer(root2, root1, new StateDiff());
+
+        Assert.assertArrayEquals(new byte[] { 0x01 }, flatState.getAccount(root2, address));
+        Assert.assertArrayEquals(new byte[] { 0x02 }, flatState.getAccount(root2, other));
+        Assert.assertArrayEquals(new byte[] { 0x03 }, flatState.getStorage(root2, address, key));
+        Assert.assertNull(flatState.getAccount(ROOT0, address));
+        Assert.assertEquals(2, flatState.getLayerCount());
+    }
+
+    @Test
+    public void valuesReadBelowAChangedLayerAreNotKept() {
+        FlatState flatState = newFlatState(4, 100);
+        ByteArrayWrapper address = randomAddress();
+
+        StateDiff diff = new StateDiff();
+        diff.putAccount(address, new byte[] { 0x01 });
+        byte[] root1 = randomBytes(32);
+        flatState.addLayer(root1, ROOT0, diff);
+
+        // the value at the state of the layer, not at the bottom state
+        flatState.putAccount(root1, address, new byte[] { 0x02 });
+
+        Assert.assertArrayEquals(new byte[] { 0x01 }, flatState.getAccount(root1, address));
+        Assert.assertNull(flatState.getAccount(ROOT0, address));
+    }
+
+    @Test
+    public void clearedStorageIsNotKnown() {
+        FlatState flatState = newFlatState(4, 100);
+        ByteArrayWrapper address = randomAddress();
+        ByteArrayWrapper key = randomKey();
+        ByteArrayWrapper key2 = randomKey();
+
+        flatState.putStorage(ROOT0, address, key, new byte[] { 0x01 });
+
+        StateDiff diff = new StateDiff();
+        diff.clearStorage(address);
+        diff.putStorage(address, key2, new byte[] { 0x02 });
+        byte[] root1 = randomBytes(32);
+        flatState.addLayer(root1, ROOT0, diff);
+
+        Assert.assertNull(flatState.getStorage(root1, address, key));
+        Assert.assertArrayEquals(new byte[] { 0x02 }, flatState.getStorage(root1, address, key2));
+        Assert.assertArrayEquals(new byte[] { 0x01 }, flatState.getStorage(ROOT0, address, key));
+
+        flatState.setHead(root1);
+        flatState.putStorage(root1, address, key, new byte[] { 0x03 });
+
+        Assert.assertNull(flatState.getStorage(root1, address, key));
+    }
+
+    @Test
+    public void mergeLowestLayers() {
+        FlatState flatState = newFlatState(2, 100);
+        ByteArrayWrapper address = randomAddress();
+        byte[] root = ROOT0;
+
+        for (int k = 1; k <= 4; k++) {
+            StateDiff diff = new StateDiff();
+            diff.putAccount(address, new byte[] { (byte) k });
+            byte[] newRoot = randomBytes(32);
+            flatState.addLayer(newRoot, root, diff);
+            root = newRoot;
+        }
+
+        Assert.assertEquals(4, flatState.getLayerCount());
+
+        flatState.setHead(root);
+
+        Assert.assertEquals(2, flatState.getLayerCount());
+        Assert.assertArrayEquals(new byte[] { 0x04 }, flatState.getAccount(root, address));
+    }
+
+    @Test
+    public void moveHeadToAnotherBranch() {
+        FlatState flatState = newFlatState(4, 100);
+        ByteArrayWrapper address = randomAddress();
+
+        StateDiff diff1 = new StateDiff();
+        diff1.putAccount(address, new byte[] { 0x01 });
+        byte[] root1 = randomBytes(32);
+        flatState.addLayer(root1, ROOT0, diff1);
+
+        StateDiff diff2 = new StateDiff();
+        diff2.putAccount(address, new byte[] { 0x02 });
+        byte[] root2 = randomBytes(32);
+        flatState.addLayer(root2, ROOT0, diff2);
+
+        flatState.setHead(root1);
+        Assert.assertArrayEquals(new byte[] { 0x01 }, flatState.getAccount(root1, address));
+
+        flatState.setHead(root2);
+        Assert.assertArrayEquals(new byte[] { 0x02 }, flatState.getAccount(root2, address));
+        Assert.assertEquals(2, flatState.getLayerCount());
+    }
+
+    @Test
+    public void startAgainAtAnUnknownHead() {
+        FlatState flatState = newFlatState(4, 100);
+        ByteArrayWrapper address = randomAddress();
+
+        flatState.putAccount(ROOT0, address, new byte[] { 0x01 });
+        flatState.addLayer(randomBytes(32), ROOT0, new StateDiff());
+
+        byte[] root = randomBytes(32);
+        flatState.setHead(root);
+
+        Assert.assertEquals(0, flatState.getLayerCount());
+        Assert.assertNull(flatState.getAccount(ROOT0, address));
+        Assert.assertNull(flatState.getAccount(root, address));
+    }
+
+    @Test
+    public void removeLayer() {
+        FlatState flatState = newFlatState(4, 100);
+
+        byte[] root1 = randomBytes(32);
+        byte[] root2 = randomBytes(32);
+        flatState.addLayer(root1, ROOT0, new StateDiff());
+        flatState.addLayer(root2, root1, new StateDiff());
+
+        // it has a layer over it
+        flatState.removeLayer(root1);
+        Assert.assertEquals(2, flatState.getLayerCount());
+
+        flatState.removeLayer(root2);
+        flatState.removeLayer(root1);
+        Assert.assertEquals(0, flatState.getLayerCount());
+    }
+
+    @Test
+    public void dropOldBranches() {
+        FlatState flatState = newFlatState(2, 100);
+
+        for (int k = 0; k < 10; k++)
+            flatState.addLayer(randomBytes(32), ROOT0, new StateDiff());
+
+        Assert.assertTrue(flatState.getLayerCount() <= 4);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedValues() {
+        FlatState flatState = newFlatState(4, 2);
+        ByteArrayWrapper address1 = randomAddress();
+        ByteArrayWrapper address2 = randomAddress();
+        ByteArrayWrapper address3 = randomAddress();
+
+        flatState.putAccount(ROOT0, address1, new byte[] { 0x01 });
+        flatState.putAccount(ROOT0, address2, new byte[] { 0x02 });
+        flatState.getAccount(ROOT0, address1);
+        flatState.putAccount(ROOT0, address3, new byte[] { 0x03 });
+
+        Assert.assertNotNull(flatState.getAccount(ROOT0, address1));
+        Assert.assertNull(flatState.getAccount(ROOT0, address2));
+        Assert.assertNotNull(flatState.getAccount(ROOT0, address3));
+
+        flatState.putStorage(ROOT0, address1, randomKey(), new byte[] { 0x01 });
+        flatState.putStorage(ROOT0, address1, randomKey(), new byte[] { 0x01 });
+        ByteArrayWrapper key = randomKey();
+        flatState.putStorage(ROOT0, address2, key, new byte[] { 0x02 });
+
+        Assert.assertArrayEquals(new byte[] { 0x02 }, flatState.getStorage(ROOT0, address2, key));
+    }
+
+    private static FlatState newFlatState(int maxLayers, int cacheSize) {
+        FlatState flatState = new FlatState(maxLayers, cacheSize);
+        flatState.setHead(ROOT0);
+        return flatState;
+    }
+
+    private static ByteArrayWrapper randomAddress() {
+        return wrap(randomBytes(20));
+    }
+
+    private static ByteArrayWrapper randomKey() {
+        return wrap(randomBytes(32));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.trie.TrieReadBudgetExceededException;
+import co.rsk.trie.TrieStore;
+import co.rsk.trie.TrieStoreImpl;
+import org.ethereum.core.Repository;
+import org.ethereum.datasource.HashMapDB;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class HistoricalStatesTest {
+    @Test
+    public void readPastStates() {
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()));
+        byte[] address = randomAddress();
+
+        repository.addBalance(address, BigInteger.TEN);
+        byte[] root1 = repository.getRoot();
+        repository.addBalance(address, BigInteger.ONE);
+        byte[] root2 = repository.getRoot();
+
+        HistoricalStates states = new HistoricalStates(10, 0, 0);
+
+        Assert.assertEquals(BigInteger.TEN, states.read(repository, root1, snapshot -> snapshot.getBalance(address)));
+        Assert.assertEquals(BigInteger.valueOf(11), states.read(repository, root2, snapshot -> snapshot.getBalance(address)));
+        Assert.assertEquals(BigInteger.valueOf(11), repository.getBalance(address));
+    }
+
+    @Test
+    public void keepSnapshots() {
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()));
+        repository.addBalance(randomAddress(), BigInteger.TEN);
+        byte[] root = repository.getRoot();
+
+        HistoricalStates states = new HistoricalStates(10, 0, 0);
+
+        Repository snapshot = states.read(repository, root, s -> s);
+
+        Assert.assertSame(snapshot, states.read(repository, root, s -> s));
+        Assert.assertEquals(1, states.size());
+    }
+
+    @Test
+    public void dropLeastRecentlyUsedSnapshot() {
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()));
+        byte[] address = randomAddress();
+        List<byte[]> roots = new ArrayList<>();
+
+        for (int k = 0; k < 3; k++) {
+            repository.addBalance(address, BigInteger.ONE);
+            roots.add(repository.getRoot());
+        }
+
+        HistoricalStates states = new HistoricalStates(2, 0, 0);
+
+        Repository snapshot = states.read(repository, roots.get(0), s -> s);
+        states.read(repository, roots.get(1), s -> s);
+        states.read(repository, roots.get(2), s -> s);
+
+        Assert.assertEquals(2, states.size());
+        Assert.assertNotSame(snapshot, states.read(repository, roots.get(0), s -> s));
+    }
+
+    @Test
+    public void noSnapshotsKeptIfSizeIsZero() {
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()));
+        repository.addBalance(randomAddress(), BigInteger.TEN);
+        byte[] root = repository.getRoot();
+
+        HistoricalStates states = new HistoricalStates(0, 0, 0);
+
+        Repository snapshot = states.read(repository, root, s -> s);
+
+        Assert.assertNotSame(snapshot, states.read(repository, root, s -> s));
+        Assert.assertEquals(0, states.size());
+    }
+
+    @Test
+    public void countTheNodesLoadedBySnapshots() {
+        List<byte[]> addresses = new ArrayList<>();
+        RepositoryImpl repository = createRepositoryWithAccounts(addresses, 100);
+
+        HistoricalStates states = new HistoricalStates(10, 0, 0);
+        states.read(repository, repository.getRoot(), snapshot -> snapshot.getBalance(addresses.get(0)));
+        long nodes = states.getNodes();
+
+        Assert.assertTrue(nodes > 0);
+
+        // already in the snapshot
+        states.read(repository, repository.getRoot(), snapshot -> snapshot.getBalance(addresses.get(0)));
+
+        Assert.assertEquals(nodes, states.getNodes());
+    }
+
+    @Test
+    public void dropLeastRecentlyUsedSnapshotsOverTheNodeLimit() {
+        List<byte[]> addresses = new ArrayList<>();
+        RepositoryImpl repository = createRepositoryWithAccounts(addresses, 100);
+        byte[] root1 = repository.getRoot();
+        repository.addBalance(addresses.get(0), BigInteger.ONE);
+        byte[] root2 = repository.getRoot();
+
+        HistoricalStates unbounded = new HistoricalStates(10, 0, 0);
+        readAllBalances(unbounded, repository, root2, addresses);
+        long allNodes = unbounded.getNodes();
+
+        HistoricalStates states = new HistoricalStates(10, allNodes, 0);
+        Repository snapshot1 = states.read(repository, root1, snapshot -> {
+            snapshot.getBalance(addresses.get(0));
+            return snapshot;
+        });
+        Repository snapshot2 = readAllBalances(states, repository, root2, addresses);
+
+        Assert.assertEquals(1, states.size());
+        Assert.assertEquals(allNodes, states.getNodes());
+        Assert.assertSame(snapshot2, states.read(repository, root2, s -> s));
+        Assert.assertNotSame(snapshot1, states.read(repository, root1, s -> s));
+    }
+
+    @Test
+    public void dropSnapshotOverTheNodeLimitByItself() {
+        List<byte[]> addresses = new ArrayList<>();
+        RepositoryImpl repository = createRepositoryWithAccounts(addresses, 100);
+        byte[] root = repository.getRoot();
+
+        HistoricalStates states = new HistoricalStates(10, 5, 0);
+        Repository snapshot = readAllBalances(states, repository, root, addresses);
+
+        Assert.assertEquals(0, states.size());
+        Assert.assertEquals(0, states.getNodes());
+        Assert.assertNotSame(snapshot, states.read(repository, root, s -> s));
+    }
+
+    @Test(expected = MissingStateException.class)
+    public void failOnMissingState() {
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()));
+        byte[] root = new byte[32];
+        new Random().nextBytes(root);
+
+        new HistoricalStates(10, 0, 0).read(repository, root, snapshot -> snapshot.getBalance(randomAddress()));
+    }
+
+    @Test
+    public void failOnPrunedNodesOfKeptSnapshot() {
+        List<byte[]> addresses = new ArrayList<>();
+        HashMapDB dataSource = new HashMapDB();
+        RepositoryImpl repository = createRepositoryWithAccounts(new TrieStoreImpl(dataSource), addresses, 100);
+        byte[] root = repository.getRoot();
+
+        HistoricalStates states = new HistoricalStates(10, 0, 0);
+        states.read(repository, root, snapshot -> snapshot.getBalance(addresses.get(0)));
+
+        // the state is pruned, but for the root
+        for (byte[] key : dataSource.keys())
+            if (!Arrays.equals(key, root))
+                dataSource.delete(key);
+
+        try {
+            states.read(repository, root, snapshot -> {
+                for (byte[] address : addresses)
+                    snapshot.getBalance(address);
+
+                return null;
+            });
+
+            Assert.fail();
+        }
+        catch (MissingStateException ex) {
+            Assert.assertEquals(0, states.size());
+        }
+    }
+
+    @Test(expected = TrieReadBudgetExceededException.class)
+    public void failOverTheReadLimit() {
+        List<byte[]> addresses = new ArrayList<>();
+        RepositoryImpl repository = createRepositoryWithAccounts(addresses, 100);
+
+        new HistoricalStates(10, 0, 5).read(repository, repository.getRoot(), snapshot -> {
+            for (byte[] address : addresses)
+                snapshot.getBalance(address);
+
+            return null;
+        });
+    }
+
+    @Test(expected = TrieReadBudgetExceededException.class)
+    public void failOverTheReadLimitIfTheQueryCatchesTheException() {
+        List<byte[]> addresses = new ArrayList<>();
+        RepositoryImpl repository = createRepositoryWithAccounts(addresses, 100);
+
+        new HistoricalStates(10, 0, 5).read(repository, repository.getRoot(), snapshot -> {
+            try {
+                for (byte[] address : addresses)
+                    snapshot.getBalance(address);
+            }
+            catch (TrieReadBudgetExceededException ex) {
+                // as the call executions do
+            }
+
+            return null;
+        });
+    }
+
+    private static Repository readAllBalances(HistoricalStates states, Repository repository, byte[] root, List<byte[]> addresses) {
+        return states.read(repository, root, snapshot -> {
+            for (byte[] address : addresses)
+                snapshot.getBalance(address);
+
+            return snapshot;
+        });
+    }
+
+    private static RepositoryImpl createRepositoryWithAccounts(List<byte[]> addresses, int naccounts) {
+        return createRepositoryWithAccounts(new TrieStoreImpl(new HashMapDB()), addresses, naccounts);
+    }
+
+    private static RepositoryImpl createRepositoryWithAccounts(TrieStore store, List<byte[]> addresses, int naccounts) {
+        RepositoryImpl repository = new RepositoryImpl(store);
+
+        for (int k = 0; k < naccounts; k++) {
+            byte[] address = randomAddress();
+            addresses.add(address);
+            repository.addBalance(address, BigInteger.TEN);
+        }
+
+        return repository;
+    }
+
+    private static byte[] randomAddress() {
+        byte[] bytes = new byte[20];
+
+        new Random().nextBytes(bytes);
+
+        return bytes;
+    }
+}
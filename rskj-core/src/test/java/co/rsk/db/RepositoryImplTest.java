@@ -18,22 +18,36 @@
 
 package co.rsk.db;
 
+import co.rsk.test.World;
+import co.rsk.test.builders.BlockChainBuilder;
+import co.rsk.test.dsl.DslParser;
+import co.rsk.test.dsl.DslProcessorException;
+import co.rsk.test.dsl.WorldDslProcessor;
 import co.rsk.trie.TrieImplHashTest;
 import co.rsk.trie.TrieStore;
 import co.rsk.trie.TrieStoreImpl;
 import org.ethereum.core.AccountState;
+import org.ethereum.core.Block;
 import org.ethereum.core.Repository;
+import org.ethereum.crypto.SHA3Helper;
 import org.ethereum.datasource.HashMapDB;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.vm.DataWord;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.FileNotFoundException;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.ethereum.util.ByteUtil.wrap;
 
 /**
  * Created by ajlopez on 29/03/2017.
@@ -602,6 +616,274 @@ public class RepositoryImplTest {
         Assert.assertTrue(repository.isExist(accAddress));
     }
 
+    @Test
+    public void sameCodeIsStoredOnce() {
+        byte[] accAddress1 = randomAccountAddress();
+        byte[] accAddress2 = randomAccountAddress();
+        byte[] accCode = new byte[] { 0x01, 0x02, 0x03 };
+
+        HashMapDB detailsDS = new HashMapDB();
+        HashMapDB codeDS = new HashMapDB();
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()), detailsDS, codeDS);
+
+        repository.saveCode(accAddress1, accCode);
+        repository.saveCode(accAddress2, accCode);
+        repository.flush();
+
+        Assert.assertEquals(1, codeDS.keys().size());
+        Assert.assertArrayEquals(accCode, codeDS.get(SHA3Helper.sha3(accCode)));
+        Assert.assertEquals(0, new ContractDetailsImpl(detailsDS.get(accAddress1)).getCode().length);
+        Assert.assertEquals(0, new ContractDetailsImpl(detailsDS.get(accAddress2)).getCode().length);
+
+        Assert.assertArrayEquals(accCode, repository.getCode(accAddress1));
+        Assert.assertArrayEquals(accCode, repository.getCode(accAddress2));
+        Assert.assertArrayEquals(accCode, repository.getContractDetails(accAddress1).getCode());
+    }
+
+    @Test
+    public void getCommittedCodeFromNewRepository() {
+        byte[] accAddress = randomAccountAddress();
+        byte[] accCode = new byte[] { 0x01, 0x02, 0x03 };
+
+        HashMapDB stateDS = new HashMapDB();
+        HashMapDB detailsDS = new HashMapDB();
+        HashMapDB codeDS = new HashMapDB();
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(stateDS), detailsDS, codeDS);
+
+        Repository track = repository.startTracking();
+        track.saveCode(accAddress, accCode);
+        track.addStorageRow(accAddress, DataWord.ONE, DataWord.ONE);
+        track.commit();
+
+        byte[] root = repository.getRoot();
+        repository.flush();
+
+        RepositoryImpl repository2 = new RepositoryImpl(new TrieStoreImpl(stateDS), detailsDS, codeDS);
+        repository2.syncToRoot(root);
+
+        Assert.assertArrayEquals(accCode, repository2.getCode(accAddress));
+        Assert.assertEquals(DataWord.ONE, repository2.getStorageValue(accAddress, DataWord.ONE));
+
+        Repository track2 = repository2.startTracking();
+
+        Assert.assertArrayEquals(accCode, track2.getCode(accAddress));
+    }
+
+    @Test
+    public void updateContractDetailsKeepsTheirCode() {
+        byte[] accAddress = randomAccountAddress();
+        byte[] accCode = new byte[] { 0x01, 0x02, 0x03 };
+
+        ContractDetailsImpl details = new ContractDetailsImpl();
+        details.setCode(accCode);
+        details.put(DataWord.ONE, DataWord.ONE);
+
+        HashMapDB detailsDS = new HashMapDB();
+        HashMapDB codeDS = new HashMapDB();
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()), detailsDS, codeDS);
+
+        repository.updateContractDetails(accAddress, details);
+        repository.flush();
+
+        Assert.assertArrayEquals(accCode, details.getCode());
+        Assert.assertArrayEquals(accCode, codeDS.get(SHA3Helper.sha3(accCode)));
+
+        ContractDetailsImpl saved = new ContractDetailsImpl(detailsDS.get(accAddress));
+
+        Assert.assertEquals(0, saved.getCode().length);
+        Assert.assertEquals(DataWord.ONE, saved.get(DataWord.ONE));
+    }
+
+    @Test
+    public void getCodeFromDetailsSavedWithCode() {
+        byte[] accAddress = randomAccountAddress();
+        byte[] accCode = new byte[] { 0x01, 0x02, 0x03 };
+
+        ContractDetailsImpl details = new ContractDetailsImpl();
+        details.setAddress(accAddress);
+        details.setCode(accCode);
+
+        HashMapDB detailsDS = new HashMapDB();
+        detailsDS.put(accAddress, details.getEncoded());
+
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()), detailsDS, new HashMapDB());
+        AccountState accountState = new AccountState(BigInteger.ZERO, BigInteger.ZERO);
+        accountState.setCodeHash(SHA3Helper.sha3(accCode));
+        repository.updateAccountState(accAddress, accountState);
+
+        Assert.assertArrayEquals(accCode, repository.getCode(accAddress));
+        Assert.assertArrayEquals(accCode, repository.getContractDetails(accAddress).getCode());
+    }
+
+    @Test
+    public void getSnapshotWhileRepositoryIsLocked() throws Exception {
+        byte[] accAddress = randomAccountAddress();
+
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()));
+        repository.addBalance(accAddress, BigInteger.TEN);
+        byte[] root = repository.getRoot();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // as the block import does, while it updates or flushes the repository
+            synchronized (repository) {
+                Future<BigInteger> balance = executor.submit(() -> repository.getSnapshotTo(root).getBalance(accAddress));
+
+                Assert.assertEquals(BigInteger.TEN, balance.get(10, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void readCommittedValuesFromFlatState() {
+        byte[] accAddress = randomAccountAddress();
+        TrieStore store = new TrieStoreImpl(new HashMapDB());
+        HashMapDB detailsDS = new HashMapDB();
+        HashMapDB codeDS = new HashMapDB();
+        FlatState flatState = new FlatState(16, 1000);
+
+        RepositoryImpl repository = new RepositoryImpl(store, detailsDS, new CodeStore(codeDS, 10), flatState);
+        byte[] root0 = repository.getRoot();
+        repository.syncToRoot(root0);
+
+        Repository snapshot = repository.getSnapshotTo(root0);
+        Repository track = snapshot.startTracking();
+        track.addBalance(accAddress, BigInteger.TEN);
+        track.addStorageRow(accAddress, DataWord.ONE, new DataWord(42));
+        track.commit();
+        byte[] root1 = snapshot.getRoot();
+
+        Assert.assertEquals(1, flatState.getLayerCount());
+
+        repository.syncToRoot(root1);
+
+        Assert.assertEquals(BigInteger.TEN, repository.getBalance(accAddress));
+        Assert.assertEquals(new DataWord(42), repository.getStorageValue(accAddress, DataWord.ONE));
+        Assert.assertNull(repository.getStorageValue(accAddress, new DataWord(2)));
+
+        repository.flush();
+
+        RepositoryImpl trieRepository = new RepositoryImpl(store, detailsDS, codeDS);
+        trieRepository.syncToRoot(root1);
+
+        Assert.assertEquals(BigInteger.TEN, trieRepository.getBalance(accAddress));
+        Assert.assertEquals(new DataWord(42), trieRepository.getStorageValue(accAddress, DataWord.ONE));
+    }
+
+    @Test
+    public void followReorganizationsWithFlatState() {
+        byte[] accAddress = randomAccountAddress();
+        FlatState flatState = new FlatState(16, 1000);
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()), new HashMapDB(), new CodeStore(new HashMapDB(), 10), flatState);
+
+        repository.addBalance(accAddress, BigInteger.TEN);
+        byte[] root0 = repository.getRoot();
+        repository.syncToRoot(root0);
+
+        Assert.assertEquals(BigInteger.TEN, repository.getBalance(accAddress));
+
+        byte[] root1 = addBalance(repository, root0, accAddress, 1);
+        byte[] root2 = addBalance(repository, root0, accAddress, 2);
+
+        repository.syncToRoot(root1);
+        Assert.assertEquals(BigInteger.valueOf(11), repository.getBalance(accAddress));
+
+        repository.syncToRoot(root2);
+        Assert.assertEquals(BigInteger.valueOf(12), repository.getBalance(accAddress));
+
+        repository.syncToRoot(root0);
+        Assert.assertEquals(BigInteger.TEN, repository.getBalance(accAddress));
+    }
+
+    @Test
+    public void updateStorageOutsideTrackWithFlatState() {
+        byte[] accAddress = randomAccountAddress();
+        FlatState flatState = new FlatState(16, 1000);
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()), new HashMapDB(), new CodeStore(new HashMapDB(), 10), flatState);
+
+        repository.addStorageRow(accAddress, DataWord.ONE, new DataWord(1));
+        Assert.assertEquals(new DataWord(1), repository.getStorageValue(accAddress, DataWord.ONE));
+
+        repository.addStorageRow(accAddress, DataWord.ONE, new DataWord(2));
+        Assert.assertEquals(new DataWord(2), repository.getStorageValue(accAddress, DataWord.ONE));
+
+        repository.syncToRoot(repository.getRoot());
+        Assert.assertEquals(new DataWord(2), repository.getStorageValue(accAddress, DataWord.ONE));
+    }
+
+    @Test
+    public void readTrackStorageFromFlatState() {
+        byte[] accAddress = randomAccountAddress();
+        TrieStore store = new TrieStoreImpl(new HashMapDB());
+        HashMapDB detailsDS = new HashMapDB();
+        CodeStore codeStore = new CodeStore(new HashMapDB(), 10);
+
+        RepositoryImpl trieRepository = new RepositoryImpl(store, detailsDS, codeStore);
+        Repository track = trieRepository.startTracking();
+        track.saveCode(accAddress, new byte[] { 0x01 });
+        track.addStorageRow(accAddress, DataWord.ONE, new DataWord(42));
+        track.commit();
+        byte[] root = trieRepository.getRoot();
+        trieRepository.flush();
+
+        FlatState flatState = new FlatState(16, 1000);
+        RepositoryImpl repository = new RepositoryImpl(store, detailsDS, codeStore, flatState);
+        repository.syncToRoot(root);
+
+        // a value that is only in the flat values
+        flatState.putStorage(root, wrap(accAddress), wrap(new DataWord(2).getData()), new byte[] { 0x07 });
+
+        Repository track2 = repository.startTracking();
+
+        Assert.assertEquals(new DataWord(42), track2.getStorageValue(accAddress, DataWord.ONE));
+        Assert.assertEquals(new DataWord(7), track2.getStorageValue(accAddress, new DataWord(2)));
+        Assert.assertArrayEquals(new byte[] { 0x07 }, track2.startTracking().getStorageBytes(accAddress, new DataWord(2)));
+        Assert.assertNull(track2.getStorageValue(accAddress, new DataWord(3)));
+    }
+
+    @Test
+    public void importBlocksWithFlatState() throws FileNotFoundException, DslProcessorException {
+        // the contracts that read and write their storage, and the remasc contract
+        for (String resource : new String[] { "dsl/contracts02.txt", "dsl/contracts03.txt", "dsl/contracts06.txt" }) {
+            // with few layers, so they are merged
+            FlatState flatState = new FlatState(2, 1000);
+            RepositoryImpl flatRepository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()), new HashMapDB(), new CodeStore(new HashMapDB(), 10), flatState);
+
+            World world = new World();
+            World flatWorld = new World(new BlockChainBuilder().setRepository(flatRepository).build());
+
+            new WorldDslProcessor(world).processCommands(DslParser.fromResource(resource));
+            new WorldDslProcessor(flatWorld).processCommands(DslParser.fromResource(resource));
+
+            Block block = world.getBlockChain().getBestBlock();
+            Block flatBlock = flatWorld.getBlockChain().getBestBlock();
+
+            Assert.assertEquals(block.getNumber(), flatBlock.getNumber());
+
+            // the same states, block by block
+            while (block.getNumber() > 0) {
+                Assert.assertArrayEquals(block.getStateRoot(), flatBlock.getStateRoot());
+                block = world.getBlockChain().getBlockByHash(block.getParentHash());
+                flatBlock = flatWorld.getBlockChain().getBlockByHash(flatBlock.getParentHash());
+            }
+
+            Assert.assertArrayEquals(world.getRepository().getRoot(), flatRepository.getRoot());
+            Assert.assertTrue(flatState.getLayerCount() > 0);
+        }
+    }
+
+    private static byte[] addBalance(RepositoryImpl repository, byte[] root, byte[] address, long value) {
+        Repository snapshot = repository.getSnapshotTo(root);
+        Repository track = snapshot.startTracking();
+        track.addBalance(address, BigInteger.valueOf(value));
+        track.commit();
+        return snapshot.getRoot();
+    }
+
     private static byte[] randomAccountAddress() {
         byte[] bytes = new byte[20];
 
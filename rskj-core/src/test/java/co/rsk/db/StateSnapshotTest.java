@@ -0,0 +1,356 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.db;
+
+import co.rsk.blockchain.utils.BlockGenerator;
+import co.rsk.config.RemascConfigFactory;
+import co.rsk.config.RskSystemProperties;
+import co.rsk.core.bc.BlockChainImpl;
+import co.rsk.core.bc.BlockExecutor;
+import co.rsk.remasc.RemascContract;
+import co.rsk.remasc.RemascTransaction;
+import co.rsk.test.builders.BlockChainBuilder;
+import co.rsk.trie.TrieStoreImpl;
+import org.ethereum.core.Block;
+import org.ethereum.core.Genesis;
+import org.ethereum.core.ImportResult;
+import org.ethereum.core.Repository;
+import org.ethereum.datasource.HashMapDB;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.IndexedBlockStore;
+import org.ethereum.vm.DataWord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.ethereum.crypto.SHA3Helper.sha3;
+
+public class StateSnapshotTest {
+    private static final byte[] CODE = new byte[] { 0x01, 0x02, 0x03 };
+
+    @Test
+    public void exportAndImportState() throws Exception {
+        RepositoryImpl repository = newRepository();
+        Block block = createState(repository, 100);
+        BlockStore blockStore = newBlockStore(block);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StateSnapshotExporter.Counts exported = new StateSnapshotExporter(repository, output).export(blockStore, block, 1);
+
+        Assert.assertEquals(1, exported.getCodes());
+        Assert.assertEquals(100, exported.getDetails());
+        Assert.assertTrue(exported.getStateNodes() > 100);
+
+        HashMapDB stateDS = new HashMapDB();
+        HashMapDB detailsDS = new HashMapDB();
+        HashMapDB codeDS = new HashMapDB();
+        StateSnapshotImporter importer = new StateSnapshotImporter(stateDS, detailsDS, codeDS, 2);
+
+        StateSnapshotExporter.Counts imported = importer.importFrom(new ByteArrayInputStream(output.toByteArray()));
+
+        Assert.assertEquals(exported, imported);
+        Assert.assertEquals(1, importer.getBlocks().size());
+        Assert.assertArrayEquals(block.getHash(), importer.getBlock().getHash());
+        Assert.assertEquals(blockStore.getTotalDifficultyForHash(block.getHash()), importer.getTotalDifficulty());
+
+        RepositoryImpl imported2 = new RepositoryImpl(new TrieStoreImpl(stateDS), detailsDS, codeDS);
+        imported2.syncToRoot(block.getStateRoot());
+
+        Assert.assertArrayEquals(block.getStateRoot(), imported2.getRoot());
+
+        for (int k = 0; k < 100; k++) {
+            byte[] address = makeAddress(k);
+
+            Assert.assertEquals(BigInteger.valueOf(k + 1), imported2.getBalance(address));
+
+            if (k % 10 == 0) {
+                Assert.assertArrayEquals(CODE, imported2.getCode(address));
+                Assert.assertEquals(new DataWord(k + 1), imported2.getStorageValue(address, DataWord.ONE));
+            }
+        }
+    }
+
+    @Test
+    public void exportOnlyTheStateOfTheBlock() throws Exception {
+        RepositoryImpl repository = newRepository();
+        Block block = createState(repository, 10);
+
+        Repository track = repository.startTracking();
+        track.addBalance(makeAddress(1000), BigInteger.ONE);
+        track.commit();
+        repository.getRoot();
+        repository.flush();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StateSnapshotExporter.Counts exported = new StateSnapshotExporter(repository, output).export(newBlockStore(block), block, 1);
+
+        Assert.assertEquals(10, exported.getDetails());
+    }
+
+    @Test
+    public void exportTheAncestorsOfTheBlock() throws Exception {
+        RepositoryImpl repository = newRepository();
+        Block block = createState(repository, 10);
+        BlockStore blockStore = newBlockStore(block);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StateSnapshotExporter(repository, output).export(blockStore, block, 10);
+
+        StateSnapshotImporter importer = new StateSnapshotImporter(new HashMapDB(), new HashMapDB(), new HashMapDB(), 2);
+        importer.importFrom(new ByteArrayInputStream(output.toByteArray()));
+
+        // the chain is shorter than the blocks asked
+        Assert.assertEquals(2, importer.getBlocks().size());
+        Assert.assertEquals(0, importer.getBlocks().get(0).getNumber());
+        Assert.assertArrayEquals(block.getHash(), importer.getBlock().getHash());
+
+        IndexedBlockStore importedBlockStore = newBlockStore();
+        importer.saveBlocks(importedBlockStore);
+
+        Assert.assertArrayEquals(block.getHash(), importedBlockStore.getBestBlock().getHash());
+        Assert.assertEquals(blockStore.getTotalDifficultyForHash(block.getHash()), importedBlockStore.getTotalDifficultyForHash(block.getHash()));
+        Assert.assertNotNull(importedBlockStore.getBlockByHash(block.getParentHash()));
+    }
+
+    @Test
+    public void connectBlockAfterImport() throws Exception {
+        Genesis genesis = (Genesis) BlockGenerator.getNewGenesisBlock(10000000L, new HashMap<>());
+        BlockChainImpl blockchain = new BlockChainBuilder().setTesting(true).setRsk(true).setGenesis(genesis).build();
+        BlockExecutor blockExecutor = new BlockExecutor(blockchain.getRepository(), blockchain, blockchain.getBlockStore(), null);
+        int maturity = (int) new RemascConfigFactory(RemascContract.REMASC_CONFIG).createRemascConfig(RskSystemProperties.CONFIG.netName()).getMaturity();
+
+        Block parent = genesis;
+
+        for (int k = 0; k < maturity + 5; k++) {
+            Block block = createRemascBlock(parent);
+            blockExecutor.executeAndFillAll(block, parent);
+            Assert.assertEquals(ImportResult.IMPORTED_BEST, blockchain.tryToConnect(block));
+            parent = block;
+        }
+
+        blockchain.getRepository().flush();
+
+        // the fewest blocks the remasc of the next block needs
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StateSnapshotExporter((RepositoryImpl) blockchain.getRepository(), output).export(blockchain.getBlockStore(), parent, maturity);
+
+        HashMapDB stateDS = new HashMapDB();
+        HashMapDB detailsDS = new HashMapDB();
+        HashMapDB codeDS = new HashMapDB();
+        StateSnapshotImporter importer = new StateSnapshotImporter(stateDS, detailsDS, codeDS, 2);
+        importer.importFrom(new ByteArrayInputStream(output.toByteArray()));
+
+        RepositoryImpl repository = new RepositoryImpl(new TrieStoreImpl(stateDS), detailsDS, codeDS);
+        repository.syncToRoot(parent.getStateRoot());
+        IndexedBlockStore blockStore = newBlockStore();
+        importer.saveBlocks(blockStore);
+
+        BlockChainImpl imported = new BlockChainBuilder().setTesting(true).setRsk(true).setRepository(repository).setBlockStore(blockStore).build();
+        imported.setBestBlock(importer.getBlock());
+        imported.setTotalDifficulty(importer.getTotalDifficulty());
+
+        Block next = createRemascBlock(parent);
+        blockExecutor.executeAndFillAll(next, parent);
+
+        Assert.assertEquals(maturity, importer.getBlocks().size());
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, imported.tryToConnect(next));
+        Assert.assertArrayEquals(next.getStateRoot(), imported.getRepository().getRoot());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectCorruptedSnapshot() throws Exception {
+        RepositoryImpl repository = newRepository();
+        Block block = createState(repository, 10);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StateSnapshotExporter(repository, output).export(newBlockStore(block), block, 1);
+
+        byte[] snapshot = output.toByteArray();
+        // a byte of the last entries, before the end chunk
+        snapshot[snapshot.length - 100] ^= 1;
+
+        new StateSnapshotImporter(new HashMapDB(), new HashMapDB(), new HashMapDB(), 2).importFrom(new ByteArrayInputStream(snapshot));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectTruncatedSnapshot() throws Exception {
+        RepositoryImpl repository = newRepository();
+        Block block = createState(repository, 10);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StateSnapshotExporter(repository, output).export(newBlockStore(block), block, 1);
+
+        byte[] snapshot = output.toByteArray();
+
+        new StateSnapshotImporter(new HashMapDB(), new HashMapDB(), new HashMapDB(), 2).importFrom(new ByteArrayInputStream(snapshot, 0, snapshot.length / 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectDetailsOfUnknownAccount() throws Exception {
+        RepositoryImpl repository = newRepository();
+        Block block = createState(repository, 10);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StateSnapshotExporter(repository, output).export(newBlockStore(block), block, 1);
+
+        HashMapDB detailsDS = new HashMapDB();
+        detailsDS.put(makeAddress(1000), new ContractDetailsImpl().getEncoded());
+
+        new StateSnapshotImporter(new HashMapDB(), detailsDS, new HashMapDB(), 2).importFrom(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectSnapshotWithMissingStateNode() throws Exception {
+        RepositoryImpl repository = newRepository();
+        Block block = createState(repository, 100);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StateSnapshotExporter(repository, output).export(newBlockStore(block), block, 1);
+
+        // the totals and the chunk hash still match
+        byte[] snapshot = replaceLastStateNode(output.toByteArray());
+
+        new StateSnapshotImporter(new HashMapDB(), new HashMapDB(), new HashMapDB(), 2).importFrom(new ByteArrayInputStream(snapshot));
+    }
+
+    // rewrites the first state chunk with other bytes instead of its last node
+    private static byte[] replaceLastStateNode(byte[] snapshot) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(snapshot));
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(result);
+
+        output.writeInt(input.readInt());
+        output.writeInt(input.readInt());
+
+        int nblocks = input.readInt();
+        output.writeInt(nblocks);
+
+        for (int k = 0; k < nblocks * 2; k++)
+            writeBytes(output, readBytes(input));
+
+        boolean replaced = false;
+
+        while (input.available() > 0) {
+            byte type = input.readByte();
+            int entries = input.readInt();
+            byte[] payload = readBytes(input);
+            byte[] hash = new byte[32];
+            input.readFully(hash);
+
+            if (type == StateSnapshotExporter.STATE && entries > 1 && !replaced) {
+                DataInputStream nodes = new DataInputStream(new ByteArrayInputStream(payload));
+                ByteArrayOutputStream newPayload = new ByteArrayOutputStream();
+                DataOutputStream newNodes = new DataOutputStream(newPayload);
+
+                for (int k = 0; k < entries - 1; k++)
+                    writeBytes(newNodes, readBytes(nodes));
+
+                writeBytes(newNodes, new byte[] { 0x00 });
+
+                payload = newPayload.toByteArray();
+                hash = sha3(payload);
+                replaced = true;
+            }
+
+            output.writeByte(type);
+            output.writeInt(entries);
+            writeBytes(output, payload);
+            output.write(hash);
+        }
+
+        Assert.assertTrue(replaced);
+
+        return result.toByteArray();
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static RepositoryImpl newRepository() {
+        return new RepositoryImpl(new TrieStoreImpl(new HashMapDB()), new HashMapDB(), new HashMapDB());
+    }
+
+    private static IndexedBlockStore newBlockStore() {
+        IndexedBlockStore blockStore = new IndexedBlockStore();
+        blockStore.init(new HashMap<>(), new HashMapDB(), null);
+        return blockStore;
+    }
+
+    // the genesis and its child block
+    private static BlockStore newBlockStore(Block block) {
+        IndexedBlockStore blockStore = newBlockStore();
+        Block genesis = BlockGenerator.getGenesisBlock();
+        blockStore.saveBlock(genesis, genesis.getCumulativeDifficulty(), true);
+        blockStore.saveBlock(block, genesis.getCumulativeDifficulty().add(block.getCumulativeDifficulty()), true);
+        return blockStore;
+    }
+
+    private static Block createRemascBlock(Block parent) {
+        return BlockGenerator.createChildBlock(parent, Collections.singletonList(new RemascTransaction(parent.getNumber() + 1)));
+    }
+
+    // accounts with balance, one of each ten with code and storage
+    private static Block createState(RepositoryImpl repository, int naccounts) {
+        Repository track = repository.startTracking();
+
+        for (int k = 0; k < naccounts; k++) {
+            byte[] address = makeAddress(k);
+
+            track.createAccount(address);
+            track.addBalance(address, BigInteger.valueOf(k + 1));
+
+            if (k % 10 == 0) {
+                track.saveCode(address, CODE);
+                track.addStorageRow(address, DataWord.ONE, new DataWord(k + 1));
+            }
+        }
+
+        track.commit();
+
+        byte[] root = repository.getRoot();
+        repository.flush();
+
+        return BlockGenerator.createChildBlock(BlockGenerator.getGenesisBlock(), new ArrayList<>(), root);
+    }
+
+    private static byte[] makeAddress(int k) {
+        byte[] address = new byte[20];
+        address[0] = (byte) (k >> 8);
+        address[19] = (byte) k;
+        return address;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.db;
+
+import org.ethereum.core.Bloom;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.datasource.HashMapDB;
+import org.ethereum.db.ReceiptStore;
+import org.ethereum.db.ReceiptStoreImpl;
+import org.ethereum.db.TransactionInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class WriteBehindReceiptStoreTest {
+    @Test
+    public void saveUsingSynchronousWriter() {
+        WriteBehindReceiptStore store = new WriteBehindReceiptStore(createReceiptStore(), Runnable::run);
+        TransactionReceipt receipt = createReceipt(1);
+        byte[] blockHash = new byte[] { 0x01, 0x02 };
+
+        store.saveMultiple(blockHash, Collections.singletonList(receipt));
+
+        Assert.assertFalse(store.hasPendingWrites());
+
+        TransactionInfo info = store.get(receipt.getTransaction().getHash());
+
+        Assert.assertNotNull(info);
+        Assert.assertArrayEquals(blockHash, info.getBlockHash());
+    }
+
+    @Test
+    public void readWaitsPendingWrite() throws InterruptedException {
+        List<Runnable> tasks = new ArrayList<>();
+        WriteBehindReceiptStore store = new WriteBehindReceiptStore(createReceiptStore(), tasks::add);
+        TransactionReceipt receipt = createReceipt(1);
+        TransactionReceipt other = createReceipt(2);
+        byte[] blockHash = new byte[] { 0x01, 0x02 };
+
+        store.saveMultiple(blockHash, Collections.singletonList(receipt));
+
+        Assert.assertTrue(store.hasPendingWrites());
+        Assert.assertEquals(1, tasks.size());
+
+        // other transactions don't wait
+        Assert.assertNull(store.get(other.getTransaction().getHash()));
+
+        TransactionInfo[] result = new TransactionInfo[1];
+        Thread reader = new Thread(() -> result[0] = store.get(receipt.getTransaction().getHash()));
+        reader.start();
+
+        reader.join(100);
+        Assert.assertTrue(reader.isAlive());
+
+        tasks.get(0).run();
+
+        reader.join(10000);
+        Assert.assertFalse(reader.isAlive());
+        Assert.assertFalse(store.hasPendingWrites());
+        Assert.assertNotNull(result[0]);
+        Assert.assertArrayEquals(blockHash, result[0].getBlockHash());
+    }
+
+    @Test
+    public void awaitWrittenWaitsAllPendingWrites() throws InterruptedException {
+        List<Runnable> tasks = new ArrayList<>();
+        WriteBehindReceiptStore store = new WriteBehindReceiptStore(createReceiptStore(), tasks::add);
+
+        store.saveMultiple(new byte[] { 0x01 }, Collections.singletonList(createReceipt(1)));
+        store.saveMultiple(new byte[] { 0x02 }, Collections.singletonList(createReceipt(2)));
+
+        Thread waiter = new Thread(store::awaitWritten);
+        waiter.start();
+
+        tasks.get(0).run();
+
+        waiter.join(100);
+        Assert.assertTrue(waiter.isAlive());
+
+        tasks.get(1).run();
+
+        waiter.join(10000);
+        Assert.assertFalse(waiter.isAlive());
+    }
+
+    private static ReceiptStore createReceiptStore() {
+        HashMapDB ds = new HashMapDB();
+        ds.init();
+        return new ReceiptStoreImpl(ds);
+    }
+
+    private static TransactionReceipt createReceipt(int nonce) {
+        Transaction tx = new Transaction(BigInteger.valueOf(nonce).toByteArray(), BigInteger.ONE.toByteArray(),
+                BigInteger.valueOf(21000).toByteArray(), new byte[20], BigInteger.TEN.toByteArray(), null);
+
+        byte[] gasUsed = BigInteger.valueOf(21000).toByteArray();
+        TransactionReceipt receipt = new TransactionReceipt(new byte[32], gasUsed, gasUsed, new Bloom(), new ArrayList<>());
+        receipt.setTransaction(tx);
+
+        return receipt;
+    }
+}
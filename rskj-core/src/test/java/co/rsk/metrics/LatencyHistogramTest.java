@@ -0,0 +1,79 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMeanNanos());
+        Assert.assertEquals(0, histogram.getMaxNanos());
+        Assert.assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void recordDurations() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(500);
+        histogram.record(1500);
+        histogram.record(3000);
+        histogram.record(-10);
+
+        Assert.assertEquals(4, histogram.getCount());
+        Assert.assertEquals(5000, histogram.getTotalNanos());
+        Assert.assertEquals(1250, histogram.getMeanNanos());
+        Assert.assertEquals(3000, histogram.getMaxNanos());
+
+        long[] counts = histogram.getBucketCounts();
+
+        Assert.assertEquals(2, counts[0]);
+        Assert.assertEquals(1, counts[1]);
+        Assert.assertEquals(1, counts[2]);
+    }
+
+    @Test
+    public void percentilesAreBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int k = 0; k < 99; k++)
+            histogram.record(100);
+
+        histogram.record(1000000);
+
+        Assert.assertEquals(LatencyHistogram.getBucketUpperBoundNanos(0), histogram.getPercentileNanos(50));
+        Assert.assertEquals(LatencyHistogram.getBucketUpperBoundNanos(0), histogram.getPercentileNanos(99));
+        Assert.assertEquals(1000000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void hugeDurationsGoToLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(Long.MAX_VALUE);
+
+        Assert.assertEquals(1, histogram.getBucketCounts()[LatencyHistogram.NUMBER_OF_BUCKETS - 1]);
+        Assert.assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(50));
+    }
+}
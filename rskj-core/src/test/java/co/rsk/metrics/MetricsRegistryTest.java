@@ -0,0 +1,120 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+public class MetricsRegistryTest {
+    @Test
+    public void emptyRegistry() throws IOException {
+        Assert.assertEquals("", write(new MetricsRegistry()));
+    }
+
+    @Test
+    public void sameCounterForSameNameAndLabels() {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        Counter counter = registry.counter("test_total", "Test counter", "kind", "a");
+
+        Assert.assertSame(counter, registry.counter("test_total", "Test counter", "kind", "a"));
+        Assert.assertNotSame(counter, registry.counter("test_total", "Test counter", "kind", "b"));
+    }
+
+    @Test
+    public void writeCounters() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        registry.counter("test_total", "Test counter", "kind", "b").add(3);
+        registry.counter("test_total", "Test counter", "kind", "a").inc();
+
+        String expected = "# HELP test_total Test counter\n" +
+                "# TYPE test_total counter\n" +
+                "test_total{kind=\"a\"} 1\n" +
+                "test_total{kind=\"b\"} 3\n";
+
+        Assert.assertEquals(expected, write(registry));
+    }
+
+    @Test
+    public void writeGaugeReplacingPreviousOne() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        registry.gauge("test_size", "Test gauge", () -> 1);
+        registry.gauge("test_size", "Test gauge", () -> 42);
+
+        String expected = "# HELP test_size Test gauge\n" +
+                "# TYPE test_size gauge\n" +
+                "test_size 42\n";
+
+        Assert.assertEquals(expected, write(registry));
+    }
+
+    @Test
+    public void writeHistogram() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        LatencyHistogram histogram = registry.histogram("test_seconds", "Test histogram", "op", "get");
+
+        histogram.record(500);
+        histogram.record(1500);
+        histogram.record(3_000_000);
+
+        String text = write(registry);
+
+        Assert.assertTrue(text.startsWith("# HELP test_seconds Test histogram\n# TYPE test_seconds histogram\n"));
+        Assert.assertTrue(text.contains("test_seconds_bucket{op=\"get\",le=\"1.0E-6\"} 1\n"));
+        Assert.assertTrue(text.contains("test_seconds_bucket{op=\"get\",le=\"2.0E-6\"} 2\n"));
+        Assert.assertTrue(text.contains("test_seconds_bucket{op=\"get\",le=\"0.002048\"} 2\n"));
+        Assert.assertTrue(text.contains("test_seconds_bucket{op=\"get\",le=\"0.004096\"} 3\n"));
+        Assert.assertTrue(text.contains("test_seconds_bucket{op=\"get\",le=\"+Inf\"} 3\n"));
+        Assert.assertTrue(text.contains("test_seconds_sum{op=\"get\"} 0.003002\n"));
+        Assert.assertTrue(text.endsWith("test_seconds_count{op=\"get\"} 3\n"));
+    }
+
+    @Test
+    public void escapeLabelValues() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        registry.counter("test_total", "Test counter", "name", "a\"b\\c\nd").inc();
+
+        Assert.assertTrue(write(registry).contains("test_total{name=\"a\\\"b\\\\c\\nd\"} 1\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sameNameWithAnotherType() {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        registry.counter("test", "Test counter");
+        registry.histogram("test", "Test histogram");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void labelsWithoutValue() {
+        new MetricsRegistry().counter("test_total", "Test counter", "kind");
+    }
+
+    private static String write(MetricsRegistry registry) throws IOException {
+        StringWriter writer = new StringWriter();
+        registry.write(writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+public class MetricsServerTest {
+    @Test
+    public void serveMetrics() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_total", "Test counter").add(7);
+
+        MetricsServer server = new MetricsServer(registry, "127.0.0.1", 0);
+        server.start();
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + "/metrics").openConnection();
+
+            Assert.assertEquals(200, connection.getResponseCode());
+            Assert.assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            Assert.assertTrue(read(connection.getInputStream()).contains("test_total 7\n"));
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void rejectPost() throws IOException {
+        MetricsServer server = new MetricsServer(new MetricsRegistry(), "127.0.0.1", 0);
+        server.start();
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + "/metrics").openConnection();
+            connection.setRequestMethod("POST");
+
+            Assert.assertEquals(405, connection.getResponseCode());
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+
+        for (int n = input.read(buffer); n >= 0; n = input.read(buffer))
+            output.write(buffer, 0, n);
+
+        input.close();
+
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
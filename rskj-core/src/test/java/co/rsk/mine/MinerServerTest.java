@@ -83,7 +83,7 @@ public class MinerServerTest {
         List<Transaction> txs = new ArrayList<>(Arrays.asList(tx1));
 
         PendingState localPendingState = Mockito.mock(PendingState.class);
-        Mockito.when(localPendingState.getPendingTransactions()).thenReturn(txs);
+        Mockito.when(localPendingState.getTransactionsForBlock(Mockito.anyInt())).thenReturn(txs);
 
         BlockUnclesValidationRule unclesValidationRule = Mockito.mock(BlockUnclesValidationRule.class);
         Mockito.when(unclesValidationRule.isValid(Mockito.any())).thenReturn(true);
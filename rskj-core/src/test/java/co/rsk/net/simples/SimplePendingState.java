@@ -81,6 +81,11 @@ public class SimplePendingState implements PendingState {
         return null;
     }
 
+    @Override
+    public List<Transaction> getTransactionsForBlock(int limit) {
+        return null;
+    }
+
     @Override
     public Repository getRepository() {
         return null;
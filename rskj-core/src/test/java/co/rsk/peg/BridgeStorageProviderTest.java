@@ -32,6 +32,7 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.PrecompiledContracts;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.spongycastle.util.encoders.Hex;
 
 import java.io.IOException;
@@ -306,6 +307,81 @@ public class BridgeStorageProviderTest {
         Assert.assertTrue(utxos.get(1).getHash().equals(hash2));
     }
 
+    @Test
+    public void getUTXOsFromCacheAsCopies() throws IOException {
+        Repository repository = new RepositoryImpl();
+        Repository track = repository.startTracking();
+
+        BridgeConstants bridgeConstants = RskSystemProperties.CONFIG.getBlockchainConfig().getCommonConstants().getBridgeConstants();
+
+        BridgeStorageProvider provider0 = new BridgeStorageProvider(track, PrecompiledContracts.BRIDGE_ADDR);
+        provider0.getBtcUTXOs().add(new UTXO(PegTestUtils.createHash(), 1, Coin.COIN, 0, false, ScriptBuilder.createOutputScript(bridgeConstants.getFederationAddress())));
+        provider0.save();
+        track.commit();
+
+        BridgeStorageCache cache = new BridgeStorageCache();
+
+        BridgeStorageProvider provider1 = new BridgeStorageProvider(repository.startTracking(), PrecompiledContracts.BRIDGE_ADDR, cache);
+        List<UTXO> utxos1 = provider1.getBtcUTXOs();
+        utxos1.clear();
+
+        BridgeStorageProvider provider2 = new BridgeStorageProvider(repository.startTracking(), PrecompiledContracts.BRIDGE_ADDR, cache);
+        List<UTXO> utxos2 = provider2.getBtcUTXOs();
+
+        Assert.assertNotSame(utxos1, utxos2);
+        Assert.assertEquals(1, utxos2.size());
+    }
+
+    @Test
+    public void getSavedProcessedHashesFromCache() throws IOException {
+        Sha256Hash hash = PegTestUtils.createHash();
+
+        Repository repository = new RepositoryImpl();
+        Repository track = repository.startTracking();
+        BridgeStorageCache cache = new BridgeStorageCache();
+
+        BridgeStorageProvider provider0 = new BridgeStorageProvider(track, PrecompiledContracts.BRIDGE_ADDR, cache);
+        provider0.getBtcTxHashesAlreadyProcessed().add(hash);
+        provider0.save();
+
+        BridgeStorageCache.Decoder<SortedSet<Sha256Hash>> decoder = data -> {
+            throw new IllegalStateException("Value should be in the cache");
+        };
+
+        byte[] data = track.getStorageBytes(Hex.decode(PrecompiledContracts.BRIDGE_ADDR), new DataWord("btcTxHashesAP".getBytes()));
+        SortedSet<Sha256Hash> hashes = cache.get("btcTxHashesAP", data, decoder);
+
+        Assert.assertEquals(1, hashes.size());
+        Assert.assertTrue(hashes.contains(hash));
+    }
+
+    @Test
+    public void saveOnlyChangedCollections() throws IOException {
+        Repository repository = new RepositoryImpl();
+        Repository track = repository.startTracking();
+
+        BridgeStorageProvider provider0 = new BridgeStorageProvider(track, PrecompiledContracts.BRIDGE_ADDR);
+        provider0.getBtcTxHashesAlreadyProcessed().add(PegTestUtils.createHash());
+        provider0.getRskTxsWaitingForSignatures().put(PegTestUtils.createHash3(), createTransaction());
+        provider0.save();
+        track.commit();
+
+        Repository track1 = Mockito.spy(repository.startTracking());
+
+        BridgeStorageProvider provider1 = new BridgeStorageProvider(track1, PrecompiledContracts.BRIDGE_ADDR);
+        provider1.getBtcTxHashesAlreadyProcessed();
+        provider1.getRskTxsWaitingForSignatures();
+        provider1.save();
+
+        Mockito.verify(track1, Mockito.never()).addStorageBytes(Mockito.any(), Mockito.any(), Mockito.any());
+
+        provider1.getBtcTxHashesAlreadyProcessed().add(PegTestUtils.createHash());
+        provider1.save();
+
+        Mockito.verify(track1, Mockito.times(1)).addStorageBytes(Mockito.any(), Mockito.eq(new DataWord("btcTxHashesAP".getBytes())), Mockito.any());
+        Mockito.verify(track1, Mockito.never()).addStorageBytes(Mockito.any(), Mockito.eq(new DataWord("rskTxsWaitingFS".getBytes())), Mockito.any());
+    }
+
     private BtcTransaction createTransaction() {
         BtcTransaction tx = new BtcTransaction(networkParameters);
         tx.addInput(PegTestUtils.createHash(), transactionOffset++, ScriptBuilder.createInputScript(new TransactionSignature(BigInteger.ONE, BigInteger.TEN)));
@@ -0,0 +1,125 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.peg;
+
+import co.rsk.bitcoinj.core.*;
+import co.rsk.bitcoinj.store.BlockStoreException;
+import co.rsk.bitcoinj.store.BtcBlockStore;
+import co.rsk.config.RskSystemProperties;
+import co.rsk.db.RepositoryImpl;
+import org.ethereum.config.BlockchainNetConfig;
+import org.ethereum.config.blockchain.RegTestConfig;
+import org.ethereum.core.Repository;
+import org.ethereum.vm.PrecompiledContracts;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BufferedBtcBlockStoreTest {
+    private static BlockchainNetConfig blockchainNetConfigOriginal;
+    private static NetworkParameters btcParams;
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        blockchainNetConfigOriginal = RskSystemProperties.CONFIG.getBlockchainConfig();
+        RskSystemProperties.CONFIG.setBlockchainConfig(new RegTestConfig());
+        btcParams = RskSystemProperties.CONFIG.getBlockchainConfig().getCommonConstants().getBridgeConstants().getBtcParams();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        RskSystemProperties.CONFIG.setBlockchainConfig(blockchainNetConfigOriginal);
+    }
+
+    @Test
+    public void writeNewBlocksOnFlush() throws BlockStoreException {
+        Repository repository = new RepositoryImpl();
+        RepositoryBlockStore repositoryBlockStore = new RepositoryBlockStore(repository, PrecompiledContracts.BRIDGE_ADDR);
+        BufferedBtcBlockStore store = new BufferedBtcBlockStore(repositoryBlockStore);
+
+        StoredBlock genesis = store.getChainHead();
+        StoredBlock block = genesis.build(createBtcBlocks(genesis.getHeader(), 1).get(0));
+        Sha256Hash hash = block.getHeader().getHash();
+
+        store.put(block);
+        store.setChainHead(block);
+
+        Assert.assertEquals(1, store.getNumberOfNewBlocks());
+        Assert.assertEquals(block, store.get(hash));
+        Assert.assertEquals(block, store.getChainHead());
+        Assert.assertNull(repositoryBlockStore.get(hash));
+        Assert.assertEquals(genesis, repositoryBlockStore.getChainHead());
+
+        store.flush();
+
+        Assert.assertEquals(0, store.getNumberOfNewBlocks());
+        Assert.assertEquals(block, repositoryBlockStore.get(hash));
+        Assert.assertEquals(block, repositoryBlockStore.getChainHead());
+        Assert.assertEquals(block, store.get(hash));
+    }
+
+    @Test
+    public void ingestHeadersWithSameStateAsUnbufferedStore() throws Exception {
+        List<BtcBlock> headers = createBtcBlocks(btcParams.getGenesisBlock(), 100);
+
+        // an already known header is ignored by the chain
+        headers.add(50, headers.get(10));
+
+        RepositoryImpl repository1 = new RepositoryImpl();
+        BtcBlockStore store1 = new RepositoryBlockStore(repository1, PrecompiledContracts.BRIDGE_ADDR);
+        addHeaders(store1, headers);
+
+        RepositoryImpl repository2 = new RepositoryImpl();
+        BufferedBtcBlockStore store2 = new BufferedBtcBlockStore(new RepositoryBlockStore(repository2, PrecompiledContracts.BRIDGE_ADDR));
+        addHeaders(store2, headers);
+        store2.flush();
+
+        Assert.assertEquals(100, store1.getChainHead().getHeight());
+        Assert.assertEquals(store1.getChainHead(), new RepositoryBlockStore(repository2, PrecompiledContracts.BRIDGE_ADDR).getChainHead());
+        Assert.assertArrayEquals(repository1.getRoot(), repository2.getRoot());
+    }
+
+    private static void addHeaders(BtcBlockStore store, List<BtcBlock> headers) throws BlockStoreException {
+        Context context = new Context(btcParams);
+        Context.propagate(context);
+        BtcBlockChain blockChain = new BtcBlockChain(context, store);
+
+        for (BtcBlock header : headers) {
+            try {
+                blockChain.add(header);
+            } catch (Exception e) {
+                // orphan headers are skipped, as the bridge does
+            }
+        }
+    }
+
+    private static List<BtcBlock> createBtcBlocks(BtcBlock parent, int numberOfBlocksToCreate) {
+        List<BtcBlock> list = new ArrayList<>();
+
+        for (int i = 0; i < numberOfBlocksToCreate; i++) {
+            BtcBlock block = new BtcBlock(btcParams, 2l, parent.getHash(), Sha256Hash.ZERO_HASH, parent.getTimeSeconds() + 1, parent.getDifficultyTarget(), 0, new ArrayList<BtcTransaction>());
+            block.solve();
+            list.add(block);
+            parent = block;
+        }
+
+        return list;
+    }
+}
@@ -26,6 +26,7 @@ import org.ethereum.core.Block;
 import org.ethereum.core.Repository;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import java.io.IOException;
 import java.math.BigInteger;
@@ -225,6 +226,65 @@ public class RemascStorageProviderTest {
         Assert.assertEquals(2, map.get(Long.valueOf(1)).size());
     }
 
+    @Test
+    public void getCachedSiblingsAsCopies() throws IOException {
+        String accountAddress = randomAddress();
+        Repository repository = new RepositoryImplForTesting();
+
+        RemascStorageProvider provider = new RemascStorageProvider(repository, accountAddress);
+
+        Block genesis = BlockGenerator.getGenesisBlock();
+        Block block = BlockGenerator.createChildBlock(genesis);
+
+        List<Sibling> siblings = new ArrayList<>();
+        siblings.add(new Sibling(genesis.getHeader(), genesis.getCoinbase(), 1));
+
+        provider.getSiblings().put(Long.valueOf(1), siblings);
+        provider.save();
+
+        RemascStorageProvider provider1 = new RemascStorageProvider(repository, accountAddress);
+        provider1.getSiblings().get(Long.valueOf(1)).add(new Sibling(block.getHeader(), block.getCoinbase(), 2));
+        provider1.getSiblings().remove(Long.valueOf(1));
+
+        RemascStorageProvider provider2 = new RemascStorageProvider(repository, accountAddress);
+        SortedMap<Long, List<Sibling>> map = provider2.getSiblings();
+
+        Assert.assertTrue(map.containsKey(Long.valueOf(1)));
+        Assert.assertEquals(1, map.get(Long.valueOf(1)).size());
+    }
+
+    @Test
+    public void saveOnlyChangedSiblings() throws IOException {
+        String accountAddress = randomAddress();
+        Repository repository = new RepositoryImplForTesting();
+
+        Block genesis = BlockGenerator.getGenesisBlock();
+
+        List<Sibling> siblings = new ArrayList<>();
+        siblings.add(new Sibling(genesis.getHeader(), genesis.getCoinbase(), 1));
+
+        RemascStorageProvider provider = new RemascStorageProvider(repository, accountAddress);
+        provider.getSiblings().put(Long.valueOf(1), siblings);
+        provider.save();
+
+        Repository spy = Mockito.spy(repository);
+
+        RemascStorageProvider provider1 = new RemascStorageProvider(spy, accountAddress);
+        provider1.getSiblings();
+        provider1.save();
+
+        Mockito.verify(spy, Mockito.never()).addStorageBytes(Mockito.any(), Mockito.any(), Mockito.any());
+
+        provider1.getSiblings().remove(Long.valueOf(1));
+        provider1.save();
+
+        Mockito.verify(spy, Mockito.times(1)).addStorageBytes(Mockito.any(), Mockito.any(), Mockito.any());
+
+        RemascStorageProvider provider2 = new RemascStorageProvider(repository, accountAddress);
+
+        Assert.assertTrue(provider2.getSiblings().isEmpty());
+    }
+
     @Test
     public void setSaveRetrieveAndGetManySiblings() throws IOException {
         String accountAddress = randomAddress();
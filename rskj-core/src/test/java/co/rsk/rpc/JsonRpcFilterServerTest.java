@@ -18,11 +18,13 @@
 
 package co.rsk.rpc;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -63,6 +65,20 @@ public class JsonRpcFilterServerTest {
         }
     }
 
+    @Test
+    public void heavyRequests() throws IOException {
+        ModuleDescription module = new ModuleDescription("eth", "1.0", true, null, null,
+                0, null, 0, Collections.singletonList("eth_getLogs"));
+        JsonRpcFilterServer server = new JsonRpcFilterServer(null, null, Collections.singletonList(module));
+        ObjectMapper mapper = new ObjectMapper();
+
+        Assert.assertTrue(server.isHeavy(mapper.readTree("{\"method\":\"eth_getLogs\",\"params\":[]}")));
+        Assert.assertFalse(server.isHeavy(mapper.readTree("{\"method\":\"eth_blockNumber\",\"params\":[]}")));
+        Assert.assertTrue(server.isHeavy(mapper.readTree("[{\"method\":\"eth_blockNumber\"},{\"method\":\"eth_getLogs\"}]")));
+        Assert.assertFalse(server.isHeavy(mapper.readTree("[{\"method\":\"eth_blockNumber\"}]")));
+        Assert.assertFalse(server.isHeavy(mapper.readTree("{\"params\":[]}")));
+    }
+
     private static List<ModuleDescription> getModules() {
         List<String> enabledMethods = new ArrayList<>();
         enabledMethods.add("evm_snapshot");
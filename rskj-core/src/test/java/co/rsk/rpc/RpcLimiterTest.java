@@ -0,0 +1,116 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.rpc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class RpcLimiterTest {
+    @Test
+    public void methodsWithoutLimits() throws RpcLimitExceededException {
+        RpcLimiter limiter = new RpcLimiter(Collections.singletonList(new ModuleDescription("eth", "1.0", true, null, null)));
+
+        for (int k = 0; k < 1000; k++)
+            limiter.acquire("eth_blockNumber");
+    }
+
+    @Test
+    public void methodLimit() throws RpcLimitExceededException {
+        RpcLimiter limiter = new RpcLimiter(Collections.singletonList(createModule(0, 2)));
+
+        limiter.acquire("eth_getLogs");
+        limiter.acquire("eth_getLogs");
+
+        assertRejected(limiter, "eth_getLogs");
+
+        // other methods are not limited
+        limiter.acquire("eth_blockNumber");
+
+        limiter.release("eth_getLogs");
+        limiter.acquire("eth_getLogs");
+    }
+
+    @Test
+    public void moduleLimit() throws RpcLimitExceededException {
+        RpcLimiter limiter = new RpcLimiter(Collections.singletonList(createModule(3, 2)));
+
+        limiter.acquire("eth_getLogs");
+        limiter.acquire("eth_blockNumber");
+        limiter.acquire("eth_call");
+
+        assertRejected(limiter, "eth_blockNumber");
+        assertRejected(limiter, "eth_getLogs");
+
+        limiter.release("eth_call");
+        limiter.acquire("eth_getLogs");
+
+        // the rejected calls didn't keep the method slots
+        assertRejected(limiter, "eth_getLogs");
+        limiter.release("eth_blockNumber");
+        assertRejected(limiter, "eth_getLogs");
+    }
+
+    @Test
+    public void waitsForFreeSlot() throws Exception {
+        RpcLimiter limiter = new RpcLimiter(Collections.singletonList(createModule(0, 1, 5000)));
+
+        limiter.acquire("eth_getLogs");
+
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            limiter.release("eth_getLogs");
+        });
+
+        thread.start();
+
+        limiter.acquire("eth_getLogs");
+
+        thread.join();
+    }
+
+    private static void assertRejected(RpcLimiter limiter, String method) {
+        try {
+            limiter.acquire(method);
+            Assert.fail();
+        }
+        catch (RpcLimitExceededException ex) {
+            Assert.assertTrue(ex.getMessage().contains(method));
+        }
+    }
+
+    private static ModuleDescription createModule(int maxConcurrency, int getLogsConcurrency) {
+        return createModule(maxConcurrency, getLogsConcurrency, 0);
+    }
+
+    private static ModuleDescription createModule(int maxConcurrency, int getLogsConcurrency, long timeout) {
+        Map<String, Integer> methodsConcurrency = new HashMap<>();
+        methodsConcurrency.put("eth_getLogs", getLogsConcurrency);
+
+        return new ModuleDescription("eth", "1.0", true, null, null, maxConcurrency, methodsConcurrency, timeout, null);
+    }
+}
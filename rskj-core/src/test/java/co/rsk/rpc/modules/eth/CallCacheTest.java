@@ -0,0 +1,130 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.modules.eth;
+
+import co.rsk.blockchain.utils.BlockGenerator;
+import org.ethereum.core.Block;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.facade.Ethereum;
+import org.ethereum.rpc.Web3;
+import org.ethereum.vm.program.ProgramResult;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+public class CallCacheTest {
+    @Test
+    public void getStoredResult() {
+        CallCache cache = new CallCache(10);
+        Block block = BlockGenerator.getGenesisBlock();
+        ByteArrayWrapper key = CallCache.getKey("eth_call", createArguments("0x01"));
+
+        Assert.assertNull(cache.get(block, key));
+
+        cache.put(block, key, "0x2a");
+
+        Assert.assertEquals("0x2a", cache.get(block, key));
+        Assert.assertEquals("0x2a", cache.get(block, CallCache.getKey("eth_call", createArguments("0x1"))));
+        Assert.assertNull(cache.get(block, CallCache.getKey("eth_call", createArguments("0x02"))));
+        Assert.assertNull(cache.get(block, CallCache.getKey("eth_estimateGas", createArguments("0x01"))));
+    }
+
+    @Test
+    public void newBlockDropsResults() {
+        CallCache cache = new CallCache(10);
+        Block block = BlockGenerator.getGenesisBlock();
+        Block child = BlockGenerator.createChildBlock(block);
+        Block sibling = BlockGenerator.createChildBlock(block);
+        ByteArrayWrapper key = CallCache.getKey("eth_call", createArguments("0x01"));
+
+        cache.put(block, key, "0x2a");
+
+        Assert.assertNull(cache.get(child, key));
+
+        cache.put(child, key, "0x2b");
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals("0x2b", cache.get(child, key));
+        Assert.assertNull(cache.get(block, key));
+        Assert.assertNull(cache.get(sibling, key));
+    }
+
+    @Test
+    public void removeLeastRecentlyUsed() {
+        CallCache cache = new CallCache(2);
+        Block block = BlockGenerator.getGenesisBlock();
+        ByteArrayWrapper key1 = CallCache.getKey("eth_call", createArguments("0x01"));
+        ByteArrayWrapper key2 = CallCache.getKey("eth_call", createArguments("0x02"));
+        ByteArrayWrapper key3 = CallCache.getKey("eth_call", createArguments("0x03"));
+
+        cache.put(block, key1, "0x01");
+        cache.put(block, key2, "0x02");
+        cache.get(block, key1);
+        cache.put(block, key3, "0x03");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("0x01", cache.get(block, key1));
+        Assert.assertNull(cache.get(block, key2));
+        Assert.assertEquals("0x03", cache.get(block, key3));
+    }
+
+    @Test
+    public void disabledCache() {
+        CallCache cache = new CallCache(0);
+        Block block = BlockGenerator.getGenesisBlock();
+        ByteArrayWrapper key = CallCache.getKey("eth_call", createArguments("0x01"));
+
+        cache.put(block, key, "0x2a");
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.get(block, key));
+    }
+
+    @Test
+    public void ethModuleExecutesCallOncePerBlock() {
+        Block block = BlockGenerator.getGenesisBlock();
+        Ethereum eth = Mockito.mock(Ethereum.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(eth.getWorldManager().getBlockchain().getBestBlock()).thenReturn(block);
+        ProgramResult result = new ProgramResult();
+        result.setHReturn(new byte[] { 0x2a });
+        Mockito.when(eth.callConstant(Matchers.any())).thenReturn(result);
+
+        EthModule module = new EthModule(eth, null, null, new CallCache(10));
+
+        Assert.assertEquals("0x2a", module.call(createArguments("0x01"), "latest"));
+        Assert.assertEquals("0x2a", module.call(createArguments("0x01"), "latest"));
+        Mockito.verify(eth, Mockito.times(1)).callConstant(Matchers.any());
+
+        Block child = BlockGenerator.createChildBlock(block);
+        Mockito.when(eth.getWorldManager().getBlockchain().getBestBlock()).thenReturn(child);
+
+        Assert.assertEquals("0x2a", module.call(createArguments("0x01"), "latest"));
+        Mockito.verify(eth, Mockito.times(2)).callConstant(Matchers.any());
+    }
+
+    private static Web3.CallArguments createArguments(String data) {
+        Web3.CallArguments args = new Web3.CallArguments();
+        args.to = "0x0000000000000000000000000000000001000008";
+        args.data = data;
+        args.gas = "0xf4240";
+        return args;
+    }
+}
@@ -124,6 +124,68 @@ public class InetAddressTableTest {
         Assert.assertFalse(table.contains(address3));
     }
 
+    @Test
+    public void removeOneOfNestedAddressMasks() throws UnknownHostException {
+        InetAddressTable table = new InetAddressTable();
+        InetAddress address = generateIPAddressV4();
+        InetAddress address2 = alterByte(address, 2);
+
+        table.addAddressBlock(new InetAddressBlock(address, 8));
+        table.addAddressBlock(new InetAddressBlock(address, 16));
+
+        Assert.assertTrue(table.contains(address));
+        Assert.assertTrue(table.contains(address2));
+
+        table.removeAddressBlock(new InetAddressBlock(address, 16));
+
+        Assert.assertTrue(table.contains(address));
+        Assert.assertFalse(table.contains(address2));
+
+        table.removeAddressBlock(new InetAddressBlock(address, 8));
+
+        Assert.assertFalse(table.contains(address));
+        Assert.assertEquals(0, table.getAddressBlockList().size());
+    }
+
+    @Test
+    public void addIPV6AddressMask() throws UnknownHostException {
+        InetAddressTable table = new InetAddressTable();
+        InetAddress address = generateIPAddressV6();
+        InetAddress address2 = alterByte(address, 15);
+        InetAddress address3 = alterByte(address, 12);
+
+        table.addAddressBlock(new InetAddressBlock(address, 20));
+
+        Assert.assertTrue(table.contains(address));
+        Assert.assertTrue(table.contains(address2));
+        Assert.assertFalse(table.contains(address3));
+        Assert.assertFalse(table.contains(generateIPAddressV4()));
+    }
+
+    @Test
+    public void containsMatchesAddressBlocks() throws UnknownHostException {
+        InetAddressTable table = new InetAddressTable();
+        InetAddressBlock[] blocks = new InetAddressBlock[1000];
+
+        for (int k = 0; k < blocks.length; k++) {
+            blocks[k] = new InetAddressBlock(generateIPAddressV4(), 8 + random.nextInt(17));
+            table.addAddressBlock(blocks[k]);
+        }
+
+        for (int k = 0; k < 1000; k++) {
+            InetAddress address = generateIPAddressV4();
+            boolean expected = false;
+
+            for (InetAddressBlock block : blocks)
+                expected |= block.contains(address);
+
+            Assert.assertEquals(expected, table.contains(address));
+        }
+
+        for (InetAddressBlock block : blocks)
+            Assert.assertTrue(table.contains(InetAddress.getByAddress(block.getBytes())));
+    }
+
     private static InetAddress generateIPAddressV4() throws UnknownHostException {
         byte[] bytes = new byte[4];
 
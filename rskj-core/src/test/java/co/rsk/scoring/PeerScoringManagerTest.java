@@ -2,11 +2,17 @@ package co.rsk.scoring;
 
 import co.rsk.net.NodeID;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.spongycastle.util.encoders.Hex;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
@@ -17,6 +23,9 @@ import java.util.concurrent.TimeUnit;
 public class PeerScoringManagerTest {
     private static Random random = new Random();
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Test
     public void getEmptyNodeStatusFromUnknownNodeId() {
         NodeID id = generateNodeID();
@@ -48,6 +57,29 @@ public class PeerScoringManagerTest {
         Assert.assertFalse(manager.hasGoodReputation(address));
     }
 
+    @Test
+    public void banAddressesFromFile() throws IOException {
+        File file = tempFolder.newFile("banned.txt");
+        Files.write(file.toPath(), Arrays.asList(
+                "# banned addresses",
+                "192.168.51.1",
+                "",
+                "10.1.1.1/16",
+                "10.0.0.1/abc",
+                "  fe80::1/64  "
+        ));
+
+        PeerScoringManager manager = createPeerScoringManager();
+
+        Assert.assertEquals(3, manager.banAddresses(file.toPath()));
+        Assert.assertFalse(manager.hasGoodReputation(InetAddress.getByName("192.168.51.1")));
+        Assert.assertTrue(manager.hasGoodReputation(InetAddress.getByName("192.168.51.2")));
+        Assert.assertFalse(manager.hasGoodReputation(InetAddress.getByName("10.1.200.3")));
+        Assert.assertTrue(manager.hasGoodReputation(InetAddress.getByName("10.2.1.1")));
+        Assert.assertFalse(manager.hasGoodReputation(InetAddress.getByName("fe80::abcd")));
+        Assert.assertEquals(3, manager.getBannedAddresses().size());
+    }
+
     @Test
     public void addAndRemoveBannedAddress() throws UnknownHostException {
         InetAddress address = generateIPAddressV4();
@@ -394,6 +426,35 @@ public class PeerScoringManagerTest {
         Assert.assertTrue(info.getScore() > 0);
     }
 
+    @Test
+    public void recordEventsFromManyThreads() throws InterruptedException, UnknownHostException {
+        PeerScoringManager manager = createPeerScoringManager();
+        NodeID node = generateNodeID();
+        InetAddress address = generateIPAddressV4();
+        int nthreads = 8;
+        int nevents = 1000;
+
+        Thread[] threads = new Thread[nthreads];
+
+        for (int k = 0; k < nthreads; k++) {
+            threads[k] = new Thread(() -> {
+                for (int j = 0; j < nevents; j++) {
+                    manager.recordEvent(node, address, EventType.VALID_TRANSACTION);
+                    manager.hasGoodReputation(node);
+                }
+            });
+            threads[k].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        Assert.assertEquals(nthreads * nevents, manager.getPeerScoring(node).getEventCounter(EventType.VALID_TRANSACTION));
+        Assert.assertEquals(nthreads * nevents, manager.getPeerScoring(address).getEventCounter(EventType.VALID_TRANSACTION));
+        Assert.assertEquals(nthreads * nevents, manager.getPeerScoring(node).getScore());
+        Assert.assertTrue(manager.hasGoodReputation(node));
+    }
+
     private static NodeID generateNodeID() {
         byte[] bytes = new byte[32];
 
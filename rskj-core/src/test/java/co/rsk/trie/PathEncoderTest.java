@@ -21,6 +21,8 @@ package co.rsk.trie;
 import org.junit.Test;
 import org.junit.Assert;
 
+import java.util.Arrays;
+
 /**
  * Created by ajlopez on 07/02/2017.
  */
@@ -228,4 +230,58 @@ public class PathEncoderTest {
         Assert.assertNotNull(path);
         Assert.assertArrayEquals(new byte[] { 0x06, 0x0d, 0x08, 0x02, 0x05 }, path);
     }
+
+    @Test
+    public void getElements() {
+        byte[] encoded = new byte[] { 0x6d, (byte)0x82 };
+
+        Assert.assertEquals(0, PathEncoder.getElement(encoded, 0, 1));
+        Assert.assertEquals(1, PathEncoder.getElement(encoded, 1, 1));
+        Assert.assertEquals(3, PathEncoder.getElement(encoded, 2, 2));
+        Assert.assertEquals(0x0d, PathEncoder.getElement(encoded, 1, 4));
+        Assert.assertEquals(0x08, PathEncoder.getElement(encoded, 2, 4));
+    }
+
+    @Test
+    public void getCommonLengthNotAligned() {
+        byte[] path = new byte[] { 0x06, 0x0d, 0x08, 0x02, 0x05 };
+        byte[] key = new byte[] { 0x01, 0x06, 0x0d, 0x08, 0x02, 0x07 };
+
+        byte[] encodedPath = PathEncoder.encode(path, 16);
+        byte[] encodedKey = PathEncoder.encode(key, 16);
+
+        Assert.assertEquals(4, PathEncoder.getCommonLength(encodedPath, 0, encodedKey, 1, 5, 4));
+        Assert.assertEquals(3, PathEncoder.getCommonLength(encodedPath, 0, encodedKey, 1, 3, 4));
+        Assert.assertEquals(0, PathEncoder.getCommonLength(encodedPath, 0, encodedKey, 0, 5, 4));
+    }
+
+    @Test
+    public void getCommonLengthOfLongBinaryPaths() {
+        byte[] first = new byte[100];
+        byte[] second = new byte[101];
+        second[0] = 1;
+        second[98] = 1;
+
+        Assert.assertEquals(97, PathEncoder.getCommonLength(PathEncoder.encode(first, 2), 0, PathEncoder.encode(second, 2), 1, 100, 1));
+    }
+
+    @Test
+    public void extractIsEncodeOfSubpath() {
+        byte[] path = new byte[] { 0x01, 0x00, 0x01, 0x01, 0x00, 0x01, 0x01, 0x01, 0x00, 0x01, 0x01 };
+        byte[] encoded = PathEncoder.encode(path, 2);
+
+        for (int from = 0; from < path.length; from++)
+            for (int length = 0; from + length <= path.length; length++)
+                Assert.assertArrayEquals(
+                        PathEncoder.encode(Arrays.copyOfRange(path, from, from + length), 2),
+                        PathEncoder.extract(encoded, from, length, 1));
+    }
+
+    @Test
+    public void joinHexadecimalPaths() {
+        byte[] prefix = PathEncoder.encode(new byte[] { 0x06, 0x0d, 0x08 }, 16);
+        byte[] suffix = PathEncoder.encode(new byte[] { 0x05 }, 16);
+
+        Assert.assertArrayEquals(new byte[] { 0x6d, (byte)0x82, 0x50 }, PathEncoder.join(prefix, 3, 0x02, suffix, 1, 4));
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import org.ethereum.datasource.HashMapDB;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class PrunedTrieStoreTest {
+    @Test
+    public void pruneEmptyStore() {
+        PrunedTrieStore store = new PrunedTrieStore(new HashMapDB());
+
+        PrunedTrieStore.PruneResult result = store.prune(Collections.emptyList(), false);
+
+        Assert.assertEquals(0, result.getRetainedNodes());
+        Assert.assertEquals(0, result.getPrunedNodes());
+    }
+
+    @Test
+    public void neverDeletesNodesReachableFromRetainedRoots() {
+        HashMapDB dataSource = new HashMapDB();
+        PrunedTrieStore store = new PrunedTrieStore(dataSource);
+        Random random = new Random(1);
+
+        Trie trie = new TrieImpl(store, true);
+        List<byte[]> roots = new ArrayList<>();
+        List<Map<String, byte[]>> states = new ArrayList<>();
+        Map<String, byte[]> state = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        long pruned = 0;
+
+        for (int block = 1; block <= 60; block++) {
+            for (int k = 0; k < 20; k++) {
+                String key;
+
+                if (!keys.isEmpty() && random.nextBoolean())
+                    key = keys.get(random.nextInt(keys.size()));
+                else {
+                    key = "key" + random.nextInt(1000);
+                    keys.add(key);
+                }
+
+                byte[] value = new byte[1 + random.nextInt(40)];
+                random.nextBytes(value);
+
+                trie = trie.put(key, value);
+                state.put(key, value);
+            }
+
+            trie.save();
+            roots.add(trie.getHash());
+            states.add(new HashMap<>(state));
+
+            if (block % 10 == 0) {
+                List<byte[]> retained = roots.subList(roots.size() - 5, roots.size());
+                pruned += store.prune(retained, false).getPrunedNodes();
+
+                for (int k = roots.size() - 5; k < roots.size(); k++)
+                    assertState(store, roots.get(k), states.get(k));
+
+                // the next block is built on a state retrieved from the store
+                trie = store.retrieve(trie.getHash());
+            }
+        }
+
+        Assert.assertTrue(pruned > 0);
+    }
+
+    @Test
+    public void keepsRecentNodesForOnePruneInterval() {
+        HashMapDB dataSource = new HashMapDB();
+        PrunedTrieStore store = new PrunedTrieStore(dataSource);
+
+        Trie trie = new TrieImpl(store, false).put("foo", "bar".getBytes()).put("bar", "baz".getBytes());
+        trie.save();
+        byte[] root = trie.getHash();
+
+        Trie other = new TrieImpl(store, false).put("baz", "foo".getBytes()).put("foo", "baz".getBytes());
+        other.save();
+
+        // the other trie nodes are saved after the start of the previous prune
+        PrunedTrieStore.PruneResult result = store.prune(Collections.singletonList(root), false);
+
+        Assert.assertEquals(0, result.getPrunedNodes());
+        Assert.assertTrue(result.getRecentNodes() > 0);
+        Assert.assertNotNull(store.retrieve(other.getHash()));
+
+        result = store.prune(Collections.singletonList(root), false);
+
+        Assert.assertTrue(result.getPrunedNodes() > 0);
+        Assert.assertNull(dataSource.get(other.getHash()));
+        assertState(store, root, Collections.singletonMap("foo", "bar".getBytes()));
+        Assert.assertEquals(trie.trieSize(), result.getRetainedNodes());
+    }
+
+    @Test
+    public void firstPruneAfterRestartDoesNotKeepNodesSavedBeforeIt() {
+        HashMapDB dataSource = new HashMapDB();
+        PrunedTrieStore store = new PrunedTrieStore(dataSource);
+
+        Trie trie = new TrieImpl(store, false).put("foo", "bar".getBytes());
+        trie.save();
+        byte[] root = trie.getHash();
+
+        Trie other = new TrieImpl(store, false).put("bar", "foo".getBytes());
+        other.save();
+
+        // a new store over the same data source has no recent nodes
+        PrunedTrieStore restarted = new PrunedTrieStore(dataSource);
+
+        PrunedTrieStore.PruneResult result = restarted.prune(Collections.singletonList(root), false);
+
+        Assert.assertEquals(0, result.getRecentNodes());
+        Assert.assertTrue(result.getPrunedNodes() > 0);
+        Assert.assertNull(dataSource.get(other.getHash()));
+        assertState(restarted, root, Collections.singletonMap("foo", "bar".getBytes()));
+    }
+
+    @Test
+    public void dryRunDoesNotDelete() {
+        HashMapDB dataSource = new HashMapDB();
+        PrunedTrieStore store = new PrunedTrieStore(dataSource);
+
+        Trie trie = new TrieImpl(store, false).put("foo", "bar".getBytes());
+        trie.save();
+
+        Trie other = new TrieImpl(store, false).put("bar", "foo".getBytes());
+        other.save();
+
+        List<byte[]> roots = Collections.singletonList(trie.getHash());
+
+        store.prune(roots, false);
+        store.prune(roots, false);
+
+        other = new TrieImpl(store, false).put("baz", "foo".getBytes());
+        other.save();
+
+        int size = dataSource.keys().size();
+
+        PrunedTrieStore.PruneResult result = store.prune(roots, true);
+
+        Assert.assertEquals(size, dataSource.keys().size());
+        Assert.assertEquals(0, result.getPrunedNodes());
+        Assert.assertEquals(1, result.getRecentNodes());
+    }
+
+    private static void assertState(TrieStore store, byte[] root, Map<String, byte[]> state) {
+        Trie trie = store.retrieve(root);
+
+        Assert.assertNotNull(trie);
+        Assert.assertArrayEquals(root, trie.getHash());
+
+        for (Map.Entry<String, byte[]> entry : state.entrySet())
+            Assert.assertArrayEquals(entry.getValue(), trie.get(entry.getKey()));
+    }
+}
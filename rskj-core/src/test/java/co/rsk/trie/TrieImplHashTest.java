@@ -23,6 +23,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
@@ -120,6 +121,55 @@ public class TrieImplHashTest {
         Assert.assertFalse(Arrays.equals(trie1.getHash(), trie2.getHash()));
     }
 
+    @Test
+    public void hashInParallelIsTheSameHash() {
+        for (int arity : new int[] { 2, 4, 16 }) {
+            byte[] hash = randomTrie(arity, 2000).getHash();
+
+            try {
+                TrieImpl.setParallelHashThreshold(4);
+                Assert.assertArrayEquals(hash, randomTrie(arity, 2000).getHash());
+            }
+            finally {
+                TrieImpl.setParallelHashThreshold(TrieImpl.PARALLEL_HASH_THRESHOLD);
+            }
+        }
+    }
+
+    @Test
+    public void hashUpdatedTrieInParallelIsTheSameHash() {
+        Trie trie = randomTrie(2, 2000);
+        trie.getHash();
+
+        Trie updated1 = trie.put("foo", "bar".getBytes()).put("bar", "baz".getBytes());
+        Trie updated2 = trie.put("foo", "bar".getBytes()).put("bar", "baz".getBytes());
+
+        byte[] hash = updated1.getHash();
+
+        try {
+            TrieImpl.setParallelHashThreshold(1);
+            Assert.assertArrayEquals(hash, updated2.getHash());
+        }
+        finally {
+            TrieImpl.setParallelHashThreshold(TrieImpl.PARALLEL_HASH_THRESHOLD);
+        }
+    }
+
+    private static Trie randomTrie(int arity, int nkeys) {
+        Random random = new Random(arity);
+        Trie trie = new TrieImpl(arity, true);
+
+        for (int k = 0; k < nkeys; k++) {
+            byte[] key = new byte[32];
+            byte[] value = new byte[1 + random.nextInt(40)];
+            random.nextBytes(key);
+            random.nextBytes(value);
+            trie = trie.put(key, value);
+        }
+
+        return trie;
+    }
+
     public static byte[] makeEmptyHash() {
         return sha3(RLP.encodeElement(EMPTY_BYTE_ARRAY));
     }
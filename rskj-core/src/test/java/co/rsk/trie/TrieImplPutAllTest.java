@@ -0,0 +1,155 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import org.ethereum.datasource.HashMapDB;
+import org.ethereum.db.ByteArrayWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class TrieImplPutAllTest {
+    private static final Random random = new Random(1);
+
+    @Test
+    public void putAllEmptyMap() {
+        Trie trie = new TrieImpl(false).put("foo".getBytes(), "bar".getBytes());
+
+        Trie result = trie.putAll(new LinkedHashMap<>());
+
+        Assert.assertArrayEquals(trie.getHash(), result.getHash());
+    }
+
+    @Test
+    public void putAllInEmptyTrie() {
+        Map<ByteArrayWrapper, byte[]> values = randomValues(100, 32);
+
+        assertSameAsPut(new TrieImpl(false), values);
+    }
+
+    @Test
+    public void putAllInSecureTrie() {
+        Map<ByteArrayWrapper, byte[]> values = randomValues(100, 20);
+
+        assertSameAsPut(new TrieImpl(true), values);
+    }
+
+    @Test
+    public void putAllInTrieWithArity16() {
+        Map<ByteArrayWrapper, byte[]> values = randomValues(100, 32);
+
+        assertSameAsPut(new TrieImpl(16, false), values);
+    }
+
+    @Test
+    public void putAllUpdatesExistingKeys() {
+        Map<ByteArrayWrapper, byte[]> values = randomValues(100, 32);
+        Trie trie = new TrieImpl(false).putAll(values);
+
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : values.entrySet())
+            entry.setValue(randomBytes(1 + random.nextInt(40)));
+
+        assertSameAsPut(trie, values);
+    }
+
+    @Test
+    public void putAllWithDeletes() {
+        Map<ByteArrayWrapper, byte[]> values = randomValues(100, 32);
+        Trie trie = new TrieImpl(false).putAll(values);
+
+        Map<ByteArrayWrapper, byte[]> updates = new LinkedHashMap<>();
+        int k = 0;
+
+        for (ByteArrayWrapper key : values.keySet())
+            updates.put(key, k++ % 3 == 0 ? null : randomBytes(10));
+
+        updates.putAll(randomValues(50, 32));
+
+        assertSameAsPut(trie, updates);
+    }
+
+    @Test
+    public void putAllInRetrievedTrie() {
+        TrieStore store = new TrieStoreImpl(new HashMapDB());
+        Trie trie = new TrieImpl(store, false).putAll(randomValues(100, 32));
+        trie.save();
+
+        Trie retrieved = store.retrieve(trie.getHash());
+
+        assertSameAsPut(retrieved, randomValues(50, 32));
+    }
+
+    @Test
+    public void putAllDoesNotChangeOriginalTrie() {
+        Trie trie = new TrieImpl(false).putAll(randomValues(100, 32));
+        byte[] hash = trie.getHash();
+        byte[] serialized = ((TrieImpl) trie).serializeTrie();
+
+        Map<ByteArrayWrapper, byte[]> values = randomValues(100, 32);
+        Trie result = trie.putAll(values);
+
+        Assert.assertArrayEquals(hash, trie.getHash());
+        Assert.assertArrayEquals(serialized, ((TrieImpl) trie).serializeTrie());
+
+        for (ByteArrayWrapper key : values.keySet())
+            Assert.assertNull(trie.get(key.getData()));
+
+        Trie result2 = result.putAll(randomValues(10, 32));
+
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : values.entrySet())
+            Assert.assertArrayEquals(entry.getValue(), result.get(entry.getKey().getData()));
+
+        Assert.assertFalse(Arrays.equals(result.getHash(), result2.getHash()));
+    }
+
+    private static void assertSameAsPut(Trie trie, Map<ByteArrayWrapper, byte[]> values) {
+        Trie expected = trie;
+
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : values.entrySet())
+            expected = expected.put(entry.getKey().getData(), entry.getValue());
+
+        Trie result = trie.putAll(values);
+
+        Assert.assertArrayEquals(expected.getHash(), result.getHash());
+        Assert.assertArrayEquals(((TrieImpl) expected).serializeTrie(), ((TrieImpl) result).serializeTrie());
+
+        for (ByteArrayWrapper key : values.keySet())
+            Assert.assertArrayEquals(expected.get(key.getData()), result.get(key.getData()));
+    }
+
+    private static Map<ByteArrayWrapper, byte[]> randomValues(int count, int keyLength) {
+        Map<ByteArrayWrapper, byte[]> values = new LinkedHashMap<>();
+
+        for (int k = 0; k < count; k++)
+            values.put(new ByteArrayWrapper(randomBytes(keyLength)), randomBytes(1 + random.nextInt(40)));
+
+        return values;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
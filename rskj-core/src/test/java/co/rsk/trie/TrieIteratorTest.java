@@ -0,0 +1,188 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import org.ethereum.crypto.SHA3Helper;
+import org.ethereum.datasource.HashMapDB;
+import org.ethereum.db.ByteArrayWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class TrieIteratorTest {
+    @Test
+    public void iterateEmptyTrie() {
+        Trie trie = new TrieImpl(false);
+
+        Assert.assertFalse(trie.iterator(null, null).hasNext());
+    }
+
+    @Test
+    public void iterateInKeyOrder() {
+        Trie trie = new TrieImpl(false)
+                .put("foo", "1".getBytes())
+                .put("bar", "2".getBytes())
+                .put("fo", "3".getBytes())
+                .put("foob", "4".getBytes())
+                .put("baz", "5".getBytes());
+
+        Assert.assertEquals(Arrays.asList("bar", "baz", "fo", "foo", "foob"), getKeys(trie.iterator(null, null)));
+    }
+
+    @Test
+    public void iterateRange() {
+        Trie trie = new TrieImpl(false)
+                .put("foo", "1".getBytes())
+                .put("bar", "2".getBytes())
+                .put("fo", "3".getBytes())
+                .put("foob", "4".getBytes())
+                .put("baz", "5".getBytes());
+
+        Assert.assertEquals(Arrays.asList("baz", "fo"), getKeys(trie.iterator("bay".getBytes(), "foo".getBytes())));
+        Assert.assertEquals(Arrays.asList("foo", "foob"), getKeys(trie.iterator("foo".getBytes(), null)));
+        Assert.assertEquals(Arrays.asList("bar", "baz"), getKeys(trie.iterator(null, "c".getBytes())));
+        Assert.assertTrue(getKeys(trie.iterator("g".getBytes(), null)).isEmpty());
+    }
+
+    @Test
+    public void iteratePrefix() {
+        Trie trie = new TrieImpl(16, false)
+                .put("foo", "1".getBytes())
+                .put("bar", "2".getBytes())
+                .put("fo", "3".getBytes())
+                .put("f", "4".getBytes())
+                .put("g", "5".getBytes());
+
+        byte[] prefix = "fo".getBytes();
+
+        Assert.assertEquals(Arrays.asList("fo", "foo"), getKeys(trie.iterator(prefix, TrieIterator.getPrefixEnd(prefix))));
+    }
+
+    @Test
+    public void getPrefixEnd() {
+        Assert.assertArrayEquals(new byte[] { 0x01, 0x03 }, TrieIterator.getPrefixEnd(new byte[] { 0x01, 0x02 }));
+        Assert.assertArrayEquals(new byte[] { 0x02 }, TrieIterator.getPrefixEnd(new byte[] { 0x01, (byte) 0xff }));
+        Assert.assertNull(TrieIterator.getPrefixEnd(new byte[] { (byte) 0xff, (byte) 0xff }));
+    }
+
+    @Test
+    public void iterateRandomTriesAsSortedMap() {
+        for (int arity : new int[] { 2, 4, 16 }) {
+            Random random = new Random(arity);
+            Trie trie = new TrieImpl(arity, false);
+            TreeMap<ByteArrayWrapper, byte[]> values = new TreeMap<>();
+
+            for (int k = 0; k < 500; k++) {
+                byte[] key = new byte[1 + random.nextInt(4)];
+                byte[] value = new byte[1 + random.nextInt(10)];
+                random.nextBytes(key);
+                random.nextBytes(value);
+                trie = trie.put(key, value);
+                values.put(new ByteArrayWrapper(key), value);
+            }
+
+            for (int k = 0; k < 20; k++) {
+                byte[] from = new byte[1 + random.nextInt(2)];
+                byte[] to = new byte[1 + random.nextInt(2)];
+                random.nextBytes(from);
+                random.nextBytes(to);
+
+                Iterator<Map.Entry<ByteArrayWrapper, byte[]>> iterator = trie.iterator(from, to);
+
+                for (Map.Entry<ByteArrayWrapper, byte[]> entry : getRange(values, from, to).entrySet()) {
+                    Assert.assertTrue(iterator.hasNext());
+                    Map.Entry<ByteArrayWrapper, byte[]> next = iterator.next();
+                    Assert.assertEquals(entry.getKey(), next.getKey());
+                    Assert.assertArrayEquals(entry.getValue(), next.getValue());
+                }
+
+                Assert.assertFalse(iterator.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void iterateSecureTrieWithPreimages() {
+        Trie trie = new TrieImpl(true)
+                .put("foo", "1".getBytes())
+                .put("bar", "2".getBytes())
+                .put("baz", "3".getBytes());
+
+        Map<ByteArrayWrapper, ByteArrayWrapper> preimages = new HashMap<>();
+
+        for (String key : new String[] { "foo", "bar" })
+            preimages.put(new ByteArrayWrapper(SHA3Helper.sha3(key.getBytes())), new ByteArrayWrapper(key.getBytes()));
+
+        Set<String> keys = new HashSet<>(getKeys(TrieIterator.withPreimages(trie.iterator(null, null), preimages::get)));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("foo", "bar")), keys);
+        Assert.assertEquals(3, getKeys(trie.iterator(null, null)).size());
+    }
+
+    @Test
+    public void iterateRetrievedTrieWithoutKeepingTheNodes() {
+        TrieStore store = new TrieStoreImpl(new HashMapDB());
+        Trie trie = new TrieImpl(store, false)
+                .put("foo", "1".getBytes())
+                .put("bar", "2".getBytes())
+                .put("baz", "3".getBytes());
+
+        trie.save();
+
+        Trie retrieved = store.retrieve(trie.getHash());
+        int count = store.getRetrieveCount();
+
+        Assert.assertEquals(Arrays.asList("bar", "baz", "foo"), getKeys(retrieved.iterator(null, null)));
+        Assert.assertTrue(store.getRetrieveCount() > count);
+
+        count = store.getRetrieveCount();
+
+        Assert.assertEquals(Arrays.asList("bar", "baz", "foo"), getKeys(retrieved.iterator(null, null)));
+        Assert.assertTrue(store.getRetrieveCount() > count);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void nextAfterLastEntry() {
+        Iterator<Map.Entry<ByteArrayWrapper, byte[]>> iterator = new TrieImpl(false).put("foo", "bar".getBytes()).iterator(null, null);
+
+        iterator.next();
+        iterator.next();
+    }
+
+    private static SortedMap<ByteArrayWrapper, byte[]> getRange(TreeMap<ByteArrayWrapper, byte[]> values, byte[] from, byte[] to) {
+        ByteArrayWrapper fromKey = new ByteArrayWrapper(from);
+        ByteArrayWrapper toKey = new ByteArrayWrapper(to);
+
+        if (fromKey.compareTo(toKey) >= 0)
+            return new TreeMap<>();
+
+        return values.subMap(fromKey, toKey);
+    }
+
+    private static List<String> getKeys(Iterator<Map.Entry<ByteArrayWrapper, byte[]>> iterator) {
+        List<String> keys = new ArrayList<>();
+
+        while (iterator.hasNext())
+            keys.add(new String(iterator.next().getKey().getData()));
+
+        return keys;
+    }
+}
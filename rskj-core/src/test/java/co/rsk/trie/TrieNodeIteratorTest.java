@@ -0,0 +1,107 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import org.ethereum.crypto.SHA3Helper;
+import org.ethereum.datasource.HashMapDB;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class TrieNodeIteratorTest {
+    @Test
+    public void iterateEmptyTrie() {
+        TrieStore store = new TrieStoreImpl(new HashMapDB());
+        Trie trie = new TrieImpl(store, true);
+        trie.save();
+
+        Assert.assertFalse(new TrieNodeIterator(store, trie.getHash()).hasNext());
+    }
+
+    @Test
+    public void iterateAllNodes() {
+        HashMapDB dataSource = new HashMapDB();
+        TrieStore store = new TrieStoreImpl(dataSource);
+        Trie trie = makeTrie(store, 1000);
+
+        int nnodes = 0;
+
+        for (Iterator<byte[]> nodes = new TrieNodeIterator(store, trie.getHash()); nodes.hasNext(); nnodes++) {
+            byte[] message = nodes.next();
+            Assert.assertArrayEquals(message, dataSource.get(SHA3Helper.sha3(message)));
+        }
+
+        Assert.assertEquals(trie.trieSize(), nnodes);
+    }
+
+    @Test
+    public void copyTrieFromNodes() {
+        TrieStore store = new TrieStoreImpl(new HashMapDB());
+        Trie trie = makeTrie(store, 100);
+
+        HashMapDB dataSource = new HashMapDB();
+
+        for (Iterator<byte[]> nodes = new TrieNodeIterator(store, trie.getHash()); nodes.hasNext();) {
+            byte[] message = nodes.next();
+            dataSource.put(SHA3Helper.sha3(message), message);
+        }
+
+        Trie copy = new TrieStoreImpl(dataSource).retrieve(trie.getHash());
+
+        Assert.assertNotNull(copy);
+        Assert.assertArrayEquals(trie.getHash(), copy.getHash());
+
+        for (int k = 0; k < 100; k++)
+            Assert.assertArrayEquals(("value" + k).getBytes(), copy.get(("key" + k).getBytes()));
+    }
+
+    @Test(expected = TrieSerializationException.class)
+    public void failOnMissingNode() {
+        Trie trie = makeTrie(new TrieStoreImpl(new HashMapDB()), 100);
+
+        new TrieNodeIterator(new TrieStoreImpl(new HashMapDB()), trie.getHash()).next();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void failAfterLastNode() {
+        TrieStore store = new TrieStoreImpl(new HashMapDB());
+        Trie trie = new TrieImpl(store, false).put("foo", "bar".getBytes());
+        trie.save();
+
+        Iterator<byte[]> nodes = new TrieNodeIterator(store, trie.getHash());
+
+        Assert.assertNotNull(nodes.next());
+        Assert.assertFalse(nodes.hasNext());
+        nodes.next();
+    }
+
+    private static Trie makeTrie(TrieStore store, int nkeys) {
+        Trie trie = new TrieImpl(store, true);
+
+        for (int k = 0; k < nkeys; k++)
+            trie = trie.put(("key" + k).getBytes(), ("value" + k).getBytes());
+
+        trie.save();
+
+        return trie;
+    }
+}
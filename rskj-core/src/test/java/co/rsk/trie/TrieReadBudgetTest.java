@@ -0,0 +1,178 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import org.ethereum.datasource.HashMapDB;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class TrieReadBudgetTest {
+    @Test
+    public void countNodeReads() {
+        HashMapDB dataSource = new HashMapDB();
+        Trie trie = makeTrie(new TrieStoreImpl(dataSource), 100);
+
+        try (TrieReadBudget budget = TrieReadBudget.start(1000)) {
+            Trie retrieved = new TrieStoreImpl(dataSource).retrieve(trie.getHash());
+
+            for (int k = 0; k < 100; k++)
+                Assert.assertArrayEquals(("value" + k).getBytes(), retrieved.get(("key" + k).getBytes()));
+
+            Assert.assertEquals(trie.trieSize(), budget.getReads());
+            Assert.assertFalse(budget.isExceeded());
+        }
+    }
+
+    @Test
+    public void loadedNodesAreNotCounted() {
+        HashMapDB dataSource = new HashMapDB();
+        Trie trie = makeTrie(new TrieStoreImpl(dataSource), 100);
+        Trie retrieved = new TrieStoreImpl(dataSource).retrieve(trie.getHash());
+
+        for (int k = 0; k < 100; k++)
+            retrieved.get(("key" + k).getBytes());
+
+        try (TrieReadBudget budget = TrieReadBudget.start(1)) {
+            for (int k = 0; k < 100; k++)
+                retrieved.get(("key" + k).getBytes());
+
+            Assert.assertEquals(0, budget.getReads());
+        }
+    }
+
+    @Test
+    public void failOverTheLimit() {
+        HashMapDB dataSource = new HashMapDB();
+        Trie trie = makeTrie(new TrieStoreImpl(dataSource), 100);
+
+        try (TrieReadBudget budget = TrieReadBudget.start(10)) {
+            Trie retrieved = new TrieStoreImpl(dataSource).retrieve(trie.getHash());
+
+            try {
+                for (int k = 0; k < 100; k++)
+                    retrieved.get(("key" + k).getBytes());
+
+                Assert.fail();
+            }
+            catch (TrieReadBudgetExceededException ex) {
+                Assert.assertTrue(budget.isExceeded());
+            }
+
+            // the budget stays exceeded
+            try {
+                new TrieStoreImpl(dataSource).retrieve(trie.getHash());
+                Assert.fail();
+            }
+            catch (TrieReadBudgetExceededException ex) {
+                Assert.assertEquals(12, budget.getReads());
+            }
+        }
+    }
+
+    @Test
+    public void noLimitIfZero() {
+        HashMapDB dataSource = new HashMapDB();
+        Trie trie = makeTrie(new TrieStoreImpl(dataSource), 100);
+
+        try (TrieReadBudget budget = TrieReadBudget.start(0)) {
+            Trie retrieved = new TrieStoreImpl(dataSource).retrieve(trie.getHash());
+
+            for (int k = 0; k < 100; k++)
+                retrieved.get(("key" + k).getBytes());
+
+            Assert.assertEquals(trie.trieSize(), budget.getReads());
+            Assert.assertFalse(budget.isExceeded());
+        }
+    }
+
+    @Test
+    public void failOnMissingNode() {
+        HashMapDB dataSource = new HashMapDB();
+        Trie trie = makeTrie(new TrieStoreImpl(dataSource), 100);
+        Trie retrieved = new TrieStoreImpl(dataSource).retrieve(trie.getHash());
+
+        // the nodes not loaded yet are pruned
+        for (byte[] key : dataSource.keys())
+            if (!Arrays.equals(key, trie.getHash()))
+                dataSource.delete(key);
+
+        try (TrieReadBudget budget = TrieReadBudget.start(0)) {
+            try {
+                retrieved.get("key0".getBytes());
+                Assert.fail();
+            }
+            catch (MissingTrieNodeException ex) {
+                Assert.assertTrue(budget.hasMissingNodes());
+            }
+        }
+    }
+
+    @Test
+    public void missingNodeIsNotFoundWithoutBudget() {
+        HashMapDB dataSource = new HashMapDB();
+        Trie trie = makeTrie(new TrieStoreImpl(dataSource), 10);
+
+        dataSource.delete(trie.getHash());
+
+        Assert.assertNull(new TrieStoreImpl(dataSource).retrieve(trie.getHash()));
+    }
+
+    @Test
+    public void noLimitAfterClose() {
+        HashMapDB dataSource = new HashMapDB();
+        Trie trie = makeTrie(new TrieStoreImpl(dataSource), 100);
+
+        TrieReadBudget.start(1).close();
+
+        Trie retrieved = new TrieStoreImpl(dataSource).retrieve(trie.getHash());
+
+        for (int k = 0; k < 100; k++)
+            Assert.assertArrayEquals(("value" + k).getBytes(), retrieved.get(("key" + k).getBytes()));
+    }
+
+    @Test
+    public void restorePreviousBudgetOnClose() {
+        HashMapDB dataSource = new HashMapDB();
+        Trie trie = makeTrie(new TrieStoreImpl(dataSource), 10);
+
+        try (TrieReadBudget outer = TrieReadBudget.start(1000)) {
+            try (TrieReadBudget inner = TrieReadBudget.start(1000)) {
+                new TrieStoreImpl(dataSource).retrieve(trie.getHash());
+                Assert.assertEquals(1, inner.getReads());
+            }
+
+            new TrieStoreImpl(dataSource).retrieve(trie.getHash());
+            Assert.assertEquals(1, outer.getReads());
+        }
+    }
+
+    private static Trie makeTrie(TrieStore store, int nkeys) {
+        Trie trie = new TrieImpl(store, true);
+
+        for (int k = 0; k < nkeys; k++)
+            trie = trie.put(("key" + k).getBytes(), ("value" + k).getBytes());
+
+        trie.save();
+
+        return trie;
+    }
+}
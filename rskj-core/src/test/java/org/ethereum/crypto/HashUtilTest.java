@@ -0,0 +1,104 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2017 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ethereum.crypto;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class HashUtilTest {
+    private static final String HORSE_HASH = "c87f65ff3f271bf5dc8643484f66b200109caffe4bf98c4cb393dc35740b28c0";
+
+    @Test
+    public void sha3OfChunkAsSHA3Helper() {
+        byte[] data = createData(1000);
+
+        for (int start : new int[] { 0, 1, 135, 500 })
+            for (int length : new int[] { 0, 1, 135, 136, 137, 500 })
+                Assert.assertArrayEquals(SHA3Helper.sha3(data, start, length), HashUtil.sha3(data, start, length));
+    }
+
+    @Test
+    public void sha3OfChunkIntoOutput() {
+        byte[] data = ("xx" + "horse" + "yy").getBytes();
+        byte[] output = new byte[40];
+
+        HashUtil.sha3(data, 2, 5, output, 4);
+
+        Assert.assertEquals(HORSE_HASH, Hex.toHexString(Arrays.copyOfRange(output, 4, 36)));
+        Assert.assertArrayEquals(new byte[4], Arrays.copyOfRange(output, 0, 4));
+        Assert.assertArrayEquals(new byte[4], Arrays.copyOfRange(output, 36, 40));
+    }
+
+    @Test
+    public void sha3OfHeapByteBuffer() {
+        byte[] data = createData(3000);
+        ByteBuffer buffer = ByteBuffer.wrap(data, 100, 2500).slice();
+        byte[] output = new byte[HashUtil.SHA3_LENGTH];
+
+        HashUtil.sha3(buffer, output, 0);
+
+        Assert.assertArrayEquals(HashUtil.sha3(data, 100, 2500), output);
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void sha3OfDirectByteBuffer() {
+        byte[] data = createData(3000);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+        byte[] output = new byte[HashUtil.SHA3_LENGTH];
+
+        HashUtil.sha3(buffer, output, 0);
+
+        Assert.assertArrayEquals(HashUtil.sha3(data), output);
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void reuseDigestAfterFailedHash() {
+        byte[] data = "horse".getBytes();
+
+        try {
+            HashUtil.sha3(data, 0, 10);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException ex) {
+        }
+
+        Assert.assertEquals(HORSE_HASH, Hex.toHexString(HashUtil.sha3(data)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectShortOutput() {
+        HashUtil.sha3("horse".getBytes(), 0, 5, new byte[40], 10);
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+
+        for (int k = 0; k < length; k++)
+            data[k] = (byte) (k * 31 + 7);
+
+        return data;
+    }
+}
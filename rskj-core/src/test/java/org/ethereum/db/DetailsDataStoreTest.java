@@ -30,6 +30,8 @@ import org.spongycastle.util.encoders.Hex;
 
 import javax.annotation.Nullable;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.ethereum.TestUtils.*;
 import static org.ethereum.util.ByteUtil.toHexString;
@@ -157,4 +159,57 @@ public class DetailsDataStoreTest {
         ContractDetails contractDetails = dds.get(c_key);
         assertNull(contractDetails);
     }
+
+    @Test
+    public void getAndUpdateWhileFlushing() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        HashMapDB blockingDB = new HashMapDB() {
+            @Override
+            public synchronized void updateBatch(Map<byte[], byte[]> rows) {
+                writing.countDown();
+
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+
+                super.updateBatch(rows);
+            }
+        };
+
+        DetailsDataStore dds = new DetailsDataStore();
+        dds.setDB(new DatabaseImpl(blockingDB));
+
+        byte[] c_key = Hex.decode("1a2b");
+        byte[] c_key2 = Hex.decode("1a2c");
+
+        ContractDetails contractDetails = new ContractDetailsImpl();
+        contractDetails.setAddress(randomAddress());
+        contractDetails.put(new DataWord(Hex.decode("11")), new DataWord(Hex.decode("aa")));
+
+        dds.update(c_key, contractDetails);
+
+        Thread flusher = new Thread(dds::flush);
+        flusher.start();
+
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        // the details being written are read from the flush
+        assertSame(contractDetails, dds.get(c_key));
+
+        dds.update(c_key2, new ContractDetailsImpl());
+        assertNotNull(dds.get(c_key2));
+
+        release.countDown();
+        flusher.join();
+
+        assertNotNull(blockingDB.get(c_key));
+        assertNull(blockingDB.get(c_key2));
+        assertEquals(Hex.toHexString(contractDetails.getEncoded()), Hex.toHexString(dds.get(c_key).getEncoded()));
+        assertNotNull(dds.get(c_key2));
+    }
 }
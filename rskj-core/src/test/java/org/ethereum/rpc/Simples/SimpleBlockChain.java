@@ -44,6 +44,11 @@ public class SimpleBlockChain implements org.ethereum.core.Blockchain {
         return null;
     }
 
+    @Override
+    public void prevalidate(List<Block> blocks) {
+
+    }
+
     @Override
     public Block getBlockByNumber(long blockNr) {
         return null;
@@ -178,6 +178,16 @@ public class SimpleEthereum implements Ethereum {
         return null;
     }
 
+    @Override
+    public ProgramResult callConstant(Web3.CallArguments args, Block block, org.ethereum.core.Repository snapshot) {
+        return null;
+    }
+
+    @Override
+    public long estimateGas(Web3.CallArguments args) {
+        return 0;
+    }
+
     @Override
     public SystemProperties getSystemProperties() {
         return null;
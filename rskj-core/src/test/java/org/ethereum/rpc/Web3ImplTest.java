@@ -22,6 +22,8 @@ import co.rsk.config.RskSystemProperties;
 import co.rsk.core.Wallet;
 import co.rsk.core.WalletFactory;
 import co.rsk.core.bc.PendingStateImpl;
+import co.rsk.db.HistoricalStates;
+import co.rsk.db.RepositoryImpl;
 import co.rsk.mine.MinerClient;
 import co.rsk.net.simples.SimpleBlockProcessor;
 import co.rsk.rpc.Web3RskImpl;
@@ -36,11 +38,13 @@ import co.rsk.test.World;
 import co.rsk.test.builders.AccountBuilder;
 import co.rsk.test.builders.BlockBuilder;
 import co.rsk.test.builders.TransactionBuilder;
+import co.rsk.trie.TrieStoreImpl;
 import co.rsk.util.TestContract;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.*;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.crypto.SHA3Helper;
+import org.ethereum.datasource.HashMapDB;
 import org.ethereum.facade.Ethereum;
 import org.ethereum.facade.Repository;
 import org.ethereum.rpc.Simples.*;
@@ -48,6 +52,7 @@ import org.ethereum.rpc.dto.CompilationResultDTO;
 import org.ethereum.rpc.dto.TransactionReceiptDTO;
 import org.ethereum.rpc.dto.TransactionResultDTO;
 import org.ethereum.rpc.exception.JsonRpcInvalidParamException;
+import org.ethereum.rpc.exception.JsonRpcLimitExceededException;
 import org.ethereum.solidity.compiler.SolidityCompiler;
 import org.ethereum.vm.program.ProgramResult;
 import org.junit.Assert;
@@ -254,6 +259,104 @@ public class Web3ImplTest {
         org.junit.Assert.assertEquals(balanceString, web3.eth_getBalance(accountAddress, "pending"));
     }
 
+    @Test
+    public void getBalanceAtPastBlock() throws Exception {
+        World world = new World();
+        Account acc1 = new AccountBuilder(world).name("acc1").balance(BigInteger.valueOf(10000000)).build();
+        Account acc2 = new AccountBuilder(world).name("acc2").build();
+        addTransferBlocks(world, acc1, acc2, 2);
+
+        Web3Impl web3 = createWeb3();
+
+        web3.repository = (Repository) world.getBlockChain().getRepository();
+        SimpleWorldManager worldManager = new SimpleWorldManager();
+        worldManager.setBlockchain(world.getBlockChain());
+        web3.worldManager = worldManager;
+
+        String accountAddress = Hex.toHexString(acc2.getAddress());
+
+        org.junit.Assert.assertEquals(TypeConverter.toJsonHex(BigInteger.valueOf(10000)), web3.eth_getBalance(accountAddress, "0x1"));
+        org.junit.Assert.assertEquals(TypeConverter.toJsonHex(BigInteger.valueOf(20000)), web3.eth_getBalance(accountAddress, "0x2"));
+        org.junit.Assert.assertEquals(TypeConverter.toJsonHex(BigInteger.valueOf(20000)), web3.eth_getBalance(accountAddress, "LATEST"));
+        // from the kept snapshot
+        org.junit.Assert.assertEquals(TypeConverter.toJsonHex(BigInteger.valueOf(10000)), web3.eth_getBalance(accountAddress, "0x1"));
+    }
+
+    @Test(expected = JsonRpcInvalidParamException.class)
+    public void getBalanceAtBlockWithMissingState() throws Exception {
+        World world = new World();
+        Account acc1 = new AccountBuilder(world).name("acc1").balance(BigInteger.valueOf(10000000)).build();
+        Account acc2 = new AccountBuilder(world).name("acc2").build();
+        addTransferBlocks(world, acc1, acc2, 1);
+
+        Web3Impl web3 = createWeb3();
+
+        // a repository without the states of the blocks, as after their pruning
+        web3.repository = new RepositoryImpl(new TrieStoreImpl(new HashMapDB()));
+        SimpleWorldManager worldManager = new SimpleWorldManager();
+        worldManager.setBlockchain(world.getBlockChain());
+        web3.worldManager = worldManager;
+
+        web3.eth_getBalance(Hex.toHexString(acc2.getAddress()), "0x1");
+    }
+
+    @Test
+    public void getBalanceOverTheStateReadLimit() throws Exception {
+        World world = new World();
+        Account acc1 = new AccountBuilder(world).name("acc1").balance(BigInteger.valueOf(10000000)).build();
+        Account acc2 = new AccountBuilder(world).name("acc2").build();
+
+        for (int k = 0; k < 10; k++)
+            new AccountBuilder(world).name("other" + k).balance(BigInteger.ONE).build();
+
+        addTransferBlocks(world, acc1, acc2, 1);
+
+        Web3Impl web3 = createWeb3();
+
+        web3.repository = (Repository) world.getBlockChain().getRepository();
+        SimpleWorldManager worldManager = new SimpleWorldManager();
+        worldManager.setBlockchain(world.getBlockChain());
+        web3.worldManager = worldManager;
+        web3.historicalStates = new HistoricalStates(10, 0, 1);
+
+        try {
+            web3.eth_getBalance(Hex.toHexString(acc2.getAddress()), "0x1");
+            Assert.fail();
+        }
+        catch (JsonRpcLimitExceededException ex) {
+            Assert.assertEquals(-32005, ex.getCode().intValue());
+        }
+    }
+
+    @Test
+    public void callAtPastBlock() throws Exception {
+        World world = new World();
+        Account acc1 = new AccountBuilder(world).name("acc1").balance(BigInteger.valueOf(10000000)).build();
+        Account acc2 = new AccountBuilder(world).name("acc2").build();
+        addTransferBlocks(world, acc1, acc2, 2);
+
+        SimpleWorldManager worldManager = new SimpleWorldManager();
+        worldManager.setBlockchain(world.getBlockChain());
+        Ethereum ethMock = Mockito.mock(Ethereum.class);
+        Mockito.when(ethMock.getWorldManager()).thenReturn(worldManager);
+        // the call returns the balance of acc2 in the state that it is executed on
+        Mockito.when(ethMock.callConstant(Matchers.any(), Matchers.any(), Matchers.any())).thenAnswer(invocation -> {
+            org.ethereum.core.Repository snapshot = invocation.getArgumentAt(2, org.ethereum.core.Repository.class);
+            ProgramResult res = new ProgramResult();
+            res.setHReturn(snapshot.getBalance(acc2.getAddress()).toByteArray());
+            return res;
+        });
+
+        Web3Impl web3 = createWeb3(ethMock);
+        web3.repository = (Repository) world.getBlockChain().getRepository();
+
+        Web3.CallArguments argsForCall = new Web3.CallArguments();
+        argsForCall.to = TypeConverter.toJsonHex(acc2.getAddress());
+
+        org.junit.Assert.assertEquals(TypeConverter.toJsonHex(BigInteger.valueOf(10000).toByteArray()), web3.eth_call(argsForCall, "0x1"));
+        org.junit.Assert.assertEquals(TypeConverter.toJsonHex(BigInteger.valueOf(20000).toByteArray()), web3.eth_call(argsForCall, "0x2"));
+    }
+
     @Test
     public void eth_mining()  {
         Ethereum ethMock = Web3Mocks.getMockEthereum();
@@ -1257,6 +1360,18 @@ public class Web3ImplTest {
         Assert.assertTrue("Method is not creating the expected transaction", expectedHash.compareTo(txHash) == 0);
     }
 
+    // blocks on top of the genesis, each one with a transfer of 10000 from acc1 to acc2
+    private static void addTransferBlocks(World world, Account acc1, Account acc2, int nblocks) {
+        Block parent = world.getBlockByName("g00");
+
+        for (int k = 0; k < nblocks; k++) {
+            Transaction tx = new TransactionBuilder().sender(acc1).receiver(acc2).nonce(k).value(BigInteger.valueOf(10000)).build();
+            Block block = new BlockBuilder(world).parent(parent).transactions(Collections.singletonList(tx)).build();
+            org.junit.Assert.assertEquals(ImportResult.IMPORTED_BEST, world.getBlockChain().tryToConnect(block));
+            parent = block;
+        }
+    }
+
     private Web3Impl createWeb3() {
         return createWeb3(Web3Mocks.getMockEthereum());
     }